@@ -27,8 +27,10 @@ import androidx.annotation.NonNull;
 
 import com.android.settings.activityembedding.ActivityEmbeddingRulesController;
 import com.android.settings.activityembedding.ActivityEmbeddingUtils;
+import com.android.settings.applications.AppIconLoader;
 import com.android.settings.core.instrumentation.ElapsedTimeUtils;
 import com.android.settings.fuelgauge.BatterySettingsStorage;
+import com.android.settings.fuelgauge.batteryusage.BatteryConsumerCache;
 import com.android.settings.homepage.SettingsHomepageActivity;
 import com.android.settings.overlay.FeatureFactory;
 import com.android.settings.overlay.FeatureFactoryImpl;
@@ -108,6 +110,8 @@ public class SettingsApplication extends Application {
     public void onTrimMemory(int level) {
         super.onTrimMemory(level);
         AppIconCacheManager.getInstance().trimMemory(level);
+        AppIconLoader.getInstance(this).trimMemory(level);
+        BatteryConsumerCache.getInstance().trimMemory(level);
     }
 
     private class DeviceProvisionedObserver extends ContentObserver {
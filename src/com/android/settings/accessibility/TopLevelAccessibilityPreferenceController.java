@@ -21,7 +21,8 @@ import android.content.Context;
 import com.android.settings.R;
 import com.android.settings.core.BasePreferenceController;
 
-public class TopLevelAccessibilityPreferenceController extends BasePreferenceController {
+public class TopLevelAccessibilityPreferenceController extends BasePreferenceController
+        implements BasePreferenceController.BackgroundInstantiable {
 
     public TopLevelAccessibilityPreferenceController(Context context,
             String preferenceKey) {
@@ -48,6 +48,7 @@ import com.android.settingslib.search.SearchIndexable;
 import com.android.settingslib.search.SearchIndexableRaw;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 @SearchIndexable
@@ -171,13 +172,8 @@ public class AccountDashboardFragment extends DashboardFragment {
                 public List<SearchIndexableRaw> getDynamicRawDataToIndex(
                         Context context, boolean enabled) {
                     final List<SearchIndexableRaw> indexRaws = new ArrayList<>();
-                    final UserManager userManager =
-                            (UserManager) context.getSystemService(Context.USER_SERVICE);
-                    final List<UserInfo> profiles = userManager.getProfiles(UserHandle.myUserId());
-                    for (final UserInfo userInfo : profiles) {
-                        if (userInfo.isManagedProfile()) {
-                            return indexRaws;
-                        }
+                    if (hasManagedProfile(context)) {
+                        return indexRaws;
                     }
 
                     final AccountManager accountManager = AccountManager.get(context);
@@ -191,5 +187,24 @@ public class AccountDashboardFragment extends DashboardFragment {
 
                     return indexRaws;
                 }
+
+                @Override
+                public Object getDynamicRawDataToken(Context context) {
+                    // The accounts are only indexed without a managed profile.
+                    return hasManagedProfile(context)
+                            ? List.of()
+                            : Arrays.asList(AccountManager.get(context).getAccounts());
+                }
             };
+
+    private static boolean hasManagedProfile(Context context) {
+        final UserManager userManager =
+                (UserManager) context.getSystemService(Context.USER_SERVICE);
+        for (UserInfo userInfo : userManager.getProfiles(UserHandle.myUserId())) {
+            if (userInfo.isManagedProfile()) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
@@ -0,0 +1,345 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import android.content.BroadcastReceiver;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.UserHandle;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+import android.util.LruCache;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.android.settings.R;
+import com.android.settingslib.Utils;
+import com.android.settingslib.applications.AppUtils;
+import com.android.settingslib.applications.ApplicationsState.AppEntry;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Loads the icons of the app lists in the size they are rendered at, shared by all the lists.
+ *
+ * <p>The icons are loaded by a few background threads, the ones of the shown rows before the
+ * prefetched ones and the newest request first. The request of a row is cancelled once the row is
+ * recycled or bound to another app, so a late icon is never set to a reused row. The icons are
+ * drawn into bitmaps of the list icon size, kept in a {@link LruCache} bounded by their bytes and
+ * trimmed along with the memory of the process. The bitmaps of a package are dropped once the
+ * package is changed.
+ */
+public final class AppIconLoader {
+    private static final String TAG = "AppIconLoader";
+    private static final int THREAD_COUNT = 2;
+    private static final long KEEP_ALIVE_SECONDS = 10;
+    // The cached bitmaps use up to this fraction of the heap.
+    private static final int CACHE_HEAP_FRACTION = 32;
+    private static final int PRIORITY_PREFETCH = 0;
+    private static final int PRIORITY_SHOWN = 1;
+
+    private static AppIconLoader sInstance;
+
+    private final Context mContext;
+    private final int mIconSize;
+    private final Executor mExecutor;
+    private final Function<AppEntry, Drawable> mIconSource;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final LruCache<String, Bitmap> mBitmaps;
+    private final AtomicLong mSequence = new AtomicLong();
+    // The keys of the icons being prefetched.
+    private final Set<String> mPrefetchingKeys = new ArraySet<>();
+    // The pending request of each target, only used in the main thread.
+    private final Map<Object, Request> mRequests = new ArrayMap<>();
+
+    private final BroadcastReceiver mPackageReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            final Uri data = intent.getData();
+            final String packageName = data == null ? null : data.getSchemeSpecificPart();
+            if (packageName != null) {
+                invalidatePackage(packageName);
+            }
+        }
+    };
+
+    /**
+     * Returns the process-wide instance, which drops the icons of the changed packages.
+     */
+    public static synchronized AppIconLoader getInstance(Context context) {
+        if (sInstance == null) {
+            final Context appContext = context.getApplicationContext();
+            sInstance = new AppIconLoader(appContext,
+                    appContext.getResources().getDimensionPixelSize(R.dimen.app_icon_size),
+                    createExecutor(), entry -> loadFullIcon(appContext, entry),
+                    (int) (Runtime.getRuntime().maxMemory() / CACHE_HEAP_FRACTION));
+            final IntentFilter filter = new IntentFilter();
+            filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+            filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+            filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+            filter.addDataScheme("package");
+            appContext.registerReceiverAsUser(
+                    sInstance.mPackageReceiver, UserHandle.ALL, filter, null, null);
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    AppIconLoader(Context context, int iconSize, Executor executor,
+            Function<AppEntry, Drawable> iconSource, int maxCacheBytes) {
+        mContext = context;
+        mIconSize = iconSize;
+        mExecutor = executor;
+        mIconSource = iconSource;
+        mBitmaps = new LruCache<String, Bitmap>(maxCacheBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getAllocationByteCount();
+            }
+        };
+    }
+
+    /** Returns the cached icon of the {@code entry}, or null if it is not loaded yet. */
+    @Nullable
+    public Drawable getCachedIcon(@NonNull AppEntry entry) {
+        final String key = getKey(entry);
+        final Bitmap bitmap = key == null || !entry.mounted ? null : mBitmaps.get(key);
+        return bitmap == null ? null : new BitmapDrawable(mContext.getResources(), bitmap);
+    }
+
+    /**
+     * Gives the icon of the {@code entry} to the {@code callback}, directly if it is cached or
+     * later in the main thread once it is loaded. The former request of the {@code target}, such
+     * as the row showing the icon, is cancelled.
+     */
+    @MainThread
+    public void loadIcon(@NonNull Object target, @NonNull AppEntry entry,
+            @NonNull Consumer<Drawable> callback) {
+        cancel(target);
+        final Drawable cachedIcon = getCachedIcon(entry);
+        if (cachedIcon != null) {
+            callback.accept(cachedIcon);
+            return;
+        }
+        final String key = getKey(entry);
+        if (key == null) {
+            return;
+        }
+        final Request request = new Request(target, entry, key, PRIORITY_SHOWN, callback);
+        mRequests.put(target, request);
+        mExecutor.execute(request);
+    }
+
+    /** Cancels the pending request of the {@code target}, whose icon is not given anymore. */
+    @MainThread
+    public void cancel(@NonNull Object target) {
+        final Request request = mRequests.remove(target);
+        if (request != null) {
+            request.mIsCancelled = true;
+        }
+    }
+
+    /** Loads the icons of the {@code entries} which are not cached, after the shown ones. */
+    public void prefetch(@NonNull List<AppEntry> entries) {
+        for (AppEntry entry : entries) {
+            final String key = getKey(entry);
+            if (key == null || (entry.mounted && mBitmaps.get(key) != null)) {
+                continue;
+            }
+            synchronized (mPrefetchingKeys) {
+                if (!mPrefetchingKeys.add(key)) {
+                    continue;
+                }
+            }
+            mExecutor.execute(new Request(null, entry, key, PRIORITY_PREFETCH, null));
+        }
+    }
+
+    /** Drops the cached icons of the {@code packageName} in all the profiles. */
+    public void invalidatePackage(@NonNull String packageName) {
+        final String prefix = packageName + "|";
+        for (String key : mBitmaps.snapshot().keySet()) {
+            if (key.startsWith(prefix)) {
+                mBitmaps.remove(key);
+            }
+        }
+    }
+
+    /** Releases the cached icons as the process is asked to trim its memory. */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            mBitmaps.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            mBitmaps.trimToSize(mBitmaps.maxSize() / 2);
+        }
+    }
+
+    /** Draws the {@code icon} into a bitmap of {@code size} by {@code size} pixels. */
+    @NonNull
+    public static Bitmap drawBitmap(@NonNull Drawable icon, int size) {
+        final Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        final Rect bounds = icon.copyBounds();
+        icon.setBounds(0, 0, size, size);
+        icon.draw(new Canvas(bitmap));
+        icon.setBounds(bounds);
+        return bitmap;
+    }
+
+    @VisibleForTesting
+    int getCachedIconCount() {
+        return mBitmaps.snapshot().size();
+    }
+
+    @VisibleForTesting
+    BroadcastReceiver getPackageReceiver() {
+        return mPackageReceiver;
+    }
+
+    /**
+     * Loads the full resolution icon of the {@code entry}, which is only drawn into a bitmap of
+     * the list icon size. Unlike {@link AppUtils#getIcon}, it is not kept in the
+     * {@code AppIconCacheManager} as well.
+     */
+    @VisibleForTesting
+    @Nullable
+    static Drawable loadFullIcon(Context context, AppEntry entry) {
+        if (entry.info != null && entry.apkFile != null && entry.apkFile.exists()) {
+            return Utils.getBadgedIcon(context, entry.info);
+        }
+        // The placeholder of an unavailable app, which also updates whether it is mounted.
+        return AppUtils.getIcon(context, entry);
+    }
+
+    @Nullable
+    private static String getKey(@Nullable AppEntry entry) {
+        return entry == null || entry.info == null ? null
+                : entry.info.packageName + "|" + entry.info.uid;
+    }
+
+    private static Executor createExecutor() {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new PriorityBlockingQueue<>(),
+                runnable -> new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }, TAG));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @Nullable
+    private Bitmap load(AppEntry entry, String key) {
+        final Bitmap cachedBitmap = entry.mounted ? mBitmaps.get(key) : null;
+        if (cachedBitmap != null) {
+            return cachedBitmap;
+        }
+        final Drawable icon = mIconSource.apply(entry);
+        if (icon == null) {
+            return null;
+        }
+        final Bitmap bitmap = drawBitmap(icon, mIconSize);
+        // The placeholder of an unmounted app is not cached, so the icon is loaded again once the
+        // app is mounted.
+        if (entry.mounted) {
+            mBitmaps.put(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    @MainThread
+    private void deliver(Request request, @Nullable Bitmap bitmap) {
+        if (request.mIsCancelled || mRequests.get(request.mTarget) != request) {
+            return;
+        }
+        mRequests.remove(request.mTarget);
+        if (bitmap != null) {
+            request.mCallback.accept(new BitmapDrawable(mContext.getResources(), bitmap));
+        }
+    }
+
+    /** A request to load an icon, which is run by priority and then the newest first. */
+    private final class Request implements Runnable, Comparable<Request> {
+        final Object mTarget;
+        final AppEntry mEntry;
+        final String mKey;
+        final int mPriority;
+        final long mSequence;
+        final Consumer<Drawable> mCallback;
+        volatile boolean mIsCancelled;
+
+        Request(@Nullable Object target, AppEntry entry, String key, int priority,
+                @Nullable Consumer<Drawable> callback) {
+            mTarget = target;
+            mEntry = entry;
+            mKey = key;
+            mPriority = priority;
+            mSequence = AppIconLoader.this.mSequence.incrementAndGet();
+            mCallback = callback;
+        }
+
+        @Override
+        public void run() {
+            if (mCallback == null) {
+                try {
+                    load(mEntry, mKey);
+                } finally {
+                    synchronized (mPrefetchingKeys) {
+                        mPrefetchingKeys.remove(mKey);
+                    }
+                }
+                return;
+            }
+            if (mIsCancelled) {
+                return;
+            }
+            final Bitmap bitmap = load(mEntry, mKey);
+            mMainHandler.post(() -> deliver(this, bitmap));
+        }
+
+        @Override
+        public int compareTo(Request other) {
+            if (mPriority != other.mPriority) {
+                return Integer.compare(other.mPriority, mPriority);
+            }
+            return Long.compare(other.mSequence, mSequence);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import android.app.AppGlobals;
+import android.app.AppOpsManager;
+import android.app.AppOpsManager.PackageOps;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.IPackageManager;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.RemoteException;
+import android.os.UserHandle;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+import android.util.Log;
+import android.util.SparseArray;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A snapshot of the app op permissions of the packages and the app op modes, shared by all the
+ * {@link AppStateAppOpsBridge} of the special app access screens.
+ *
+ * <p>Each permission, profile and set of app ops is loaded once in a bulk call, instead of once
+ * per bridge. The loaded data of a profile is dropped once its packages or permissions are
+ * changed, and the loaded modes of an app op are dropped once the app op is changed. The version
+ * is increased on every change, so the data loaded before a change is never cached.
+ */
+public final class AppOpsPermissionSnapshot {
+    private static final String TAG = "AppOpsPermissionSnapshot";
+
+    private static AppOpsPermissionSnapshot sInstance;
+
+    private final IPackageManager mIPackageManager;
+    private final AppOpsManager mAppOpsManager;
+    // The loaded data of each profile, by the user id.
+    private final SparseArray<ProfileData> mProfiles = new SparseArray<>();
+    // The loaded package ops, by the app op codes they are loaded for.
+    private final ArrayMap<String, OpsData> mOps = new ArrayMap<>();
+    private final Set<Integer> mWatchedOps = new ArraySet<>();
+
+    private long mVersion;
+    private boolean mIsListening;
+
+    private final BroadcastReceiver mPackageReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            invalidateProfile(getSendingUserId());
+        }
+    };
+
+    private final PackageManager.OnPermissionsChangedListener mPermissionsChangedListener =
+            uid -> invalidateProfile(UserHandle.getUserId(uid));
+
+    private final AppOpsManager.OnOpChangedListener mOpChangedListener =
+            (op, packageName) -> invalidateOp(toOpCode(op));
+
+    /**
+     * Returns the process-wide instance, and starts to follow the changes of the packages,
+     * permissions and app ops if it is not yet.
+     */
+    public static synchronized AppOpsPermissionSnapshot getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new AppOpsPermissionSnapshot(AppGlobals.getPackageManager(),
+                    context.getSystemService(AppOpsManager.class));
+            sInstance.startListening(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    AppOpsPermissionSnapshot(IPackageManager packageManager, AppOpsManager appOpsManager) {
+        mIPackageManager = packageManager;
+        mAppOpsManager = appOpsManager;
+    }
+
+    /** Returns the packages of the {@code userId} requesting the app op {@code permission}. */
+    @NonNull
+    Set<String> getAppOpPermissionPackages(String permission, int userId)
+            throws RemoteException {
+        return load(userId, data -> data.mRequestingPackages, permission, () -> {
+            final String[] packages =
+                    mIPackageManager.getAppOpPermissionPackages(permission, userId);
+            return packages == null ? Collections.emptySet()
+                    : new ArraySet<>(Arrays.asList(packages));
+        });
+    }
+
+    /** Returns the packages of the {@code userId} granted the {@code permission}. */
+    @NonNull
+    List<PackageInfo> getPackagesHoldingPermission(String permission, int userId)
+            throws RemoteException {
+        return load(userId, data -> data.mHoldingPackages, permission, () -> {
+            @SuppressWarnings("unchecked") final List<PackageInfo> packageInfos =
+                    mIPackageManager.getPackagesHoldingPermissions(
+                            new String[]{permission}, 0, userId).getList();
+            return packageInfos == null ? Collections.emptyList()
+                    : Collections.unmodifiableList(packageInfos);
+        });
+    }
+
+    /** Whether the {@code packageName} is installed and available for the {@code userId}. */
+    boolean isPackageAvailable(String packageName, int userId) throws RemoteException {
+        return load(userId, data -> data.mAvailablePackages, packageName,
+                () -> mIPackageManager.isPackageAvailable(packageName, userId));
+    }
+
+    /** Returns the package ops of all the packages for the {@code opCodes}. */
+    @NonNull
+    List<PackageOps> getPackagesForOps(int[] opCodes) {
+        final String key = Arrays.toString(opCodes);
+        final long version;
+        synchronized (this) {
+            final OpsData data = mOps.get(key);
+            if (data != null) {
+                return data.mPackageOps;
+            }
+            version = mVersion;
+            if (mIsListening) {
+                for (int opCode : opCodes) {
+                    if (mWatchedOps.add(opCode)) {
+                        mAppOpsManager.startWatchingMode(opCode, null, mOpChangedListener);
+                    }
+                }
+            }
+        }
+        final List<PackageOps> packageOps = mAppOpsManager.getPackagesForOps(opCodes);
+        final List<PackageOps> result = packageOps == null ? Collections.emptyList()
+                : Collections.unmodifiableList(packageOps);
+        synchronized (this) {
+            if (version == mVersion) {
+                mOps.put(key, new OpsData(opCodes, result));
+            }
+        }
+        return result;
+    }
+
+    /** Drops the loaded data of the {@code userId}. */
+    synchronized void invalidateProfile(int userId) {
+        mVersion++;
+        if (userId == UserHandle.USER_ALL) {
+            mProfiles.clear();
+        } else {
+            mProfiles.remove(userId);
+        }
+    }
+
+    /**
+     * Drops the loaded package ops including the {@code opCode}, or all of them for
+     * {@link AppOpsManager#OP_NONE}.
+     */
+    synchronized void invalidateOp(int opCode) {
+        mVersion++;
+        for (int index = mOps.size() - 1; index >= 0; index--) {
+            for (int loadedOpCode : mOps.valueAt(index).mOpCodes) {
+                if (loadedOpCode == opCode || opCode == AppOpsManager.OP_NONE) {
+                    mOps.removeAt(index);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void startListening(Context context) {
+        final IntentFilter packageFilter = new IntentFilter();
+        packageFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageFilter.addDataScheme("package");
+        context.registerReceiverAsUser(mPackageReceiver, UserHandle.ALL, packageFilter, null, null);
+        // The suspended packages are not available.
+        final IntentFilter suspendedFilter = new IntentFilter();
+        suspendedFilter.addAction(Intent.ACTION_PACKAGES_SUSPENDED);
+        suspendedFilter.addAction(Intent.ACTION_PACKAGES_UNSUSPENDED);
+        context.registerReceiverAsUser(
+                mPackageReceiver, UserHandle.ALL, suspendedFilter, null, null);
+        context.getPackageManager().addOnPermissionsChangeListener(mPermissionsChangedListener);
+        synchronized (this) {
+            mIsListening = true;
+        }
+    }
+
+    private static int toOpCode(String op) {
+        try {
+            return AppOpsManager.strOpToOp(op);
+        } catch (IllegalArgumentException e) {
+            // Drops the loaded package ops of all the app ops.
+            Log.w(TAG, "unknown app op " + op, e);
+            return AppOpsManager.OP_NONE;
+        }
+    }
+
+    private <T> T load(int userId, DataSelector<T> selector, String key, Loader<T> loader)
+            throws RemoteException {
+        final long version;
+        synchronized (this) {
+            final ProfileData data = mProfiles.get(userId);
+            final T value = data == null ? null : selector.select(data).get(key);
+            if (value != null) {
+                return value;
+            }
+            version = mVersion;
+        }
+        final T value = loader.load();
+        synchronized (this) {
+            if (version == mVersion) {
+                ProfileData data = mProfiles.get(userId);
+                if (data == null) {
+                    data = new ProfileData();
+                    mProfiles.put(userId, data);
+                }
+                selector.select(data).put(key, value);
+            } else {
+                Log.d(TAG, "snapshot is changed while loading " + key + " of user " + userId);
+            }
+        }
+        return value;
+    }
+
+    private interface DataSelector<T> {
+        Map<String, T> select(ProfileData data);
+    }
+
+    private interface Loader<T> {
+        T load() throws RemoteException;
+    }
+
+    /** The loaded data of a profile. */
+    private static final class ProfileData {
+        // The packages requesting each app op permission.
+        final Map<String, Set<String>> mRequestingPackages = new ArrayMap<>();
+        // The packages granted each permission.
+        final Map<String, List<PackageInfo>> mHoldingPackages = new ArrayMap<>();
+        // Whether each package is available.
+        final Map<String, Boolean> mAvailablePackages = new ArrayMap<>();
+    }
+
+    /** The loaded package ops of a set of app ops. */
+    private static final class OpsData {
+        final int[] mOpCodes;
+        final List<PackageOps> mPackageOps;
+
+        OpsData(int[] opCodes, List<PackageOps> packageOps) {
+            mOpCodes = opCodes.clone();
+            mPackageOps = packageOps;
+        }
+    }
+}
@@ -54,6 +54,7 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
     private final Context mContext;
     private final int[] mAppOpsOpCodes;
     private final String[] mPermissions;
+    private AppOpsPermissionSnapshot mSnapshot;
 
     public AppStateAppOpsBridge(Context context, ApplicationsState appState, Callback callback,
             int appOpsOpCode, String[] permissions) {
@@ -76,6 +77,14 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
 
     AppStateAppOpsBridge(Context context, ApplicationsState appState, Callback callback,
             int[] appOpsOpCodes, String[] permissions, IPackageManager packageManager) {
+        this(context, appState, callback, appOpsOpCodes, permissions, packageManager,
+                /* snapshot= */ null);
+    }
+
+    @VisibleForTesting
+    AppStateAppOpsBridge(Context context, ApplicationsState appState, Callback callback,
+            int[] appOpsOpCodes, String[] permissions, IPackageManager packageManager,
+            AppOpsPermissionSnapshot snapshot) {
         super(appState, callback);
         mContext = context;
         mIPackageManager = packageManager;
@@ -84,6 +93,15 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
         mAppOpsManager = (AppOpsManager) context.getSystemService(Context.APP_OPS_SERVICE);
         mAppOpsOpCodes = appOpsOpCodes;
         mPermissions = permissions;
+        mSnapshot = snapshot;
+    }
+
+    /** Gets the snapshot shared by the bridges, which is loaded once for all of them. */
+    private AppOpsPermissionSnapshot getSnapshot() {
+        if (mSnapshot == null) {
+            mSnapshot = AppOpsPermissionSnapshot.getInstance(mContext);
+        }
+        return mSnapshot;
     }
 
     private boolean isThisUserAProfileOfCurrentUser(final int userId) {
@@ -136,6 +154,12 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
             if (ops != null && ops.size() > 0 && ops.get(0).getOps().size() > 0) {
                 permissionState.appOpMode = ops.get(0).getOps().get(0).getMode();
             }
+            // The mode may be changed before the shared snapshot is told, e.g. by a detail page
+            // which never loaded the list.
+            final AppOpsPermissionSnapshot snapshot = getSnapshot();
+            for (int appOpsOpCode : mAppOpsOpCodes) {
+                snapshot.invalidateOp(appOpsOpCode);
+            }
         } catch (RemoteException e) {
             Log.w(TAG, "PackageManager is dead. Can't get package info " + pkg, e);
         }
@@ -170,6 +194,7 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
      * of each user, together with the packages available for that user.
      */
     private SparseArray<ArrayMap<String, PermissionState>> getEntries() {
+        final AppOpsPermissionSnapshot snapshot = getSnapshot();
         try {
             // Create a sparse array that maps profileIds to an ArrayMap that maps package names to
             // an associated PermissionState object
@@ -178,11 +203,8 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
                 final int profileId = profile.getIdentifier();
                 final Set<String> packagesSet = new HashSet<>();
                 for (String permission : mPermissions) {
-                    final String[] pkgs = mIPackageManager.getAppOpPermissionPackages(
-                            permission, profileId);
-                    if (pkgs != null) {
-                        packagesSet.addAll(Arrays.asList(pkgs));
-                    }
+                    packagesSet.addAll(
+                            snapshot.getAppOpPermissionPackages(permission, profileId));
                 }
                 if (packagesSet.isEmpty()) {
                     // No packages are requesting permission as specified by mPermissions.
@@ -192,7 +214,7 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
                 final ArrayMap<String, PermissionState> entriesForProfile = new ArrayMap<>();
                 entries.put(profileId, entriesForProfile);
                 for (final String packageName : packagesSet) {
-                    final boolean isAvailable = mIPackageManager.isPackageAvailable(packageName,
+                    final boolean isAvailable = snapshot.isPackageAvailable(packageName,
                             profileId);
                     if (!shouldIgnorePackage(packageName) && isAvailable) {
                         final PermissionState newEntry = new PermissionState(packageName, profile);
@@ -222,6 +244,7 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
             return;
         }
 
+        final AppOpsPermissionSnapshot snapshot = getSnapshot();
         try {
             for (final UserHandle profile : mProfiles) {
                 final int profileId = profile.getIdentifier();
@@ -229,17 +252,18 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
                 if (entriesForProfile == null) {
                     continue;
                 }
-                @SuppressWarnings("unchecked") final List<PackageInfo> packageInfos =
-                        mIPackageManager
-                                .getPackagesHoldingPermissions(mPermissions, 0,
-                                        profileId).getList();
-                final int packageInfoCount = packageInfos != null ? packageInfos.size() : 0;
-                for (int i = 0; i < packageInfoCount; i++) {
-                    final PackageInfo packageInfo = packageInfos.get(i);
-                    final PermissionState pe = entriesForProfile.get(packageInfo.packageName);
-                    if (pe != null) {
-                        pe.packageInfo = packageInfo;
-                        pe.staticPermissionGranted = true;
+                for (String permission : mPermissions) {
+                    final List<PackageInfo> packageInfos =
+                            snapshot.getPackagesHoldingPermission(permission, profileId);
+                    final int packageInfoCount = packageInfos.size();
+                    for (int i = 0; i < packageInfoCount; i++) {
+                        final PackageInfo packageInfo = packageInfos.get(i);
+                        final PermissionState pe =
+                                entriesForProfile.get(packageInfo.packageName);
+                        if (pe != null && !pe.staticPermissionGranted) {
+                            pe.packageInfo = packageInfo;
+                            pe.staticPermissionGranted = true;
+                        }
                     }
                 }
             }
@@ -259,9 +283,9 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
         }
 
         // Find out which packages have been granted permission from AppOps.
-        final List<AppOpsManager.PackageOps> packageOps = mAppOpsManager.getPackagesForOps(
-                mAppOpsOpCodes);
-        final int packageOpsCount = packageOps != null ? packageOps.size() : 0;
+        final List<AppOpsManager.PackageOps> packageOps =
+                getSnapshot().getPackagesForOps(mAppOpsOpCodes);
+        final int packageOpsCount = packageOps.size();
         for (int i = 0; i < packageOpsCount; i++) {
             final AppOpsManager.PackageOps packageOp = packageOps.get(i);
             final int userId = UserHandle.getUserId(packageOp.getUid());
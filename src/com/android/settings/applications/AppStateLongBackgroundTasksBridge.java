@@ -17,22 +17,17 @@
 package com.android.settings.applications;
 
 import android.Manifest;
-import android.app.AppGlobals;
 import android.app.job.JobScheduler;
 import android.content.Context;
-import android.content.pm.IPackageManager;
 import android.os.RemoteException;
 import android.os.UserHandle;
 import android.util.Log;
 
 import com.android.internal.annotations.VisibleForTesting;
-import com.android.internal.util.ArrayUtils;
 import com.android.settingslib.applications.ApplicationsState;
 import com.android.settingslib.applications.ApplicationsState.AppEntry;
 import com.android.settingslib.applications.ApplicationsState.AppFilter;
 
-import libcore.util.EmptyArray;
-
 import java.util.List;
 
 /**
@@ -46,21 +41,14 @@ public class AppStateLongBackgroundTasksBridge extends AppStateBaseBridge {
 
     @VisibleForTesting
     JobScheduler mJobScheduler;
-    @VisibleForTesting
-    String[] mRequesterPackages;
+    private final AppOpsPermissionSnapshot mSnapshot;
 
     public AppStateLongBackgroundTasksBridge(Context context, ApplicationsState appState,
             Callback callback) {
         super(appState, callback);
 
         mJobScheduler = context.getSystemService(JobScheduler.class);
-        final IPackageManager iPm = AppGlobals.getPackageManager();
-        try {
-            mRequesterPackages = iPm.getAppOpPermissionPackages(PERMISSION, context.getUserId());
-        } catch (RemoteException re) {
-            Log.e(TAG, "Cannot reach package manager", re);
-            mRequesterPackages = EmptyArray.STRING;
-        }
+        mSnapshot = AppOpsPermissionSnapshot.getInstance(context);
     }
 
     /**
@@ -70,12 +58,21 @@ public class AppStateLongBackgroundTasksBridge extends AppStateBaseBridge {
     public LongBackgroundTasksState createPermissionState(String packageName, int uid) {
         final int userId = UserHandle.getUserId(uid);
 
-        final boolean permissionRequested = ArrayUtils.contains(mRequesterPackages, packageName);
+        final boolean permissionRequested = hasRequestedPermission(packageName, userId);
         final boolean permissionGranted = mJobScheduler.hasRunUserInitiatedJobsPermission(
                 packageName, userId);
         return new LongBackgroundTasksState(permissionRequested, permissionGranted);
     }
 
+    private boolean hasRequestedPermission(String packageName, int userId) {
+        try {
+            return mSnapshot.getAppOpPermissionPackages(PERMISSION, userId).contains(packageName);
+        } catch (RemoteException re) {
+            Log.e(TAG, "Cannot reach package manager", re);
+            return false;
+        }
+    }
+
     @Override
     protected void updateExtraInfo(AppEntry app, String pkg, int uid) {
         app.extraInfo = createPermissionState(pkg, uid);
@@ -17,40 +17,50 @@ package com.android.settings.applications;
 
 import android.content.Context;
 
+import androidx.annotation.VisibleForTesting;
+
+import com.android.settings.fuelgauge.PowerAllowlistSnapshot;
 import com.android.settingslib.applications.ApplicationsState;
 import com.android.settingslib.applications.ApplicationsState.AppEntry;
 import com.android.settingslib.applications.ApplicationsState.AppFilter;
 import com.android.settingslib.applications.ApplicationsState.CompoundFilter;
-import com.android.settingslib.fuelgauge.PowerAllowlistBackend;
 
 import java.util.ArrayList;
 
 /**
- * Connects data from the PowerAllowlistBackend to ApplicationsState.
+ * Connects data from the PowerAllowlistSnapshot to ApplicationsState.
  */
 public class AppStatePowerBridge extends AppStateBaseBridge {
 
-    private final PowerAllowlistBackend mBackend;
+    private final PowerAllowlistSnapshot mAllowlist;
 
     public AppStatePowerBridge(Context context, ApplicationsState appState, Callback callback) {
+        this(appState, callback, PowerAllowlistSnapshot.getInstance(context));
+    }
+
+    @VisibleForTesting
+    AppStatePowerBridge(ApplicationsState appState, Callback callback,
+            PowerAllowlistSnapshot allowlist) {
         super(appState, callback);
-        mBackend = PowerAllowlistBackend.getInstance(context);
+        mAllowlist = allowlist;
     }
 
     @Override
     protected void loadAllExtraInfo() {
+        // The default SMS app or a device admin may be changed since the last load.
+        mAllowlist.invalidateDefaultActiveApps();
         ArrayList<AppEntry> apps = mAppSession.getAllApps();
         final int N = apps.size();
         for (int i = 0; i < N; i++) {
             AppEntry app = apps.get(i);
-            app.extraInfo = mBackend.isAllowlisted(app.info.packageName, app.info.uid)
+            app.extraInfo = mAllowlist.isAllowlisted(app.info.packageName, app.info.uid)
                     ? Boolean.TRUE : Boolean.FALSE;
         }
     }
 
     @Override
     protected void updateExtraInfo(AppEntry app, String pkg, int uid) {
-        app.extraInfo = mBackend.isAllowlisted(pkg, uid) ? Boolean.TRUE : Boolean.FALSE;
+        app.extraInfo = mAllowlist.isAllowlisted(pkg, uid) ? Boolean.TRUE : Boolean.FALSE;
     }
 
     public static final AppFilter FILTER_POWER_ALLOWLISTED = new CompoundFilter(
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications.manageapplications;
+
+import androidx.recyclerview.widget.DiffUtil;
+
+import com.android.settingslib.applications.ApplicationsState.AppEntry;
+
+import java.util.List;
+
+/**
+ * A DiffCallback to calculate the difference between old and new {@link AppEntry} List.
+ *
+ * <p>{@link com.android.settingslib.applications.ApplicationsState} keeps one {@link AppEntry}
+ * instance per app, so the same instance stands for the same item. Its content is assumed to be
+ * unchanged, since the changes of an entry are notified separately, unless the entries are told to
+ * be changed in place.
+ */
+class AppEntryDiffCallback extends DiffUtil.Callback {
+
+    private final List<AppEntry> mOldEntries;
+    private final List<AppEntry> mNewEntries;
+    private final boolean mHasContentChanged;
+
+    AppEntryDiffCallback(List<AppEntry> oldEntries, List<AppEntry> newEntries) {
+        this(oldEntries, newEntries, /* hasContentChanged= */ false);
+    }
+
+    AppEntryDiffCallback(List<AppEntry> oldEntries, List<AppEntry> newEntries,
+            boolean hasContentChanged) {
+        mOldEntries = oldEntries;
+        mNewEntries = newEntries;
+        mHasContentChanged = hasContentChanged;
+    }
+
+    @Override
+    public int getOldListSize() {
+        return mOldEntries.size();
+    }
+
+    @Override
+    public int getNewListSize() {
+        return mNewEntries.size();
+    }
+
+    @Override
+    public boolean areItemsTheSame(int oldEntryPosition, int newEntryPosition) {
+        return mOldEntries.get(oldEntryPosition) == mNewEntries.get(newEntryPosition);
+    }
+
+    @Override
+    public boolean areContentsTheSame(int oldEntryPosition, int newEntryPosition) {
+        return !mHasContentChanged && areItemsTheSame(oldEntryPosition, newEntryPosition);
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications.manageapplications;
+
+import android.icu.text.Transliterator;
+import android.text.TextUtils;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.android.settingslib.applications.ApplicationsState.AppEntry;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A search index of the app labels and package names, built once for a list of {@link AppEntry}
+ * and queried on every keystroke of the app list search.
+ *
+ * <p>The labels are lowercased, accent-folded and transliterated into Latin, so "cafe" finds
+ * "Café" and "kontakty" finds "Контакты". A label matches if it contains the query. A package name
+ * matches if it or one of its segments starts with the query. The labels are narrowed down through
+ * a trigram index, and the package names through a sorted prefix index. When the query is extended,
+ * only the entries matched by the previous query are checked again.
+ */
+final class AppSearchIndex {
+    private static final String TAG = "AppSearchIndex";
+    private static final int GRAM_SIZE = 3;
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{Mn}+");
+    private static final String TRANSLITERATOR_ID = "Any-Latin; Latin-ASCII";
+
+    private final List<AppEntry> mEntries;
+    private final Locale mLocale;
+    // The searchable forms of the label of each entry, such as the normalized and transliterated.
+    private final String[][] mLabelKeys;
+    // Maps the trigram to the ascending indexes of the entries whose labels contain it.
+    private final Map<String, int[]> mGramIndex = new ArrayMap<>();
+    // The package names and their segments in ascending order, with the indexes of their entries.
+    private final String[] mPackageKeys;
+    private final int[] mPackageKeyEntries;
+
+    private String mLastQuery;
+    private int[] mLastMatches;
+
+    @WorkerThread
+    AppSearchIndex(@NonNull List<AppEntry> entries, @NonNull Locale locale) {
+        mEntries = entries;
+        mLocale = locale;
+        final int size = entries.size();
+        mLabelKeys = new String[size][];
+        final Transliterator transliterator = getTransliterator();
+        final Map<String, List<Integer>> gramPostings = new ArrayMap<>();
+        final List<String> packageKeys = new ArrayList<>();
+        final List<Integer> packageKeyEntries = new ArrayList<>();
+        for (int index = 0; index < size; index++) {
+            final AppEntry entry = entries.get(index);
+            mLabelKeys[index] = getLabelKeys(entry.label, transliterator);
+            for (String labelKey : mLabelKeys[index]) {
+                for (int start = 0; start + GRAM_SIZE <= labelKey.length(); start++) {
+                    final List<Integer> postings =
+                            gramPostings.computeIfAbsent(
+                                    labelKey.substring(start, start + GRAM_SIZE),
+                                    key -> new ArrayList<>());
+                    // Each entry is added once, in ascending order.
+                    if (postings.isEmpty() || postings.get(postings.size() - 1) != index) {
+                        postings.add(index);
+                    }
+                }
+            }
+            final String packageName = entry.info == null ? null : entry.info.packageName;
+            if (!TextUtils.isEmpty(packageName)) {
+                final String packageKey = packageName.toLowerCase(Locale.ROOT);
+                packageKeys.add(packageKey);
+                packageKeyEntries.add(index);
+                for (int start = packageKey.indexOf('.');
+                        start >= 0 && start + 1 < packageKey.length();
+                        start = packageKey.indexOf('.', start + 1)) {
+                    packageKeys.add(packageKey.substring(start + 1));
+                    packageKeyEntries.add(index);
+                }
+            }
+        }
+        for (Map.Entry<String, List<Integer>> gram : gramPostings.entrySet()) {
+            mGramIndex.put(gram.getKey(), toArray(gram.getValue()));
+        }
+        // Sorts the package keys together with their entry indexes.
+        final Integer[] order = new Integer[packageKeys.size()];
+        for (int index = 0; index < order.length; index++) {
+            order[index] = index;
+        }
+        Arrays.sort(order, Comparator.comparing(packageKeys::get));
+        mPackageKeys = new String[order.length];
+        mPackageKeyEntries = new int[order.length];
+        for (int index = 0; index < order.length; index++) {
+            mPackageKeys[index] = packageKeys.get(order[index]);
+            mPackageKeyEntries[index] = packageKeyEntries.get(order[index]);
+        }
+    }
+
+    /** Whether the index is built from exactly the {@code entries} list in the {@code locale}. */
+    boolean isBuiltFrom(@Nullable List<AppEntry> entries, @NonNull Locale locale) {
+        return mEntries == entries && mLocale.equals(locale);
+    }
+
+    /** Returns the entries matching the {@code query}, in the order of the indexed list. */
+    @WorkerThread
+    synchronized ArrayList<AppEntry> search(@Nullable CharSequence query) {
+        final String normalizedQuery = query == null ? "" : normalize(query, mLocale);
+        if (normalizedQuery.isEmpty()) {
+            mLastQuery = null;
+            mLastMatches = null;
+            return new ArrayList<>(mEntries);
+        }
+        final boolean[] matched = new boolean[mEntries.size()];
+        if (mLastQuery != null && normalizedQuery.startsWith(mLastQuery)) {
+            // The entries matching the extended query must match the previous one.
+            for (int index : mLastMatches) {
+                matched[index] = matchesLabel(index, normalizedQuery)
+                        || matchesPackage(index, normalizedQuery);
+            }
+        } else {
+            matchLabels(normalizedQuery, matched);
+            matchPackages(normalizedQuery, matched);
+        }
+        int count = 0;
+        for (boolean isMatched : matched) {
+            count += isMatched ? 1 : 0;
+        }
+        final int[] matches = new int[count];
+        final ArrayList<AppEntry> resultList = new ArrayList<>(count);
+        for (int index = 0, matchIndex = 0; index < matched.length; index++) {
+            if (matched[index]) {
+                matches[matchIndex++] = index;
+                resultList.add(mEntries.get(index));
+            }
+        }
+        mLastQuery = normalizedQuery;
+        mLastMatches = matches;
+        return resultList;
+    }
+
+    /** Lowercases the text in the {@code locale} and removes the accents. */
+    static String normalize(@NonNull CharSequence text, @NonNull Locale locale) {
+        final String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return COMBINING_MARKS.matcher(decomposed).replaceAll("").toLowerCase(locale).trim();
+    }
+
+    private String[] getLabelKeys(@Nullable String label, @Nullable Transliterator transliterator) {
+        if (TextUtils.isEmpty(label)) {
+            return new String[0];
+        }
+        final String normalizedLabel = normalize(label, mLocale);
+        if (transliterator == null || isAscii(normalizedLabel)) {
+            return new String[] {normalizedLabel};
+        }
+        final String transliteratedLabel =
+                normalize(transliterator.transliterate(normalizedLabel), Locale.ROOT);
+        return transliteratedLabel.equals(normalizedLabel)
+                ? new String[] {normalizedLabel}
+                : new String[] {normalizedLabel, transliteratedLabel};
+    }
+
+    private void matchLabels(String query, boolean[] matched) {
+        if (query.length() < GRAM_SIZE) {
+            for (int index = 0; index < matched.length; index++) {
+                matched[index] = matchesLabel(index, query);
+            }
+            return;
+        }
+        // Only the entries containing all trigrams of the query could contain the query.
+        int[] candidates = null;
+        for (int start = 0; start + GRAM_SIZE <= query.length(); start++) {
+            final int[] postings = mGramIndex.get(query.substring(start, start + GRAM_SIZE));
+            if (postings == null) {
+                return;
+            }
+            candidates = candidates == null ? postings : intersect(candidates, postings);
+            if (candidates.length == 0) {
+                return;
+            }
+        }
+        for (int index : candidates) {
+            matched[index] = matchesLabel(index, query);
+        }
+    }
+
+    private void matchPackages(String query, boolean[] matched) {
+        for (int keyIndex = findFirstPackageKeyNotBefore(query);
+                keyIndex < mPackageKeys.length && mPackageKeys[keyIndex].startsWith(query);
+                keyIndex++) {
+            matched[mPackageKeyEntries[keyIndex]] = true;
+        }
+    }
+
+    private boolean matchesLabel(int index, String query) {
+        for (String labelKey : mLabelKeys[index]) {
+            if (labelKey.contains(query)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matchesPackage(int index, String query) {
+        final AppEntry entry = mEntries.get(index);
+        final String packageName = entry.info == null ? null : entry.info.packageName;
+        if (TextUtils.isEmpty(packageName)) {
+            return false;
+        }
+        final String packageKey = packageName.toLowerCase(Locale.ROOT);
+        return packageKey.startsWith(query) || packageKey.contains("." + query);
+    }
+
+    private int findFirstPackageKeyNotBefore(String query) {
+        final int index = Arrays.binarySearch(mPackageKeys, query);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    @Nullable
+    private static Transliterator getTransliterator() {
+        try {
+            return Transliterator.getInstance(TRANSLITERATOR_ID);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "transliterator is not available", e);
+            return null;
+        }
+    }
+
+    private static boolean isAscii(String text) {
+        for (int index = 0; index < text.length(); index++) {
+            if (text.charAt(index) > 0x7F) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int[] intersect(int[] first, int[] second) {
+        final int[] result = new int[Math.min(first.length, second.length)];
+        int count = 0;
+        for (int i = 0, j = 0; i < first.length && j < second.length; ) {
+            if (first[i] == second[j]) {
+                result[count++] = first[i];
+                i++;
+                j++;
+            } else if (first[i] < second[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        final int[] array = new int[list.size()];
+        for (int index = 0; index < array.length; index++) {
+            array[index] = list.get(index);
+        }
+        return array;
+    }
+}
@@ -49,7 +49,6 @@ import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageItemInfo;
 import android.content.pm.UserInfo;
 import android.content.res.Configuration;
-import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
@@ -67,6 +66,7 @@ import android.text.TextUtils;
 import android.util.ArraySet;
 import android.util.IconDrawableFactory;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -88,7 +88,9 @@ import androidx.annotation.VisibleForTesting;
 import androidx.annotation.WorkerThread;
 import androidx.coordinatorlayout.widget.CoordinatorLayout;
 import androidx.core.view.ViewCompat;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.ListUpdateCallback;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.android.internal.compat.IPlatformCompat;
@@ -112,6 +114,7 @@ import com.android.settings.Settings.UsageAccessSettingsActivity;
 import com.android.settings.Settings.WriteSettingsActivity;
 import com.android.settings.SettingsActivity;
 import com.android.settings.Utils;
+import com.android.settings.applications.AppIconLoader;
 import com.android.settings.applications.AppInfoBase;
 import com.android.settings.applications.AppStateAlarmsAndRemindersBridge;
 import com.android.settings.applications.AppStateAppBatteryUsageBridge;
@@ -148,6 +151,7 @@ import com.android.settings.core.SubSettingLauncher;
 import com.android.settings.dashboard.profileselector.ProfileSelectFragment;
 import com.android.settings.fuelgauge.AdvancedPowerUsageDetail;
 import com.android.settings.fuelgauge.HighPowerDetail;
+import com.android.settings.fuelgauge.PowerAllowlistSnapshot;
 import com.android.settings.localepicker.AppLocalePickerActivity;
 import com.android.settings.nfc.AppStateNfcTagAppsBridge;
 import com.android.settings.nfc.ChangeNfcTagAppsStateDetails;
@@ -163,13 +167,11 @@ import com.android.settings.wifi.ChangeWifiStateDetails;
 import com.android.settingslib.RestrictedLockUtils;
 import com.android.settingslib.RestrictedLockUtilsInternal;
 import com.android.settingslib.applications.AppIconCacheManager;
-import com.android.settingslib.applications.AppUtils;
 import com.android.settingslib.applications.ApplicationsState;
 import com.android.settingslib.applications.ApplicationsState.AppEntry;
 import com.android.settingslib.applications.ApplicationsState.AppFilter;
 import com.android.settingslib.applications.ApplicationsState.CompoundFilter;
 import com.android.settingslib.applications.ApplicationsState.VolumeFilter;
-import com.android.settingslib.fuelgauge.PowerAllowlistBackend;
 import com.android.settingslib.utils.ThreadUtils;
 import com.android.settingslib.widget.SettingsSpinnerAdapter;
 
@@ -179,6 +181,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Locale;
 import java.util.Set;
 
 /**
@@ -1223,6 +1226,7 @@ public class ManageApplications extends InstrumentedFragment
         private final AppStateBaseBridge mExtraInfoBridge;
         private final LoadingViewController mLoadingViewController;
         private final IconDrawableFactory mIconDrawableFactory;
+        private final AppIconLoader mIconLoader;
 
         private AppFilterItem mAppFilter;
         private ArrayList<ApplicationsState.AppEntry> mEntries;
@@ -1234,13 +1238,26 @@ public class ManageApplications extends InstrumentedFragment
         private boolean mHasReceivedLoadEntries;
         private boolean mHasReceivedBridgeCallback;
         private SearchFilter mSearchFilter;
-        private PowerAllowlistBackend mBackend;
+        // Built by the search filter for mOriginalEntries, when it is searched the first time.
+        private volatile AppSearchIndex mSearchIndex;
+        private PowerAllowlistSnapshot mPowerAllowlist;
 
         // This is to remember and restore the last scroll position when this
         // fragment is paused. We need this special handling because app entries are added gradually
         // when we rebuild the list after the user made some changes, like uninstalling an app.
         private int mLastIndex = -1;
 
+        // Counts the changes made in place to the entries, such as the updated extra info. The rows
+        // are all bound again when the shown ones are outdated.
+        private int mEntryContentVersion;
+        private int mShownEntryContentVersion;
+        // The first adapter position whose icons are prefetched the last time.
+        private int mPrefetchedPosition = RecyclerView.NO_POSITION;
+        // The packages whose sizes are changed since the rows were notified the last time.
+        private final ArraySet<String> mSizeChangedPackages = new ArraySet<>();
+        private final Choreographer.FrameCallback mSizeChangedCallback =
+                frameTimeNanos -> notifySizeChangedPackages();
+
         @VisibleForTesting
         OnScrollListener mOnScrollListener;
         private RecyclerView mRecyclerView;
@@ -1259,8 +1276,8 @@ public class ManageApplications extends InstrumentedFragment
             );
             mContext = manageApplications.getActivity();
             mIconDrawableFactory = IconDrawableFactory.newInstance(mContext);
+            mIconLoader = AppIconLoader.getInstance(mContext);
             mAppFilter = appFilter;
-            mBackend = PowerAllowlistBackend.getInstance(mContext);
             if (mManageApplications.mListType == LIST_TYPE_NOTIFICATION) {
                 mExtraInfoBridge = new AppStateNotificationBridge(mContext, mState, this,
                         manageApplications.mUsageStatsManager,
@@ -1269,7 +1286,7 @@ public class ManageApplications extends InstrumentedFragment
             } else if (mManageApplications.mListType == LIST_TYPE_USAGE_ACCESS) {
                 mExtraInfoBridge = new AppStateUsageBridge(mContext, mState, this);
             } else if (mManageApplications.mListType == LIST_TYPE_HIGH_POWER) {
-                mBackend.refreshList();
+                mPowerAllowlist = PowerAllowlistSnapshot.getInstance(mContext);
                 mExtraInfoBridge = new AppStatePowerBridge(mContext, mState, this);
             } else if (mManageApplications.mListType == LIST_TYPE_OVERLAY) {
                 mExtraInfoBridge = new AppStateOverlayBridge(mContext, mState, this);
@@ -1387,6 +1404,8 @@ public class ManageApplications extends InstrumentedFragment
         }
 
         public void release() {
+            Choreographer.getInstance().removeFrameCallback(mSizeChangedCallback);
+            mSizeChangedPackages.clear();
             mSession.onDestroy();
             if (mExtraInfoBridge != null) {
                 mExtraInfoBridge.release();
@@ -1532,6 +1551,42 @@ public class ManageApplications extends InstrumentedFragment
             mSearchFilter.filter(query);
         }
 
+        /**
+         * Notifies the change from the {@code oldEntries} to the current entries through the
+         * {@code diffResult}, so only the changed rows are bound again.
+         */
+        private void dispatchEntriesUpdate(
+                ArrayList<ApplicationsState.AppEntry> oldEntries, DiffUtil.DiffResult diffResult) {
+            // The positions of the entries are shifted by the header.
+            final int offset = getHeaderCount();
+            if (offset > 0 && (oldEntries.isEmpty() || getApplicationCount() == 0)) {
+                // The header shows up or goes away together with the entries.
+                notifyDataSetChanged();
+                return;
+            }
+            diffResult.dispatchUpdatesTo(new ListUpdateCallback() {
+                @Override
+                public void onInserted(int position, int count) {
+                    notifyItemRangeInserted(position + offset, count);
+                }
+
+                @Override
+                public void onRemoved(int position, int count) {
+                    notifyItemRangeRemoved(position + offset, count);
+                }
+
+                @Override
+                public void onMoved(int fromPosition, int toPosition) {
+                    notifyItemMoved(fromPosition + offset, toPosition + offset);
+                }
+
+                @Override
+                public void onChanged(int position, int count, Object payload) {
+                    notifyItemRangeChanged(position + offset, count, payload);
+                }
+            });
+        }
+
         private static boolean packageNameEquals(PackageItemInfo info1, PackageItemInfo info2) {
             if (info1 == null || info2 == null) {
                 return false;
@@ -1569,35 +1624,33 @@ public class ManageApplications extends InstrumentedFragment
             }
 
             // Preload top visible icons of app list.
-            AppUtils.preloadTopIcons(mContext, entries,
-                    mContext.getResources().getInteger(R.integer.config_num_visible_app_icons));
+            mIconLoader.prefetch(entries.subList(0, Math.min(entries.size(),
+                    mContext.getResources().getInteger(R.integer.config_num_visible_app_icons))));
 
             final int filterType = mAppFilter.getFilterType();
             if (filterType == FILTER_APPS_POWER_ALLOWLIST
                     || filterType == FILTER_APPS_POWER_ALLOWLIST_ALL) {
                 entries = removeDuplicateIgnoringUser(entries);
             }
-            mEntries = entries;
             mOriginalEntries = entries;
-            notifyDataSetChanged();
-            if (getItemCount() == 0) {
+            final int contentVersion = mEntryContentVersion;
+            final CharSequence query = mManageApplications.mSearchView != null
+                    && mManageApplications.mSearchView.isVisibleToUser()
+                    ? mManageApplications.mSearchView.getQuery() : null;
+            if (entries == null || entries.isEmpty()) {
+                setEntries(entries);
                 mLoadingViewController.showEmpty(false /* animate */);
-            } else {
+            } else if (!TextUtils.isEmpty(query)) {
                 mLoadingViewController.showContent(false /* animate */);
-
-                if (mManageApplications.mSearchView != null
-                        && mManageApplications.mSearchView.isVisibleToUser()) {
-                    final CharSequence query = mManageApplications.mSearchView.getQuery();
-                    if (!TextUtils.isEmpty(query)) {
-                        filterSearch(query.toString());
-                    }
+                if (contentVersion != mShownEntryContentVersion) {
+                    mShownEntryContentVersion = contentVersion;
+                    notifyItemRangeChanged(getHeaderCount(), getApplicationCount());
                 }
-            }
-            // Restore the last scroll position if the number of entries added so far is bigger than
-            // it.
-            if (mLastIndex != -1 && getItemCount() > mLastIndex) {
-                mManageApplications.mRecyclerView.getLayoutManager().scrollToPosition(mLastIndex);
-                mLastIndex = -1;
+                // The search filter shows the matched ones of the rebuilt entries.
+                filterSearch(query.toString());
+            } else {
+                mLoadingViewController.showContent(false /* animate */);
+                updateEntries(entries, contentVersion);
             }
 
             if (mManageApplications.mListType == LIST_TYPE_USAGE_ACCESS) {
@@ -1609,6 +1662,60 @@ public class ManageApplications extends InstrumentedFragment
             mManageApplications.setHasInstant(mState.haveInstantApps());
         }
 
+        /**
+         * Shows the rebuilt {@code entries}. The change from the shown entries is calculated in the
+         * background thread, so only the changed rows are bound again.
+         */
+        private void updateEntries(ArrayList<AppEntry> entries, int contentVersion) {
+            final ArrayList<AppEntry> oldEntries = mEntries;
+            if (oldEntries == null || oldEntries.isEmpty()) {
+                setEntries(entries);
+                return;
+            }
+            final boolean hasContentChanged = contentVersion != mShownEntryContentVersion;
+            ThreadUtils.postOnBackgroundThread(() -> {
+                final DiffUtil.DiffResult diffResult = DiffUtil.calculateDiff(
+                        new AppEntryDiffCallback(oldEntries, entries, hasContentChanged),
+                        /* detectMoves= */ true);
+                ThreadUtils.postOnMainThread(() -> onEntriesDiffCalculated(
+                        oldEntries, entries, contentVersion, diffResult));
+            });
+        }
+
+        @VisibleForTesting
+        void onEntriesDiffCalculated(ArrayList<AppEntry> oldEntries,
+                ArrayList<AppEntry> entries, int contentVersion, DiffUtil.DiffResult diffResult) {
+            if (mOriginalEntries != entries) {
+                // The list is rebuilt again, the newer entries will be shown instead.
+                return;
+            }
+            if (mEntries != oldEntries) {
+                // The shown entries are changed after the diff was calculated.
+                setEntries(entries);
+                return;
+            }
+            mEntries = entries;
+            mShownEntryContentVersion = Math.max(mShownEntryContentVersion, contentVersion);
+            dispatchEntriesUpdate(oldEntries, diffResult);
+            restoreLastScrollPosition();
+        }
+
+        private void setEntries(ArrayList<AppEntry> entries) {
+            mEntries = entries;
+            mShownEntryContentVersion = mEntryContentVersion;
+            notifyDataSetChanged();
+            restoreLastScrollPosition();
+        }
+
+        private void restoreLastScrollPosition() {
+            // Restore the last scroll position if the number of entries added so far is bigger than
+            // it.
+            if (mLastIndex != -1 && getItemCount() > mLastIndex) {
+                mManageApplications.mRecyclerView.getLayoutManager().scrollToPosition(mLastIndex);
+                mLastIndex = -1;
+            }
+        }
+
         @VisibleForTesting
         void updateLoading() {
             final boolean appLoaded = mHasReceivedLoadEntries && mSession.getAllApps().size() != 0;
@@ -1622,6 +1729,7 @@ public class ManageApplications extends InstrumentedFragment
         @Override
         public void onExtraInfoUpdated() {
             mHasReceivedBridgeCallback = true;
+            mEntryContentVersion++;
             rebuild();
         }
 
@@ -1632,6 +1740,8 @@ public class ManageApplications extends InstrumentedFragment
 
         @Override
         public void onPackageListChanged() {
+            // The entries of the updated packages are changed in place.
+            mEntryContentVersion++;
             rebuild();
         }
 
@@ -1650,14 +1760,26 @@ public class ManageApplications extends InstrumentedFragment
 
         @Override
         public void onPackageSizeChanged(String packageName) {
-            if (mEntries == null) {
+            if (mEntries == null || packageName == null) {
                 return;
             }
+            // The sizes are computed one package after another, so the changes are notified once
+            // per frame together.
+            if (mSizeChangedPackages.add(packageName) && mSizeChangedPackages.size() == 1) {
+                Choreographer.getInstance().postFrameCallback(mSizeChangedCallback);
+            }
+        }
+
+        private void notifySizeChangedPackages() {
+            if (mEntries == null || mSizeChangedPackages.isEmpty()) {
+                mSizeChangedPackages.clear();
+                return;
+            }
+            final int headerCount = getHeaderCount();
             final int size = mEntries.size();
             for (int i = 0; i < size; i++) {
-                final AppEntry entry = mEntries.get(i);
-                final ApplicationInfo info = entry.info;
-                if (info == null && !TextUtils.equals(packageName, info.packageName)) {
+                final ApplicationInfo info = mEntries.get(i).info;
+                if (info == null || !mSizeChangedPackages.contains(info.packageName)) {
                     continue;
                 }
                 if (TextUtils.equals(mManageApplications.mCurrentPkgName, info.packageName)) {
@@ -1665,12 +1787,14 @@ public class ManageApplications extends InstrumentedFragment
                     // user viewed, and are sorting by size...  they may
                     // have cleared data, so we immediately want to resort
                     // the list with the new size to reflect it to the user.
+                    mSizeChangedPackages.clear();
                     rebuild();
                     return;
-                } else {
-                    mOnScrollListener.postNotifyItemChange(i);
+                } else if (mOnScrollListener != null) {
+                    mOnScrollListener.postNotifyItemChange(i + headerCount);
                 }
             }
+            mSizeChangedPackages.clear();
         }
 
         @Override
@@ -1705,6 +1829,12 @@ public class ManageApplications extends InstrumentedFragment
             return mEntries != null ? mEntries.size() : 0;
         }
 
+        /** The number of the header items before the app entries, when there is any entry. */
+        private int getHeaderCount() {
+            return mManageApplications.mListType == LIST_TYPE_APPS_LOCALE
+                    || mManageApplications.mListType == LIST_TYPE_CLONED_APPS ? 1 : 0;
+        }
+
         public AppEntry getAppEntry(int applicationPosition) {
             return mEntries.get(applicationPosition);
         }
@@ -1743,8 +1873,8 @@ public class ManageApplications extends InstrumentedFragment
             }
             ApplicationsState.AppEntry entry = mEntries.get(applicationPosition);
 
-            return !mBackend.isSysAllowlisted(entry.info.packageName)
-                    && !mBackend.isDefaultActiveApp(entry.info.packageName, entry.info.uid);
+            return !mPowerAllowlist.isSysAllowlisted(entry.info.packageName)
+                    && !mPowerAllowlist.isDefaultActiveApp(entry.info.packageName, entry.info.uid);
         }
 
         @Override
@@ -1777,17 +1907,38 @@ public class ManageApplications extends InstrumentedFragment
             holder.itemView.setOnClickListener(mManageApplications);
         }
 
+        @Override
+        public void onViewRecycled(@NonNull ApplicationViewHolder holder) {
+            super.onViewRecycled(holder);
+            mIconLoader.cancel(holder);
+        }
+
         private void updateIcon(ApplicationViewHolder holder, AppEntry entry) {
-            final Drawable cachedIcon = AppUtils.getIconFromCache(entry);
-            if (cachedIcon != null && entry.mounted) {
-                holder.setIcon(cachedIcon);
-            } else {
-                ThreadUtils.postOnBackgroundThread(() -> {
-                    final Drawable icon = AppUtils.getIcon(mContext, entry);
-                    if (icon != null) {
-                        ThreadUtils.postOnMainThread(() -> holder.setIcon(icon));
-                    }
-                });
+            mIconLoader.loadIcon(holder, entry, holder::setIcon);
+        }
+
+        /**
+         * Prefetches the icons of the screenful of apps next to the shown ones, in the direction
+         * the list is scrolled to.
+         */
+        private void prefetchIcons(LinearLayoutManager layoutManager, boolean isScrollingDown) {
+            final int firstPosition = layoutManager.findFirstVisibleItemPosition();
+            final int lastPosition = layoutManager.findLastVisibleItemPosition();
+            if (mEntries == null || firstPosition == RecyclerView.NO_POSITION
+                    || lastPosition == RecyclerView.NO_POSITION) {
+                return;
+            }
+            final int count = lastPosition - firstPosition + 1;
+            final int position = isScrollingDown ? lastPosition + 1 : firstPosition - count;
+            if (position == mPrefetchedPosition) {
+                return;
+            }
+            mPrefetchedPosition = position;
+            final int headerCount = getHeaderCount();
+            final int start = Math.max(position - headerCount, 0);
+            final int end = Math.min(position + count - headerCount, mEntries.size());
+            if (start < end) {
+                mIconLoader.prefetch(mEntries.subList(start, end));
             }
         }
 
@@ -1940,6 +2091,14 @@ public class ManageApplications extends InstrumentedFragment
                 }
             }
 
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (dy != 0 && recyclerView.getLayoutManager() instanceof LinearLayoutManager) {
+                    mAdapter.prefetchIcons(
+                            (LinearLayoutManager) recyclerView.getLayoutManager(), dy > 0);
+                }
+            }
+
             public void postNotifyItemChange(int index) {
                 if (mScrollState == SCROLL_STATE_IDLE) {
                     mAdapter.notifyItemChanged(index);
@@ -1952,32 +2111,64 @@ public class ManageApplications extends InstrumentedFragment
         /**
          * An array filter that constrains the content of the array adapter with a substring.
          * Item that does not contains the specified substring will be removed from the list.</p>
+         *
+         * <p>The entries are searched through an {@link AppSearchIndex} built once for the
+         * original entries, and the change of the list is calculated in the worker thread too.
          */
         private class SearchFilter extends Filter {
             @WorkerThread
             @Override
             protected FilterResults performFiltering(CharSequence query) {
+                final ArrayList<ApplicationsState.AppEntry> originalEntries = mOriginalEntries;
+                final ArrayList<ApplicationsState.AppEntry> oldEntries = mEntries;
                 final ArrayList<ApplicationsState.AppEntry> matchedEntries;
                 if (TextUtils.isEmpty(query)) {
-                    matchedEntries = mOriginalEntries;
+                    matchedEntries = originalEntries;
                 } else {
-                    matchedEntries = new ArrayList<>();
-                    for (ApplicationsState.AppEntry entry : mOriginalEntries) {
-                        if (entry.label.toLowerCase().contains(query.toString().toLowerCase())) {
-                            matchedEntries.add(entry);
-                        }
+                    final Locale locale = Locale.getDefault();
+                    AppSearchIndex searchIndex = mSearchIndex;
+                    if (searchIndex == null || !searchIndex.isBuiltFrom(originalEntries, locale)) {
+                        searchIndex = new AppSearchIndex(originalEntries, locale);
+                        mSearchIndex = searchIndex;
                     }
+                    matchedEntries = searchIndex.search(query);
                 }
                 final FilterResults results = new FilterResults();
-                results.values = matchedEntries;
+                results.values = new SearchResult(oldEntries, matchedEntries,
+                        oldEntries == null ? null : DiffUtil.calculateDiff(
+                                new AppEntryDiffCallback(oldEntries, matchedEntries),
+                                /* detectMoves= */ false));
                 results.count = matchedEntries.size();
                 return results;
             }
 
             @Override
             protected void publishResults(CharSequence constraint, FilterResults results) {
-                mEntries = (ArrayList<ApplicationsState.AppEntry>) results.values;
-                notifyDataSetChanged();
+                final SearchResult result = (SearchResult) results.values;
+                final ArrayList<ApplicationsState.AppEntry> oldEntries = mEntries;
+                mEntries = result.mEntries;
+                // The list may be rebuilt after the change was calculated.
+                if (result.mDiffResult == null || result.mOldEntries != oldEntries) {
+                    notifyDataSetChanged();
+                } else {
+                    dispatchEntriesUpdate(oldEntries, result.mDiffResult);
+                }
+                restoreLastScrollPosition();
+            }
+        }
+
+        /** The entries matching the search query, and the change from the entries shown before. */
+        private static class SearchResult {
+            final ArrayList<ApplicationsState.AppEntry> mOldEntries;
+            final ArrayList<ApplicationsState.AppEntry> mEntries;
+            final DiffUtil.DiffResult mDiffResult;
+
+            SearchResult(ArrayList<ApplicationsState.AppEntry> oldEntries,
+                    ArrayList<ApplicationsState.AppEntry> entries,
+                    @Nullable DiffUtil.DiffResult diffResult) {
+                mOldEntries = oldEntries;
+                mEntries = entries;
+                mDiffResult = diffResult;
             }
         }
     }
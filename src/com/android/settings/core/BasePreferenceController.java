@@ -415,6 +415,15 @@ public abstract class BasePreferenceController extends AbstractPreferenceControl
     public interface UiBlocker {
     }
 
+    /**
+     * Used for {@link BasePreferenceController} that can be instantiated off the main thread,
+     * i.e. its constructor only keeps its arguments, and neither creates a
+     * {@link android.os.Handler} on the current looper nor touches views.
+     * {@link PreferenceControllerLoader} instantiates the other controllers on the main thread.
+     */
+    public interface BackgroundInstantiable {
+    }
+
     /**
      * Set the metrics category of the parent fragment.
      *
@@ -35,11 +35,9 @@ import androidx.lifecycle.LifecycleObserver;
 import androidx.lifecycle.OnLifecycleEvent;
 
 import com.android.settings.dashboard.CategoryManager;
-import com.android.settingslib.drawer.Tile;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 /**
@@ -57,6 +55,9 @@ public class CategoryMixin implements LifecycleObserver {
     private final Context mContext;
     private final PackageReceiver mPackageReceiver = new PackageReceiver();
     private final List<CategoryListener> mCategoryListeners = new ArrayList<>();
+    // Packages changed since the last update task started.
+    private final Set<String> mChangedPackages = new ArraySet<>();
+    private boolean mUnknownPackageChanged;
     private int mCategoriesUpdateTaskCount;
     private boolean mFirstOnResume = true;
 
@@ -127,6 +128,17 @@ public class CategoryMixin implements LifecycleObserver {
         mCategoryListeners.forEach(listener -> listener.onCategoriesChanged(categories));
     }
 
+    @Nullable
+    private Set<String> takeChangedPackages() {
+        synchronized (mChangedPackages) {
+            final Set<String> packages = mUnknownPackageChanged
+                    ? null : new ArraySet<>(mChangedPackages);
+            mChangedPackages.clear();
+            mUnknownPackageChanged = false;
+            return packages;
+        }
+    }
+
     private void updateCategories(boolean fromBroadcast) {
         // Only allow at most 2 tasks existing at the same time since when the first one is
         // executing, there may be new data from the second update request.
@@ -159,7 +171,6 @@ public class CategoryMixin implements LifecycleObserver {
     private class CategoriesUpdateTask extends AsyncTask<Boolean, Void, Set<String>> {
 
         private final CategoryManager mCategoryManager;
-        private Map<ComponentName, Tile> mPreviousTileMap;
 
         CategoriesUpdateTask() {
             mCategoriesUpdateTaskCount++;
@@ -168,10 +179,14 @@ public class CategoryMixin implements LifecycleObserver {
 
         @Override
         protected Set<String> doInBackground(Boolean... params) {
-            mPreviousTileMap = mCategoryManager.getTileByComponentMap();
-            mCategoryManager.reloadAllCategories(mContext);
+            Set<String> changedPackages = takeChangedPackages();
+            if (!params[0]) {
+                // Always refresh all for non-broadcast case.
+                changedPackages = null;
+            }
+            // The denylist is applied while the new categories are built.
             mCategoryManager.updateCategoryFromDenylist(sTileDenylist);
-            return getChangedCategories(params[0]);
+            return mCategoryManager.reloadCategories(mContext, changedPackages);
         }
 
         @Override
@@ -181,51 +196,22 @@ public class CategoryMixin implements LifecycleObserver {
             }
             mCategoriesUpdateTaskCount--;
         }
-
-        // Return the changed categories that have to be refreshed, or null to force refreshing all.
-        private Set<String> getChangedCategories(boolean fromBroadcast) {
-            if (!fromBroadcast) {
-                // Always refresh for non-broadcast case.
-                return null;
-            }
-
-            final Set<String> changedCategories = new ArraySet<>();
-            final Map<ComponentName, Tile> currentTileMap =
-                    mCategoryManager.getTileByComponentMap();
-            currentTileMap.forEach((component, currentTile) -> {
-                final Tile previousTile = mPreviousTileMap.get(component);
-                // Check if the tile is newly added.
-                if (previousTile == null) {
-                    Log.i(TAG, "Tile added: " + component.flattenToShortString());
-                    changedCategories.add(currentTile.getCategory());
-                    return;
-                }
-
-                // Check if the title or summary has changed.
-                if (!TextUtils.equals(currentTile.getTitle(mContext),
-                        previousTile.getTitle(mContext))
-                        || !TextUtils.equals(currentTile.getSummary(mContext),
-                        previousTile.getSummary(mContext))) {
-                    Log.i(TAG, "Tile changed: " + component.flattenToShortString());
-                    changedCategories.add(currentTile.getCategory());
-                }
-            });
-
-            // Check if any previous tile is removed.
-            final Set<ComponentName> removal = new ArraySet(mPreviousTileMap.keySet());
-            removal.removeAll(currentTileMap.keySet());
-            removal.forEach(component -> {
-                Log.i(TAG, "Tile removed: " + component.flattenToShortString());
-                changedCategories.add(mPreviousTileMap.get(component).getCategory());
-            });
-
-            return changedCategories;
-        }
     }
 
     private class PackageReceiver extends BroadcastReceiver {
         @Override
         public void onReceive(Context context, Intent intent) {
+            final String packageName = intent.getData() != null
+                    ? intent.getData().getSchemeSpecificPart() : null;
+            synchronized (mChangedPackages) {
+                if (TextUtils.isEmpty(packageName)) {
+                    // Unknown package, refresh all.
+                    mChangedPackages.clear();
+                    mUnknownPackageChanged = true;
+                } else if (!mUnknownPackageChanged) {
+                    mChangedPackages.add(packageName);
+                }
+            }
             updateCategories(true /* fromBroadcast */);
         }
     }
@@ -27,6 +27,7 @@ import android.text.TextUtils;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.android.settings.core.PreferenceXmlParserUtils.MetadataFlag;
 import com.android.settingslib.core.AbstractPreferenceController;
@@ -53,44 +54,63 @@ public class PreferenceControllerListHelper {
     public static List<BasePreferenceController> getPreferenceControllersFromXml(Context context,
             @XmlRes int xmlResId) {
         final List<BasePreferenceController> controllers = new ArrayList<>();
-        List<Bundle> preferenceMetadata;
+        final List<Bundle> preferenceMetadata = getControllerMetadataFromXml(context, xmlResId);
+        for (Bundle metadata : preferenceMetadata) {
+            final BasePreferenceController controller = createControllerFromMetadata(context,
+                    metadata);
+            if (controller != null) {
+                controllers.add(controller);
+            }
+        }
+        return controllers;
+    }
+
+    /**
+     * Extracts the metadata needed to instantiate controllers from xml definition. Returns an
+     * empty list if the xml cannot be parsed.
+     */
+    @NonNull
+    static List<Bundle> getControllerMetadataFromXml(Context context, @XmlRes int xmlResId) {
         try {
-            preferenceMetadata = PreferenceXmlParserUtils.extractMetadata(context, xmlResId,
+            return PreferenceMetadataIndex.getMetadata(context, xmlResId,
                     MetadataFlag.FLAG_NEED_KEY | MetadataFlag.FLAG_NEED_PREF_CONTROLLER
                             | MetadataFlag.FLAG_INCLUDE_PREF_SCREEN  | MetadataFlag.FLAG_FOR_WORK);
         } catch (IOException | XmlPullParserException e) {
             Log.e(TAG, "Failed to parse preference xml for getting controllers", e);
-            return controllers;
+            return new ArrayList<>();
         }
+    }
 
-        for (Bundle metadata : preferenceMetadata) {
-            final String controllerName = metadata.getString(METADATA_CONTROLLER);
-            if (TextUtils.isEmpty(controllerName)) {
-                continue;
+    /**
+     * Instantiates a single controller from the metadata of one preference, or returns
+     * {@code null} if the preference has no controller or it cannot be instantiated.
+     */
+    @Nullable
+    static BasePreferenceController createControllerFromMetadata(Context context,
+            Bundle metadata) {
+        final String controllerName = metadata.getString(METADATA_CONTROLLER);
+        if (TextUtils.isEmpty(controllerName)) {
+            return null;
+        }
+        try {
+            return BasePreferenceController.createInstance(context, controllerName);
+        } catch (IllegalStateException e) {
+            Log.d(TAG, "Could not find Context-only controller for pref: " + controllerName);
+            final String key = metadata.getString(METADATA_KEY);
+            final boolean isWorkProfile = metadata.getBoolean(METADATA_FOR_WORK, false);
+            if (TextUtils.isEmpty(key)) {
+                Log.w(TAG, "Controller requires key but it's not defined in xml: "
+                        + controllerName);
+                return null;
             }
-            BasePreferenceController controller;
             try {
-                controller = BasePreferenceController.createInstance(context, controllerName);
-            } catch (IllegalStateException e) {
-                Log.d(TAG, "Could not find Context-only controller for pref: " + controllerName);
-                final String key = metadata.getString(METADATA_KEY);
-                final boolean isWorkProfile = metadata.getBoolean(METADATA_FOR_WORK, false);
-                if (TextUtils.isEmpty(key)) {
-                    Log.w(TAG, "Controller requires key but it's not defined in xml: "
-                            + controllerName);
-                    continue;
-                }
-                try {
-                    controller = BasePreferenceController.createInstance(context, controllerName,
-                            key, isWorkProfile);
-                } catch (IllegalStateException e2) {
-                    Log.w(TAG, "Cannot instantiate controller from reflection: " + controllerName);
-                    continue;
-                }
+                return BasePreferenceController.createInstance(context, controllerName,
+                        key, isWorkProfile);
+            } catch (IllegalStateException e2) {
+                Log.w(TAG, "Cannot instantiate controller from reflection: " + controllerName);
+                return null;
             }
-            controllers.add(controller);
         }
-        return controllers;
     }
 
     /**
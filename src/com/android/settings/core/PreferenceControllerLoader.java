@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core;
+
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_CONTROLLER;
+
+import android.annotation.XmlRes;
+import android.content.Context;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Loads the {@link BasePreferenceController}s declared in a preference xml in stages.
+ *
+ * The xml metadata is extracted on a background thread as soon as {@link #start} is called, and
+ * each controller is then instantiated on a bounded pool in parallel. {@link #await()} joins the
+ * results in xml declaration order, so the returned list is identical to
+ * {@link PreferenceControllerListHelper#getPreferenceControllersFromXml(Context, int)}.
+ *
+ * Only the controllers implementing {@link BasePreferenceController.BackgroundInstantiable} are
+ * instantiated by the pool, the others are instantiated on the thread calling {@link #await()}.
+ * All the waits of {@link #await()} share one deadline; a controller the pool has not started by
+ * then is instantiated by the calling thread, and one being instantiated is waited for, so no
+ * constructor runs twice.
+ */
+public class PreferenceControllerLoader {
+
+    private static final String TAG = "PrefCtrlLoader";
+    private static final int POOL_SIZE =
+            Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+    @VisibleForTesting
+    static final long TIMEOUT_MILLIS = 2000L;
+
+    private static ExecutorService sExecutor;
+
+    private final Context mContext;
+    @XmlRes
+    private final int mXmlResId;
+    private final Future<List<Bundle>> mMetadataFuture;
+    private final long mStartTime;
+
+    private PreferenceControllerLoader(Context context, @XmlRes int xmlResId,
+            Future<List<Bundle>> metadataFuture) {
+        mContext = context;
+        mXmlResId = xmlResId;
+        mMetadataFuture = metadataFuture;
+        mStartTime = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Starts loading the controllers of {@code xmlResId} in background. Returns {@code null} if
+     * the background pool cannot accept the work, callers should fall back to
+     * {@link PreferenceControllerListHelper#getPreferenceControllersFromXml(Context, int)}.
+     */
+    @Nullable
+    public static PreferenceControllerLoader start(Context context, @XmlRes int xmlResId) {
+        try {
+            final Future<List<Bundle>> metadataFuture = getExecutor().submit(() ->
+                    PreferenceControllerListHelper.getControllerMetadataFromXml(
+                            context, xmlResId));
+            return new PreferenceControllerLoader(context, xmlResId, metadataFuture);
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Cannot start loading controllers in background", e);
+            return null;
+        }
+    }
+
+    /**
+     * Blocks until all controllers are instantiated and returns them in xml declaration order.
+     */
+    @NonNull
+    public List<BasePreferenceController> await() {
+        // All the waits share one deadline, so the timeouts of the controllers do not add up.
+        final long deadline = SystemClock.elapsedRealtime() + TIMEOUT_MILLIS;
+        final List<Bundle> metadataList = getMetadata(deadline);
+        final List<ControllerTask> tasks = new ArrayList<>();
+        for (Bundle metadata : metadataList) {
+            tasks.add(submit(metadata));
+        }
+
+        final List<BasePreferenceController> controllers = new ArrayList<>();
+        for (ControllerTask task : tasks) {
+            final BasePreferenceController controller = task == null ? null : task.await(deadline);
+            if (controller != null) {
+                controllers.add(controller);
+            }
+        }
+        Log.d(TAG, "Loaded " + controllers.size() + " controllers in "
+                + (SystemClock.elapsedRealtime() - mStartTime) + " ms");
+        return controllers;
+    }
+
+    private List<Bundle> getMetadata(long deadline) {
+        try {
+            return mMetadataFuture.get(getRemainingMillis(deadline), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            Log.w(TAG, "Failed to extract metadata in background, fall back to main thread", e);
+            mMetadataFuture.cancel(true /* mayInterruptIfRunning */);
+            return PreferenceControllerListHelper.getControllerMetadataFromXml(mContext,
+                    mXmlResId);
+        }
+    }
+
+    @Nullable
+    private ControllerTask submit(Bundle metadata) {
+        if (TextUtils.isEmpty(metadata.getString(METADATA_CONTROLLER))) {
+            return null;
+        }
+        final ControllerTask task = new ControllerTask(metadata);
+        try {
+            task.mFuture = getExecutor().submit(task::createInBackground);
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Cannot create controller in background", e);
+        }
+        return task;
+    }
+
+    private static long getRemainingMillis(long deadline) {
+        return Math.max(0L, deadline - SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * Creates the controller of one preference. The controller is created once, either by the
+     * background pool or by the thread calling {@link #await()}, whichever claims it first.
+     * The pool only runs the constructor of a
+     * {@link BasePreferenceController.BackgroundInstantiable} controller; a constructor it has
+     * started is never run again, even if it fails.
+     */
+    private class ControllerTask {
+        private final Bundle mMetadata;
+        private final AtomicBoolean mClaimed = new AtomicBoolean();
+        // Whether the pool has started to run the constructor.
+        private volatile boolean mConstructorStarted;
+        @Nullable
+        private Future<BasePreferenceController> mFuture;
+
+        ControllerTask(Bundle metadata) {
+            mMetadata = metadata;
+        }
+
+        @Nullable
+        BasePreferenceController createInBackground() throws ClassNotFoundException {
+            if (!mClaimed.compareAndSet(false, true)) {
+                return null;
+            }
+            final Class<?> clazz = Class.forName(mMetadata.getString(METADATA_CONTROLLER));
+            if (!BasePreferenceController.BackgroundInstantiable.class.isAssignableFrom(clazz)) {
+                return null;
+            }
+            mConstructorStarted = true;
+            return PreferenceControllerListHelper.createControllerFromMetadata(
+                    mContext, mMetadata);
+        }
+
+        @Nullable
+        BasePreferenceController await(long deadline) {
+            if (mFuture == null) {
+                return createHere();
+            }
+            try {
+                return onBackgroundDone(
+                        mFuture.get(getRemainingMillis(deadline), TimeUnit.MILLISECONDS));
+            } catch (TimeoutException e) {
+                return takeOverOrWait();
+            } catch (ExecutionException e) {
+                Log.w(TAG, "Failed to create controller in background", e);
+                return onBackgroundDone(null /* controller */);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                Log.w(TAG, "Interrupted while creating controller in background", e);
+                return takeOverOrWait();
+            }
+        }
+
+        @Nullable
+        private BasePreferenceController takeOverOrWait() {
+            if (mClaimed.compareAndSet(false, true)) {
+                // The pool has not started it yet, so it is only created here.
+                mFuture.cancel(false /* mayInterruptIfRunning */);
+                return createHere();
+            }
+            // It is claimed by the pool, creating it here may run the constructor twice.
+            Log.w(TAG, "Waiting for the controller claimed in background: "
+                    + mMetadata.getString(METADATA_CONTROLLER));
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    try {
+                        return onBackgroundDone(mFuture.get());
+                    } catch (ExecutionException e) {
+                        Log.w(TAG, "Failed to create controller in background", e);
+                        return onBackgroundDone(null /* controller */);
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Nullable
+        private BasePreferenceController onBackgroundDone(
+                @Nullable BasePreferenceController controller) {
+            if (controller != null || mConstructorStarted) {
+                // A constructor which failed in background is not run again, the controller is
+                // dropped as the synchronous path drops it.
+                return controller;
+            }
+            // The controller must be created on the calling thread, or its class failed to load.
+            return createHere();
+        }
+
+        @Nullable
+        private BasePreferenceController createHere() {
+            return PreferenceControllerListHelper.createControllerFromMetadata(
+                    mContext, mMetadata);
+        }
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            sExecutor = Executors.newFixedThreadPool(POOL_SIZE);
+        }
+        return sExecutor;
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core;
+
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_APPEND;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_CONTROLLER;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_FOR_WORK;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_HIGHLIGHTABLE_MENU_KEY;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_ICON;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_KEY;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_KEYWORDS;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_PREF_TYPE;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_SEARCHABLE;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_SUMMARY;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_TITLE;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_UNAVAILABLE_SLICE_SUBTITLE;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_USER_RESTRICTION;
+import static com.android.settings.core.PreferenceXmlParserUtils.PREF_SCREEN_TAG;
+
+import android.annotation.XmlRes;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Bundle;
+import android.text.TextUtils;
+import android.util.LruCache;
+import android.util.SparseArray;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import com.android.settings.core.PreferenceXmlParserUtils.MetadataFlag;
+
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Process wide index of the metadata declared in preference xml.
+ *
+ * Each xml is parsed at most once per {@link Configuration} with every {@link MetadataFlag}, and
+ * later lookups with any combination of flags are served from the index. This lets page opens,
+ * search indexing and slice indexing share a single parse of the same xml. The index is dropped
+ * whenever a configuration field resolving the xml resources changes (i.e. locale, carrier,
+ * density, ui mode or overlays), in which case the xml is parsed again by
+ * {@link PreferenceXmlParserUtils#extractMetadata(Context, int, int)}. Window and size changes,
+ * such as entering multi-window, keep the index.
+ */
+public class PreferenceMetadataIndex {
+
+    @VisibleForTesting
+    static final int MAX_ENTRIES = 64;
+
+    private static final int ALL_FLAGS = MetadataFlag.FLAG_INCLUDE_PREF_SCREEN
+            | MetadataFlag.FLAG_NEED_KEY
+            | MetadataFlag.FLAG_NEED_PREF_TYPE
+            | MetadataFlag.FLAG_NEED_PREF_CONTROLLER
+            | MetadataFlag.FLAG_NEED_PREF_TITLE
+            | MetadataFlag.FLAG_NEED_PREF_SUMMARY
+            | MetadataFlag.FLAG_NEED_PREF_ICON
+            | MetadataFlag.FLAG_NEED_KEYWORDS
+            | MetadataFlag.FLAG_NEED_SEARCHABLE
+            | MetadataFlag.FLAG_NEED_PREF_APPEND
+            | MetadataFlag.FLAG_UNAVAILABLE_SLICE_SUBTITLE
+            | MetadataFlag.FLAG_FOR_WORK
+            | MetadataFlag.FLAG_NEED_HIGHLIGHTABLE_MENU_KEY
+            | MetadataFlag.FLAG_NEED_USER_RESTRICTION;
+
+    private static final SparseArray<String> FLAG_TO_METADATA = new SparseArray<>();
+
+    static {
+        FLAG_TO_METADATA.put(MetadataFlag.FLAG_NEED_KEY, METADATA_KEY);
+        FLAG_TO_METADATA.put(MetadataFlag.FLAG_NEED_PREF_TYPE, METADATA_PREF_TYPE);
+        FLAG_TO_METADATA.put(MetadataFlag.FLAG_NEED_PREF_CONTROLLER, METADATA_CONTROLLER);
+        FLAG_TO_METADATA.put(MetadataFlag.FLAG_NEED_PREF_TITLE, METADATA_TITLE);
+        FLAG_TO_METADATA.put(MetadataFlag.FLAG_NEED_PREF_SUMMARY, METADATA_SUMMARY);
+        FLAG_TO_METADATA.put(MetadataFlag.FLAG_NEED_PREF_ICON, METADATA_ICON);
+        FLAG_TO_METADATA.put(MetadataFlag.FLAG_NEED_KEYWORDS, METADATA_KEYWORDS);
+        FLAG_TO_METADATA.put(MetadataFlag.FLAG_NEED_SEARCHABLE, METADATA_SEARCHABLE);
+        FLAG_TO_METADATA.put(MetadataFlag.FLAG_NEED_PREF_APPEND, METADATA_APPEND);
+        FLAG_TO_METADATA.put(MetadataFlag.FLAG_UNAVAILABLE_SLICE_SUBTITLE,
+                METADATA_UNAVAILABLE_SLICE_SUBTITLE);
+        FLAG_TO_METADATA.put(MetadataFlag.FLAG_FOR_WORK, METADATA_FOR_WORK);
+        FLAG_TO_METADATA.put(MetadataFlag.FLAG_NEED_HIGHLIGHTABLE_MENU_KEY,
+                METADATA_HIGHLIGHTABLE_MENU_KEY);
+        FLAG_TO_METADATA.put(MetadataFlag.FLAG_NEED_USER_RESTRICTION, METADATA_USER_RESTRICTION);
+    }
+
+    private static final LruCache<Integer, List<Bundle>> sIndex = new LruCache<>(MAX_ENTRIES);
+    private static Configuration sConfiguration;
+
+    private PreferenceMetadataIndex() {
+    }
+
+    /**
+     * Same as {@link PreferenceXmlParserUtils#extractMetadata(Context, int, int)}, but served from
+     * the index when the xml has been parsed before under the current configuration.
+     *
+     * @param xmlResId xml res id of a preference screen
+     * @param flags    Should be one or more of {@link MetadataFlag}.
+     */
+    @NonNull
+    public static List<Bundle> getMetadata(Context context, @XmlRes int xmlResId, int flags)
+            throws IOException, XmlPullParserException {
+        if (xmlResId <= 0) {
+            return PreferenceXmlParserUtils.extractMetadata(context, xmlResId, flags);
+        }
+        List<Bundle> entries = getEntries(context, xmlResId);
+        if (entries == null) {
+            entries = Collections.unmodifiableList(
+                    PreferenceXmlParserUtils.extractMetadata(context, xmlResId, ALL_FLAGS));
+            putEntries(context, xmlResId, entries);
+        }
+        return filter(entries, flags);
+    }
+
+    /** Drops every indexed xml. */
+    public static synchronized void clear() {
+        sIndex.evictAll();
+        sConfiguration = null;
+    }
+
+    private static synchronized List<Bundle> getEntries(Context context, int xmlResId) {
+        final Configuration configuration = context.getResources().getConfiguration();
+        if (!isSameConfiguration(configuration)) {
+            sIndex.evictAll();
+            sConfiguration = new Configuration(configuration);
+            return null;
+        }
+        return sIndex.get(xmlResId);
+    }
+
+    private static synchronized void putEntries(Context context, int xmlResId,
+            List<Bundle> entries) {
+        if (isSameConfiguration(context.getResources().getConfiguration())) {
+            sIndex.put(xmlResId, entries);
+        }
+    }
+
+    @VisibleForTesting
+    static synchronized boolean isSameConfiguration(Configuration configuration) {
+        // Only the qualifiers of the strings, booleans and drawables referred by preference xml
+        // are compared. The xml itself has no variants, and the window and size qualifiers never
+        // change the values it refers to.
+        return sConfiguration != null
+                && sConfiguration.getLocales().equals(configuration.getLocales())
+                && sConfiguration.mcc == configuration.mcc
+                && sConfiguration.mnc == configuration.mnc
+                && sConfiguration.densityDpi == configuration.densityDpi
+                && sConfiguration.uiMode == configuration.uiMode
+                && sConfiguration.assetsSeq == configuration.assetsSeq;
+    }
+
+    private static List<Bundle> filter(List<Bundle> entries, int flags) {
+        final boolean includePrefScreen = hasFlag(flags, MetadataFlag.FLAG_INCLUDE_PREF_SCREEN);
+        final List<Bundle> metadata = new ArrayList<>(entries.size());
+        for (Bundle entry : entries) {
+            if (!includePrefScreen
+                    && TextUtils.equals(PREF_SCREEN_TAG, entry.getString(METADATA_PREF_TYPE))) {
+                continue;
+            }
+            final Bundle bundle = new Bundle();
+            for (int i = 0; i < FLAG_TO_METADATA.size(); i++) {
+                final int flag = FLAG_TO_METADATA.keyAt(i);
+                if (!hasFlag(flags, flag)) {
+                    continue;
+                }
+                if (flag == MetadataFlag.FLAG_NEED_PREF_APPEND && !includePrefScreen) {
+                    continue;
+                }
+                copyMetadata(entry, bundle, FLAG_TO_METADATA.valueAt(i));
+            }
+            metadata.add(bundle);
+        }
+        return metadata;
+    }
+
+    private static void copyMetadata(Bundle from, Bundle to, String metadataKey) {
+        if (!from.containsKey(metadataKey)) {
+            return;
+        }
+        switch (metadataKey) {
+            case METADATA_ICON:
+                to.putInt(metadataKey, from.getInt(metadataKey));
+                break;
+            case METADATA_SEARCHABLE:
+            case METADATA_APPEND:
+            case METADATA_FOR_WORK:
+                to.putBoolean(metadataKey, from.getBoolean(metadataKey));
+                break;
+            default:
+                to.putString(metadataKey, from.getString(metadataKey));
+                break;
+        }
+    }
+
+    private static boolean hasFlag(int flags, @MetadataFlag int flag) {
+        return (flags & flag) != 0;
+    }
+}
@@ -23,6 +23,7 @@ import android.util.ArraySet;
 import android.util.Log;
 import android.util.Pair;
 
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 
 import com.android.settings.homepage.HighlightableMenu;
@@ -37,6 +38,7 @@ import com.android.settingslib.drawer.TileUtils;
 import com.google.android.setupcompat.util.WizardManagerHelper;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -55,10 +57,15 @@ public class CategoryManager {
     // Tile cache (key: <packageName, activityName>, value: tile)
     private final Map<Pair<String, String>, Tile> mTileByComponentCache;
 
-    // Tile cache (key: category key, value: category)
-    private final Map<String, DashboardCategory> mCategoryByKeyMap;
+    // Tile cache (key: category key, value: category). Each reload publishes a new map, so
+    // readers never observe a partially built one and don't need to hold the lock.
+    private volatile Map<String, DashboardCategory> mCategoryByKeyMap;
 
-    private List<DashboardCategory> mCategories;
+    private volatile List<DashboardCategory> mCategories;
+
+    // Tiles hidden from every category. They are removed while a snapshot is built, so the
+    // published categories are never modified.
+    private Set<ComponentName> mTileDenylist = new ArraySet<>();
 
     public static CategoryManager get(Context context) {
         if (sInstance == null) {
@@ -74,63 +81,162 @@ public class CategoryManager {
         mInterestingConfigChanges.applyNewConfig(context.getResources());
     }
 
-    public synchronized DashboardCategory getTilesByCategory(Context context, String categoryKey) {
-        tryInitCategories(context);
-
+    public DashboardCategory getTilesByCategory(Context context, String categoryKey) {
+        if (mCategories == null) {
+            tryInitCategories(context);
+        }
         return mCategoryByKeyMap.get(categoryKey);
     }
 
-    public synchronized List<DashboardCategory> getCategories(Context context) {
+    public List<DashboardCategory> getCategories(Context context) {
         if (!WizardManagerHelper.isUserSetupComplete(context)) {
             return new ArrayList<>();
         }
-        tryInitCategories(context);
+        if (mCategories == null) {
+            tryInitCategories(context);
+        }
         return mCategories;
     }
 
     public synchronized void reloadAllCategories(Context context) {
         final boolean forceClearCache = mInterestingConfigChanges.applyNewConfig(
                 context.getResources());
-        mCategories = null;
-        tryInitCategories(context, forceClearCache);
+        loadCategories(context, forceClearCache);
     }
 
     /**
-     * Update category from deny list
+     * Reloads the categories after the given packages changed, and returns the keys of the
+     * categories whose tiles were added, removed or changed.
+     *
+     * Only tiles of the changed packages are queried again and compared with the previous
+     * state, tiles of other packages are served from the tile cache. The previous categories
+     * stay readable until the new ones are published.
+     *
+     * @param changedPackages the changed packages, or null if unknown
+     * @return the changed category keys, or null if all categories have to be refreshed
+     */
+    @Nullable
+    public synchronized Set<String> reloadCategories(Context context,
+            @Nullable Set<String> changedPackages) {
+        final boolean forceClearCache = mInterestingConfigChanges.applyNewConfig(
+                context.getResources());
+        if (forceClearCache || changedPackages == null || mCategories == null) {
+            loadCategories(context, forceClearCache);
+            return null;
+        }
+
+        final Map<ComponentName, Tile> previousTiles = getTilesOfPackages(changedPackages);
+        mTileByComponentCache.keySet().removeIf(key -> changedPackages.contains(key.first));
+        loadCategories(context, false /* forceClearCache */);
+        final Map<ComponentName, Tile> currentTiles = getTilesOfPackages(changedPackages);
+        return getChangedCategories(context, previousTiles, currentTiles);
+    }
+
+    /**
+     * Update category from deny list. The denylist is applied to every category snapshot built
+     * from now on, and the current snapshot is replaced by a filtered copy if it contains any
+     * denylisted tile.
      * @param tileDenylist
      */
     public synchronized void updateCategoryFromDenylist(Set<ComponentName> tileDenylist) {
-        if (mCategories == null) {
-            Log.w(TAG, "Category is null, skipping denylist update");
+        mTileDenylist = new ArraySet<>(tileDenylist);
+        final List<DashboardCategory> categories = mCategories;
+        if (categories == null || mTileDenylist.isEmpty()
+                || getTilesOfPackages(null /* packages */).keySet().stream()
+                        .noneMatch(mTileDenylist::contains)) {
             return;
         }
-        for (int i = 0; i < mCategories.size(); i++) {
-            DashboardCategory category = mCategories.get(i);
-            for (int j = 0; j < category.getTilesCount(); j++) {
-                Tile tile = category.getTile(j);
-                if (tileDenylist.contains(tile.getIntent().getComponent())) {
-                    category.removeTile(j--);
-                }
+        // Readers iterate the published categories without the lock, so filtered copies are
+        // published instead of removing the tiles in place.
+        final Map<DashboardCategory, DashboardCategory> copies = new ArrayMap<>();
+        final Map<String, DashboardCategory> categoryByKeyMap = new ArrayMap<>();
+        for (Entry<String, DashboardCategory> entry : mCategoryByKeyMap.entrySet()) {
+            categoryByKeyMap.put(entry.getKey(),
+                    copies.computeIfAbsent(entry.getValue(), this::copyAllowedTiles));
+        }
+        final List<DashboardCategory> newCategories = new ArrayList<>();
+        for (DashboardCategory category : categories) {
+            newCategories.add(copies.computeIfAbsent(category, this::copyAllowedTiles));
+        }
+        mCategoryByKeyMap = categoryByKeyMap;
+        mCategories = newCategories;
+    }
+
+    private DashboardCategory copyAllowedTiles(DashboardCategory category) {
+        final DashboardCategory copy = new DashboardCategory(category.key);
+        for (Tile tile : category.getTiles()) {
+            if (!mTileDenylist.contains(tile.getIntent().getComponent())) {
+                copy.addTile(tile);
             }
         }
+        return copy;
     }
 
     /** Return the current tile map */
-    public synchronized Map<ComponentName, Tile> getTileByComponentMap() {
+    public Map<ComponentName, Tile> getTileByComponentMap() {
+        return getTilesOfPackages(null /* packages */);
+    }
+
+    private Map<ComponentName, Tile> getTilesOfPackages(@Nullable Set<String> packages) {
         final Map<ComponentName, Tile> result = new ArrayMap<>();
-        if (mCategories == null) {
+        final List<DashboardCategory> categories = mCategories;
+        if (categories == null) {
             Log.w(TAG, "Category is null, no tiles");
             return result;
         }
-        mCategories.forEach(category -> {
-            for (int i = 0; i < category.getTilesCount(); i++) {
-                final Tile tile = category.getTile(i);
-                result.put(tile.getIntent().getComponent(), tile);
+        categories.forEach(category -> {
+            for (Tile tile : category.getTiles()) {
+                final ComponentName component = tile.getIntent().getComponent();
+                if (packages == null || packages.contains(component.getPackageName())) {
+                    result.put(component, tile);
+                }
             }
         });
         return result;
     }
 
+    /**
+     * Returns the keys of the categories which contain added, removed, or changed tiles between
+     * the two tile maps.
+     */
+    @VisibleForTesting
+    static Set<String> getChangedCategories(Context context,
+            Map<ComponentName, Tile> previousTiles, Map<ComponentName, Tile> currentTiles) {
+        final Set<String> changedCategories = new ArraySet<>();
+        currentTiles.forEach((component, currentTile) -> {
+            final Tile previousTile = previousTiles.get(component);
+            // Check if the tile is newly added.
+            if (previousTile == null) {
+                Log.i(TAG, "Tile added: " + component.flattenToShortString());
+                changedCategories.add(currentTile.getCategory());
+                return;
+            }
+
+            // Check if the category, title or summary has changed.
+            if (!TextUtils.equals(currentTile.getCategory(), previousTile.getCategory())) {
+                Log.i(TAG, "Tile moved: " + component.flattenToShortString());
+                changedCategories.add(previousTile.getCategory());
+                changedCategories.add(currentTile.getCategory());
+            } else if (currentTile != previousTile
+                    && (!TextUtils.equals(currentTile.getTitle(context),
+                    previousTile.getTitle(context))
+                    || !TextUtils.equals(currentTile.getSummary(context),
+                    previousTile.getSummary(context)))) {
+                Log.i(TAG, "Tile changed: " + component.flattenToShortString());
+                changedCategories.add(currentTile.getCategory());
+            }
+        });
+
+        // Check if any previous tile is removed.
+        previousTiles.forEach((component, previousTile) -> {
+            if (!currentTiles.containsKey(component)) {
+                Log.i(TAG, "Tile removed: " + component.flattenToShortString());
+                changedCategories.add(previousTile.getCategory());
+            }
+        });
+        return changedCategories;
+    }
+
     private void logTiles(Context context) {
         if (DEBUG) {
             getTileByComponentMap().forEach((component, tile) -> {
@@ -147,40 +253,50 @@ public class CategoryManager {
     }
 
     private synchronized void tryInitCategories(Context context, boolean forceClearCache) {
+        if (mCategories == null) {
+            loadCategories(context, forceClearCache);
+        }
+    }
+
+    private synchronized void loadCategories(Context context, boolean forceClearCache) {
         if (!WizardManagerHelper.isUserSetupComplete(context)) {
             // Don't init while setup wizard is still running.
             return;
         }
-        if (mCategories == null) {
-            final boolean firstLoading = mCategoryByKeyMap.isEmpty();
-            if (forceClearCache) {
-                mTileByComponentCache.clear();
-            }
-            mCategoryByKeyMap.clear();
-            mCategories = TileUtils.getCategories(context, mTileByComponentCache);
-            for (DashboardCategory category : mCategories) {
-                mCategoryByKeyMap.put(category.key, category);
+        final boolean firstLoading = mCategoryByKeyMap.isEmpty();
+        if (forceClearCache) {
+            mTileByComponentCache.clear();
+        }
+        // Build the new categories aside and publish them once they are complete.
+        final Map<String, DashboardCategory> categoryByKeyMap = new ArrayMap<>();
+        final List<DashboardCategory> categories =
+                TileUtils.getCategories(context, mTileByComponentCache);
+        for (DashboardCategory category : categories) {
+            categoryByKeyMap.put(category.key, category);
+        }
+        backwardCompatCleanupForCategory(mTileByComponentCache, categoryByKeyMap);
+        mergeSecurityPrivacyKeys(context, mTileByComponentCache, categoryByKeyMap);
+        sortCategories(context, categoryByKeyMap);
+        filterDuplicateTiles(categoryByKeyMap);
+        filterDenylistedTiles(categoryByKeyMap.values());
+        filterDenylistedTiles(categories);
+        mCategoryByKeyMap = categoryByKeyMap;
+        mCategories = categories;
+        if (firstLoading) {
+            logTiles(context);
+
+            final DashboardCategory homepageCategory = categoryByKeyMap.get(
+                    CategoryKey.CATEGORY_HOMEPAGE);
+            if (homepageCategory == null) {
+                return;
             }
-            backwardCompatCleanupForCategory(mTileByComponentCache, mCategoryByKeyMap);
-            mergeSecurityPrivacyKeys(context, mTileByComponentCache, mCategoryByKeyMap);
-            sortCategories(context, mCategoryByKeyMap);
-            filterDuplicateTiles(mCategoryByKeyMap);
-            if (firstLoading) {
-                logTiles(context);
-
-                final DashboardCategory homepageCategory = mCategoryByKeyMap.get(
-                        CategoryKey.CATEGORY_HOMEPAGE);
-                if (homepageCategory == null) {
-                    return;
-                }
-                for (Tile tile : homepageCategory.getTiles()) {
-                    final String key = tile.getKey(context);
-                    if (TextUtils.isEmpty(key)) {
-                        Log.w(TAG, "Key hint missing for homepage tile: " + tile.getTitle(context));
-                        continue;
-                    }
-                    HighlightableMenu.addMenuKey(key);
+            for (Tile tile : homepageCategory.getTiles()) {
+                final String key = tile.getKey(context);
+                if (TextUtils.isEmpty(key)) {
+                    Log.w(TAG, "Key hint missing for homepage tile: " + tile.getTitle(context));
+                    continue;
                 }
+                HighlightableMenu.addMenuKey(key);
             }
         }
     }
@@ -281,6 +397,23 @@ public class CategoryManager {
         }
     }
 
+    /**
+     * Filter out the denylisted tiles from the categories of a snapshot not yet published.
+     */
+    @VisibleForTesting
+    synchronized void filterDenylistedTiles(Collection<DashboardCategory> categories) {
+        if (mTileDenylist.isEmpty()) {
+            return;
+        }
+        for (DashboardCategory category : categories) {
+            for (int i = category.getTilesCount() - 1; i >= 0; i--) {
+                if (mTileDenylist.contains(category.getTile(i).getIntent().getComponent())) {
+                    category.removeTile(i);
+                }
+            }
+        }
+    }
+
     /**
      * Filter out duplicate tiles from category. Duplicate tiles are the ones pointing to the
      * same intent for ActivityTile, and also the ones having the same description for ProviderTile.
@@ -45,6 +45,7 @@ import android.graphics.drawable.Icon;
 import android.graphics.drawable.LayerDrawable;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.os.UserHandle;
 import android.provider.Settings;
 import android.text.TextUtils;
@@ -92,18 +93,21 @@ public class DashboardFeatureProviderImpl implements DashboardFeatureProvider {
     private static final String DASHBOARD_TILE_PREF_KEY_PREFIX = "dashboard_tile_pref_";
     private static final String META_DATA_KEY_INTENT_ACTION = "com.android.settings.intent.action";
     private static final String WELLBEING_PACKAGE = "com.google.android.apps.wellbeing";
+    private static final long SLOW_DYNAMIC_DATA_MILLIS = 100L;
 
     protected final Context mContext;
 
     private final MetricsFeatureProvider mMetricsFeatureProvider;
     private final CategoryManager mCategoryManager;
     private final PackageManager mPackageManager;
+    private final TileDynamicDataCache mDynamicDataCache;
 
     public DashboardFeatureProviderImpl(Context context) {
         mContext = context.getApplicationContext();
         mCategoryManager = CategoryManager.get(context);
         mMetricsFeatureProvider = FeatureFactory.getFeatureFactory().getMetricsFeatureProvider();
         mPackageManager = context.getPackageManager();
+        mDynamicDataCache = new TileDynamicDataCache(mContext);
     }
 
     @Override
@@ -238,7 +242,8 @@ public class DashboardFeatureProviderImpl implements DashboardFeatureProvider {
                 /* highlightMixin= */ null, /* isDuplicateClick= */ false);
     }
 
-    private DynamicDataObserver createDynamicDataObserver(String method, Uri uri, Preference pref) {
+    private DynamicDataObserver createDynamicDataObserver(String method, Uri uri, Preference pref,
+            String cacheKey) {
         return new DynamicDataObserver() {
             @Override
             public Uri getUri() {
@@ -249,19 +254,36 @@ public class DashboardFeatureProviderImpl implements DashboardFeatureProvider {
             public void onDataChanged() {
                 switch (method) {
                     case METHOD_GET_DYNAMIC_TITLE:
-                        refreshTitle(uri, pref, this);
+                        refreshTitle(uri, pref, this, cacheKey);
                         break;
                     case METHOD_GET_DYNAMIC_SUMMARY:
-                        refreshSummary(uri, pref, this);
+                        refreshSummary(uri, pref, this, cacheKey);
                         break;
                     case METHOD_IS_CHECKED:
-                        refreshSwitch(uri, pref, this);
+                        refreshSwitch(uri, pref, this, cacheKey);
                         break;
                 }
             }
         };
     }
 
+    private void loadDynamicData(Uri uri, Runnable loader) {
+        DynamicDataObserver.getExecutor().execute(() -> {
+            final long startTime = SystemClock.elapsedRealtime();
+            try {
+                loader.run();
+            } finally {
+                // Logged even if the provider throws, a failing provider can be slow too.
+                final long latency = SystemClock.elapsedRealtime() - startTime;
+                if (latency > SLOW_DYNAMIC_DATA_MILLIS) {
+                    Log.w(TAG, "Slow dynamic data from " + uri + ": " + latency + " ms");
+                } else {
+                    Log.d(TAG, "Loaded dynamic data from " + uri + " in " + latency + " ms");
+                }
+            }
+        });
+    }
+
     private DynamicDataObserver bindTitleAndGetObserver(Preference preference, Tile tile) {
         final CharSequence title = tile.getTitle(mContext.getApplicationContext());
         if (title != null) {
@@ -270,24 +292,30 @@ public class DashboardFeatureProviderImpl implements DashboardFeatureProvider {
         }
         if (tile.getMetaData() != null && tile.getMetaData().containsKey(
                 META_DATA_PREFERENCE_TITLE_URI)) {
-            // Set a placeholder title before starting to fetch real title, this is necessary
-            // to avoid preference height change.
-            if (preference.getTitle() == null) {
-                preference.setTitle(R.string.summary_placeholder);
-            }
-
             final Uri uri = TileUtils.getCompleteUri(tile, META_DATA_PREFERENCE_TITLE_URI,
                     METHOD_GET_DYNAMIC_TITLE);
-            return createDynamicDataObserver(METHOD_GET_DYNAMIC_TITLE, uri, preference);
+            final String cacheKey = TileDynamicDataCache.getKey(tile, uri);
+            // Set the last known title or a placeholder title before starting to fetch real
+            // title, this is necessary to avoid preference height change.
+            final String cachedTitle = mDynamicDataCache.get(cacheKey);
+            if (cachedTitle != null) {
+                preference.setTitle(cachedTitle);
+            } else if (preference.getTitle() == null) {
+                preference.setTitle(R.string.summary_placeholder);
+            }
+            return createDynamicDataObserver(METHOD_GET_DYNAMIC_TITLE, uri, preference,
+                    cacheKey);
         }
         return null;
     }
 
-    private void refreshTitle(Uri uri, Preference preference, DynamicDataObserver observer) {
-        ThreadUtils.postOnBackgroundThread(() -> {
+    private void refreshTitle(Uri uri, Preference preference, DynamicDataObserver observer,
+            String cacheKey) {
+        loadDynamicData(uri, () -> {
             final Map<String, IContentProvider> providerMap = new ArrayMap<>();
             final String titleFromUri = TileUtils.getTextFromUri(
                     mContext, uri, providerMap, META_DATA_PREFERENCE_TITLE);
+            mDynamicDataCache.put(cacheKey, titleFromUri);
             if (!TextUtils.equals(titleFromUri, preference.getTitle())) {
                 observer.post(() -> preference.setTitle(titleFromUri));
             }
@@ -300,24 +328,30 @@ public class DashboardFeatureProviderImpl implements DashboardFeatureProvider {
             preference.setSummary(summary);
         } else if (tile.getMetaData() != null
                 && tile.getMetaData().containsKey(META_DATA_PREFERENCE_SUMMARY_URI)) {
-            // Set a placeholder summary before starting to fetch real summary, this is necessary
-            // to avoid preference height change.
-            if (preference.getSummary() == null) {
-                preference.setSummary(R.string.summary_placeholder);
-            }
-
             final Uri uri = TileUtils.getCompleteUri(tile, META_DATA_PREFERENCE_SUMMARY_URI,
                     METHOD_GET_DYNAMIC_SUMMARY);
-            return createDynamicDataObserver(METHOD_GET_DYNAMIC_SUMMARY, uri, preference);
+            final String cacheKey = TileDynamicDataCache.getKey(tile, uri);
+            // Set the last known summary or a placeholder summary before starting to fetch real
+            // summary, this is necessary to avoid preference height change.
+            final String cachedSummary = mDynamicDataCache.get(cacheKey);
+            if (cachedSummary != null) {
+                preference.setSummary(cachedSummary);
+            } else if (preference.getSummary() == null) {
+                preference.setSummary(R.string.summary_placeholder);
+            }
+            return createDynamicDataObserver(METHOD_GET_DYNAMIC_SUMMARY, uri, preference,
+                    cacheKey);
         }
         return null;
     }
 
-    private void refreshSummary(Uri uri, Preference preference, DynamicDataObserver observer) {
-        ThreadUtils.postOnBackgroundThread(() -> {
+    private void refreshSummary(Uri uri, Preference preference, DynamicDataObserver observer,
+            String cacheKey) {
+        loadDynamicData(uri, () -> {
             final Map<String, IContentProvider> providerMap = new ArrayMap<>();
             final String summaryFromUri = TileUtils.getTextFromUri(
                     mContext, uri, providerMap, META_DATA_PREFERENCE_SUMMARY);
+            mDynamicDataCache.put(cacheKey, summaryFromUri);
             if (!TextUtils.equals(summaryFromUri, preference.getSummary())) {
                 observer.post(() -> preference.setSummary(summaryFromUri));
             }
@@ -338,8 +372,14 @@ public class DashboardFeatureProviderImpl implements DashboardFeatureProvider {
 
         final Uri isCheckedUri = TileUtils.getCompleteUri(tile, META_DATA_PREFERENCE_SWITCH_URI,
                 METHOD_IS_CHECKED);
+        final String cacheKey = TileDynamicDataCache.getKey(tile, isCheckedUri);
+        final String cachedChecked = mDynamicDataCache.get(cacheKey);
+        if (cachedChecked != null) {
+            // Show the last known state, it stays disabled until the real state is loaded.
+            setSwitchChecked(preference, Boolean.parseBoolean(cachedChecked));
+        }
         setSwitchEnabled(preference, false);
-        return createDynamicDataObserver(METHOD_IS_CHECKED, isCheckedUri, preference);
+        return createDynamicDataObserver(METHOD_IS_CHECKED, isCheckedUri, preference, cacheKey);
     }
 
     private void onCheckedChanged(Uri uri, Preference pref, boolean checked) {
@@ -365,11 +405,13 @@ public class DashboardFeatureProviderImpl implements DashboardFeatureProvider {
         });
     }
 
-    private void refreshSwitch(Uri uri, Preference preference, DynamicDataObserver observer) {
-        ThreadUtils.postOnBackgroundThread(() -> {
+    private void refreshSwitch(Uri uri, Preference preference, DynamicDataObserver observer,
+            String cacheKey) {
+        loadDynamicData(uri, () -> {
             final Map<String, IContentProvider> providerMap = new ArrayMap<>();
             final boolean checked = TileUtils.getBooleanFromUri(mContext, uri, providerMap,
                     EXTRA_SWITCH_CHECKED_STATE);
+            mDynamicDataCache.put(cacheKey, String.valueOf(checked));
             observer.post(() -> {
                 setSwitchChecked(preference, checked);
                 setSwitchEnabled(preference, true);
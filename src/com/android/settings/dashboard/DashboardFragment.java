@@ -24,6 +24,7 @@ import android.os.Bundle;
 import android.preference.PreferenceManager.OnActivityResultListener;
 import android.text.TextUtils;
 import android.util.ArrayMap;
+import android.util.FeatureFlagUtils;
 import android.util.Log;
 import android.view.View;
 
@@ -45,7 +46,9 @@ import com.android.settings.SettingsPreferenceFragment;
 import com.android.settings.core.BasePreferenceController;
 import com.android.settings.core.CategoryMixin.CategoryHandler;
 import com.android.settings.core.CategoryMixin.CategoryListener;
+import com.android.settings.core.FeatureFlags;
 import com.android.settings.core.PreferenceControllerListHelper;
+import com.android.settings.core.PreferenceControllerLoader;
 import com.android.settings.overlay.FeatureFactory;
 import com.android.settingslib.PrimarySwitchPreference;
 import com.android.settingslib.core.AbstractPreferenceController;
@@ -53,6 +56,7 @@ import com.android.settingslib.core.lifecycle.Lifecycle;
 import com.android.settingslib.drawer.DashboardCategory;
 import com.android.settingslib.drawer.Tile;
 import com.android.settingslib.search.Indexable;
+import com.android.settingslib.utils.ThreadUtils;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -87,6 +91,7 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
     private DashboardFeatureProvider mDashboardFeatureProvider;
     private DashboardTilePlaceholderPreferenceController mPlaceholderPreferenceController;
     private boolean mListeningToCategoryChange;
+    private boolean mAsyncTileBinding;
     private List<String> mSuppressInjectedTileKeys;
 
     @Override
@@ -94,14 +99,23 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
         super.onAttach(context);
         mSuppressInjectedTileKeys = Arrays.asList(context.getResources().getStringArray(
                 R.array.config_suppress_injected_tile_keys));
+        mAsyncTileBinding = context.getResources().getBoolean(
+                R.bool.config_async_dashboard_tile_binding);
         mDashboardFeatureProvider =
                 FeatureFactory.getFeatureFactory().getDashboardFeatureProvider();
+        // Start loading preference controllers from xml definition in background, so that it
+        // overlaps with the controllers created from code.
+        final PreferenceControllerLoader controllerLoader = isParallelControllerLoadingEnabled(
+                context) ? PreferenceControllerLoader.start(context, getPreferenceScreenResId())
+                : null;
         // Load preference controllers from code
         final List<AbstractPreferenceController> controllersFromCode =
                 createPreferenceControllers(context);
         // Load preference controllers from xml definition
-        final List<BasePreferenceController> controllersFromXml = PreferenceControllerListHelper
-                .getPreferenceControllersFromXml(context, getPreferenceScreenResId());
+        final List<BasePreferenceController> controllersFromXml = controllerLoader != null
+                ? controllerLoader.await()
+                : PreferenceControllerListHelper.getPreferenceControllersFromXml(
+                        context, getPreferenceScreenResId());
         // Filter xml-based controllers in case a similar controller is created from code already.
         final List<BasePreferenceController> uniqueControllerFromXml =
                 PreferenceControllerListHelper.filterControllers(
@@ -137,6 +151,15 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
         }
     }
 
+    /**
+     * Returns true if the xml based controllers of this fragment can be instantiated in
+     * background. Override to return false if the controllers depend on being created on the main
+     * thread.
+     */
+    protected boolean isParallelControllerLoadingEnabled(Context context) {
+        return FeatureFlagUtils.isEnabled(context, FeatureFlags.CONTROLLER_ENHANCEMENT);
+    }
+
     @VisibleForTesting
     void checkUiBlocker(List<AbstractPreferenceController> controllers) {
         final List<String> keys = new ArrayList<>();
@@ -571,19 +594,27 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
             unregisterDynamicDataObservers(entry.getValue());
         }
 
-        // Wait for pending observers to update UI.
-        if (!pendingObservers.isEmpty()) {
-            final CountDownLatch mainLatch = new CountDownLatch(1);
-            new Thread(() -> {
-                pendingObservers.forEach(observer ->
-                        awaitObserverLatch(observer.getCountDownLatch()));
-                mainLatch.countDown();
-            }).start();
-            Log.d(tag, "Start waiting observers");
-            awaitObserverLatch(mainLatch);
-            Log.d(tag, "Stop waiting observers");
+        if (pendingObservers.isEmpty()) {
+            return;
+        }
+        if (mAsyncTileBinding) {
+            // Tiles are already displayed with their placeholder data, let the observers apply
+            // the dynamic data as soon as it is loaded.
             pendingObservers.forEach(DynamicDataObserver::updateUi);
+            return;
         }
+
+        // Wait for pending observers to update UI.
+        final CountDownLatch mainLatch = new CountDownLatch(1);
+        ThreadUtils.postOnBackgroundThread(() -> {
+            pendingObservers.forEach(observer ->
+                    awaitObserverLatch(observer.getCountDownLatch()));
+            mainLatch.countDown();
+        });
+        Log.d(tag, "Start waiting observers");
+        awaitObserverLatch(mainLatch);
+        Log.d(tag, "Stop waiting observers");
+        pendingObservers.forEach(DynamicDataObserver::updateUi);
     }
 
     @Override
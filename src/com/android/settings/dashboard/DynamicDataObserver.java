@@ -20,15 +20,22 @@ import android.net.Uri;
 import android.os.Handler;
 import android.os.Looper;
 
+import androidx.annotation.VisibleForTesting;
+
 import com.android.settingslib.utils.ThreadUtils;
 
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Observer for updating injected dynamic data.
  */
 public abstract class DynamicDataObserver extends ContentObserver {
 
+    private static final int EXECUTOR_THREADS = 4;
+    private static ExecutorService sExecutor;
+
     private Runnable mUpdateRunnable;
     private CountDownLatch mCountDownLatch;
     private boolean mUpdateDelegated;
@@ -40,6 +47,22 @@ public abstract class DynamicDataObserver extends ContentObserver {
         onDataChanged();
     }
 
+    /**
+     * Returns the executor shared by all observers to load dynamic data. It is bounded so a page
+     * with many injected tiles cannot flood the background threads with provider calls.
+     */
+    public static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            sExecutor = Executors.newFixedThreadPool(EXECUTOR_THREADS);
+        }
+        return sExecutor;
+    }
+
+    @VisibleForTesting
+    static synchronized void setExecutor(ExecutorService executor) {
+        sExecutor = executor;
+    }
+
     /** Returns the uri of the callback. */
     public abstract Uri getUri();
 
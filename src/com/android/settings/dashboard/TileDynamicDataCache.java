@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.dashboard;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.android.settingslib.drawer.Tile;
+
+import java.util.Map;
+
+/**
+ * Disk backed LRU cache of the last known dynamic title, summary and switch state of injected
+ * tiles, so they can be displayed right away when a page is opened, even after process restart.
+ *
+ * Entries are keyed by tile component and dynamic data uri, and are replaced whenever the
+ * {@link DynamicDataObserver} of the tile loads new data.
+ */
+public class TileDynamicDataCache {
+
+    @VisibleForTesting
+    static final String SHARED_PREFS_NAME = "dashboard_tile_dynamic_data";
+    @VisibleForTesting
+    static final int MAX_ENTRIES = 128;
+
+    private final SharedPreferences mSharedPreferences;
+    private LruCache<String, String> mCache;
+
+    public TileDynamicDataCache(Context context) {
+        // Start loading the file in background before the first lookup.
+        mSharedPreferences = context.getSharedPreferences(SHARED_PREFS_NAME,
+                Context.MODE_PRIVATE);
+    }
+
+    /** Returns the key of the dynamic data loaded from the uri for the tile. */
+    public static String getKey(Tile tile, Uri uri) {
+        final ComponentName component = tile.getIntent().getComponent();
+        final String prefix = component != null
+                ? component.flattenToShortString() : tile.getPackageName();
+        return prefix + "|" + uri;
+    }
+
+    /** Returns the last known value of the key, or {@code null} if it is not cached. */
+    @Nullable
+    public synchronized String get(String key) {
+        return getCache().get(key);
+    }
+
+    /** Updates the value of the key, or removes it if the value is {@code null}. */
+    public synchronized void put(String key, @Nullable String value) {
+        if (value == null) {
+            remove(key);
+            return;
+        }
+        if (value.equals(getCache().put(key, value))) {
+            return;
+        }
+        mSharedPreferences.edit().putString(key, value).apply();
+    }
+
+    /** Removes the value of the key. */
+    public synchronized void remove(String key) {
+        if (getCache().remove(key) != null) {
+            mSharedPreferences.edit().remove(key).apply();
+        }
+    }
+
+    private LruCache<String, String> getCache() {
+        if (mCache == null) {
+            mCache = new LruCache<String, String>(MAX_ENTRIES) {
+                @Override
+                protected void entryRemoved(boolean evicted, String key, String oldValue,
+                        String newValue) {
+                    if (evicted) {
+                        mSharedPreferences.edit().remove(key).apply();
+                    }
+                }
+            };
+            for (Map.Entry<String, ?> entry : mSharedPreferences.getAll().entrySet()) {
+                if (entry.getValue() instanceof String) {
+                    mCache.put(entry.getKey(), (String) entry.getValue());
+                }
+            }
+        }
+        return mCache;
+    }
+}
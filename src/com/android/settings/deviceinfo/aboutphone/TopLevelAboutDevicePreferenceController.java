@@ -21,7 +21,8 @@ import android.content.Context;
 import com.android.settings.core.BasePreferenceController;
 import com.android.settings.deviceinfo.DeviceNamePreferenceController;
 
-public class TopLevelAboutDevicePreferenceController extends BasePreferenceController {
+public class TopLevelAboutDevicePreferenceController extends BasePreferenceController
+        implements BasePreferenceController.BackgroundInstantiable {
 
     public TopLevelAboutDevicePreferenceController(Context context, String preferenceKey) {
         super(context, preferenceKey);
@@ -21,7 +21,8 @@ import android.content.Context;
 import com.android.settings.R;
 import com.android.settings.core.BasePreferenceController;
 
-public class TopLevelDisplayPreferenceController extends BasePreferenceController {
+public class TopLevelDisplayPreferenceController extends BasePreferenceController
+        implements BasePreferenceController.BackgroundInstantiable {
 
     public TopLevelDisplayPreferenceController(Context context, String preferenceKey) {
         super(context, preferenceKey);
@@ -38,14 +38,13 @@ import com.android.settings.applications.AppInfoBase;
 import com.android.settings.core.instrumentation.InstrumentedDialogFragment;
 import com.android.settings.overlay.FeatureFactory;
 import com.android.settingslib.applications.ApplicationsState.AppEntry;
-import com.android.settingslib.fuelgauge.PowerAllowlistBackend;
 
 public class HighPowerDetail extends InstrumentedDialogFragment
         implements OnClickListener, View.OnClickListener {
 
     private static final String ARG_DEFAULT_ON = "default_on";
 
-    @VisibleForTesting PowerAllowlistBackend mBackend;
+    @VisibleForTesting PowerAllowlistSnapshot mAllowlist;
     @VisibleForTesting BatteryUtils mBatteryUtils;
     @VisibleForTesting String mPackageName;
     @VisibleForTesting int mPackageUid;
@@ -65,7 +64,7 @@ public class HighPowerDetail extends InstrumentedDialogFragment
         super.onCreate(savedInstanceState);
         final Context context = getContext();
         mBatteryUtils = BatteryUtils.getInstance(context);
-        mBackend = PowerAllowlistBackend.getInstance(context);
+        mAllowlist = PowerAllowlistSnapshot.getInstance(context);
 
         mPackageName = getArguments().getString(AppInfoBase.ARG_PACKAGE_NAME);
         mPackageUid = getArguments().getInt(AppInfoBase.ARG_PACKAGE_UID);
@@ -76,7 +75,7 @@ public class HighPowerDetail extends InstrumentedDialogFragment
             mLabel = mPackageName;
         }
         mDefaultOn = getArguments().getBoolean(ARG_DEFAULT_ON);
-        mIsEnabled = mDefaultOn || mBackend.isAllowlisted(mPackageName, mPackageUid);
+        mIsEnabled = mDefaultOn || mAllowlist.isAllowlisted(mPackageName, mPackageUid);
     }
 
     public Checkable setup(View view, boolean on) {
@@ -89,7 +88,7 @@ public class HighPowerDetail extends InstrumentedDialogFragment
                                 : R.string.ignore_optimizations_off_desc);
         view.setClickable(true);
         view.setOnClickListener(this);
-        if (!on && mBackend.isSysAllowlisted(mPackageName)) {
+        if (!on && mAllowlist.isSysAllowlisted(mPackageName)) {
             view.setEnabled(false);
         }
         return (Checkable) view;
@@ -102,7 +101,7 @@ public class HighPowerDetail extends InstrumentedDialogFragment
                         .setTitle(mLabel)
                         .setNegativeButton(R.string.cancel, null)
                         .setView(R.layout.ignore_optimizations_content);
-        if (!mBackend.isSysAllowlisted(mPackageName)) {
+        if (!mAllowlist.isSysAllowlisted(mPackageName)) {
             b.setPositiveButton(R.string.done, this);
         }
         return b.create();
@@ -136,15 +135,15 @@ public class HighPowerDetail extends InstrumentedDialogFragment
     public void onClick(DialogInterface dialog, int which) {
         if (which == DialogInterface.BUTTON_POSITIVE) {
             boolean newValue = mIsEnabled;
-            boolean oldValue = mBackend.isAllowlisted(mPackageName, mPackageUid);
+            boolean oldValue = mAllowlist.isAllowlisted(mPackageName, mPackageUid);
             if (newValue != oldValue) {
                 logSpecialPermissionChange(newValue, mPackageName, getContext());
                 if (newValue) {
                     mBatteryUtils.setForceAppStandby(
                             mPackageUid, mPackageName, AppOpsManager.MODE_ALLOWED);
-                    mBackend.addApp(mPackageName);
+                    mAllowlist.addApp(mPackageName);
                 } else {
-                    mBackend.removeApp(mPackageName);
+                    mAllowlist.removeApp(mPackageName);
                 }
             }
         }
@@ -175,12 +174,12 @@ public class HighPowerDetail extends InstrumentedDialogFragment
     }
 
     public static CharSequence getSummary(Context context, String pkg, int uid) {
-        return getSummary(context, PowerAllowlistBackend.getInstance(context), pkg, uid);
+        return getSummary(context, PowerAllowlistSnapshot.getInstance(context), pkg, uid);
     }
 
     @VisibleForTesting
     static CharSequence getSummary(
-            Context context, PowerAllowlistBackend powerAllowlist, String pkg, int uid) {
+            Context context, PowerAllowlistSnapshot powerAllowlist, String pkg, int uid) {
         return context.getString(
                 powerAllowlist.isSysAllowlisted(pkg) || powerAllowlist.isDefaultActiveApp(pkg, uid)
                         ? R.string.high_power_system
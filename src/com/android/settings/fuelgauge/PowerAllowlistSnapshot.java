@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.IDeviceIdleController;
+import android.os.PowerManager;
+import android.os.RemoteException;
+import android.os.ServiceManager;
+import android.os.UserHandle;
+import android.util.ArrayMap;
+import android.util.Log;
+import android.util.SparseArray;
+
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import com.android.settingslib.fuelgauge.PowerAllowlistBackend;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A snapshot of the power allowlist, answering the lookups of all the apps of a list locally.
+ *
+ * <p>The full and system allowlists are loaded together in two calls, and whether an app is
+ * active by default is asked once per app. They are loaded again only after the allowlist is
+ * changed, as told by {@link PowerManager#ACTION_POWER_SAVE_WHITELIST_CHANGED}. The apps active by
+ * default follow the roles and device admins, which are not told, so they are asked again once
+ * the apps of a list are loaded again.
+ */
+public final class PowerAllowlistSnapshot {
+    private static final String TAG = "PowerAllowlistSnapshot";
+    private static final String DEVICE_IDLE_SERVICE = "deviceidle";
+
+    private static PowerAllowlistSnapshot sInstance;
+
+    private final PowerAllowlistBackend mBackend;
+    private final IDeviceIdleController mDeviceIdleService;
+    // Whether each package of a uid is active by default, by the uid.
+    private final SparseArray<Map<String, Boolean>> mDefaultActiveApps = new SparseArray<>();
+
+    // Both are null until they are loaded.
+    private Set<String> mAllowlistedApps;
+    private Set<String> mSysAllowlistedApps;
+
+    private final BroadcastReceiver mAllowlistReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            invalidate();
+        }
+    };
+
+    /** Returns the process-wide instance, which follows the changes of the allowlist. */
+    public static synchronized PowerAllowlistSnapshot getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new PowerAllowlistSnapshot(PowerAllowlistBackend.getInstance(context),
+                    IDeviceIdleController.Stub.asInterface(
+                            ServiceManager.getService(DEVICE_IDLE_SERVICE)));
+            context.getApplicationContext().registerReceiverAsUser(
+                    sInstance.mAllowlistReceiver, UserHandle.ALL,
+                    new IntentFilter(PowerManager.ACTION_POWER_SAVE_WHITELIST_CHANGED),
+                    null, null);
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    PowerAllowlistSnapshot(PowerAllowlistBackend backend, IDeviceIdleController deviceIdleService) {
+        mBackend = backend;
+        mDeviceIdleService = deviceIdleService;
+    }
+
+    /** Whether the app is in the allowlist or active by default. */
+    public synchronized boolean isAllowlisted(String packageName, int uid) {
+        loadIfNeeded();
+        return mAllowlistedApps.contains(packageName) || isDefaultActiveApp(packageName, uid);
+    }
+
+    /** Whether the app is in the system allowlist, which can not be changed by the user. */
+    public synchronized boolean isSysAllowlisted(String packageName) {
+        loadIfNeeded();
+        return mSysAllowlistedApps.contains(packageName);
+    }
+
+    /** Whether the app is active by default, such as the default SMS app or a device admin. */
+    public synchronized boolean isDefaultActiveApp(String packageName, int uid) {
+        Map<String, Boolean> packages = mDefaultActiveApps.get(uid);
+        if (packages == null) {
+            packages = new ArrayMap<>();
+            mDefaultActiveApps.put(uid, packages);
+        }
+        Boolean isDefaultActive = packages.get(packageName);
+        if (isDefaultActive == null) {
+            isDefaultActive = mBackend.isDefaultActiveApp(packageName, uid);
+            packages.put(packageName, isDefaultActive);
+        }
+        return isDefaultActive;
+    }
+
+    /** Adds the app into the allowlist. */
+    public synchronized void addApp(String packageName) {
+        mBackend.addApp(packageName);
+        if (mAllowlistedApps != null) {
+            mAllowlistedApps.add(packageName);
+        }
+    }
+
+    /** Removes the app from the allowlist. */
+    public synchronized void removeApp(String packageName) {
+        mBackend.removeApp(packageName);
+        if (mAllowlistedApps != null) {
+            mAllowlistedApps.remove(packageName);
+        }
+    }
+
+    /** Drops the loaded allowlists, which are loaded again on the next lookup. */
+    public synchronized void invalidate() {
+        mAllowlistedApps = null;
+        mSysAllowlistedApps = null;
+        mDefaultActiveApps.clear();
+    }
+
+    /**
+     * Reloads the default SMS and dialer apps, and drops whether the apps are active by default,
+     * which is asked again on the next lookup.
+     */
+    @WorkerThread
+    public void invalidateDefaultActiveApps() {
+        // The backend only loads the default SMS and dialer apps with its allowlist.
+        mBackend.refreshList();
+        synchronized (this) {
+            mDefaultActiveApps.clear();
+        }
+    }
+
+    @VisibleForTesting
+    BroadcastReceiver getAllowlistReceiver() {
+        return mAllowlistReceiver;
+    }
+
+    private void loadIfNeeded() {
+        if (mAllowlistedApps != null) {
+            return;
+        }
+        final Set<String> allowlistedApps = new HashSet<>();
+        final Set<String> sysAllowlistedApps = new HashSet<>();
+        try {
+            addAll(allowlistedApps, mDeviceIdleService.getFullPowerWhitelist());
+            addAll(sysAllowlistedApps, mDeviceIdleService.getSystemPowerWhitelist());
+        } catch (RemoteException e) {
+            Log.w(TAG, "Unable to reach IDeviceIdleController", e);
+        }
+        mAllowlistedApps = allowlistedApps;
+        mSysAllowlistedApps = sysAllowlistedApps;
+    }
+
+    private static void addAll(Set<String> set, String[] packageNames) {
+        if (packageNames != null) {
+            set.addAll(Arrays.asList(packageNames));
+        }
+    }
+}
@@ -18,6 +18,7 @@ package com.android.settings.fuelgauge.batterytip;
 
 import android.content.Context;
 import android.os.BatteryUsageStats;
+import android.util.Log;
 
 import androidx.annotation.VisibleForTesting;
 
@@ -26,13 +27,23 @@ import com.android.settings.fuelgauge.BatteryUtils;
 import com.android.settings.fuelgauge.batterytip.detectors.BatteryDefenderDetector;
 import com.android.settings.fuelgauge.batterytip.detectors.HighUsageDetector;
 import com.android.settings.fuelgauge.batterytip.detectors.IncompatibleChargerDetector;
+import com.android.settings.fuelgauge.batterytip.tips.BatteryDefenderTip;
 import com.android.settings.fuelgauge.batterytip.tips.BatteryTip;
+import com.android.settings.fuelgauge.batterytip.tips.HighUsageTip;
+import com.android.settings.fuelgauge.batterytip.tips.IncompatibleChargerTip;
 import com.android.settings.overlay.FeatureFactory;
 import com.android.settingslib.utils.AsyncLoaderCompat;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
 /**
  * Loader to compute and return a battery tip list. It will always return a full length list even
@@ -40,6 +51,13 @@ import java.util.List;
  */
 public class BatteryTipLoader extends AsyncLoaderCompat<List<BatteryTip>> {
     private static final String TAG = "BatteryTipLoader";
+    private static final int POOL_SIZE =
+            Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+
+    @VisibleForTesting static ExecutorService sExecutor;
+    // The max time to wait for each detector except HighUsageDetector, its tip is invisible if it
+    // is timed out.
+    @VisibleForTesting static long sDetectorTimeoutMs = 2000;
 
     private BatteryUsageStats mBatteryUsageStats;
 
@@ -58,11 +76,50 @@ public class BatteryTipLoader extends AsyncLoaderCompat<List<BatteryTip>> {
         final BatteryInfo batteryInfo = mBatteryUtils.getBatteryInfo(TAG);
         final Context context = getContext().getApplicationContext();
 
+        // Runs the detectors concurrently, and collects the results in the original order.
+        final ExecutorService executor = getExecutor();
+        final Future<BatteryTip> highUsageFuture =
+                executor.submit(
+                        () ->
+                                new HighUsageDetector(
+                                                context,
+                                                batteryTipPolicy,
+                                                mBatteryUsageStats,
+                                                batteryInfo)
+                                        .detect());
+        final Future<BatteryTip> batteryDefenderFuture =
+                executor.submit(() -> new BatteryDefenderDetector(batteryInfo, context).detect());
+        final Future<BatteryTip> incompatibleChargerFuture =
+                executor.submit(() -> new IncompatibleChargerDetector(context).detect());
+
+        tips.add(
+                getResult(
+                        "BatteryDefenderDetector",
+                        batteryDefenderFuture,
+                        sDetectorTimeoutMs,
+                        () ->
+                                new BatteryDefenderTip(
+                                        BatteryTip.StateType.INVISIBLE,
+                                        batteryInfo.pluggedStatus != 0)));
+        tips.add(
+                getResult(
+                        "IncompatibleChargerDetector",
+                        incompatibleChargerFuture,
+                        sDetectorTimeoutMs,
+                        () -> new IncompatibleChargerTip(BatteryTip.StateType.INVISIBLE)));
+        // The high usage tip is the slowest one, and its result would be lost once it is timed
+        // out, so it is waited for without a timeout after the other detectors.
         tips.add(
-                new HighUsageDetector(context, batteryTipPolicy, mBatteryUsageStats, batteryInfo)
-                        .detect());
-        tips.add(new BatteryDefenderDetector(batteryInfo, context).detect());
-        tips.add(new IncompatibleChargerDetector(context).detect());
+                getResult(
+                        "HighUsageDetector",
+                        highUsageFuture,
+                        /* timeoutMs= */ 0L,
+                        () ->
+                                new HighUsageTip(
+                                        mBatteryUtils.calculateLastFullChargeTime(
+                                                mBatteryUsageStats, System.currentTimeMillis()),
+                                        new ArrayList<>())));
+        // The feature provider may read or update the detected tips, so it runs after them.
         FeatureFactory.getFeatureFactory()
                 .getBatterySettingsFeatureProvider()
                 .addBatteryTipDetector(context, tips, batteryInfo, batteryTipPolicy);
@@ -72,4 +129,33 @@ public class BatteryTipLoader extends AsyncLoaderCompat<List<BatteryTip>> {
 
     @Override
     protected void onDiscardResult(List<BatteryTip> result) {}
+
+    /**
+     * Waits for the detector result, or returns the fallback result if it failed in time.
+     *
+     * @param timeoutMs the max time to wait, or 0 to wait until the detector is completed
+     */
+    private static <T> T getResult(
+            String name, Future<T> future, long timeoutMs, Supplier<T> fallback) {
+        try {
+            return timeoutMs > 0L ? future.get(timeoutMs, TimeUnit.MILLISECONDS) : future.get();
+        } catch (TimeoutException e) {
+            Log.w(TAG, name + " timed out after " + timeoutMs + "ms");
+            future.cancel(/* mayInterruptIfRunning= */ true);
+        } catch (ExecutionException e) {
+            Log.e(TAG, name + " failed", e.getCause());
+        } catch (InterruptedException e) {
+            Log.w(TAG, name + " interrupted");
+            future.cancel(/* mayInterruptIfRunning= */ true);
+            Thread.currentThread().interrupt();
+        }
+        return fallback.get();
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            sExecutor = Executors.newFixedThreadPool(POOL_SIZE);
+        }
+        return sExecutor;
+    }
 }
@@ -34,7 +34,9 @@ import com.android.settings.fuelgauge.batterytip.tips.BatteryTip;
 import com.android.settings.fuelgauge.batterytip.tips.HighUsageTip;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -44,6 +46,14 @@ import java.util.concurrent.TimeUnit;
 public class HighUsageDetector implements BatteryTipDetector {
     private static final String TAG = "HighUsageDetector";
 
+    // Caches the high usage apps of the latest battery stats epoch, which changes when the
+    // battery stats are reset or the battery level is changed.
+    private static final Object sCacheLock = new Object();
+    private static long sCachedStatsStartTimestamp = -1;
+    private static int sCachedDischargePercentage = -1;
+    private static int sCachedHighUsageAppCount = -1;
+    private static List<AppInfo> sCachedHighUsageAppList;
+
     private BatteryTipPolicy mPolicy;
     private BatteryUsageStats mBatteryUsageStats;
     private final BatteryInfo mBatteryInfo;
@@ -74,37 +84,12 @@ public class HighUsageDetector implements BatteryTipDetector {
                 mBatteryUtils.calculateLastFullChargeTime(
                         mBatteryUsageStats, System.currentTimeMillis());
         if (mPolicy.highUsageEnabled && mDischarging) {
+            if (!mPolicy.testHighUsageTip && loadCachedHighUsageAppList()) {
+                return new HighUsageTip(lastFullChargeTimeMs, mHighUsageAppList);
+            }
             parseBatteryData();
             if (mDataParser.isDeviceHeavilyUsed() || mPolicy.testHighUsageTip) {
-                final double totalPower = mBatteryUsageStats.getConsumedPower();
-                final int dischargeAmount = mBatteryUsageStats.getDischargePercentage();
-                final List<UidBatteryConsumer> uidBatteryConsumers =
-                        mBatteryUsageStats.getUidBatteryConsumers();
-                // Sort by descending power
-                uidBatteryConsumers.sort(
-                        (consumer1, consumer2) ->
-                                Double.compare(
-                                        consumer2.getConsumedPower(),
-                                        consumer1.getConsumedPower()));
-                for (UidBatteryConsumer consumer : uidBatteryConsumers) {
-                    final double percent =
-                            mBatteryUtils.calculateBatteryPercent(
-                                    consumer.getConsumedPower(), totalPower, dischargeAmount);
-                    if ((percent + 0.5f < 1f)
-                            || mBatteryUtils.shouldHideUidBatteryConsumer(consumer)) {
-                        // Don't show it if we should hide or usage percentage is lower than 1%
-                        continue;
-                    }
-
-                    mHighUsageAppList.add(
-                            new AppInfo.Builder()
-                                    .setUid(consumer.getUid())
-                                    .setPackageName(mBatteryUtils.getPackageName(consumer.getUid()))
-                                    .build());
-                    if (mHighUsageAppList.size() >= mPolicy.highUsageAppCount) {
-                        break;
-                    }
-                }
+                addTopHighUsageApps();
 
                 // When in test mode, add an app if necessary
                 if (mPolicy.testHighUsageTip && mHighUsageAppList.isEmpty()) {
@@ -115,11 +100,104 @@ public class HighUsageDetector implements BatteryTipDetector {
                                     .build());
                 }
             }
+            if (!mPolicy.testHighUsageTip) {
+                cacheHighUsageAppList();
+            }
         }
 
         return new HighUsageTip(lastFullChargeTimeMs, mHighUsageAppList);
     }
 
+    /** Clears the cached high usage apps. */
+    @VisibleForTesting
+    public static void clearCache() {
+        synchronized (sCacheLock) {
+            sCachedStatsStartTimestamp = -1;
+            sCachedDischargePercentage = -1;
+            sCachedHighUsageAppCount = -1;
+            sCachedHighUsageAppList = null;
+        }
+    }
+
+    /**
+     * Adds the top {@code highUsageAppCount} apps by descending power into the high usage list.
+     * The candidates are kept in a bounded min-heap, so only the consumers which could enter the
+     * top list are checked against the hidden list, and only the final ones resolve the package
+     * name.
+     */
+    private void addTopHighUsageApps() {
+        final double totalPower = mBatteryUsageStats.getConsumedPower();
+        final int dischargeAmount = mBatteryUsageStats.getDischargePercentage();
+        final List<UidBatteryConsumer> uidBatteryConsumers =
+                mBatteryUsageStats.getUidBatteryConsumers();
+        final int appCount = mPolicy.highUsageAppCount;
+        if (appCount <= 0) {
+            return;
+        }
+        // Orders by ascending power, and the later consumer goes first for the same power, so the
+        // head is always the one to drop. It keeps the order of the stable descending sort.
+        final Comparator<Integer> comparator =
+                Comparator.<Integer>comparingDouble(
+                                index -> uidBatteryConsumers.get(index).getConsumedPower())
+                        .thenComparing(Comparator.<Integer>reverseOrder());
+        final PriorityQueue<Integer> topIndexes = new PriorityQueue<>(appCount, comparator);
+        for (int index = 0; index < uidBatteryConsumers.size(); index++) {
+            final UidBatteryConsumer consumer = uidBatteryConsumers.get(index);
+            final double percent =
+                    mBatteryUtils.calculateBatteryPercent(
+                            consumer.getConsumedPower(), totalPower, dischargeAmount);
+            // Don't show it if usage percentage is lower than 1%
+            if (percent + 0.5f < 1f) {
+                continue;
+            }
+            if (topIndexes.size() >= appCount
+                    && comparator.compare(index, topIndexes.peek()) <= 0) {
+                continue;
+            }
+            // Don't show it if we should hide
+            if (mBatteryUtils.shouldHideUidBatteryConsumer(consumer)) {
+                continue;
+            }
+            topIndexes.offer(index);
+            if (topIndexes.size() > appCount) {
+                topIndexes.poll();
+            }
+        }
+
+        final List<Integer> sortedIndexes = new ArrayList<>(topIndexes);
+        sortedIndexes.sort(comparator.reversed());
+        for (int index : sortedIndexes) {
+            final int uid = uidBatteryConsumers.get(index).getUid();
+            mHighUsageAppList.add(
+                    new AppInfo.Builder()
+                            .setUid(uid)
+                            .setPackageName(mBatteryUtils.getPackageName(uid))
+                            .build());
+        }
+    }
+
+    private boolean loadCachedHighUsageAppList() {
+        synchronized (sCacheLock) {
+            if (sCachedHighUsageAppList == null
+                    || sCachedStatsStartTimestamp != mBatteryUsageStats.getStatsStartTimestamp()
+                    || sCachedDischargePercentage != mBatteryUsageStats.getDischargePercentage()
+                    || sCachedHighUsageAppCount != mPolicy.highUsageAppCount) {
+                return false;
+            }
+            mHighUsageAppList.addAll(sCachedHighUsageAppList);
+            return true;
+        }
+    }
+
+    private void cacheHighUsageAppList() {
+        synchronized (sCacheLock) {
+            sCachedStatsStartTimestamp = mBatteryUsageStats.getStatsStartTimestamp();
+            sCachedDischargePercentage = mBatteryUsageStats.getDischargePercentage();
+            sCachedHighUsageAppCount = mPolicy.highUsageAppCount;
+            sCachedHighUsageAppList = new ArrayList<>(mHighUsageAppList);
+        }
+    }
+
     @VisibleForTesting
     void parseBatteryData() {
         try {
@@ -33,7 +33,6 @@ import android.graphics.Path;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
-import android.util.ArraySet;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.HapticFeedbackConstants;
@@ -55,9 +54,9 @@ import com.android.settings.R;
 import com.android.settingslib.Utils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
-import java.util.Set;
 
 /** A widget component to draw chart graph. */
 public class BatteryChartView extends AppCompatImageView implements View.OnClickListener {
@@ -75,13 +74,21 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
     private final String[] mPercentages = getPercentages();
     private final Rect mIndent = new Rect();
     private final Rect[] mPercentageBounds = new Rect[] {new Rect(), new Rect(), new Rect()};
+    // Pooled objects reused by every measure and draw pass to avoid allocations per frame.
     private final List<Rect> mAxisLabelsBounds = new ArrayList<>();
-    private final Set<Integer> mLabelDrawnIndexes = new ArraySet<>();
+    @VisibleForTesting final Path mTrapezoidPath = new Path();
+    @VisibleForTesting Rect[] mAxisLabelDisplayAreas = new Rect[0];
+    private boolean[] mLabelDrawnIndexes = new boolean[0];
     private final int mLayoutDirection =
             getContext().getResources().getConfiguration().getLayoutDirection();
 
     private BatteryChartViewModel mViewModel;
     private int mHoveredIndex = BatteryChartViewModel.SELECTED_INDEX_INVALID;
+    // The selection state of mViewModel when it was set, to find out the changed trapezoids.
+    private int mLastSelectedIndex = BatteryChartViewModel.SELECTED_INDEX_INVALID;
+    private int mLastHighlightSlotIndex = BatteryChartViewModel.SELECTED_INDEX_INVALID;
+    // Whether the text bounds should be measured again in the next onMeasure().
+    private boolean mTextBoundsDirty = true;
     private int mDividerWidth;
     private int mDividerHeight;
     private float mTrapezoidVOffset;
@@ -138,7 +145,15 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
                         viewModel.size(),
                         viewModel.selectedIndex(),
                         viewModel.getHighlightSlotIndex()));
+        if (viewModel == mViewModel && mTrapezoidSlots != null) {
+            // Only the selected or highlight index is changed, no need to layout again.
+            invalidateSelectionChange();
+            return;
+        }
         mViewModel = viewModel;
+        mLastSelectedIndex = viewModel.selectedIndex();
+        mLastHighlightSlotIndex = viewModel.getHighlightSlotIndex();
+        mTextBoundsDirty = true;
         initializeAxisLabelsBounds();
         initializeTrapezoidSlots(viewModel.size() - 1);
         setClickable(hasAnyValidTrapezoid(viewModel));
@@ -160,14 +175,20 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
         } else {
             mTextPaint = null;
         }
+        mTextBoundsDirty = true;
         requestLayout();
     }
 
     @Override
     public void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
         super.onMeasure(widthMeasureSpec, heightMeasureSpec);
-        // Measures text bounds and updates indent configuration.
+        // Measures text bounds and updates indent configuration. The text bounds are kept until
+        // the texts or the text paint are changed.
         if (mTextPaint != null) {
+            if (!mTextBoundsDirty) {
+                return;
+            }
+            mTextBoundsDirty = false;
             mTextPaint.setTextAlign(Paint.Align.LEFT);
             for (int index = 0; index < mPercentages.length; index++) {
                 mTextPaint.getTextBounds(
@@ -237,8 +258,9 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
             case MotionEvent.ACTION_HOVER_MOVE:
                 final int trapezoidIndex = getTrapezoidIndex(event.getX());
                 if (mHoveredIndex != trapezoidIndex) {
+                    invalidateTrapezoid(mHoveredIndex);
+                    invalidateTrapezoid(trapezoidIndex);
                     mHoveredIndex = trapezoidIndex;
-                    invalidate();
                     sendAccessibilityEventForHover(AccessibilityEvent.TYPE_VIEW_HOVER_ENTER);
                 }
                 // Ignore the super.onHoverEvent() because the hovered trapezoid has already been
@@ -247,8 +269,8 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
             case MotionEvent.ACTION_HOVER_EXIT:
                 if (mHoveredIndex != BatteryChartViewModel.SELECTED_INDEX_INVALID) {
                     sendAccessibilityEventForHover(AccessibilityEvent.TYPE_VIEW_HOVER_EXIT);
+                    invalidateTrapezoid(mHoveredIndex);
                     mHoveredIndex = BatteryChartViewModel.SELECTED_INDEX_INVALID; // reset
-                    invalidate();
                 }
                 // Ignore the super.onHoverEvent() because the hovered trapezoid has already been
                 // sent here.
@@ -261,9 +283,9 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
     @Override
     public void onHoverChanged(boolean hovered) {
         super.onHoverChanged(hovered);
-        if (!hovered) {
+        if (!hovered && mHoveredIndex != BatteryChartViewModel.SELECTED_INDEX_INVALID) {
+            invalidateTrapezoid(mHoveredIndex);
             mHoveredIndex = BatteryChartViewModel.SELECTED_INDEX_INVALID; // reset
-            invalidate();
         }
     }
 
@@ -442,11 +464,11 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
         // Draws the axis label slot information.
         if (mViewModel != null) {
             final float baselineY = getHeight() - mTextPadding;
-            Rect[] axisLabelDisplayAreas;
+            final int axisLabelCount;
             switch (mViewModel.axisLabelPosition()) {
                 case CENTER_OF_TRAPEZOIDS:
-                    axisLabelDisplayAreas =
-                            getAxisLabelDisplayAreas(
+                    axisLabelCount =
+                            updateAxisLabelDisplayAreas(
                                     /* size= */ mViewModel.size() - 1,
                                     /* baselineX= */ mIndent.left + mDividerWidth + unitWidth * .5f,
                                     /* offsetX= */ mDividerWidth + unitWidth,
@@ -455,8 +477,8 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
                     break;
                 case BETWEEN_TRAPEZOIDS:
                 default:
-                    axisLabelDisplayAreas =
-                            getAxisLabelDisplayAreas(
+                    axisLabelCount =
+                            updateAxisLabelDisplayAreas(
                                     /* size= */ mViewModel.size(),
                                     /* baselineX= */ mIndent.left + mDividerWidth * .5f,
                                     /* offsetX= */ mDividerWidth + unitWidth,
@@ -464,14 +486,14 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
                                     /* shiftFirstAndLast= */ true);
                     break;
             }
-            drawAxisLabels(canvas, axisLabelDisplayAreas, baselineY);
+            drawAxisLabels(canvas, mAxisLabelDisplayAreas, axisLabelCount, baselineY);
         }
         // Draws each vertical dividers.
         float startX = mDividerWidth * .5f + mIndent.left;
         for (int index = 0; index < dividerCount; index++) {
             float dividerY = bottomY;
             if (mViewModel.axisLabelPosition() == BETWEEN_TRAPEZOIDS
-                    && mLabelDrawnIndexes.contains(index)) {
+                    && mLabelDrawnIndexes[index]) {
                 mDividerPaint.setColor(mTrapezoidSolidColor);
                 dividerY += mDividerHeight / 4f;
             } else {
@@ -489,15 +511,18 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
         }
     }
 
-    /** Gets all the axis label texts displaying area positions if they are shown. */
-    private Rect[] getAxisLabelDisplayAreas(
+    /**
+     * Updates all the axis label texts displaying area positions if they are shown into {@code
+     * mAxisLabelDisplayAreas}, and returns the number of updated areas.
+     */
+    private int updateAxisLabelDisplayAreas(
             final int size,
             final float baselineX,
             final float offsetX,
             final float baselineY,
             final boolean shiftFirstAndLast) {
-        final Rect[] result = new Rect[size];
-        for (int index = 0; index < result.length; index++) {
+        final Rect[] result = mAxisLabelDisplayAreas;
+        for (int index = 0; index < size; index++) {
             final float width = mAxisLabelsBounds.get(index).width();
             float middle = baselineX + index * offsetX;
             if (shiftFirstAndLast) {
@@ -512,19 +537,20 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
             final float right = left + width;
             final float top = baselineY + mAxisLabelsBounds.get(index).top;
             final float bottom = top + mAxisLabelsBounds.get(index).height();
-            result[index] = new Rect(round(left), round(top), round(right), round(bottom));
+            result[index].set(round(left), round(top), round(right), round(bottom));
         }
-        return result;
+        return size;
     }
 
-    private void drawAxisLabels(Canvas canvas, final Rect[] displayAreas, final float baselineY) {
-        final int lastIndex = displayAreas.length - 1;
-        mLabelDrawnIndexes.clear();
+    private void drawAxisLabels(
+            Canvas canvas, final Rect[] displayAreas, final int count, final float baselineY) {
+        final int lastIndex = count - 1;
+        Arrays.fill(mLabelDrawnIndexes, false);
         // Suppose first and last labels are always able to draw.
         drawAxisLabelText(canvas, 0, displayAreas[0], baselineY);
-        mLabelDrawnIndexes.add(0);
+        mLabelDrawnIndexes[0] = true;
         drawAxisLabelText(canvas, lastIndex, displayAreas[lastIndex], baselineY);
-        mLabelDrawnIndexes.add(lastIndex);
+        mLabelDrawnIndexes[lastIndex] = true;
         drawAxisLabelsBetweenStartIndexAndEndIndex(canvas, displayAreas, 0, lastIndex, baselineY);
     }
 
@@ -551,7 +577,7 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
                 return;
             }
             drawAxisLabelText(canvas, middleIndex, displayAreas[middleIndex], baselineY);
-            mLabelDrawnIndexes.add(middleIndex);
+            mLabelDrawnIndexes[middleIndex] = true;
             drawAxisLabelsBetweenStartIndexAndEndIndex(
                     canvas, displayAreas, startIndex, middleIndex, baselineY);
             drawAxisLabelsBetweenStartIndexAndEndIndex(
@@ -565,9 +591,9 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
                 return;
             }
             drawAxisLabelText(canvas, middleIndex1, displayAreas[middleIndex1], baselineY);
-            mLabelDrawnIndexes.add(middleIndex1);
+            mLabelDrawnIndexes[middleIndex1] = true;
             drawAxisLabelText(canvas, middleIndex2, displayAreas[middleIndex2], baselineY);
-            mLabelDrawnIndexes.add(middleIndex2);
+            mLabelDrawnIndexes[middleIndex2] = true;
             drawAxisLabelsBetweenStartIndexAndEndIndex(
                     canvas, displayAreas, startIndex, middleIndex1, baselineY);
             drawAxisLabelsBetweenStartIndexAndEndIndex(
@@ -598,7 +624,7 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
                             : mViewModel.size() - index - 2; // for daily
         }
         canvas.drawText(mViewModel.getText(index), displayArea.centerX(), baselineY, mTextPaint);
-        mLabelDrawnIndexes.add(index);
+        mLabelDrawnIndexes[index] = true;
     }
 
     private void drawTrapezoids(Canvas canvas) {
@@ -612,8 +638,7 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
                 trapezoidBottom - mDividerWidth * .5f - mIndent.top - mTrapezoidVOffset;
         final float unitHeight = availableSpace / 100f;
         // Draws all trapezoid shapes into the canvas.
-        final Path trapezoidPath = new Path();
-        Path trapezoidCurvePath = null;
+        final Path trapezoidPath = mTrapezoidPath;
         for (int index = 0; index < mTrapezoidSlots.length; index++) {
             // Not draws the trapezoid for corner or not initialization cases.
             if (!isValidToDraw(mViewModel, index)) {
@@ -726,10 +751,52 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
     }
 
     private void initializeAxisLabelsBounds() {
-        mAxisLabelsBounds.clear();
-        for (int i = 0; i < mViewModel.size(); i++) {
+        // Keeps the allocated rects and only grows the pools for a larger view model.
+        final int size = mViewModel.size();
+        for (int i = mAxisLabelsBounds.size(); i < size; i++) {
             mAxisLabelsBounds.add(new Rect());
         }
+        if (mAxisLabelDisplayAreas.length < size) {
+            final int oldLength = mAxisLabelDisplayAreas.length;
+            mAxisLabelDisplayAreas = Arrays.copyOf(mAxisLabelDisplayAreas, size);
+            for (int i = oldLength; i < size; i++) {
+                mAxisLabelDisplayAreas[i] = new Rect();
+            }
+        }
+        if (mLabelDrawnIndexes.length < size) {
+            mLabelDrawnIndexes = new boolean[size];
+        }
+    }
+
+    private void invalidateSelectionChange() {
+        final int selectedIndex = mViewModel.selectedIndex();
+        final int highlightSlotIndex = mViewModel.getHighlightSlotIndex();
+        if (highlightSlotIndex != mLastHighlightSlotIndex
+                || selectedIndex == BatteryChartViewModel.SELECTED_INDEX_ALL
+                || mLastSelectedIndex == BatteryChartViewModel.SELECTED_INDEX_ALL) {
+            // The transom line or the color of all trapezoids is changed.
+            invalidate();
+        } else if (selectedIndex != mLastSelectedIndex) {
+            invalidateTrapezoid(mLastSelectedIndex);
+            invalidateTrapezoid(selectedIndex);
+        }
+        mLastSelectedIndex = selectedIndex;
+        mLastHighlightSlotIndex = highlightSlotIndex;
+    }
+
+    // Invalidates the area of a trapezoid only, the other trapezoids are not changed.
+    private void invalidateTrapezoid(int trapezoidIndex) {
+        if (mTrapezoidSlots == null
+                || trapezoidIndex < 0
+                || trapezoidIndex >= mTrapezoidSlots.length) {
+            return;
+        }
+        final TrapezoidSlot slot = mTrapezoidSlots[trapezoidIndex];
+        invalidate(
+                (int) Math.floor(slot.mLeft - mTrapezoidHOffset),
+                mIndent.top,
+                (int) Math.ceil(slot.mRight + mTrapezoidHOffset),
+                getHeight() - mIndent.bottom);
     }
 
     private static boolean isTrapezoidValid(
@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage;
+
+import android.content.BroadcastReceiver;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.android.settings.R;
+import com.android.settings.applications.AppIconLoader;
+import com.android.settings.fuelgauge.batteryusage.BatteryEntry.NameAndIcon;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A size bounded cache of the app labels, icons and package uids of the battery consumers, shared
+ * by {@link BatteryEntry} and {@link BatteryDiffEntry}.
+ *
+ * <p>The entries are spread over several {@link LruCache} stripes by the key hash, each one is
+ * locked independently, so the concurrent loaders rarely wait for each other. The entries of a
+ * package are dropped once the package is changed, and all labels are dropped once the locale is
+ * changed.
+ */
+public final class BatteryConsumerCache {
+    private static final String TAG = "BatteryConsumerCache";
+    private static final int STRIPE_COUNT = 8;
+    // The key prefix of the labels loaded for a package name instead of a battery consumer.
+    private static final String PACKAGE_KEY_PREFIX = "P|";
+
+    @VisibleForTesting static final int MAX_NAME_AND_ICON_COUNT = 256;
+    @VisibleForTesting static final int MAX_PACKAGE_UID_COUNT = 512;
+
+    private static BatteryConsumerCache sInstance;
+
+    private final List<LruCache<String, NameAndIcon>> mNameAndIconStripes = new ArrayList<>();
+    private final List<LruCache<String, Integer>> mPackageUidStripes = new ArrayList<>();
+    private final Object mLocaleLock = new Object();
+
+    private volatile Locale mLocale;
+    private boolean mIsReceiverRegistered;
+
+    private final BroadcastReceiver mPackageReceiver =
+            new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    final Uri data = intent.getData();
+                    final String packageName = data == null ? null : data.getSchemeSpecificPart();
+                    if (packageName != null) {
+                        invalidatePackage(packageName);
+                    }
+                    // The converted usage slots refer to the install state of the packages.
+                    BatteryUsageSlotCache.getInstance().clear();
+                }
+            };
+
+    /** Returns the process-wide instance. */
+    public static synchronized BatteryConsumerCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new BatteryConsumerCache();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the process-wide instance, and starts to drop the entries of the changed packages
+     * if it is not yet.
+     */
+    public static synchronized BatteryConsumerCache getInstance(Context context) {
+        final BatteryConsumerCache cache = getInstance();
+        if (!cache.mIsReceiverRegistered) {
+            cache.registerPackageReceiver(context.getApplicationContext());
+        }
+        return cache;
+    }
+
+    @VisibleForTesting
+    BatteryConsumerCache() {
+        for (int index = 0; index < STRIPE_COUNT; index++) {
+            mNameAndIconStripes.add(new LruCache<>(MAX_NAME_AND_ICON_COUNT / STRIPE_COUNT));
+            mPackageUidStripes.add(new LruCache<>(MAX_PACKAGE_UID_COUNT / STRIPE_COUNT));
+        }
+    }
+
+    /** Gets the cached label and icon of a battery consumer key. */
+    @Nullable
+    NameAndIcon getNameAndIcon(@Nullable String key) {
+        if (key == null) {
+            return null;
+        }
+        checkLocale();
+        return getStripe(mNameAndIconStripes, key).get(key);
+    }
+
+    /** Caches the label and icon of a battery consumer key. */
+    void putNameAndIcon(@Nullable String key, @NonNull NameAndIcon nameAndIcon) {
+        if (key == null) {
+            return;
+        }
+        checkLocale();
+        getStripe(mNameAndIconStripes, key).put(key, nameAndIcon);
+    }
+
+    /** Gets the cached label of a package. */
+    @Nullable
+    String getPackageLabel(@NonNull String packageName) {
+        final NameAndIcon nameAndIcon = getNameAndIcon(PACKAGE_KEY_PREFIX + packageName);
+        return nameAndIcon == null ? null : nameAndIcon.mName;
+    }
+
+    /** Caches the label of a package. */
+    void putPackageLabel(@NonNull String packageName, @NonNull String label) {
+        putNameAndIcon(
+                PACKAGE_KEY_PREFIX + packageName,
+                new NameAndIcon(label, packageName, /* icon= */ null, /* iconId= */ 0));
+    }
+
+    /** Gets the cached uid of a package. */
+    @Nullable
+    Integer getPackageUid(@NonNull String packageName) {
+        return getStripe(mPackageUidStripes, packageName).get(packageName);
+    }
+
+    /** Caches the uid of a package. */
+    void putPackageUid(@NonNull String packageName, int uid) {
+        getStripe(mPackageUidStripes, packageName).put(packageName, uid);
+    }
+
+    /** Drops all the cached data of a package. */
+    void invalidatePackage(@NonNull String packageName) {
+        int removedCount = 0;
+        for (LruCache<String, NameAndIcon> stripe : mNameAndIconStripes) {
+            for (Map.Entry<String, NameAndIcon> entry : stripe.snapshot().entrySet()) {
+                if (packageName.equals(entry.getValue().mPackageName)
+                        && stripe.remove(entry.getKey()) != null) {
+                    removedCount++;
+                }
+            }
+        }
+        if (getStripe(mPackageUidStripes, packageName).remove(packageName) != null) {
+            removedCount++;
+        }
+        Log.d(TAG, "invalidatePackage() " + packageName + " removed=" + removedCount);
+    }
+
+    /** Clears all the cached data. */
+    void clear() {
+        mNameAndIconStripes.forEach(LruCache::evictAll);
+        mPackageUidStripes.forEach(LruCache::evictAll);
+    }
+
+    /**
+     * Drops the cached labels and icons once the process is in the background and asked to trim
+     * its memory. The package uids are small and kept.
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            mNameAndIconStripes.forEach(LruCache::evictAll);
+        }
+    }
+
+    /** Dumps the usage of the cache. */
+    public void dump(PrintWriter writer) {
+        writer.println("\nBatteryConsumerCache:");
+        dumpStripes(writer, "nameAndIcon", mNameAndIconStripes, MAX_NAME_AND_ICON_COUNT);
+        dumpStripes(writer, "packageUid", mPackageUidStripes, MAX_PACKAGE_UID_COUNT);
+    }
+
+    @VisibleForTesting
+    int getNameAndIconCount() {
+        return getCount(mNameAndIconStripes);
+    }
+
+    @VisibleForTesting
+    int getPackageUidCount() {
+        return getCount(mPackageUidStripes);
+    }
+
+    @VisibleForTesting
+    BroadcastReceiver getPackageReceiver() {
+        return mPackageReceiver;
+    }
+
+    /**
+     * Returns the icon drawn in the size it is rendered in the app list, so the cache does not
+     * keep the full resolution icons. The icon is returned directly if it is not larger.
+     */
+    static Drawable toRenderedSize(Context context, @Nullable Drawable icon) {
+        final int size = context.getResources().getDimensionPixelSize(R.dimen.app_icon_size);
+        if (icon == null
+                || size <= 0
+                || (icon.getIntrinsicWidth() <= size && icon.getIntrinsicHeight() <= size)) {
+            return icon;
+        }
+        return new BitmapDrawable(
+                context.getResources(), AppIconLoader.drawBitmap(icon, size));
+    }
+
+    private void registerPackageReceiver(Context context) {
+        final IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addDataScheme("package");
+        context.registerReceiver(mPackageReceiver, filter, Context.RECEIVER_EXPORTED);
+        mIsReceiverRegistered = true;
+    }
+
+    private void checkLocale() {
+        final Locale locale = Locale.getDefault();
+        // Only takes the lock once the locale is changed, which is rare.
+        if (locale.equals(mLocale)) {
+            return;
+        }
+        synchronized (mLocaleLock) {
+            if (!locale.equals(mLocale)) {
+                Log.d(TAG, String.format("locale is changed from %s to %s", mLocale, locale));
+                // Drops the labels before publishing the locale, so they are not read after it.
+                mNameAndIconStripes.forEach(LruCache::evictAll);
+                mLocale = locale;
+            }
+        }
+    }
+
+    private static <V> LruCache<String, V> getStripe(
+            List<LruCache<String, V>> stripes, String key) {
+        return stripes.get((key.hashCode() & Integer.MAX_VALUE) % STRIPE_COUNT);
+    }
+
+    private static <V> int getCount(List<LruCache<String, V>> stripes) {
+        int count = 0;
+        for (LruCache<String, V> stripe : stripes) {
+            count += stripe.size();
+        }
+        return count;
+    }
+
+    private static <V> void dumpStripes(
+            PrintWriter writer, String name, List<LruCache<String, V>> stripes, int maxCount) {
+        int hitCount = 0;
+        int missCount = 0;
+        int evictionCount = 0;
+        for (LruCache<String, V> stripe : stripes) {
+            hitCount += stripe.hitCount();
+            missCount += stripe.missCount();
+            evictionCount += stripe.evictionCount();
+        }
+        writer.println(
+                String.format(
+                        "\t%s: size=%d/%d hit=%d miss=%d eviction=%d",
+                        name, getCount(stripes), maxCount, hitCount, missCount, evictionCount));
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage;
+
+import static com.android.settingslib.fuelgauge.BatteryStatus.BATTERY_LEVEL_UNKNOWN;
+
+import android.content.Context;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges the usage of several {@link BatteryDiffData} into one accumulated {@link BatteryDiffData}.
+ *
+ * <p>The accumulator remembers which data it has merged, so a partially accumulated result can be
+ * copied, kept around and extended later with the data added since then.
+ */
+final class BatteryDiffDataAccumulator {
+
+    private final Map<String, BatteryDiffEntry> mDiffEntryMap = new ArrayMap<>();
+    private final List<BatteryDiffData> mMergedDataList = new ArrayList<>();
+
+    private long mStartTimestamp = Long.MAX_VALUE;
+    private long mEndTimestamp = 0;
+    private int mStartBatteryLevel = BATTERY_LEVEL_UNKNOWN;
+    private int mEndBatteryLevel = BATTERY_LEVEL_UNKNOWN;
+    private long mScreenOnTime = 0;
+
+    /** Merges the usage of {@code batteryDiffData} into the accumulated usage. */
+    void add(@Nullable BatteryDiffData batteryDiffData) {
+        mMergedDataList.add(batteryDiffData);
+        if (batteryDiffData == null) {
+            return;
+        }
+        if (mStartTimestamp > batteryDiffData.getStartTimestamp()) {
+            mStartTimestamp = batteryDiffData.getStartTimestamp();
+            mStartBatteryLevel = batteryDiffData.getStartBatteryLevel();
+        }
+        if (mEndTimestamp > batteryDiffData.getEndTimestamp()) {
+            mEndTimestamp = batteryDiffData.getEndTimestamp();
+            mEndBatteryLevel = batteryDiffData.getEndBatteryLevel();
+        }
+        mScreenOnTime += batteryDiffData.getScreenOnTime();
+        for (BatteryDiffEntry entry : batteryDiffData.getAppDiffEntryList()) {
+            addEntry(entry);
+        }
+        for (BatteryDiffEntry entry : batteryDiffData.getSystemDiffEntryList()) {
+            addEntry(entry);
+        }
+    }
+
+    /** Returns the number of {@link BatteryDiffData} merged so far, including null ones. */
+    int getMergedCount() {
+        return mMergedDataList.size();
+    }
+
+    /**
+     * Whether the merged data are exactly the same instances as the first items of {@code
+     * batteryDiffDataList}, in the same order.
+     */
+    boolean isMergedPrefixOf(@NonNull List<BatteryDiffData> batteryDiffDataList) {
+        if (mMergedDataList.size() > batteryDiffDataList.size()) {
+            return false;
+        }
+        for (int index = 0; index < mMergedDataList.size(); index++) {
+            if (mMergedDataList.get(index) != batteryDiffDataList.get(index)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns an independent copy which can be extended without changing this one. */
+    BatteryDiffDataAccumulator copy() {
+        final BatteryDiffDataAccumulator accumulator = new BatteryDiffDataAccumulator();
+        for (Map.Entry<String, BatteryDiffEntry> entry : mDiffEntryMap.entrySet()) {
+            accumulator.mDiffEntryMap.put(entry.getKey(), entry.getValue().clone());
+        }
+        accumulator.mMergedDataList.addAll(mMergedDataList);
+        accumulator.mStartTimestamp = mStartTimestamp;
+        accumulator.mEndTimestamp = mEndTimestamp;
+        accumulator.mStartBatteryLevel = mStartBatteryLevel;
+        accumulator.mEndBatteryLevel = mEndBatteryLevel;
+        accumulator.mScreenOnTime = mScreenOnTime;
+        return accumulator;
+    }
+
+    /**
+     * Builds the accumulated {@link BatteryDiffData}. The accumulated entries are handed over to
+     * the result, so the accumulator should not be used afterwards.
+     */
+    BatteryDiffData build(Context context) {
+        final List<BatteryDiffEntry> appEntries = new ArrayList<>();
+        final List<BatteryDiffEntry> systemEntries = new ArrayList<>();
+        for (BatteryDiffEntry entry : mDiffEntryMap.values()) {
+            if (entry.isSystemEntry()) {
+                systemEntries.add(entry);
+            } else {
+                appEntries.add(entry);
+            }
+        }
+        return new BatteryDiffData(
+                context,
+                mStartTimestamp,
+                mEndTimestamp,
+                mStartBatteryLevel,
+                mEndBatteryLevel,
+                mScreenOnTime,
+                appEntries,
+                systemEntries,
+                /* systemAppsPackageNames= */ new ArraySet<>(),
+                /* systemAppsUids= */ new ArraySet<>(),
+                /* isAccumulated= */ true);
+    }
+
+    private void addEntry(final BatteryDiffEntry entry) {
+        final String key = entry.getKey();
+        final BatteryDiffEntry oldBatteryDiffEntry = mDiffEntryMap.get(key);
+        // Creates new BatteryDiffEntry if we don't have it.
+        if (oldBatteryDiffEntry == null) {
+            mDiffEntryMap.put(key, entry.clone());
+        } else {
+            // Sums up some field data into the existing one.
+            oldBatteryDiffEntry.mForegroundUsageTimeInMs += entry.mForegroundUsageTimeInMs;
+            oldBatteryDiffEntry.mForegroundServiceUsageTimeInMs +=
+                    entry.mForegroundServiceUsageTimeInMs;
+            oldBatteryDiffEntry.mBackgroundUsageTimeInMs += entry.mBackgroundUsageTimeInMs;
+            oldBatteryDiffEntry.mScreenOnTimeInMs += entry.mScreenOnTimeInMs;
+            oldBatteryDiffEntry.mConsumePower += entry.mConsumePower;
+            oldBatteryDiffEntry.mForegroundUsageConsumePower += entry.mForegroundUsageConsumePower;
+            oldBatteryDiffEntry.mForegroundServiceUsageConsumePower +=
+                    entry.mForegroundServiceUsageConsumePower;
+            oldBatteryDiffEntry.mBackgroundUsageConsumePower += entry.mBackgroundUsageConsumePower;
+            oldBatteryDiffEntry.mCachedUsageConsumePower += entry.mCachedUsageConsumePower;
+        }
+    }
+}
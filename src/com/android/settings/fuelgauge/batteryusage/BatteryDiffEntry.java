@@ -36,26 +36,13 @@ import com.android.settings.fuelgauge.batteryusage.BatteryEntry.NameAndIcon;
 import com.android.settingslib.utils.StringUtil;
 
 import java.util.Comparator;
-import java.util.Locale;
 import java.util.Map;
 
 /** A container class to carry battery data in a specific time slot. */
 public class BatteryDiffEntry {
     private static final String TAG = "BatteryDiffEntry";
-    private static final Object sResourceCacheLock = new Object();
-    private static final Object sPackageNameAndUidCacheLock = new Object();
     private static final Object sValidForRestrictionLock = new Object();
 
-    static Locale sCurrentLocale = null;
-
-    // Caches app label and icon to improve loading performance.
-    @GuardedBy("sResourceCacheLock")
-    static final Map<String, NameAndIcon> sResourceCache = new ArrayMap<>();
-
-    // Caches package name and uid to improve loading performance.
-    @GuardedBy("sPackageNameAndUidCacheLock")
-    static final Map<String, Integer> sPackageNameAndUidCache = new ArrayMap<>();
-
     // Whether a specific item is valid to launch restriction page?
     @VisibleForTesting(otherwise = VisibleForTesting.PACKAGE_PRIVATE)
     @GuardedBy("sValidForRestrictionLock")
@@ -318,17 +305,15 @@ public class BatteryDiffEntry {
     }
 
     private int getPackageUid(String packageName) {
-        synchronized (sPackageNameAndUidCacheLock) {
-            if (sPackageNameAndUidCache.containsKey(packageName)) {
-                return sPackageNameAndUidCache.get(packageName);
-            }
+        final BatteryConsumerCache cache = BatteryConsumerCache.getInstance(mContext);
+        final Integer cachedUid = cache.getPackageUid(packageName);
+        if (cachedUid != null) {
+            return cachedUid;
         }
 
         int uid =
                 BatteryUtils.getInstance(mContext).getPackageUidAsUser(packageName, (int) mUserId);
-        synchronized (sPackageNameAndUidCacheLock) {
-            sPackageNameAndUidCache.put(packageName, uid);
-        }
+        cache.putPackageUid(packageName, uid);
         return uid;
     }
 
@@ -401,11 +386,16 @@ public class BatteryDiffEntry {
                 if (mAppIcon == null) {
                     mAppIcon = mContext.getPackageManager().getDefaultActivityIcon();
                 }
-                // Adds badge icon into app icon for work profile.
-                mAppIcon = getBadgeIconForUser(mAppIcon);
+                // Adds badge icon into app icon for work profile, and keeps it in the size it is
+                // rendered at.
+                mAppIcon =
+                        BatteryConsumerCache.toRenderedSize(
+                                mContext, getBadgeIconForUser(mAppIcon));
                 if (mAppLabel != null || mAppIcon != null) {
                     putResourceCache(
-                            getKey(), new NameAndIcon(mAppLabel, mAppIcon, /* iconId= */ 0));
+                            getKey(),
+                            new NameAndIcon(
+                                    mAppLabel, getPackageName(), mAppIcon, /* iconId= */ 0));
                 }
                 break;
         }
@@ -449,19 +439,7 @@ public class BatteryDiffEntry {
     }
 
     private NameAndIcon getCache() {
-        final Locale locale = Locale.getDefault();
-        if (sCurrentLocale != locale) {
-            Log.d(
-                    TAG,
-                    String.format(
-                            "clearCache() locale is changed from %s to %s",
-                            sCurrentLocale, locale));
-            sCurrentLocale = locale;
-            clearCache();
-        }
-        synchronized (sResourceCacheLock) {
-            return sResourceCache.get(getKey());
-        }
+        return BatteryConsumerCache.getInstance(mContext).getNameAndIcon(getKey());
     }
 
     private void loadNameAndIconForUid() {
@@ -499,8 +477,6 @@ public class BatteryDiffEntry {
         final NameAndIcon nameAndIcon =
                 BatteryEntry.loadNameAndIcon(
                         mContext, uid, /* batteryEntry= */ null, packageName, mAppLabel, mAppIcon);
-        // Clears BatteryEntry internal cache since we will have another one.
-        BatteryEntry.clearUidCache();
         if (nameAndIcon != null) {
             mAppLabel = nameAndIcon.mName;
             mAppIcon = nameAndIcon.mIcon;
@@ -567,21 +543,15 @@ public class BatteryDiffEntry {
 
     /** Clears all cache data. */
     public static void clearCache() {
-        synchronized (sResourceCacheLock) {
-            sResourceCache.clear();
-        }
+        BatteryConsumerCache.getInstance().clear();
+        BatteryUsageSlotCache.getInstance().clear();
         synchronized (sValidForRestrictionLock) {
             sValidForRestriction.clear();
         }
-        synchronized (sPackageNameAndUidCacheLock) {
-            sPackageNameAndUidCache.clear();
-        }
     }
 
-    private static void putResourceCache(String key, NameAndIcon nameAndIcon) {
-        synchronized (sResourceCacheLock) {
-            sResourceCache.put(key, nameAndIcon);
-        }
+    private void putResourceCache(String key, NameAndIcon nameAndIcon) {
+        BatteryConsumerCache.getInstance(mContext).putNameAndIcon(key, nameAndIcon);
     }
 
     private Drawable getBadgeIconForUser(Drawable icon) {
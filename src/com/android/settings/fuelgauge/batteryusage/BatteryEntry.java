@@ -33,7 +33,6 @@ import android.os.UidBatteryConsumer;
 import android.os.UserBatteryConsumer;
 import android.os.UserHandle;
 import android.os.UserManager;
-import android.util.ArrayMap;
 import android.util.DebugUtils;
 import android.util.Log;
 
@@ -91,15 +90,8 @@ public class BatteryEntry {
                         BatteryConsumer.POWER_COMPONENT_ANY, BatteryConsumer.PROCESS_STATE_CACHED),
             };
 
-    static final ArrayMap<String, UidToDetail> sUidCache = new ArrayMap<>();
-
     static Locale sCurrentLocale = null;
 
-    /** Clears the UID cache. */
-    public static void clearUidCache() {
-        sUidCache.clear();
-    }
-
     public static final Comparator<BatteryEntry> COMPARATOR =
             (a, b) -> Double.compare(b.getConsumedPower(), a.getConsumedPower());
 
@@ -125,12 +117,6 @@ public class BatteryEntry {
     private double mConsumedPowerInBackground;
     private double mConsumedPowerInCached;
 
-    static class UidToDetail {
-        String mName;
-        String mPackageName;
-        Drawable mIcon;
-    }
-
     public BatteryEntry(
             Context context,
             UserManager um,
@@ -174,12 +160,17 @@ public class BatteryEntry {
                                     : uidBatteryConsumer.getPackageWithHighestDrain();
                 }
             }
+            final BatteryConsumerCache cache = BatteryConsumerCache.getInstance(context);
             if (mDefaultPackageName != null) {
+                mName = cache.getPackageLabel(mDefaultPackageName);
+            }
+            if (mDefaultPackageName != null && mName == null) {
                 PackageManager pm = context.getPackageManager();
                 try {
                     ApplicationInfo appInfo =
                             pm.getApplicationInfo(mDefaultPackageName, 0 /* no flags */);
                     mName = pm.getApplicationLabel(appInfo).toString();
+                    cache.putPackageLabel(mDefaultPackageName, mName);
                 } catch (NameNotFoundException e) {
                     Log.d(
                             TAG,
@@ -285,7 +276,7 @@ public class BatteryEntry {
         return mPowerComponentId;
     }
 
-    /** Loads the app label and icon image and stores into the cache. */
+    /** Loads the app label and icon image. */
     public static NameAndIcon loadNameAndIcon(
             Context context,
             int uid,
@@ -382,17 +373,9 @@ public class BatteryEntry {
             }
         }
 
-        final String uidString = Integer.toString(uid);
         if (icon == null) {
             icon = pm.getDefaultActivityIcon();
         }
-
-        UidToDetail utd = new UidToDetail();
-        utd.mName = name;
-        utd.mIcon = icon;
-        utd.mPackageName = defaultPackageName;
-
-        sUidCache.put(uidString, utd);
         return new NameAndIcon(name, defaultPackageName, icon, /* iconId= */ 0);
     }
 
@@ -127,7 +127,8 @@ public class BatteryHistEntry {
         mBatteryHealth = deviceBatteryState.getBatteryHealth();
     }
 
-    private BatteryHistEntry(
+    /** Creates a {@link BatteryHistEntry} with the metadata of another one and new values. */
+    BatteryHistEntry(
             BatteryHistEntry fromEntry,
             long bootTimestamp,
             long timestamp,
@@ -0,0 +1,497 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage;
+
+import android.content.ContentValues;
+import android.util.ArrayMap;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.util.Preconditions;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A columnar store of the battery history snapshots.
+ *
+ * <p>The snapshot timestamps are kept sorted in a {@code long[]}, and the consumers are interned
+ * into int ids. The usage metrics of every (consumer, slot) cell are kept in primitive arrays
+ * indexed by {@code consumerId * slotCount + slot}, so that the history of a whole week can be
+ * processed without boxing timestamps or allocating an entry map per snapshot.
+ */
+public final class BatteryHistoryTable {
+    private static final int MIN_CONSUMER_CAPACITY = 16;
+    private static final BatteryHistEntry PLACEHOLDER_ENTRY =
+            new BatteryHistEntry(new ContentValues());
+
+    private final long[] mTimestamps;
+    private final int mSlotCount;
+    private final int[] mEntryCounts;
+    private final boolean[] mPlaceholders;
+
+    private final ArrayMap<String, Integer> mConsumerIds = new ArrayMap<>();
+    private String[] mConsumerKeys;
+    private int mConsumerCount;
+    private int mConsumerCapacity;
+    private int[] mConsumerIdsInKeyOrder;
+
+    // The entry providing the metadata (uid, package, label, ...) of each cell, null if the
+    // consumer has no data in the slot.
+    private BatteryHistEntry[] mSourceEntries;
+    private boolean[] mInterpolated;
+    private long[] mBootTimestamps;
+    private long[] mForegroundUsageTimes;
+    private long[] mForegroundServiceUsageTimes;
+    private long[] mBackgroundUsageTimes;
+    private double[] mTotalPowers;
+    private double[] mConsumePowers;
+    private double[] mForegroundUsageConsumePowers;
+    private double[] mForegroundServiceUsageConsumePowers;
+    private double[] mBackgroundUsageConsumePowers;
+    private double[] mCachedUsageConsumePowers;
+    private int[] mBatteryLevels;
+
+    /** Creates an empty table for the sorted timestamps. */
+    BatteryHistoryTable(@NonNull long[] sortedTimestamps) {
+        this(sortedTimestamps, /* consumerSource= */ null);
+    }
+
+    /**
+     * Creates an empty table for the sorted timestamps, sharing the consumer ids of {@code
+     * consumerSource} so that its cells can be copied or interpolated without key lookups.
+     */
+    BatteryHistoryTable(
+            @NonNull long[] sortedTimestamps, @Nullable BatteryHistoryTable consumerSource) {
+        mTimestamps = sortedTimestamps;
+        mSlotCount = sortedTimestamps.length;
+        mEntryCounts = new int[mSlotCount];
+        mPlaceholders = new boolean[mSlotCount];
+        final int consumerCount = consumerSource == null ? 0 : consumerSource.mConsumerCount;
+        allocate(Math.max(MIN_CONSUMER_CAPACITY, consumerCount));
+        for (int consumerId = 0; consumerId < consumerCount; consumerId++) {
+            internConsumer(consumerSource.mConsumerKeys[consumerId]);
+        }
+    }
+
+    /** Creates a table from the battery history map keyed by timestamp and consumer key. */
+    static BatteryHistoryTable fromHistoryMap(
+            @NonNull Map<Long, Map<String, BatteryHistEntry>> batteryHistoryMap) {
+        final long[] timestamps = new long[batteryHistoryMap.size()];
+        int index = 0;
+        for (long timestamp : batteryHistoryMap.keySet()) {
+            timestamps[index++] = timestamp;
+        }
+        Arrays.sort(timestamps);
+        final BatteryHistoryTable table = new BatteryHistoryTable(timestamps);
+        for (int slot = 0; slot < timestamps.length; slot++) {
+            final Map<String, BatteryHistEntry> entryMap = batteryHistoryMap.get(timestamps[slot]);
+            if (entryMap == null) {
+                continue;
+            }
+            for (Map.Entry<String, BatteryHistEntry> mapEntry : entryMap.entrySet()) {
+                if (DataProcessor.CURRENT_TIME_BATTERY_HISTORY_PLACEHOLDER.equals(
+                        mapEntry.getKey())) {
+                    table.mPlaceholders[slot] = true;
+                } else {
+                    table.putEntry(slot, mapEntry.getKey(), mapEntry.getValue());
+                }
+            }
+        }
+        return table;
+    }
+
+    /** Creates a table from the battery history entries loaded from the database. */
+    static BatteryHistoryTable fromEntries(@NonNull List<BatteryHistEntry> entries) {
+        long[] timestamps = new long[entries.size()];
+        for (int index = 0; index < timestamps.length; index++) {
+            timestamps[index] = entries.get(index).mTimestamp;
+        }
+        Arrays.sort(timestamps);
+        int uniqueCount = 0;
+        for (int index = 0; index < timestamps.length; index++) {
+            if (uniqueCount == 0 || timestamps[uniqueCount - 1] != timestamps[index]) {
+                timestamps[uniqueCount++] = timestamps[index];
+            }
+        }
+        timestamps = Arrays.copyOf(timestamps, uniqueCount);
+        final BatteryHistoryTable table = new BatteryHistoryTable(timestamps);
+        for (BatteryHistEntry entry : entries) {
+            table.putEntry(table.indexOf(entry.mTimestamp), entry.getKey(), entry);
+        }
+        return table;
+    }
+
+    /**
+     * Converts the table back into a battery history map. Interpolated cells are materialized as
+     * new {@link BatteryHistEntry}s.
+     */
+    Map<Long, Map<String, BatteryHistEntry>> toHistoryMap() {
+        final Map<Long, Map<String, BatteryHistEntry>> resultMap = new ArrayMap<>(mSlotCount);
+        for (int slot = 0; slot < mSlotCount; slot++) {
+            if (mPlaceholders[slot]) {
+                resultMap.put(
+                        mTimestamps[slot],
+                        Map.of(DataProcessor.CURRENT_TIME_BATTERY_HISTORY_PLACEHOLDER,
+                                PLACEHOLDER_ENTRY));
+                continue;
+            }
+            final Map<String, BatteryHistEntry> entryMap = new ArrayMap<>(mEntryCounts[slot]);
+            for (int consumerId = 0; consumerId < mConsumerCount; consumerId++) {
+                final int cell = getCell(slot, consumerId);
+                if (mSourceEntries[cell] != null) {
+                    entryMap.put(mConsumerKeys[consumerId], toEntry(slot, cell));
+                }
+            }
+            resultMap.put(mTimestamps[slot], entryMap);
+        }
+        return resultMap;
+    }
+
+    int getSlotCount() {
+        return mSlotCount;
+    }
+
+    long getTimestamp(int slot) {
+        return mTimestamps[slot];
+    }
+
+    /** Returns the slot of the timestamp, or -1 if there is no such slot. */
+    int indexOf(long timestamp) {
+        final int slot = Arrays.binarySearch(mTimestamps, timestamp);
+        return slot >= 0 ? slot : -1;
+    }
+
+    /** Returns the last slot whose timestamp is no later than the target, or -1 if none. */
+    int floorIndexOf(long timestamp) {
+        final int slot = Arrays.binarySearch(mTimestamps, timestamp);
+        return slot >= 0 ? slot : -slot - 2;
+    }
+
+    /** Returns the first slot whose timestamp is no earlier than the target, or -1 if none. */
+    int ceilingIndexOf(long timestamp) {
+        final int slot = Arrays.binarySearch(mTimestamps, timestamp);
+        final int insertionPoint = slot >= 0 ? slot : -slot - 1;
+        return insertionPoint < mSlotCount ? insertionPoint : -1;
+    }
+
+    /** Returns the number of consumers having data in the slot. */
+    int getEntryCount(int slot) {
+        return mEntryCounts[slot];
+    }
+
+    /** Whether the slot is waiting for the current battery history to be loaded. */
+    boolean isPlaceholder(int slot) {
+        return mPlaceholders[slot];
+    }
+
+    void markPlaceholder(int slot) {
+        mPlaceholders[slot] = true;
+    }
+
+    /** Fills the placeholder slots with the current battery history. */
+    void replacePlaceholder(@NonNull Map<String, BatteryHistEntry> currentBatteryHistoryMap) {
+        for (int slot = 0; slot < mSlotCount; slot++) {
+            if (!mPlaceholders[slot]) {
+                continue;
+            }
+            mPlaceholders[slot] = false;
+            for (Map.Entry<String, BatteryHistEntry> mapEntry :
+                    currentBatteryHistoryMap.entrySet()) {
+                putEntry(slot, mapEntry.getKey(), mapEntry.getValue());
+            }
+        }
+    }
+
+    int getConsumerCount() {
+        return mConsumerCount;
+    }
+
+    String getConsumerKey(int consumerId) {
+        return mConsumerKeys[consumerId];
+    }
+
+    /**
+     * Returns the consumer ids ordered by the hash code of their keys, which is the iteration
+     * order of the key sets this table replaces, so that the order of generated entries is stable.
+     */
+    int[] getConsumerIdsInKeyOrder() {
+        if (mConsumerIdsInKeyOrder == null || mConsumerIdsInKeyOrder.length != mConsumerCount) {
+            final long[] sortKeys = new long[mConsumerCount];
+            for (int consumerId = 0; consumerId < mConsumerCount; consumerId++) {
+                final String key = mConsumerKeys[consumerId];
+                final long hash = key == null ? 0 : key.hashCode();
+                sortKeys[consumerId] = (hash << 32) | consumerId;
+            }
+            Arrays.sort(sortKeys);
+            mConsumerIdsInKeyOrder = new int[mConsumerCount];
+            for (int index = 0; index < mConsumerCount; index++) {
+                mConsumerIdsInKeyOrder[index] = (int) sortKeys[index];
+            }
+        }
+        return mConsumerIdsInKeyOrder;
+    }
+
+    boolean hasEntry(int slot, int consumerId) {
+        return mSourceEntries[getCell(slot, consumerId)] != null;
+    }
+
+    /** Returns the entry providing the metadata of the cell, or null if it has no data. */
+    @Nullable
+    BatteryHistEntry getSourceEntry(int slot, int consumerId) {
+        return mSourceEntries[getCell(slot, consumerId)];
+    }
+
+    long getForegroundUsageTimeInMs(int slot, int consumerId) {
+        return mForegroundUsageTimes[getCell(slot, consumerId)];
+    }
+
+    long getForegroundServiceUsageTimeInMs(int slot, int consumerId) {
+        return mForegroundServiceUsageTimes[getCell(slot, consumerId)];
+    }
+
+    long getBackgroundUsageTimeInMs(int slot, int consumerId) {
+        return mBackgroundUsageTimes[getCell(slot, consumerId)];
+    }
+
+    double getConsumePower(int slot, int consumerId) {
+        return mConsumePowers[getCell(slot, consumerId)];
+    }
+
+    double getForegroundUsageConsumePower(int slot, int consumerId) {
+        return mForegroundUsageConsumePowers[getCell(slot, consumerId)];
+    }
+
+    double getForegroundServiceUsageConsumePower(int slot, int consumerId) {
+        return mForegroundServiceUsageConsumePowers[getCell(slot, consumerId)];
+    }
+
+    double getBackgroundUsageConsumePower(int slot, int consumerId) {
+        return mBackgroundUsageConsumePowers[getCell(slot, consumerId)];
+    }
+
+    double getCachedUsageConsumePower(int slot, int consumerId) {
+        return mCachedUsageConsumePowers[getCell(slot, consumerId)];
+    }
+
+    int getBatteryLevel(int slot, int consumerId) {
+        return mBatteryLevels[getCell(slot, consumerId)];
+    }
+
+    /** Stores the entry of the consumer key into the slot. */
+    void putEntry(int slot, String key, @NonNull BatteryHistEntry entry) {
+        final int cell = getCell(slot, internConsumer(key));
+        if (mSourceEntries[cell] == null) {
+            mEntryCounts[slot]++;
+        }
+        mSourceEntries[cell] = entry;
+        mInterpolated[cell] = false;
+        mBootTimestamps[cell] = entry.mBootTimestamp;
+        mForegroundUsageTimes[cell] = entry.mForegroundUsageTimeInMs;
+        mForegroundServiceUsageTimes[cell] = entry.mForegroundServiceUsageTimeInMs;
+        mBackgroundUsageTimes[cell] = entry.mBackgroundUsageTimeInMs;
+        mTotalPowers[cell] = entry.mTotalPower;
+        mConsumePowers[cell] = entry.mConsumePower;
+        mForegroundUsageConsumePowers[cell] = entry.mForegroundUsageConsumePower;
+        mForegroundServiceUsageConsumePowers[cell] = entry.mForegroundServiceUsageConsumePower;
+        mBackgroundUsageConsumePowers[cell] = entry.mBackgroundUsageConsumePower;
+        mCachedUsageConsumePowers[cell] = entry.mCachedUsageConsumePower;
+        mBatteryLevels[cell] = entry.mBatteryLevel;
+    }
+
+    /** Copies all the cells of the source slot into the slot. */
+    void copySlot(int slot, @NonNull BatteryHistoryTable source, int sourceSlot) {
+        for (int consumerId = 0; consumerId < source.mConsumerCount; consumerId++) {
+            if (source.hasEntry(sourceSlot, consumerId)) {
+                copyEntry(slot, consumerId, source, sourceSlot);
+            }
+        }
+        mPlaceholders[slot] = source.mPlaceholders[sourceSlot];
+    }
+
+    /** Copies a cell of the table sharing the consumer ids of this one. */
+    void copyEntry(int slot, int consumerId, @NonNull BatteryHistoryTable source, int sourceSlot) {
+        checkConsumerSource(source);
+        final int cell = getCell(slot, consumerId);
+        final int sourceCell = source.getCell(sourceSlot, consumerId);
+        if (mSourceEntries[cell] == null) {
+            mEntryCounts[slot]++;
+        }
+        mSourceEntries[cell] = source.mSourceEntries[sourceCell];
+        mInterpolated[cell] = source.mInterpolated[sourceCell];
+        mBootTimestamps[cell] = source.mBootTimestamps[sourceCell];
+        mForegroundUsageTimes[cell] = source.mForegroundUsageTimes[sourceCell];
+        mForegroundServiceUsageTimes[cell] = source.mForegroundServiceUsageTimes[sourceCell];
+        mBackgroundUsageTimes[cell] = source.mBackgroundUsageTimes[sourceCell];
+        mTotalPowers[cell] = source.mTotalPowers[sourceCell];
+        mConsumePowers[cell] = source.mConsumePowers[sourceCell];
+        mForegroundUsageConsumePowers[cell] = source.mForegroundUsageConsumePowers[sourceCell];
+        mForegroundServiceUsageConsumePowers[cell] =
+                source.mForegroundServiceUsageConsumePowers[sourceCell];
+        mBackgroundUsageConsumePowers[cell] = source.mBackgroundUsageConsumePowers[sourceCell];
+        mCachedUsageConsumePowers[cell] = source.mCachedUsageConsumePowers[sourceCell];
+        mBatteryLevels[cell] = source.mBatteryLevels[sourceCell];
+    }
+
+    /**
+     * Interpolates a cell between the lower and upper slots of the table sharing the consumer ids
+     * of this one, the same way as {@link BatteryHistEntry#interpolate}.
+     *
+     * @param lowerSlot the lower slot, or -1 to interpolate from zero values.
+     */
+    void interpolateEntry(
+            int slot,
+            int consumerId,
+            @NonNull BatteryHistoryTable source,
+            int lowerSlot,
+            int upperSlot,
+            double ratio) {
+        checkConsumerSource(source);
+        final int cell = getCell(slot, consumerId);
+        final int upperCell = source.getCell(upperSlot, consumerId);
+        final int lowerCell = lowerSlot < 0 ? -1 : source.getCell(lowerSlot, consumerId);
+        if (mSourceEntries[cell] == null) {
+            mEntryCounts[slot]++;
+        }
+        mSourceEntries[cell] = source.mSourceEntries[upperCell];
+        mInterpolated[cell] = true;
+        mBootTimestamps[cell] =
+                source.mBootTimestamps[upperCell]
+                        - (source.mTimestamps[upperSlot] - mTimestamps[slot]);
+        mForegroundUsageTimes[cell] =
+                Math.round(interpolate(source.mForegroundUsageTimes, lowerCell, upperCell, ratio));
+        mForegroundServiceUsageTimes[cell] =
+                Math.round(
+                        interpolate(
+                                source.mForegroundServiceUsageTimes, lowerCell, upperCell, ratio));
+        mBackgroundUsageTimes[cell] =
+                Math.round(interpolate(source.mBackgroundUsageTimes, lowerCell, upperCell, ratio));
+        mTotalPowers[cell] = interpolate(source.mTotalPowers, lowerCell, upperCell, ratio);
+        mConsumePowers[cell] = interpolate(source.mConsumePowers, lowerCell, upperCell, ratio);
+        mForegroundUsageConsumePowers[cell] =
+                interpolate(source.mForegroundUsageConsumePowers, lowerCell, upperCell, ratio);
+        mForegroundServiceUsageConsumePowers[cell] =
+                interpolate(
+                        source.mForegroundServiceUsageConsumePowers, lowerCell, upperCell, ratio);
+        mBackgroundUsageConsumePowers[cell] =
+                interpolate(source.mBackgroundUsageConsumePowers, lowerCell, upperCell, ratio);
+        mCachedUsageConsumePowers[cell] =
+                interpolate(source.mCachedUsageConsumePowers, lowerCell, upperCell, ratio);
+        mBatteryLevels[cell] =
+                lowerCell < 0
+                        ? source.mBatteryLevels[upperCell]
+                        : (int)
+                                Math.round(
+                                        interpolate(
+                                                source.mBatteryLevels[lowerCell],
+                                                source.mBatteryLevels[upperCell],
+                                                ratio));
+    }
+
+    private BatteryHistEntry toEntry(int slot, int cell) {
+        if (!mInterpolated[cell]) {
+            return mSourceEntries[cell];
+        }
+        return new BatteryHistEntry(
+                mSourceEntries[cell],
+                mBootTimestamps[cell],
+                mTimestamps[slot],
+                mTotalPowers[cell],
+                mConsumePowers[cell],
+                mForegroundUsageConsumePowers[cell],
+                mForegroundServiceUsageConsumePowers[cell],
+                mBackgroundUsageConsumePowers[cell],
+                mCachedUsageConsumePowers[cell],
+                mForegroundUsageTimes[cell],
+                mForegroundServiceUsageTimes[cell],
+                mBackgroundUsageTimes[cell],
+                mBatteryLevels[cell]);
+    }
+
+    private int getCell(int slot, int consumerId) {
+        return consumerId * mSlotCount + slot;
+    }
+
+    private int internConsumer(String key) {
+        final Integer consumerId = mConsumerIds.get(key);
+        if (consumerId != null) {
+            return consumerId;
+        }
+        if (mConsumerCount == mConsumerCapacity) {
+            allocate(mConsumerCapacity * 2);
+        }
+        mConsumerIds.put(key, mConsumerCount);
+        mConsumerKeys[mConsumerCount] = key;
+        return mConsumerCount++;
+    }
+
+    private void checkConsumerSource(BatteryHistoryTable source) {
+        Preconditions.checkArgument(
+                source.mConsumerCount <= mConsumerCount,
+                "source table doesn't share the consumer ids");
+    }
+
+    // The cells are stored consumer by consumer, so adding consumers only appends to the columns.
+    private void allocate(int consumerCapacity) {
+        final int size = consumerCapacity * mSlotCount;
+        mConsumerCapacity = consumerCapacity;
+        mConsumerKeys =
+                mConsumerKeys == null
+                        ? new String[consumerCapacity]
+                        : Arrays.copyOf(mConsumerKeys, consumerCapacity);
+        mSourceEntries =
+                mSourceEntries == null
+                        ? new BatteryHistEntry[size]
+                        : Arrays.copyOf(mSourceEntries, size);
+        mInterpolated =
+                mInterpolated == null ? new boolean[size] : Arrays.copyOf(mInterpolated, size);
+        mBootTimestamps = resize(mBootTimestamps, size);
+        mForegroundUsageTimes = resize(mForegroundUsageTimes, size);
+        mForegroundServiceUsageTimes = resize(mForegroundServiceUsageTimes, size);
+        mBackgroundUsageTimes = resize(mBackgroundUsageTimes, size);
+        mTotalPowers = resize(mTotalPowers, size);
+        mConsumePowers = resize(mConsumePowers, size);
+        mForegroundUsageConsumePowers = resize(mForegroundUsageConsumePowers, size);
+        mForegroundServiceUsageConsumePowers = resize(mForegroundServiceUsageConsumePowers, size);
+        mBackgroundUsageConsumePowers = resize(mBackgroundUsageConsumePowers, size);
+        mCachedUsageConsumePowers = resize(mCachedUsageConsumePowers, size);
+        mBatteryLevels =
+                mBatteryLevels == null ? new int[size] : Arrays.copyOf(mBatteryLevels, size);
+    }
+
+    private static long[] resize(@Nullable long[] array, int size) {
+        return array == null ? new long[size] : Arrays.copyOf(array, size);
+    }
+
+    private static double[] resize(@Nullable double[] array, int size) {
+        return array == null ? new double[size] : Arrays.copyOf(array, size);
+    }
+
+    private static double interpolate(long[] column, int lowerCell, int upperCell, double ratio) {
+        return interpolate(lowerCell < 0 ? 0 : column[lowerCell], column[upperCell], ratio);
+    }
+
+    private static double interpolate(
+            double[] column, int lowerCell, int upperCell, double ratio) {
+        return interpolate(lowerCell < 0 ? 0 : column[lowerCell], column[upperCell], ratio);
+    }
+
+    private static double interpolate(double v1, double v2, double ratio) {
+        return v1 + ratio * (v2 - v1);
+    }
+}
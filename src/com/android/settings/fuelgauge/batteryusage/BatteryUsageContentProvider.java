@@ -17,17 +17,26 @@
 package com.android.settings.fuelgauge.batteryusage;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.CursorWrapper;
 import android.net.Uri;
+import android.os.Binder;
+import android.os.Process;
+import android.os.UserHandle;
 import android.text.TextUtils;
+import android.util.Base64;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 
+import com.android.settings.fuelgauge.batteryusage.bugreport.BatteryUsageLogUtils;
 import com.android.settings.fuelgauge.batteryusage.db.AppUsageEventDao;
 import com.android.settings.fuelgauge.batteryusage.db.AppUsageEventEntity;
 import com.android.settings.fuelgauge.batteryusage.db.BatteryEventDao;
@@ -44,6 +53,8 @@ import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /** {@link ContentProvider} class to fetch battery usage data. */
 public class BatteryUsageContentProvider extends ContentProvider {
@@ -98,6 +109,7 @@ public class BatteryUsageContentProvider extends ContentProvider {
     }
 
     private Clock mClock;
+    private BatteryStateDatabase mDatabase;
     private BatteryStateDao mBatteryStateDao;
     private AppUsageEventDao mAppUsageEventDao;
     private BatteryEventDao mBatteryEventDao;
@@ -115,11 +127,11 @@ public class BatteryUsageContentProvider extends ContentProvider {
             return false;
         }
         mClock = Clock.systemUTC();
-        final BatteryStateDatabase database = BatteryStateDatabase.getInstance(getContext());
-        mBatteryStateDao = database.batteryStateDao();
-        mAppUsageEventDao = database.appUsageEventDao();
-        mBatteryEventDao = database.batteryEventDao();
-        mBatteryUsageSlotDao = database.batteryUsageSlotDao();
+        mDatabase = BatteryStateDatabase.getInstance(getContext());
+        mBatteryStateDao = mDatabase.batteryStateDao();
+        mAppUsageEventDao = mDatabase.appUsageEventDao();
+        mBatteryEventDao = mDatabase.batteryEventDao();
+        mBatteryUsageSlotDao = mDatabase.batteryUsageSlotDao();
         Log.w(TAG, "create content provider from " + getCallingPackage());
         return true;
     }
@@ -134,7 +146,8 @@ public class BatteryUsageContentProvider extends ContentProvider {
             @Nullable String s1) {
         switch (sUriMatcher.match(uri)) {
             case BATTERY_STATE_CODE:
-                return getBatteryStates(uri);
+                return toExternalCursor(
+                        getBatteryStates(uri), BatteryHistEntry.KEY_BATTERY_INFORMATION);
             case APP_USAGE_EVENT_CODE:
                 return getAppUsageEvents(uri);
             case APP_USAGE_LATEST_TIMESTAMP_CODE:
@@ -146,7 +159,8 @@ public class BatteryUsageContentProvider extends ContentProvider {
             case BATTERY_STATE_LATEST_TIMESTAMP_CODE:
                 return getBatteryStateLatestTimestamp(uri);
             case BATTERY_USAGE_SLOT_CODE:
-                return getBatteryUsageSlots(uri);
+                return toExternalCursor(
+                        getBatteryUsageSlots(uri), BatteryUsageSlotEntity.KEY_BATTERY_USAGE_SLOT);
             default:
                 throw new IllegalArgumentException("unknown URI: " + uri);
         }
@@ -161,19 +175,39 @@ public class BatteryUsageContentProvider extends ContentProvider {
     @Nullable
     @Override
     public Uri insert(@NonNull Uri uri, @Nullable ContentValues contentValues) {
+        try {
+            insertOrThrow(uri, contentValues);
+        } catch (RuntimeException e) {
+            if (e instanceof IllegalArgumentException) {
+                throw e;
+            }
+            Log.e(TAG, "insert() from:" + uri + " error:", e);
+            return null;
+        }
+        return uri;
+    }
+
+    @Override
+    public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] valuesArray) {
+        final long timestamp = mClock.millis();
+        final int count;
         try {
             switch (sUriMatcher.match(uri)) {
                 case BATTERY_STATE_CODE:
-                    mBatteryStateDao.insert(BatteryState.create(contentValues));
+                    count = insertAll(valuesArray, BatteryState::create,
+                            mBatteryStateDao::insertAll);
                     break;
                 case APP_USAGE_EVENT_CODE:
-                    mAppUsageEventDao.insert(AppUsageEventEntity.create(contentValues));
+                    count = insertAll(valuesArray, AppUsageEventEntity::create,
+                            mAppUsageEventDao::insertAll);
                     break;
                 case BATTERY_EVENT_CODE:
-                    mBatteryEventDao.insert(BatteryEventEntity.create(contentValues));
+                    count = insertAll(valuesArray, BatteryEventEntity::create,
+                            mBatteryEventDao::insertAll);
                     break;
                 case BATTERY_USAGE_SLOT_CODE:
-                    mBatteryUsageSlotDao.insert(BatteryUsageSlotEntity.create(contentValues));
+                    count = insertAll(valuesArray, BatteryUsageSlotEntity::create,
+                            mBatteryUsageSlotDao::insertAll);
                     break;
                 default:
                     throw new IllegalArgumentException("unknown URI: " + uri);
@@ -182,10 +216,42 @@ public class BatteryUsageContentProvider extends ContentProvider {
             if (e instanceof IllegalArgumentException) {
                 throw e;
             }
-            Log.e(TAG, "insert() from:" + uri + " error:", e);
-            return null;
+            Log.e(TAG, "bulkInsert() from:" + uri + " error:", e);
+            return 0;
         }
-        return uri;
+        final long latency = mClock.millis() - timestamp;
+        BatteryUsageLogUtils.recordInsertLatency(latency);
+        Log.d(TAG, String.format("bulkInsert() %d rows into %s in %d/ms", count, uri, latency));
+        return count;
+    }
+
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(
+            @NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        // Commits all operations at once instead of one transaction per operation, any failed
+        // operation is thrown out of the transaction to roll back the whole batch.
+        return mDatabase.runInTransaction(() -> {
+            final ContentProviderResult[] results =
+                    new ContentProviderResult[operations.size()];
+            for (int i = 0; i < operations.size(); i++) {
+                final ContentProviderOperation operation = operations.get(i);
+                if (!operation.isInsert()) {
+                    throw new UnsupportedOperationException("unsupported!");
+                }
+                final Uri uri = operation.getUri();
+                try {
+                    insertOrThrow(uri, operation.resolveValueBackReferences(results, i));
+                } catch (IllegalArgumentException e) {
+                    throw e;
+                } catch (RuntimeException e) {
+                    throw new OperationApplicationException("insert() into:" + uri + " failed", e);
+                }
+                results[i] = new ContentProviderResult(uri);
+            }
+            return results;
+        });
     }
 
     @Override
@@ -202,6 +268,37 @@ public class BatteryUsageContentProvider extends ContentProvider {
         throw new UnsupportedOperationException("unsupported!");
     }
 
+    private void insertOrThrow(Uri uri, ContentValues contentValues) {
+        switch (sUriMatcher.match(uri)) {
+            case BATTERY_STATE_CODE:
+                mBatteryStateDao.insert(BatteryState.create(contentValues));
+                break;
+            case APP_USAGE_EVENT_CODE:
+                mAppUsageEventDao.insert(AppUsageEventEntity.create(contentValues));
+                break;
+            case BATTERY_EVENT_CODE:
+                mBatteryEventDao.insert(BatteryEventEntity.create(contentValues));
+                break;
+            case BATTERY_USAGE_SLOT_CODE:
+                mBatteryUsageSlotDao.insert(BatteryUsageSlotEntity.create(contentValues));
+                break;
+            default:
+                throw new IllegalArgumentException("unknown URI: " + uri);
+        }
+    }
+
+    private <T> int insertAll(
+            ContentValues[] valuesArray,
+            Function<ContentValues, T> creator,
+            Consumer<List<T>> inserter) {
+        final List<T> entities = new ArrayList<>(valuesArray.length);
+        for (ContentValues values : valuesArray) {
+            entities.add(creator.apply(values));
+        }
+        mDatabase.runInTransaction(() -> inserter.accept(entities));
+        return entities.size();
+    }
+
     private Cursor getLastFullChargeTimestamp(Uri uri) {
         final long timestamp = mClock.millis();
         Cursor cursor = null;
@@ -318,6 +415,17 @@ public class BatteryUsageContentProvider extends ContentProvider {
         return cursor;
     }
 
+    // The serialized protos are stored as BLOB, but other apps still read them as the Base64
+    // encoded TEXT of the provider contract. Settings of any user reads the BLOB directly.
+    private static Cursor toExternalCursor(Cursor cursor, String protoColumn) {
+        if (cursor == null
+                || UserHandle.getAppId(Binder.getCallingUid())
+                        == UserHandle.getAppId(Process.myUid())) {
+            return cursor;
+        }
+        return new Base64ColumnCursor(cursor, cursor.getColumnIndex(protoColumn));
+    }
+
     private List<Integer> getQueryBatteryEventTypes(Uri uri) {
         Log.d(TAG, "getQueryBatteryEventTypes from uri: " + uri);
         final String batteryEventTypesParameter =
@@ -387,4 +495,30 @@ public class BatteryUsageContentProvider extends ContentProvider {
             return defaultValue;
         }
     }
+
+    /** Presents a BLOB column as Base64 encoded TEXT. */
+    private static final class Base64ColumnCursor extends CursorWrapper {
+        private final int mColumnIndex;
+
+        Base64ColumnCursor(Cursor cursor, int columnIndex) {
+            super(cursor);
+            mColumnIndex = columnIndex;
+        }
+
+        @Override
+        public int getType(int columnIndex) {
+            final int type = super.getType(columnIndex);
+            return columnIndex == mColumnIndex && type == FIELD_TYPE_BLOB
+                    ? FIELD_TYPE_STRING : type;
+        }
+
+        @Override
+        public String getString(int columnIndex) {
+            if (columnIndex != mColumnIndex) {
+                return super.getString(columnIndex);
+            }
+            final byte[] bytes = super.getBlob(columnIndex);
+            return bytes == null ? null : Base64.encodeToString(bytes, Base64.DEFAULT);
+        }
+    }
 }
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage;
+
+import android.content.Context;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+import android.util.Log;
+import android.util.Pair;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.internal.annotations.VisibleForTesting;
+import com.android.settings.fuelgauge.PowerUsageFeatureProvider;
+import com.android.settings.overlay.FeatureFactory;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the {@link BatteryDiffData} of the closed hourly slots loaded from {@code
+ * BatteryUsageSlotEntity} across page loads.
+ *
+ * <p>A closed slot never changes once it is persisted, so it is converted only once and shared
+ * as an immutable result. The daily usage accumulated from the closed slots is cached as well,
+ * so the next load only merges the slots added since then and the open slots.
+ *
+ * <p>The converted data also depends on the installed packages, the labels and icons, and the
+ * entries hidden or combined by {@link PowerUsageFeatureProvider}. It is dropped once any package
+ * is changed, see {@link BatteryConsumerCache}, or any of the others is changed.
+ */
+final class BatteryUsageSlotCache {
+    private static final String TAG = "BatteryUsageSlotCache";
+
+    private static BatteryUsageSlotCache sInstance;
+
+    // Maps the slot start timestamp to the persisted slot and its converted data.
+    private final Map<Long, Pair<BatteryUsageSlot, BatteryDiffData>> mSlotDataMap =
+            new ArrayMap<>();
+    // Maps the day start timestamp to the usage accumulated from the closed slots of that day.
+    private final Map<Long, BatteryDiffDataAccumulator> mDailyAccumulatorMap = new ArrayMap<>();
+    // Everything the conversion depends on other than the slot itself and the packages.
+    private List<Object> mConversionKey;
+
+    /** Returns the process-wide instance. */
+    static synchronized BatteryUsageSlotCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new BatteryUsageSlotCache();
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    BatteryUsageSlotCache() {}
+
+    /**
+     * Converts the persisted slots into {@link BatteryDiffData} keyed by the slot start timestamp,
+     * reusing the data converted by the previous loads.
+     */
+    synchronized Map<Long, BatteryDiffData> getBatteryDiffDataMap(
+            final Context context,
+            final @NonNull List<BatteryUsageSlot> batteryUsageSlotList,
+            final @NonNull Set<String> systemAppsPackageNames,
+            final @NonNull Set<Integer> systemAppsUids) {
+        // Starts to drop the cached data once a package is changed.
+        BatteryConsumerCache.getInstance(context);
+        final List<Object> conversionKey =
+                getConversionKey(systemAppsPackageNames, systemAppsUids);
+        if (!conversionKey.equals(mConversionKey)) {
+            clear();
+            mConversionKey = conversionKey;
+        }
+        final Map<Long, Pair<BatteryUsageSlot, BatteryDiffData>> slotDataMap = new ArrayMap<>();
+        final Map<Long, BatteryDiffData> batteryDiffDataMap = new ArrayMap<>();
+        int reusedCount = 0;
+        for (BatteryUsageSlot batteryUsageSlot : batteryUsageSlotList) {
+            final long startTimestamp = batteryUsageSlot.getStartTimestamp();
+            final Pair<BatteryUsageSlot, BatteryDiffData> cachedSlotData =
+                    mSlotDataMap.get(startTimestamp);
+            final BatteryDiffData batteryDiffData;
+            if (cachedSlotData != null && cachedSlotData.first.equals(batteryUsageSlot)) {
+                batteryDiffData = cachedSlotData.second;
+                reusedCount++;
+            } else {
+                batteryDiffData =
+                        ConvertUtils.convertToBatteryDiffData(
+                                context, batteryUsageSlot, systemAppsPackageNames, systemAppsUids);
+            }
+            slotDataMap.put(startTimestamp, Pair.create(batteryUsageSlot, batteryDiffData));
+            batteryDiffDataMap.put(startTimestamp, batteryDiffData);
+        }
+        // Drops the daily usage which may refer to the slots that are removed or replaced.
+        if (reusedCount != mSlotDataMap.size()) {
+            mDailyAccumulatorMap.clear();
+        }
+        mSlotDataMap.clear();
+        mSlotDataMap.putAll(slotDataMap);
+        Log.d(
+                TAG,
+                String.format(
+                        "getBatteryDiffDataMap() reused=%d converted=%d",
+                        reusedCount, batteryUsageSlotList.size() - reusedCount));
+        return batteryDiffDataMap;
+    }
+
+    /**
+     * Accumulates the hourly usage of a day. The leading closed slots are merged into the cached
+     * usage of the day, and only the remaining slots are merged on top of a copy of it.
+     *
+     * @param dayStartTimestamp the start timestamp of the day, used as the cache key
+     * @param hourlyDataList the hourly usage of the day, ordered by time
+     */
+    synchronized BatteryDiffData getDailyUsageDiffData(
+            final Context context,
+            final long dayStartTimestamp,
+            final @NonNull List<BatteryDiffData> hourlyDataList) {
+        final BatteryDiffDataAccumulator cachedAccumulator =
+                mDailyAccumulatorMap.get(dayStartTimestamp);
+        final BatteryDiffDataAccumulator accumulator =
+                cachedAccumulator != null && cachedAccumulator.isMergedPrefixOf(hourlyDataList)
+                        ? cachedAccumulator.copy()
+                        : new BatteryDiffDataAccumulator();
+        final int cachedCount = accumulator.getMergedCount();
+        int index = cachedCount;
+        while (index < hourlyDataList.size() && isClosedSlot(hourlyDataList.get(index))) {
+            accumulator.add(hourlyDataList.get(index++));
+        }
+        if (index > cachedCount) {
+            mDailyAccumulatorMap.put(dayStartTimestamp, accumulator.copy());
+        }
+        while (index < hourlyDataList.size()) {
+            accumulator.add(hourlyDataList.get(index++));
+        }
+        return accumulator.build(context);
+    }
+
+    /** Clears all cached data. */
+    synchronized void clear() {
+        mSlotDataMap.clear();
+        mDailyAccumulatorMap.clear();
+        mConversionKey = null;
+    }
+
+    private static List<Object> getConversionKey(
+            Set<String> systemAppsPackageNames, Set<Integer> systemAppsUids) {
+        final PowerUsageFeatureProvider featureProvider =
+                FeatureFactory.getFeatureFactory().getPowerUsageFeatureProvider();
+        return Arrays.asList(
+                new ArraySet<>(systemAppsPackageNames),
+                new ArraySet<>(systemAppsUids),
+                Locale.getDefault(),
+                featureProvider.getBatteryUsageListScreenOnTimeThresholdInMs(),
+                featureProvider.getBatteryUsageListConsumePowerThreshold(),
+                featureProvider.getHideSystemComponentSet(),
+                featureProvider.getHideBackgroundUsageTimeSet(),
+                featureProvider.getHideApplicationSet(),
+                featureProvider.getSystemAppsAllowlist(),
+                featureProvider.getOthersSystemComponentSet(),
+                featureProvider.getOthersCustomComponentNameSet());
+    }
+
+    private boolean isClosedSlot(@Nullable BatteryDiffData batteryDiffData) {
+        if (batteryDiffData == null) {
+            return false;
+        }
+        final Pair<BatteryUsageSlot, BatteryDiffData> slotData =
+                mSlotDataMap.get(batteryDiffData.getStartTimestamp());
+        return slotData != null && slotData.second == batteryDiffData;
+    }
+}
@@ -29,7 +29,6 @@ import android.os.LocaleList;
 import android.os.UserHandle;
 import android.text.TextUtils;
 import android.text.format.DateFormat;
-import android.util.Base64;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -132,7 +131,7 @@ public final class ConvertUtils {
                         bootTimestamp);
         values.put(
                 BatteryHistEntry.KEY_BATTERY_INFORMATION,
-                convertBatteryInformationToString(batteryInformation));
+                convertBatteryInformationToBytes(batteryInformation));
         // Save the BatteryInformation unencoded string into database for debugging.
         if (Build.TYPE.equals("userdebug")) {
             values.put(
@@ -168,16 +167,14 @@ public final class ConvertUtils {
             final BatteryUsageSlot batteryUsageSlot) {
         final ContentValues values = new ContentValues(2);
         values.put(BatteryUsageSlotEntity.KEY_TIMESTAMP, batteryUsageSlot.getStartTimestamp());
-        values.put(
-                BatteryUsageSlotEntity.KEY_BATTERY_USAGE_SLOT,
-                Base64.encodeToString(batteryUsageSlot.toByteArray(), Base64.DEFAULT));
+        values.put(BatteryUsageSlotEntity.KEY_BATTERY_USAGE_SLOT, batteryUsageSlot.toByteArray());
         return values;
     }
 
-    /** Gets the encoded string from {@link BatteryInformation} instance. */
-    public static String convertBatteryInformationToString(
+    /** Gets the serialized bytes from {@link BatteryInformation} instance. */
+    public static byte[] convertBatteryInformationToBytes(
             final BatteryInformation batteryInformation) {
-        return Base64.encodeToString(batteryInformation.toByteArray(), Base64.DEFAULT);
+        return batteryInformation.toByteArray();
     }
 
     /** Gets the {@link BatteryInformation} instance from {@link ContentValues}. */
@@ -185,7 +182,7 @@ public final class ConvertUtils {
             final ContentValues values, final String key) {
         final BatteryInformation defaultInstance = BatteryInformation.getDefaultInstance();
         if (values != null && values.containsKey(key)) {
-            return BatteryUtils.parseProtoFromString(values.getAsString(key), defaultInstance);
+            return BatteryUtils.parseProtoFromBytes(values.getAsByteArray(key), defaultInstance);
         }
         return defaultInstance;
     }
@@ -195,8 +192,7 @@ public final class ConvertUtils {
         final BatteryInformation defaultInstance = BatteryInformation.getDefaultInstance();
         final int columnIndex = cursor.getColumnIndex(key);
         if (columnIndex >= 0) {
-            return BatteryUtils.parseProtoFromString(
-                    cursor.getString(columnIndex), defaultInstance);
+            return BatteryUtils.parseProtoFromBytes(cursor.getBlob(columnIndex), defaultInstance);
         }
         return defaultInstance;
     }
@@ -340,7 +336,7 @@ public final class ConvertUtils {
                 cursor.getColumnIndex(BatteryUsageSlotEntity.KEY_BATTERY_USAGE_SLOT);
         return columnIndex < 0
                 ? defaultInstance
-                : BatteryUtils.parseProtoFromString(cursor.getString(columnIndex), defaultInstance);
+                : BatteryUtils.parseProtoFromBytes(cursor.getBlob(columnIndex), defaultInstance);
     }
 
     /** Converts from {@link Map<Long, BatteryDiffData>} to {@link List<BatteryUsageSlot>} */
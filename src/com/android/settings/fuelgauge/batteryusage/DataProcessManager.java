@@ -18,9 +18,10 @@ package com.android.settings.fuelgauge.batteryusage;
 
 import android.app.usage.UsageEvents;
 import android.content.Context;
-import android.os.AsyncTask;
+import android.os.CancellationSignal;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.os.UserHandle;
 import android.os.UserManager;
 import android.util.ArrayMap;
@@ -37,11 +38,16 @@ import java.util.Calendar;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 
 /**
- * Manages the async tasks to process battery and app usage data.
+ * Manages the async stages to process battery and app usage data.
  *
- * <p>For now, there exist 4 async tasks in this manager:
+ * <p>The stages run on a dedicated bounded pool and form a dependency graph:
  *
  * <ul>
  *   <li>loadCurrentBatteryHistoryMap: load the latest battery history data from battery stats
@@ -50,32 +56,40 @@ import java.util.Set;
  *       from usage stats service.
  *   <li>loadDatabaseAppUsageList: load the necessary app usage data (after last full charge) from
  *       database
+ *   <li>loadPowerConnectionBatteryEventList: load the power connection events from database.
+ *   <li>loadBatteryUsageSlotList: load the persisted battery usage slots from database.
  *   <li>loadAndApplyBatteryMapFromServiceOnly: load all the battery history data (should be after
  *       last full charge) from battery stats service and apply the callback function directly
  * </ul>
  *
- * If there is battery level data, the first 3 async tasks will be started at the same time.
+ * If there is battery level data, the first 5 stages will be started at the same time.
  *
  * <ul>
- *   <li>After loadCurrentAppUsageList and loadDatabaseAppUsageList complete, which means all app
- *       usage data has been loaded, the intermediate usage result will be generated.
- *   <li>Then after all 3 async tasks complete, the battery history data and app usage data will be
+ *   <li>After both app usage lists and the battery events are loaded, the intermediate app usage
+ *       result will be generated, while the other stages may still be running.
+ *   <li>Then after all stages complete, the battery history data and app usage data will be
  *       combined to generate final data used for UI rendering. And the callback function will be
  *       applied.
  *   <li>If current user is locked, which means we couldn't get the latest app usage data, screen-on
  *       time will not be shown in the UI and empty screen-on time data will be returned.
  * </ul>
  *
- * If there is no battery level data, the 4th async task will be started only and the usage map
+ * If there is no battery level data, the last stage will be started only and the usage map
  * callback function will be applied directly to show the app list on the UI.
+ *
+ * <p>The remaining stages are skipped and the callback is not applied once {@link #cancel()} is
+ * called. The elapsed time of each stage is logged when the callback is applied.
  */
 public class DataProcessManager {
     private static final String TAG = "DataProcessManager";
+    private static final int POOL_SIZE =
+            Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
     private static final List<BatteryEventType> POWER_CONNECTION_EVENTS =
             List.of(BatteryEventType.POWER_CONNECTED, BatteryEventType.POWER_DISCONNECTED);
 
     // For testing only.
     @VisibleForTesting static Map<Long, Map<String, BatteryHistEntry>> sFakeBatteryHistoryMap;
+    @VisibleForTesting static ExecutorService sExecutor;
 
     // Raw start timestamp with round to the nearest hour.
     private final long mRawStartTimestamp;
@@ -88,13 +102,16 @@ public class DataProcessManager {
     private final List<BatteryEvent> mBatteryEventList = new ArrayList<>();
     private final List<BatteryUsageSlot> mBatteryUsageSlotList = new ArrayList<>();
     private final List<BatteryLevelData.PeriodBatteryLevelData> mHourlyBatteryLevelsPerDay;
-    private final Map<Long, Map<String, BatteryHistEntry>> mBatteryHistoryMap;
-
-    private boolean mIsCurrentBatteryHistoryLoaded = false;
-    private boolean mIsCurrentAppUsageLoaded = false;
-    private boolean mIsDatabaseAppUsageLoaded = false;
-    private boolean mIsBatteryEventLoaded = false;
-    private boolean mIsBatteryUsageSlotLoaded = false;
+    private final BatteryHistoryTable mBatteryHistoryTable;
+    private final List<CompletableFuture<?>> mFutures = new ArrayList<>();
+    private final Map<String, Long> mStageTimings = new ArrayMap<>();
+
+    private volatile boolean mIsCurrentBatteryHistoryLoaded = false;
+    private volatile boolean mIsCurrentAppUsageLoaded = false;
+    private volatile boolean mIsDatabaseAppUsageLoaded = false;
+    private volatile boolean mIsBatteryEventLoaded = false;
+    private volatile boolean mIsCancelled = false;
+    private long mStartTime;
     // Used to identify whether screen-on time data should be shown in the UI.
     private boolean mShowScreenOnTime = true;
     private Set<String> mSystemAppsPackageNames = null;
@@ -112,7 +129,7 @@ public class DataProcessManager {
 
     /**
      * A callback listener when all the data is processed. This happens when all the async tasks
-     * complete and generate the final callback.
+     * complete and generate the final callback. The map is empty if any of the tasks failed.
      */
     public interface OnBatteryDiffDataMapLoadedListener {
         /** The callback function when all the data is processed. */
@@ -127,7 +144,7 @@ public class DataProcessManager {
             final long lastFullChargeTimestamp,
             @NonNull final OnBatteryDiffDataMapLoadedListener callbackFunction,
             @NonNull final List<BatteryLevelData.PeriodBatteryLevelData> hourlyBatteryLevelsPerDay,
-            @NonNull final Map<Long, Map<String, BatteryHistEntry>> batteryHistoryMap) {
+            @NonNull final BatteryHistoryTable batteryHistoryTable) {
         mContext = context.getApplicationContext();
         mHandler = handler;
         mUserManager = mContext.getSystemService(UserManager.class);
@@ -135,7 +152,7 @@ public class DataProcessManager {
         mLastFullChargeTimestamp = lastFullChargeTimestamp;
         mCallbackFunction = callbackFunction;
         mHourlyBatteryLevelsPerDay = hourlyBatteryLevelsPerDay;
-        mBatteryHistoryMap = batteryHistoryMap;
+        mBatteryHistoryTable = batteryHistoryTable;
     }
 
     /** Constructor when there is no battery level data. */
@@ -150,41 +167,104 @@ public class DataProcessManager {
         mRawStartTimestamp = 0L;
         mLastFullChargeTimestamp = 0L;
         mHourlyBatteryLevelsPerDay = null;
-        mBatteryHistoryMap = null;
+        mBatteryHistoryTable = null;
         // When there is no battery level data, don't show screen-on time and battery level chart on
         // the UI.
         mShowScreenOnTime = false;
     }
 
-    /** Starts the async tasks to load battery history data and app usage data. */
+    /** Starts the async stages to load battery history data and app usage data. */
     public void start() {
         start(/* isFromPeriodJob= */ false);
     }
 
-    /** Starts the async tasks to load battery history data and app usage data. */
+    /** Starts the async stages to load battery history data and app usage data. */
     public void start(boolean isFromPeriodJob) {
-        // If we have battery level data, load the battery history map and app usage simultaneously.
-        if (mHourlyBatteryLevelsPerDay != null) {
-            if (isFromPeriodJob) {
-                mIsCurrentBatteryHistoryLoaded = true;
-                mIsCurrentAppUsageLoaded = true;
-                mIsBatteryUsageSlotLoaded = true;
-            } else {
-                // Loads the latest battery history data from the service.
-                loadCurrentBatteryHistoryMap();
-                // Loads the latest app usage list from the service.
-                loadCurrentAppUsageList();
-                // Loads existing battery usage slots from database.
-                loadBatteryUsageSlotList();
-            }
-            // Loads app usage list from database.
-            loadDatabaseAppUsageList();
-            // Loads the battery event list from database.
-            loadPowerConnectionBatteryEventList();
+        mStartTime = SystemClock.elapsedRealtime();
+        // If there is no battery level data, only load the battery history data from service and
+        // show it as the app list directly.
+        if (mHourlyBatteryLevelsPerDay == null) {
+            applyCallbackWhenComplete(
+                    runStageAsync(
+                            "loadAndApplyBatteryMapFromServiceOnly",
+                            this::loadBatteryMapFromServiceOnly));
+            return;
+        }
+        // If we have battery level data, load the battery history map and app usage
+        // simultaneously.
+        final CompletableFuture<Map<String, BatteryHistEntry>> currentBatteryHistoryFuture;
+        final CompletableFuture<List<AppUsageEvent>> currentAppUsageFuture;
+        final CompletableFuture<List<BatteryUsageSlot>> batteryUsageSlotFuture;
+        if (isFromPeriodJob) {
+            mIsCurrentBatteryHistoryLoaded = true;
+            mIsCurrentAppUsageLoaded = true;
+            currentBatteryHistoryFuture = CompletableFuture.completedFuture(null);
+            currentAppUsageFuture = CompletableFuture.completedFuture(null);
+            batteryUsageSlotFuture = CompletableFuture.completedFuture(null);
         } else {
-            // If there is no battery level data, only load the battery history data from service
-            // and show it as the app list directly.
-            loadAndApplyBatteryMapFromServiceOnly();
+            // Loads the latest battery history data from the service.
+            currentBatteryHistoryFuture =
+                    runStageAsync(
+                            "loadCurrentBatteryHistoryMap", this::loadCurrentBatteryHistoryMap);
+            // Loads the latest app usage list from the service.
+            currentAppUsageFuture =
+                    runStageAsync("loadCurrentAppUsageList", this::loadCurrentAppUsageList);
+            // Loads existing battery usage slots from database.
+            batteryUsageSlotFuture =
+                    runStageAsync("loadBatteryUsageSlotList", this::loadBatteryUsageSlotList);
+        }
+        // Loads app usage list from database.
+        final CompletableFuture<List<AppUsageEvent>> databaseAppUsageFuture =
+                runStageAsync("loadDatabaseAppUsageList", this::loadDatabaseAppUsageList);
+        // Loads the battery event list from database.
+        final CompletableFuture<List<BatteryEvent>> batteryEventFuture =
+                runStageAsync(
+                        "loadPowerConnectionBatteryEventList",
+                        this::loadPowerConnectionBatteryEventList);
+
+        // Processes the app usage data once its inputs are loaded, without waiting for the others.
+        final CompletableFuture<Void> appUsageDataFuture =
+                CompletableFuture.allOf(
+                                currentAppUsageFuture, databaseAppUsageFuture, batteryEventFuture)
+                        .thenApplyAsync(
+                                unused ->
+                                        runStage(
+                                                "processAppUsageData",
+                                                () ->
+                                                        processAppUsageData(
+                                                                currentAppUsageFuture.join(),
+                                                                databaseAppUsageFuture.join(),
+                                                                batteryEventFuture.join())),
+                                getExecutor());
+        // Joins all stages to generate the final data.
+        applyCallbackWhenComplete(
+                CompletableFuture.allOf(
+                                currentBatteryHistoryFuture,
+                                batteryUsageSlotFuture,
+                                appUsageDataFuture)
+                        .thenApplyAsync(
+                                unused ->
+                                        runStage(
+                                                "generateFinalData",
+                                                () ->
+                                                        generateFinalData(
+                                                                currentBatteryHistoryFuture.join(),
+                                                                batteryUsageSlotFuture.join())),
+                                getExecutor()));
+    }
+
+    /**
+     * Cancels the processing. The stages which are not started yet are skipped, and the callback
+     * function will not be applied.
+     */
+    public void cancel() {
+        mIsCancelled = true;
+        final List<CompletableFuture<?>> futures;
+        synchronized (mFutures) {
+            futures = new ArrayList<>(mFutures);
+        }
+        for (CompletableFuture<?> future : futures) {
+            future.cancel(/* mayInterruptIfRunning= */ false);
         }
     }
 
@@ -224,255 +304,144 @@ public class DataProcessManager {
         return mShowScreenOnTime;
     }
 
-    private void loadCurrentBatteryHistoryMap() {
-        new AsyncTask<Void, Void, Map<String, BatteryHistEntry>>() {
-            @Override
-            protected Map<String, BatteryHistEntry> doInBackground(Void... voids) {
-                final long startTime = System.currentTimeMillis();
-                // Loads the current battery usage data from the battery stats service.
-                final Map<String, BatteryHistEntry> currentBatteryHistoryMap =
-                        DataProcessor.getCurrentBatteryHistoryMapFromStatsService(mContext);
-                Log.d(
-                        TAG,
-                        String.format(
-                                "execute loadCurrentBatteryHistoryMap size=%d in %d/ms",
-                                currentBatteryHistoryMap.size(),
-                                (System.currentTimeMillis() - startTime)));
-                return currentBatteryHistoryMap;
-            }
-
-            @Override
-            protected void onPostExecute(
-                    final Map<String, BatteryHistEntry> currentBatteryHistoryMap) {
-                if (mBatteryHistoryMap != null) {
-                    // Replaces the placeholder in mBatteryHistoryMap.
-                    for (Map.Entry<Long, Map<String, BatteryHistEntry>> mapEntry :
-                            mBatteryHistoryMap.entrySet()) {
-                        if (mapEntry.getValue()
-                                .containsKey(
-                                        DataProcessor.CURRENT_TIME_BATTERY_HISTORY_PLACEHOLDER)) {
-                            mapEntry.setValue(currentBatteryHistoryMap);
-                        }
-                    }
-                }
-                mIsCurrentBatteryHistoryLoaded = true;
-                tryToGenerateFinalDataAndApplyCallback();
-            }
-        }.execute();
-    }
-
-    private void loadCurrentAppUsageList() {
-        new AsyncTask<Void, Void, List<AppUsageEvent>>() {
-            @Override
-            protected List<AppUsageEvent> doInBackground(Void... voids) {
-                if (!shouldLoadAppUsageData()) {
-                    Log.d(TAG, "not loadCurrentAppUsageList");
-                    return null;
-                }
-                final long startTime = System.currentTimeMillis();
-                // Loads the current battery usage data from the battery stats service.
-                final int currentUserId = getCurrentUserId();
-                final int workProfileUserId = getWorkProfileUserId();
-                final UsageEvents usageEventsForCurrentUser =
-                        DataProcessor.getAppUsageEventsForUser(
-                                mContext, currentUserId, mRawStartTimestamp);
-                // If fail to load usage events for current user, return null directly and screen-on
-                // time will not be shown in the UI.
-                if (usageEventsForCurrentUser == null) {
-                    Log.w(TAG, "usageEventsForCurrentUser is null");
-                    return null;
-                }
-                UsageEvents usageEventsForWorkProfile = null;
-                if (workProfileUserId != Integer.MIN_VALUE) {
-                    usageEventsForWorkProfile =
-                            DataProcessor.getAppUsageEventsForUser(
-                                    mContext, workProfileUserId, mRawStartTimestamp);
-                } else {
-                    Log.d(TAG, "there is no work profile");
-                }
-
-                final Map<Long, UsageEvents> usageEventsMap = new ArrayMap<>();
-                usageEventsMap.put(Long.valueOf(currentUserId), usageEventsForCurrentUser);
-                if (usageEventsForWorkProfile != null) {
-                    Log.d(TAG, "usageEventsForWorkProfile is null");
-                    usageEventsMap.put(Long.valueOf(workProfileUserId), usageEventsForWorkProfile);
-                }
-
-                final List<AppUsageEvent> appUsageEventList =
-                        DataProcessor.generateAppUsageEventListFromUsageEvents(
-                                mContext, usageEventsMap);
-                Log.d(
-                        TAG,
-                        String.format(
-                                "execute loadCurrentAppUsageList size=%d in %d/ms",
-                                appUsageEventList.size(),
-                                (System.currentTimeMillis() - startTime)));
-                return appUsageEventList;
-            }
-
-            @Override
-            protected void onPostExecute(final List<AppUsageEvent> currentAppUsageList) {
-                if (currentAppUsageList == null || currentAppUsageList.isEmpty()) {
-                    Log.d(TAG, "currentAppUsageList is null or empty");
-                } else {
-                    mAppUsageEventList.addAll(currentAppUsageList);
-                }
-                mIsCurrentAppUsageLoaded = true;
-                tryToProcessAppUsageData();
-            }
-        }.execute();
-    }
-
-    private void loadDatabaseAppUsageList() {
-        new AsyncTask<Void, Void, List<AppUsageEvent>>() {
-            @Override
-            protected List<AppUsageEvent> doInBackground(Void... voids) {
-                if (!shouldLoadAppUsageData()) {
-                    Log.d(TAG, "not loadDatabaseAppUsageList");
-                    return null;
-                }
-                final long startTime = System.currentTimeMillis();
-                // Loads the app usage data from the database.
-                final List<AppUsageEvent> appUsageEventList =
-                        DatabaseUtils.getAppUsageEventForUsers(
-                                mContext,
-                                Calendar.getInstance(),
-                                getCurrentUserIds(),
-                                mRawStartTimestamp);
-                Log.d(
-                        TAG,
-                        String.format(
-                                "execute loadDatabaseAppUsageList size=%d in %d/ms",
-                                appUsageEventList.size(),
-                                (System.currentTimeMillis() - startTime)));
-                return appUsageEventList;
-            }
-
-            @Override
-            protected void onPostExecute(final List<AppUsageEvent> databaseAppUsageList) {
-                if (databaseAppUsageList == null || databaseAppUsageList.isEmpty()) {
-                    Log.d(TAG, "databaseAppUsageList is null or empty");
-                } else {
-                    mAppUsageEventList.addAll(databaseAppUsageList);
-                }
-                mIsDatabaseAppUsageLoaded = true;
-                tryToProcessAppUsageData();
-            }
-        }.execute();
-    }
-
-    private void loadPowerConnectionBatteryEventList() {
-        new AsyncTask<Void, Void, List<BatteryEvent>>() {
-            @Override
-            protected List<BatteryEvent> doInBackground(Void... voids) {
-                final long startTime = System.currentTimeMillis();
-                // Loads the battery event data from the database.
-                final List<BatteryEvent> batteryEventList =
-                        DatabaseUtils.getBatteryEvents(
-                                mContext,
-                                Calendar.getInstance(),
-                                mRawStartTimestamp,
-                                POWER_CONNECTION_EVENTS);
-                Log.d(
-                        TAG,
-                        String.format(
-                                "execute loadPowerConnectionBatteryEventList size=%d in %d/ms",
-                                batteryEventList.size(), (System.currentTimeMillis() - startTime)));
-                return batteryEventList;
-            }
-
-            @Override
-            protected void onPostExecute(final List<BatteryEvent> batteryEventList) {
-                if (batteryEventList == null || batteryEventList.isEmpty()) {
-                    Log.d(TAG, "batteryEventList is null or empty");
-                } else {
-                    mBatteryEventList.clear();
-                    mBatteryEventList.addAll(batteryEventList);
-                }
-                mIsBatteryEventLoaded = true;
-                tryToProcessAppUsageData();
-            }
-        }.execute();
-    }
-
-    private void loadBatteryUsageSlotList() {
-        new AsyncTask<Void, Void, List<BatteryUsageSlot>>() {
-            @Override
-            protected List<BatteryUsageSlot> doInBackground(Void... voids) {
-                final long startTime = System.currentTimeMillis();
-                // Loads the battery usage slot data from the database.
-                final List<BatteryUsageSlot> batteryUsageSlotList =
-                        DatabaseUtils.getBatteryUsageSlots(
-                                mContext, Calendar.getInstance(), mLastFullChargeTimestamp);
-                Log.d(
-                        TAG,
-                        String.format(
-                                "execute loadBatteryUsageSlotList size=%d in %d/ms",
-                                batteryUsageSlotList.size(),
-                                (System.currentTimeMillis() - startTime)));
-                return batteryUsageSlotList;
-            }
-
-            @Override
-            protected void onPostExecute(final List<BatteryUsageSlot> batteryUsageSlotList) {
-                if (batteryUsageSlotList == null || batteryUsageSlotList.isEmpty()) {
-                    Log.d(TAG, "batteryUsageSlotList is null or empty");
-                } else {
-                    mBatteryUsageSlotList.clear();
-                    mBatteryUsageSlotList.addAll(batteryUsageSlotList);
-                }
-                mIsBatteryUsageSlotLoaded = true;
-                tryToGenerateFinalDataAndApplyCallback();
-            }
-        }.execute();
-    }
-
-    private void loadAndApplyBatteryMapFromServiceOnly() {
-        new AsyncTask<Void, Void, Map<Long, BatteryDiffData>>() {
-            @Override
-            protected Map<Long, BatteryDiffData> doInBackground(Void... voids) {
-                final long startTime = System.currentTimeMillis();
-                final Map<Long, BatteryDiffData> batteryDiffDataMap =
-                        DataProcessor.getBatteryDiffDataMapFromStatsService(
-                                mContext,
-                                mRawStartTimestamp,
-                                getSystemAppsPackageNames(),
-                                getSystemAppsUids());
-                Log.d(
-                        TAG,
-                        String.format(
-                                "execute loadAndApplyBatteryMapFromServiceOnly size=%d in %d/ms",
-                                batteryDiffDataMap.size(),
-                                (System.currentTimeMillis() - startTime)));
-                return batteryDiffDataMap;
-            }
-
-            @Override
-            protected void onPostExecute(final Map<Long, BatteryDiffData> batteryDiffDataMap) {
-                // Post results back to main thread to refresh UI.
-                if (mHandler != null && mCallbackFunction != null) {
-                    mHandler.post(
-                            () -> {
-                                mCallbackFunction.onBatteryDiffDataMapLoaded(batteryDiffDataMap);
-                            });
-                }
-            }
-        }.execute();
-    }
-
-    private void tryToProcessAppUsageData() {
-        // Ignore processing the data if any required data is not loaded.
-        if (!mIsCurrentAppUsageLoaded || !mIsDatabaseAppUsageLoaded || !mIsBatteryEventLoaded) {
-            return;
+    @VisibleForTesting
+    Map<String, Long> getStageTimings() {
+        synchronized (mStageTimings) {
+            return new ArrayMap<>(mStageTimings);
         }
-        processAppUsageData();
-        tryToGenerateFinalDataAndApplyCallback();
     }
 
-    private void processAppUsageData() {
+    private Map<String, BatteryHistEntry> loadCurrentBatteryHistoryMap() {
+        // Loads the current battery usage data from the battery stats service.
+        final Map<String, BatteryHistEntry> currentBatteryHistoryMap =
+                DataProcessor.getCurrentBatteryHistoryMapFromStatsService(mContext);
+        Log.d(TAG, "loadCurrentBatteryHistoryMap size=" + currentBatteryHistoryMap.size());
+        mIsCurrentBatteryHistoryLoaded = true;
+        return currentBatteryHistoryMap;
+    }
+
+    @Nullable
+    private List<AppUsageEvent> loadCurrentAppUsageList() {
+        final List<AppUsageEvent> currentAppUsageList = loadCurrentAppUsageListInternal();
+        mIsCurrentAppUsageLoaded = true;
+        return currentAppUsageList;
+    }
+
+    @Nullable
+    private List<AppUsageEvent> loadCurrentAppUsageListInternal() {
+        if (!shouldLoadAppUsageData()) {
+            Log.d(TAG, "not loadCurrentAppUsageList");
+            return null;
+        }
+        // Loads the current battery usage data from the battery stats service.
+        final int currentUserId = getCurrentUserId();
+        final int workProfileUserId = getWorkProfileUserId();
+        final UsageEvents usageEventsForCurrentUser =
+                DataProcessor.getAppUsageEventsForUser(
+                        mContext, currentUserId, mRawStartTimestamp);
+        // If fail to load usage events for current user, return null directly and screen-on
+        // time will not be shown in the UI.
+        if (usageEventsForCurrentUser == null) {
+            Log.w(TAG, "usageEventsForCurrentUser is null");
+            return null;
+        }
+        UsageEvents usageEventsForWorkProfile = null;
+        if (workProfileUserId != Integer.MIN_VALUE) {
+            usageEventsForWorkProfile =
+                    DataProcessor.getAppUsageEventsForUser(
+                            mContext, workProfileUserId, mRawStartTimestamp);
+        } else {
+            Log.d(TAG, "there is no work profile");
+        }
+
+        final Map<Long, UsageEvents> usageEventsMap = new ArrayMap<>();
+        usageEventsMap.put(Long.valueOf(currentUserId), usageEventsForCurrentUser);
+        if (usageEventsForWorkProfile != null) {
+            Log.d(TAG, "usageEventsForWorkProfile is null");
+            usageEventsMap.put(Long.valueOf(workProfileUserId), usageEventsForWorkProfile);
+        }
+
+        final List<AppUsageEvent> appUsageEventList =
+                DataProcessor.generateAppUsageEventListFromUsageEvents(mContext, usageEventsMap);
+        Log.d(TAG, "loadCurrentAppUsageList size=" + appUsageEventList.size());
+        return appUsageEventList;
+    }
+
+    @Nullable
+    private List<AppUsageEvent> loadDatabaseAppUsageList() {
+        List<AppUsageEvent> appUsageEventList = null;
+        if (shouldLoadAppUsageData()) {
+            // Loads the app usage data from the database.
+            appUsageEventList =
+                    DatabaseUtils.getAppUsageEventForUsers(
+                            mContext,
+                            Calendar.getInstance(),
+                            getCurrentUserIds(),
+                            mRawStartTimestamp);
+            Log.d(TAG, "loadDatabaseAppUsageList size=" + appUsageEventList.size());
+        } else {
+            Log.d(TAG, "not loadDatabaseAppUsageList");
+        }
+        mIsDatabaseAppUsageLoaded = true;
+        return appUsageEventList;
+    }
+
+    private List<BatteryEvent> loadPowerConnectionBatteryEventList() {
+        // Loads the battery event data from the database.
+        final List<BatteryEvent> batteryEventList =
+                DatabaseUtils.getBatteryEvents(
+                        mContext,
+                        Calendar.getInstance(),
+                        mRawStartTimestamp,
+                        POWER_CONNECTION_EVENTS);
+        Log.d(TAG, "loadPowerConnectionBatteryEventList size=" + batteryEventList.size());
+        mIsBatteryEventLoaded = true;
+        return batteryEventList;
+    }
+
+    private List<BatteryUsageSlot> loadBatteryUsageSlotList() {
+        // Loads the battery usage slot data from the database.
+        final List<BatteryUsageSlot> batteryUsageSlotList =
+                DatabaseUtils.getBatteryUsageSlots(
+                        mContext, Calendar.getInstance(), mLastFullChargeTimestamp);
+        Log.d(TAG, "loadBatteryUsageSlotList size=" + batteryUsageSlotList.size());
+        return batteryUsageSlotList;
+    }
+
+    private Map<Long, BatteryDiffData> loadBatteryMapFromServiceOnly() {
+        final Map<Long, BatteryDiffData> batteryDiffDataMap =
+                DataProcessor.getBatteryDiffDataMapFromStatsService(
+                        mContext,
+                        mRawStartTimestamp,
+                        getSystemAppsPackageNames(),
+                        getSystemAppsUids());
+        Log.d(TAG, "loadAndApplyBatteryMapFromServiceOnly size=" + batteryDiffDataMap.size());
+        return batteryDiffDataMap;
+    }
+
+    private Void processAppUsageData(
+            @Nullable final List<AppUsageEvent> currentAppUsageList,
+            @Nullable final List<AppUsageEvent> databaseAppUsageList,
+            @Nullable final List<BatteryEvent> batteryEventList) {
+        if (currentAppUsageList == null || currentAppUsageList.isEmpty()) {
+            Log.d(TAG, "currentAppUsageList is null or empty");
+        } else {
+            mAppUsageEventList.addAll(currentAppUsageList);
+        }
+        if (databaseAppUsageList == null || databaseAppUsageList.isEmpty()) {
+            Log.d(TAG, "databaseAppUsageList is null or empty");
+        } else {
+            mAppUsageEventList.addAll(databaseAppUsageList);
+        }
+        if (batteryEventList == null || batteryEventList.isEmpty()) {
+            Log.d(TAG, "batteryEventList is null or empty");
+        } else {
+            mBatteryEventList.clear();
+            mBatteryEventList.addAll(batteryEventList);
+        }
         // If there is no screen-on time data, no need to process.
         if (!mShowScreenOnTime) {
-            return;
+            return null;
         }
         // Generates the indexed AppUsagePeriod list data for each corresponding time slot for
         // further use.
@@ -482,63 +451,103 @@ public class DataProcessManager {
                         mHourlyBatteryLevelsPerDay,
                         mAppUsageEventList,
                         mBatteryEventList);
+        return null;
     }
 
-    private void tryToGenerateFinalDataAndApplyCallback() {
-        // Ignore processing the data if any required data is not loaded.
-        if (!mIsCurrentBatteryHistoryLoaded
-                || !mIsCurrentAppUsageLoaded
-                || !mIsDatabaseAppUsageLoaded
-                || !mIsBatteryEventLoaded
-                || !mIsBatteryUsageSlotLoaded) {
-            return;
+    private Map<Long, BatteryDiffData> generateFinalData(
+            @Nullable final Map<String, BatteryHistEntry> currentBatteryHistoryMap,
+            @Nullable final List<BatteryUsageSlot> batteryUsageSlotList) {
+        if (mBatteryHistoryTable != null && currentBatteryHistoryMap != null) {
+            // Replaces the placeholder in mBatteryHistoryTable.
+            mBatteryHistoryTable.replacePlaceholder(currentBatteryHistoryMap);
         }
-        generateFinalDataAndApplyCallback();
-    }
-
-    private synchronized void generateFinalDataAndApplyCallback() {
-        new AsyncTask<Void, Void, Map<Long, BatteryDiffData>>() {
-            @Override
-            protected Map<Long, BatteryDiffData> doInBackground(Void... voids) {
-                final long startTime = System.currentTimeMillis();
-                final Map<Long, BatteryDiffData> batteryDiffDataMap = new ArrayMap<>();
-                for (BatteryUsageSlot batteryUsageSlot : mBatteryUsageSlotList) {
-                    batteryDiffDataMap.put(
-                            batteryUsageSlot.getStartTimestamp(),
-                            ConvertUtils.convertToBatteryDiffData(
+        if (batteryUsageSlotList == null || batteryUsageSlotList.isEmpty()) {
+            Log.d(TAG, "batteryUsageSlotList is null or empty");
+        } else {
+            mBatteryUsageSlotList.clear();
+            mBatteryUsageSlotList.addAll(batteryUsageSlotList);
+        }
+        final Map<Long, BatteryDiffData> batteryDiffDataMap = new ArrayMap<>();
+        // The closed slots are reused across loads, only the new ones are converted.
+        if (!mBatteryUsageSlotList.isEmpty()) {
+            batteryDiffDataMap.putAll(
+                    BatteryUsageSlotCache.getInstance()
+                            .getBatteryDiffDataMap(
                                     mContext,
-                                    batteryUsageSlot,
+                                    mBatteryUsageSlotList,
                                     getSystemAppsPackageNames(),
                                     getSystemAppsUids()));
-                }
-                batteryDiffDataMap.putAll(
-                        DataProcessor.getBatteryDiffDataMap(
-                                mContext,
-                                mHourlyBatteryLevelsPerDay,
-                                mBatteryHistoryMap,
-                                mAppUsagePeriodMap,
-                                getSystemAppsPackageNames(),
-                                getSystemAppsUids()));
-
-                Log.d(
-                        TAG,
-                        String.format(
-                                "execute generateFinalDataAndApplyCallback size=%d in %d/ms",
-                                batteryDiffDataMap.size(), System.currentTimeMillis() - startTime));
-                return batteryDiffDataMap;
-            }
-
-            @Override
-            protected void onPostExecute(final Map<Long, BatteryDiffData> batteryDiffDataMap) {
-                // Post results back to main thread to refresh UI.
-                if (mHandler != null && mCallbackFunction != null) {
-                    mHandler.post(
-                            () -> {
-                                mCallbackFunction.onBatteryDiffDataMapLoaded(batteryDiffDataMap);
-                            });
-                }
-            }
-        }.execute();
+        }
+        batteryDiffDataMap.putAll(
+                DataProcessor.getBatteryDiffDataMap(
+                        mContext,
+                        mHourlyBatteryLevelsPerDay,
+                        mBatteryHistoryTable,
+                        mAppUsagePeriodMap,
+                        getSystemAppsPackageNames(),
+                        getSystemAppsUids()));
+        Log.d(TAG, "generateFinalData size=" + batteryDiffDataMap.size());
+        return batteryDiffDataMap;
+    }
+
+    private <T> CompletableFuture<T> runStageAsync(final String name, final Supplier<T> stage) {
+        final CompletableFuture<T> future =
+                CompletableFuture.supplyAsync(() -> runStage(name, stage), getExecutor());
+        synchronized (mFutures) {
+            mFutures.add(future);
+        }
+        return future;
+    }
+
+    private <T> T runStage(final String name, final Supplier<T> stage) {
+        if (mIsCancelled) {
+            throw new CancellationException(name + " is cancelled");
+        }
+        final long startTime = SystemClock.elapsedRealtime();
+        final T result = stage.get();
+        final long elapsedTime = SystemClock.elapsedRealtime() - startTime;
+        synchronized (mStageTimings) {
+            mStageTimings.put(name, elapsedTime);
+        }
+        Log.d(TAG, String.format("execute %s in %d/ms", name, elapsedTime));
+        return result;
+    }
+
+    private void applyCallbackWhenComplete(
+            final CompletableFuture<Map<Long, BatteryDiffData>> future) {
+        synchronized (mFutures) {
+            mFutures.add(future);
+        }
+        future.whenComplete(
+                (batteryDiffDataMap, throwable) -> {
+                    if (mIsCancelled) {
+                        Log.d(TAG, "data processing is cancelled");
+                        return;
+                    }
+                    // Applies an empty result if any stage failed, so the UI is not left loading.
+                    final Map<Long, BatteryDiffData> resultMap;
+                    if (throwable != null) {
+                        Log.e(TAG, "failed to process battery usage data", throwable);
+                        resultMap = new ArrayMap<>();
+                    } else {
+                        resultMap = batteryDiffDataMap;
+                    }
+                    Log.d(
+                            TAG,
+                            String.format(
+                                    "execute all stages in %d/ms: %s",
+                                    SystemClock.elapsedRealtime() - mStartTime,
+                                    getStageTimings()));
+                    // Post results back to main thread to refresh UI.
+                    if (mHandler != null && mCallbackFunction != null) {
+                        mHandler.post(
+                                () -> {
+                                    if (!mIsCancelled) {
+                                        mCallbackFunction.onBatteryDiffDataMapLoaded(resultMap);
+                                    }
+                                });
+                    }
+                });
     }
 
     // Whether we should load app usage data from service or database.
@@ -590,6 +599,13 @@ public class DataProcessManager {
         return mSystemAppsUids;
     }
 
+    private static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            sExecutor = Executors.newFixedThreadPool(POOL_SIZE);
+        }
+        return sExecutor;
+    }
+
     /**
      * @return Returns battery level data and start async task to compute battery diff usage data
      *     and load app labels + icons. Returns null if the input is invalid or not having at least
@@ -601,6 +617,26 @@ public class DataProcessManager {
             @Nullable Handler handler,
             final boolean isFromPeriodJob,
             final OnBatteryDiffDataMapLoadedListener onBatteryUsageMapLoadedListener) {
+        return getBatteryLevelData(
+                context,
+                handler,
+                isFromPeriodJob,
+                onBatteryUsageMapLoadedListener,
+                /* cancellationSignal= */ null);
+    }
+
+    /**
+     * Same as {@link #getBatteryLevelData(Context, Handler, boolean,
+     * OnBatteryDiffDataMapLoadedListener)}, and stops the started async stages when {@code
+     * cancellationSignal} is cancelled.
+     */
+    @Nullable
+    public static BatteryLevelData getBatteryLevelData(
+            Context context,
+            @Nullable Handler handler,
+            final boolean isFromPeriodJob,
+            final OnBatteryDiffDataMapLoadedListener onBatteryUsageMapLoadedListener,
+            @Nullable final CancellationSignal cancellationSignal) {
         final long start = System.currentTimeMillis();
         final long lastFullChargeTime = DatabaseUtils.getLastFullChargeTime(context);
         final List<BatteryEvent> batteryLevelRecordEvents =
@@ -620,7 +656,8 @@ public class DataProcessManager {
                         startTimestamp,
                         lastFullChargeTime,
                         isFromPeriodJob,
-                        onBatteryUsageMapLoadedListener);
+                        onBatteryUsageMapLoadedListener,
+                        cancellationSignal);
         Log.d(
                 TAG,
                 String.format(
@@ -639,7 +676,8 @@ public class DataProcessManager {
             final long startTimestamp,
             final long lastFullChargeTime,
             final boolean isFromPeriodJob,
-            final OnBatteryDiffDataMapLoadedListener onBatteryDiffDataMapLoadedListener) {
+            final OnBatteryDiffDataMapLoadedListener onBatteryDiffDataMapLoadedListener,
+            @Nullable final CancellationSignal cancellationSignal) {
         final long currentTime = System.currentTimeMillis();
         Log.d(
                 TAG,
@@ -653,44 +691,62 @@ public class DataProcessManager {
         }
 
         handler = handler != null ? handler : new Handler(Looper.getMainLooper());
-        final Map<Long, Map<String, BatteryHistEntry>> batteryHistoryMap =
+        final BatteryHistoryTable batteryHistoryTable =
                 sFakeBatteryHistoryMap != null
-                        ? sFakeBatteryHistoryMap
-                        : DatabaseUtils.getHistoryMapSinceLatestRecordBeforeQueryTimestamp(
+                        ? BatteryHistoryTable.fromHistoryMap(sFakeBatteryHistoryMap)
+                        : DatabaseUtils.getHistoryTableSinceLatestRecordBeforeQueryTimestamp(
                                 context,
                                 Calendar.getInstance(),
                                 startTimestamp,
                                 lastFullChargeTime);
-        if (batteryHistoryMap == null || batteryHistoryMap.isEmpty()) {
-            Log.d(TAG, "batteryHistoryMap is null in getPeriodBatteryLevelData()");
-            new DataProcessManager(context, handler, onBatteryDiffDataMapLoadedListener).start();
+        if (batteryHistoryTable.getSlotCount() == 0) {
+            Log.d(TAG, "batteryHistoryTable is empty in getPeriodBatteryLevelData()");
+            start(
+                    new DataProcessManager(context, handler, onBatteryDiffDataMapLoadedListener),
+                    /* isFromPeriodJob= */ false,
+                    cancellationSignal);
             return null;
         }
 
-        // Process raw history map data into hourly timestamps.
-        final Map<Long, Map<String, BatteryHistEntry>> processedBatteryHistoryMap =
-                DataProcessor.getHistoryMapWithExpectedTimestamps(context, batteryHistoryMap);
-        // Wrap and processed history map into easy-to-use format for UI rendering.
+        // Process raw history table data into hourly timestamps.
+        final BatteryHistoryTable processedBatteryHistoryTable =
+                DataProcessor.getHistoryTableWithExpectedTimestamps(context, batteryHistoryTable);
+        // Wrap and processed history table into easy-to-use format for UI rendering.
         final BatteryLevelData batteryLevelData =
-                DataProcessor.getLevelDataThroughProcessedHistoryMap(
-                        context, processedBatteryHistoryMap);
+                DataProcessor.getLevelDataThroughProcessedHistoryTable(
+                        context, processedBatteryHistoryTable);
         if (batteryLevelData == null) {
-            new DataProcessManager(context, handler, onBatteryDiffDataMapLoadedListener).start();
+            start(
+                    new DataProcessManager(context, handler, onBatteryDiffDataMapLoadedListener),
+                    /* isFromPeriodJob= */ false,
+                    cancellationSignal);
             Log.d(TAG, "getBatteryLevelData() returns null");
             return null;
         }
 
         // Start the async task to compute diff usage data and load labels and icons.
-        new DataProcessManager(
+        start(
+                new DataProcessManager(
                         context,
                         handler,
                         startTimestamp,
                         lastFullChargeTime,
                         onBatteryDiffDataMapLoadedListener,
                         batteryLevelData.getHourlyBatteryLevelsPerDay(),
-                        processedBatteryHistoryMap)
-                .start(isFromPeriodJob);
+                        processedBatteryHistoryTable),
+                isFromPeriodJob,
+                cancellationSignal);
 
         return batteryLevelData;
     }
+
+    private static void start(
+            final DataProcessManager dataProcessManager,
+            final boolean isFromPeriodJob,
+            @Nullable final CancellationSignal cancellationSignal) {
+        if (cancellationSignal != null) {
+            cancellationSignal.setOnCancelListener(dataProcessManager::cancel);
+        }
+        dataProcessManager.start(isFromPeriodJob);
+    }
 }
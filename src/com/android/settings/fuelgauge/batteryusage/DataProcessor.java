@@ -24,7 +24,6 @@ import static com.android.settingslib.fuelgauge.BatteryStatus.BATTERY_LEVEL_UNKN
 import android.app.usage.IUsageStatsManager;
 import android.app.usage.UsageEvents;
 import android.app.usage.UsageEvents.Event;
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
@@ -45,6 +44,7 @@ import android.text.format.DateUtils;
 import android.util.ArrayMap;
 import android.util.ArraySet;
 import android.util.Log;
+import android.util.Pair;
 import android.util.SparseArray;
 
 import androidx.annotation.NonNull;
@@ -85,9 +85,6 @@ public final class DataProcessor {
     private static final int MAX_DIFF_SECONDS_OF_UPPER_TIMESTAMP = 5;
     private static final String MEDIASERVER_PACKAGE_NAME = "mediaserver";
     private static final String ANDROID_CORE_APPS_SHARED_USER_ID = "android.uid.shared";
-    private static final Map<String, BatteryHistEntry> EMPTY_BATTERY_MAP = new ArrayMap<>();
-    private static final BatteryHistEntry EMPTY_BATTERY_HIST_ENTRY =
-            new BatteryHistEntry(new ContentValues());
 
     @VisibleForTesting
     static final long DEFAULT_USAGE_DURATION_FOR_INCOMPLETE_INTERVAL =
@@ -140,21 +137,16 @@ public final class DataProcessor {
             return null;
         }
         // Process raw history map data into hourly timestamps.
-        final Map<Long, Map<String, BatteryHistEntry>> processedBatteryHistoryMap =
-                getHistoryMapWithExpectedTimestamps(context, batteryHistoryMap);
-        // Wrap and processed history map into easy-to-use format for UI rendering.
+        final BatteryHistoryTable processedBatteryHistoryTable =
+                getHistoryTableWithExpectedTimestamps(
+                        context, BatteryHistoryTable.fromHistoryMap(batteryHistoryMap));
+        // Wrap and processed history table into easy-to-use format for UI rendering.
         final BatteryLevelData batteryLevelData =
-                getLevelDataThroughProcessedHistoryMap(context, processedBatteryHistoryMap);
-        // Loads the current battery usage data from the battery stats service.
-        final Map<String, BatteryHistEntry> currentBatteryHistoryMap =
-                getCurrentBatteryHistoryMapFromStatsService(context);
-        // Replaces the placeholder in processedBatteryHistoryMap.
-        for (Map.Entry<Long, Map<String, BatteryHistEntry>> mapEntry :
-                processedBatteryHistoryMap.entrySet()) {
-            if (mapEntry.getValue().containsKey(CURRENT_TIME_BATTERY_HISTORY_PLACEHOLDER)) {
-                mapEntry.setValue(currentBatteryHistoryMap);
-            }
-        }
+                getLevelDataThroughProcessedHistoryTable(context, processedBatteryHistoryTable);
+        // Replaces the placeholder with the current battery usage data from the battery stats
+        // service.
+        processedBatteryHistoryTable.replacePlaceholder(
+                getCurrentBatteryHistoryMapFromStatsService(context));
         return batteryLevelData == null
                 ? null
                 : generateBatteryUsageMap(
@@ -162,7 +154,7 @@ public final class DataProcessor {
                         getBatteryDiffDataMap(
                                 context,
                                 batteryLevelData.getHourlyBatteryLevelsPerDay(),
-                                processedBatteryHistoryMap,
+                                processedBatteryHistoryTable,
                                 /* appUsagePeriodMap= */ null,
                                 getSystemAppsPackageNames(context),
                                 getSystemAppsUids(context)),
@@ -285,6 +277,27 @@ public final class DataProcessor {
         final Map<Integer, Map<Integer, Map<Long, Map<String, List<AppUsagePeriod>>>>> resultMap =
                 new ArrayMap<>();
 
+        // Flattens the hourly slots of all days, which are in ascending order.
+        final List<Long> slotTimestamps = new ArrayList<>();
+        for (int dailyIndex = 0; dailyIndex < hourlyBatteryLevelsPerDay.size(); dailyIndex++) {
+            if (hourlyBatteryLevelsPerDay.get(dailyIndex) == null) {
+                continue;
+            }
+            final List<Long> timestamps = hourlyBatteryLevelsPerDay.get(dailyIndex).getTimestamps();
+            for (int hourlyIndex = 0; hourlyIndex < timestamps.size() - 1; hourlyIndex++) {
+                slotTimestamps.add(timestamps.get(hourlyIndex));
+                slotTimestamps.add(timestamps.get(hourlyIndex + 1));
+            }
+        }
+        final List<Map<Long, Map<String, List<AppUsagePeriod>>>> slotUsagePeriodList =
+                buildAppUsagePeriodListForSlots(
+                        context,
+                        appUsageEventList,
+                        new PowerConnectedIntervals(batteryEventList),
+                        slotTimestamps,
+                        DatabaseUtils.USAGE_QUERY_BUFFER_HOURS);
+
+        int slotIndex = 0;
         for (int dailyIndex = 0; dailyIndex < hourlyBatteryLevelsPerDay.size(); dailyIndex++) {
             final Map<Integer, Map<Long, Map<String, List<AppUsagePeriod>>>> dailyMap =
                     new ArrayMap<>();
@@ -294,22 +307,8 @@ public final class DataProcessor {
             }
             final List<Long> timestamps = hourlyBatteryLevelsPerDay.get(dailyIndex).getTimestamps();
             for (int hourlyIndex = 0; hourlyIndex < timestamps.size() - 1; hourlyIndex++) {
-                final long startTimestamp = timestamps.get(hourlyIndex);
-                final long endTimestamp = timestamps.get(hourlyIndex + 1);
-                // Gets the app usage event list for this hourly slot first.
-                final List<AppUsageEvent> hourlyAppUsageEventList =
-                        getAppUsageEventListWithinTimeRangeWithBuffer(
-                                appUsageEventList, startTimestamp, endTimestamp);
-
                 // The value could be null when there is no data in the hourly slot.
-                dailyMap.put(
-                        hourlyIndex,
-                        buildAppUsagePeriodList(
-                                context,
-                                hourlyAppUsageEventList,
-                                batteryEventList,
-                                startTimestamp,
-                                endTimestamp));
+                dailyMap.put(hourlyIndex, slotUsagePeriodList.get(slotIndex++));
             }
         }
         return resultMap;
@@ -419,39 +418,57 @@ public final class DataProcessor {
      */
     static Map<Long, Map<String, BatteryHistEntry>> getHistoryMapWithExpectedTimestamps(
             Context context, final Map<Long, Map<String, BatteryHistEntry>> batteryHistoryMap) {
+        return getHistoryTableWithExpectedTimestamps(
+                        context, BatteryHistoryTable.fromHistoryMap(batteryHistoryMap))
+                .toHistoryMap();
+    }
+
+    /**
+     * @return Returns the processed history table which has interpolated to every hour data, see
+     *     {@link #getHistoryMapWithExpectedTimestamps(Context, Map)}.
+     */
+    static BatteryHistoryTable getHistoryTableWithExpectedTimestamps(
+            Context context, final BatteryHistoryTable batteryHistoryTable) {
         final long startTime = System.currentTimeMillis();
-        final List<Long> rawTimestampList = new ArrayList<>(batteryHistoryMap.keySet());
-        final Map<Long, Map<String, BatteryHistEntry>> resultMap = new ArrayMap();
-        if (rawTimestampList.isEmpty()) {
-            Log.d(TAG, "empty batteryHistoryMap in getHistoryMapWithExpectedTimestamps()");
-            return resultMap;
-        }
-        Collections.sort(rawTimestampList);
-        final long currentTime = getCurrentTimeMillis();
-        final List<Long> expectedTimestampList = getTimestampSlots(rawTimestampList, currentTime);
-        interpolateHistory(
-                context, rawTimestampList, expectedTimestampList, batteryHistoryMap, resultMap);
+        if (batteryHistoryTable.getSlotCount() == 0) {
+            Log.d(TAG, "empty batteryHistoryTable in getHistoryTableWithExpectedTimestamps()");
+            return new BatteryHistoryTable(new long[0]);
+        }
+        final long[] expectedTimestampSlots =
+                getTimestampSlots(batteryHistoryTable.getTimestamp(0), getCurrentTimeMillis());
+        final BatteryHistoryTable resultTable =
+                new BatteryHistoryTable(expectedTimestampSlots, batteryHistoryTable);
+        interpolateHistory(context, batteryHistoryTable, resultTable);
         Log.d(
                 TAG,
                 String.format(
-                        "getHistoryMapWithExpectedTimestamps() size=%d in %d/ms",
-                        resultMap.size(), (System.currentTimeMillis() - startTime)));
-        return resultMap;
+                        "getHistoryTableWithExpectedTimestamps() size=%d in %d/ms",
+                        resultTable.getSlotCount(), (System.currentTimeMillis() - startTime)));
+        return resultTable;
     }
 
     @Nullable
     static BatteryLevelData getLevelDataThroughProcessedHistoryMap(
             Context context,
             final Map<Long, Map<String, BatteryHistEntry>> processedBatteryHistoryMap) {
+        return getLevelDataThroughProcessedHistoryTable(
+                context, BatteryHistoryTable.fromHistoryMap(processedBatteryHistoryMap));
+    }
+
+    @Nullable
+    static BatteryLevelData getLevelDataThroughProcessedHistoryTable(
+            Context context, final BatteryHistoryTable processedBatteryHistoryTable) {
         // There should be at least the start and end timestamps. Otherwise, return null to not show
         // data in usage chart.
-        if (processedBatteryHistoryMap.size() < MIN_DAILY_DATA_SIZE) {
+        final int slotCount = processedBatteryHistoryTable.getSlotCount();
+        if (slotCount < MIN_DAILY_DATA_SIZE) {
             return null;
         }
-        Map<Long, Integer> batteryLevelMap = new ArrayMap<>();
-        for (Long timestamp : processedBatteryHistoryMap.keySet()) {
+        Map<Long, Integer> batteryLevelMap = new ArrayMap<>(slotCount);
+        for (int slot = 0; slot < slotCount; slot++) {
             batteryLevelMap.put(
-                    timestamp, getLevel(context, processedBatteryHistoryMap, timestamp));
+                    processedBatteryHistoryTable.getTimestamp(slot),
+                    getLevel(context, processedBatteryHistoryTable, slot));
         }
         return new BatteryLevelData(batteryLevelMap);
     }
@@ -467,19 +484,30 @@ public final class DataProcessor {
         if (rawTimestampList.isEmpty()) {
             return timestampSlots;
         }
-        final long startTimestamp = rawTimestampList.get(0);
+        for (long timestamp : getTimestampSlots(rawTimestampList.get(0), currentTime)) {
+            timestampSlots.add(timestamp);
+        }
+        return timestampSlots;
+    }
+
+    private static long[] getTimestampSlots(final long startTimestamp, final long currentTime) {
         final long endTimestamp = currentTime;
         // If the start timestamp is later or equal the end one, return the empty list.
         if (startTimestamp >= endTimestamp) {
-            return timestampSlots;
-        }
-        timestampSlots.add(startTimestamp);
-        for (long timestamp = TimestampUtils.getNextHourTimestamp(startTimestamp);
-                timestamp < endTimestamp;
-                timestamp += DateUtils.HOUR_IN_MILLIS) {
-            timestampSlots.add(timestamp);
-        }
-        timestampSlots.add(endTimestamp);
+            return new long[0];
+        }
+        final long firstHourTimestamp = TimestampUtils.getNextHourTimestamp(startTimestamp);
+        final int hourCount =
+                firstHourTimestamp < endTimestamp
+                        ? (int) ((endTimestamp - firstHourTimestamp - 1) / DateUtils.HOUR_IN_MILLIS)
+                                + 1
+                        : 0;
+        final long[] timestampSlots = new long[hourCount + 2];
+        timestampSlots[0] = startTimestamp;
+        for (int index = 0; index < hourCount; index++) {
+            timestampSlots[index + 1] = firstHourTimestamp + index * DateUtils.HOUR_IN_MILLIS;
+        }
+        timestampSlots[hourCount + 1] = endTimestamp;
         return timestampSlots;
     }
 
@@ -527,6 +555,23 @@ public final class DataProcessor {
                     appUsagePeriodMap,
             final @NonNull Set<String> systemAppsPackageNames,
             final @NonNull Set<Integer> systemAppsUids) {
+        return getBatteryDiffDataMap(
+                context,
+                hourlyBatteryLevelsPerDay,
+                BatteryHistoryTable.fromHistoryMap(batteryHistoryMap),
+                appUsagePeriodMap,
+                systemAppsPackageNames,
+                systemAppsUids);
+    }
+
+    static Map<Long, BatteryDiffData> getBatteryDiffDataMap(
+            Context context,
+            final List<BatteryLevelData.PeriodBatteryLevelData> hourlyBatteryLevelsPerDay,
+            final BatteryHistoryTable batteryHistoryTable,
+            final Map<Integer, Map<Integer, Map<Long, Map<String, List<AppUsagePeriod>>>>>
+                    appUsagePeriodMap,
+            final @NonNull Set<String> systemAppsPackageNames,
+            final @NonNull Set<Integer> systemAppsUids) {
         final Map<Long, BatteryDiffData> batteryDiffDataMap = new ArrayMap<>();
         final int currentUserId = context.getUserId();
         final UserHandle userHandle =
@@ -550,17 +595,13 @@ public final class DataProcessor {
                 final int endBatteryLevel =
                         hourlyBatteryLevelsPerDay.get(dailyIndex).getLevels().get(hourlyIndex + 1);
                 final long slotDuration = endTimestamp - startTimestamp;
-                List<Map<String, BatteryHistEntry>> slotBatteryHistoryList = new ArrayList<>();
-                slotBatteryHistoryList.add(
-                        batteryHistoryMap.getOrDefault(startTimestamp, EMPTY_BATTERY_MAP));
-                for (Long timestamp = TimestampUtils.getNextHourTimestamp(startTimestamp);
-                        timestamp < endTimestamp;
-                        timestamp += DateUtils.HOUR_IN_MILLIS) {
-                    slotBatteryHistoryList.add(
-                            batteryHistoryMap.getOrDefault(timestamp, EMPTY_BATTERY_MAP));
+                // The table slots of the start, every sharp hour and the end timestamps, -1 if
+                // there is no data in the timestamp.
+                final long[] slotTimestamps = getTimestampSlots(startTimestamp, endTimestamp);
+                final int[] slotIndexes = new int[slotTimestamps.length];
+                for (int index = 0; index < slotTimestamps.length; index++) {
+                    slotIndexes[index] = batteryHistoryTable.indexOf(slotTimestamps[index]);
                 }
-                slotBatteryHistoryList.add(
-                        batteryHistoryMap.getOrDefault(endTimestamp, EMPTY_BATTERY_MAP));
 
                 final BatteryDiffData hourlyBatteryDiffData =
                         insertHourlyUsageDiffDataPerSlot(
@@ -578,7 +619,8 @@ public final class DataProcessor {
                                                 || appUsagePeriodMap.get(dailyIndex) == null
                                         ? null
                                         : appUsagePeriodMap.get(dailyIndex).get(hourlyIndex),
-                                slotBatteryHistoryList);
+                                batteryHistoryTable,
+                                slotIndexes);
                 batteryDiffDataMap.put(startTimestamp, hourlyBatteryDiffData);
             }
         }
@@ -605,7 +647,7 @@ public final class DataProcessor {
         final Map<Integer, Map<Integer, BatteryDiffData>> resultMap = new ArrayMap<>();
         if (batteryLevelData == null) {
             Preconditions.checkArgument(batteryDiffDataMap.size() == 1);
-            BatteryDiffData batteryDiffData = batteryDiffDataMap.values().stream().toList().get(0);
+            BatteryDiffData batteryDiffData = batteryDiffDataMap.values().iterator().next();
             final Map<Integer, BatteryDiffData> allUsageMap = new ArrayMap<>();
             allUsageMap.put(SELECTED_INDEX_ALL, batteryDiffData);
             resultMap.put(SELECTED_INDEX_ALL, allUsageMap);
@@ -720,75 +762,23 @@ public final class DataProcessor {
         if (appUsageEvents.isEmpty()) {
             return null;
         }
-
-        // Attributes the list of AppUsagePeriod into device events and instance events for further
-        // use.
-        final List<AppUsageEvent> deviceEvents = new ArrayList<>();
-        final ArrayMap<Integer, List<AppUsageEvent>> usageEventsByInstanceId = new ArrayMap<>();
-        for (final AppUsageEvent event : appUsageEvents) {
-            final AppUsageEventType eventType = event.getType();
-            if (eventType == AppUsageEventType.ACTIVITY_RESUMED
-                    || eventType == AppUsageEventType.ACTIVITY_STOPPED) {
-                final int instanceId = event.getInstanceId();
-                if (usageEventsByInstanceId.get(instanceId) == null) {
-                    usageEventsByInstanceId.put(instanceId, new ArrayList<>());
-                }
-                usageEventsByInstanceId.get(instanceId).add(event);
-            } else if (eventType == AppUsageEventType.DEVICE_SHUTDOWN) {
-                // Track device-wide events in their own list as they affect any app.
-                deviceEvents.add(event);
-            }
-        }
-        if (usageEventsByInstanceId.isEmpty()) {
-            return null;
-        }
-
-        final Map<Long, Map<String, List<AppUsagePeriod>>> allUsagePeriods = new ArrayMap<>();
-
-        for (int i = 0; i < usageEventsByInstanceId.size(); i++) {
-            // The usage periods for an instance are determined by the usage events with its
-            // instance id and any device-wide events such as device shutdown.
-            final List<AppUsageEvent> usageEvents = usageEventsByInstanceId.valueAt(i);
-            if (usageEvents == null || usageEvents.isEmpty()) {
-                continue;
-            }
-            // The same instance must have same userId and packageName.
-            final AppUsageEvent firstEvent = usageEvents.get(0);
-            final long eventUserId = firstEvent.getUserId();
-            final String packageName =
-                    getEffectivePackageName(
-                            context,
-                            sUsageStatsManager,
-                            firstEvent.getPackageName(),
-                            firstEvent.getTaskRootPackageName());
-            usageEvents.addAll(deviceEvents);
-            // Sorts the usageEvents in ascending order based on the timestamp before computing the
-            // period.
-            Collections.sort(usageEvents, APP_USAGE_EVENT_TIMESTAMP_COMPARATOR);
-
-            // A package might have multiple instances. Computes the usage period per instance id
-            // and then merges them into the same user-package map.
-            final List<AppUsagePeriod> usagePeriodList =
-                    excludePowerConnectedTimeFromAppUsagePeriodList(
-                            buildAppUsagePeriodListPerInstance(usageEvents, startTime, endTime),
-                            batteryEventList);
-            if (!usagePeriodList.isEmpty()) {
-                addToUsagePeriodMap(allUsagePeriods, usagePeriodList, eventUserId, packageName);
-            }
-        }
-
-        // Sorts all usage periods by start time.
-        for (final long userId : allUsagePeriods.keySet()) {
-            if (allUsagePeriods.get(userId) == null) {
-                continue;
-            }
-            for (final String packageName : allUsagePeriods.get(userId).keySet()) {
-                Collections.sort(
-                        allUsagePeriods.get(userId).get(packageName),
-                        Comparator.comparing(AppUsagePeriod::getStartTime));
-            }
-        }
-        return allUsagePeriods.isEmpty() ? null : allUsagePeriods;
+        final List<AppUsageEvent> sortedEvents = new ArrayList<>(appUsageEvents);
+        Collections.sort(sortedEvents, APP_USAGE_EVENT_TIMESTAMP_COMPARATOR);
+        // All the given events belong to the time slot, so the buffer covers all of them.
+        final long bufferTime =
+                Math.max(
+                        0,
+                        Math.max(
+                                startTime - sortedEvents.get(0).getTimestamp(),
+                                sortedEvents.get(sortedEvents.size() - 1).getTimestamp()
+                                        - endTime));
+        return buildAppUsagePeriodListForSlots(
+                        context,
+                        sortedEvents,
+                        new PowerConnectedIntervals(batteryEventList),
+                        List.of(startTime, endTime),
+                        bufferTime)
+                .get(0);
     }
 
     @VisibleForTesting
@@ -839,56 +829,15 @@ public final class DataProcessor {
         return usagePeriodList;
     }
 
+    /**
+     * Excludes the time when the device is connected to power from the {@code usagePeriodList}.
+     *
+     * <p>Note: The batteryEventList should have been sorted when calling this function.
+     */
     @VisibleForTesting
     static List<AppUsagePeriod> excludePowerConnectedTimeFromAppUsagePeriodList(
             final List<AppUsagePeriod> usagePeriodList, final List<BatteryEvent> batteryEventList) {
-        final List<AppUsagePeriod> resultList = new ArrayList<>();
-        int index = 0;
-        for (AppUsagePeriod inputPeriod : usagePeriodList) {
-            long lastStartTime = inputPeriod.getStartTime();
-            while (index < batteryEventList.size()) {
-                BatteryEvent batteryEvent = batteryEventList.get(index);
-                if (batteryEvent.getTimestamp() < inputPeriod.getStartTime()) {
-                    // Because the batteryEventList has been sorted, here is to mark the power
-                    // connection state when the usage period starts. If power is connected when
-                    // the usage period starts, the starting period will be ignored; otherwise it
-                    // will be added.
-                    if (batteryEvent.getType() == BatteryEventType.POWER_CONNECTED) {
-                        lastStartTime = 0;
-                    } else if (batteryEvent.getType() == BatteryEventType.POWER_DISCONNECTED) {
-                        lastStartTime = inputPeriod.getStartTime();
-                    }
-                    index++;
-                    continue;
-                }
-                if (batteryEvent.getTimestamp() > inputPeriod.getEndTime()) {
-                    // Because the batteryEventList has been sorted, if any event is already after
-                    // the end time, all the following events should be able to drop directly.
-                    break;
-                }
-
-                if (batteryEvent.getType() == BatteryEventType.POWER_CONNECTED
-                        && lastStartTime != 0) {
-                    resultList.add(
-                            AppUsagePeriod.newBuilder()
-                                    .setStartTime(lastStartTime)
-                                    .setEndTime(batteryEvent.getTimestamp())
-                                    .build());
-                    lastStartTime = 0;
-                } else if (batteryEvent.getType() == BatteryEventType.POWER_DISCONNECTED) {
-                    lastStartTime = batteryEvent.getTimestamp();
-                }
-                index++;
-            }
-            if (lastStartTime != 0) {
-                resultList.add(
-                        AppUsagePeriod.newBuilder()
-                                .setStartTime(lastStartTime)
-                                .setEndTime(inputPeriod.getEndTime())
-                                .build());
-            }
-        }
-        return resultList;
+        return new PowerConnectedIntervals(batteryEventList).excludeFrom(usagePeriodList);
     }
 
     @VisibleForTesting
@@ -955,26 +904,208 @@ public final class DataProcessor {
     }
 
     /**
-     * Generates the list of {@link AppUsageEvent} within the specific time range. The buffer is
-     * added to make sure the app usage calculation near the boundaries is correct.
+     * Builds the {@link AppUsagePeriod} list data of all the time slots in one sweep.
+     *
+     * <p>The events are split by the instance id once. The events of each instance are then visited
+     * through a window sliding along the slots, which covers the slot with the buffer added on both
+     * sides to make sure the app usage calculation near the boundaries is correct. So each event is
+     * only visited by the few slots close to it, instead of scanning the whole list for each slot.
      *
      * <p>Note: The appUsageEventList should have been sorted when calling this function.
+     *
+     * @param slotTimestamps the start and end timestamps of each slot, in ascending order
+     * @return the usage period map of each slot, which is null if there is no data in the slot
      */
-    private static List<AppUsageEvent> getAppUsageEventListWithinTimeRangeWithBuffer(
-            final List<AppUsageEvent> appUsageEventList, final long startTime, final long endTime) {
-        final long start = startTime - DatabaseUtils.USAGE_QUERY_BUFFER_HOURS;
-        final long end = endTime + DatabaseUtils.USAGE_QUERY_BUFFER_HOURS;
-        final List<AppUsageEvent> resultList = new ArrayList<>();
+    private static List<Map<Long, Map<String, List<AppUsagePeriod>>>>
+            buildAppUsagePeriodListForSlots(
+                    final Context context,
+                    final List<AppUsageEvent> appUsageEventList,
+                    final PowerConnectedIntervals powerConnectedIntervals,
+                    final List<Long> slotTimestamps,
+                    final long bufferTime) {
+        final int slotCount = slotTimestamps.size() / 2;
+        final long[] windowStartTimes = new long[slotCount];
+        final long[] windowEndTimes = new long[slotCount];
+        for (int slotIndex = 0; slotIndex < slotCount; slotIndex++) {
+            windowStartTimes[slotIndex] = slotTimestamps.get(slotIndex * 2) - bufferTime;
+            windowEndTimes[slotIndex] = slotTimestamps.get(slotIndex * 2 + 1) + bufferTime;
+        }
+        final List<Map<Long, Map<String, List<AppUsagePeriod>>>> resultList =
+                new ArrayList<>(Collections.nCopies(slotCount, null));
+
+        // Attributes the list of AppUsageEvent into device events and instance events for further
+        // use. Both keep the ascending order of the timestamp.
+        final List<AppUsageEvent> deviceEvents = new ArrayList<>();
+        final SparseArray<List<AppUsageEvent>> usageEventsByInstanceId = new SparseArray<>();
         for (final AppUsageEvent event : appUsageEventList) {
-            final long eventTime = event.getTimestamp();
-            // Because the appUsageEventList has been sorted, if any event is already after the end
-            // time, all the following events should be able to drop directly.
-            if (eventTime > end) {
-                break;
+            final AppUsageEventType eventType = event.getType();
+            if (eventType == AppUsageEventType.ACTIVITY_RESUMED
+                    || eventType == AppUsageEventType.ACTIVITY_STOPPED) {
+                final int instanceId = event.getInstanceId();
+                if (usageEventsByInstanceId.get(instanceId) == null) {
+                    usageEventsByInstanceId.put(instanceId, new ArrayList<>());
+                }
+                usageEventsByInstanceId.get(instanceId).add(event);
+            } else if (eventType == AppUsageEventType.DEVICE_SHUTDOWN) {
+                // Track device-wide events in their own list as they affect any app.
+                deviceEvents.add(event);
             }
-            // If the event timestamp is in [start, end], add it into the result list.
-            if (eventTime >= start) {
-                resultList.add(event);
+        }
+        if (usageEventsByInstanceId.size() == 0) {
+            return resultList;
+        }
+        // The device events are shared by all instances, so their windows are found once.
+        final int[] deviceEventStarts = new int[slotCount];
+        final int[] deviceEventEnds = new int[slotCount];
+        int deviceEventStart = 0;
+        int deviceEventEnd = 0;
+        for (int slotIndex = 0; slotIndex < slotCount; slotIndex++) {
+            deviceEventStart =
+                    findWindowStart(deviceEvents, deviceEventStart, windowStartTimes[slotIndex]);
+            deviceEventEnd =
+                    findWindowEnd(
+                            deviceEvents,
+                            Math.max(deviceEventStart, deviceEventEnd),
+                            windowEndTimes[slotIndex]);
+            deviceEventStarts[slotIndex] = deviceEventStart;
+            deviceEventEnds[slotIndex] = deviceEventEnd;
+        }
+
+        // The effective package name is resolved once for the same package and task root.
+        final Map<Pair<String, String>, String> effectivePackageNames = new ArrayMap<>();
+        for (int i = 0; i < usageEventsByInstanceId.size(); i++) {
+            final List<AppUsageEvent> usageEvents = usageEventsByInstanceId.valueAt(i);
+            final long firstEventTime = usageEvents.get(0).getTimestamp();
+            final long lastEventTime = usageEvents.get(usageEvents.size() - 1).getTimestamp();
+            int windowStart = 0;
+            int windowEnd = 0;
+            // Skips the slots ending before the first event of the instance directly.
+            for (int slotIndex = findFirstWindowEndingNotBefore(windowEndTimes, firstEventTime);
+                    slotIndex < slotCount && windowStartTimes[slotIndex] <= lastEventTime;
+                    slotIndex++) {
+                windowStart =
+                        findWindowStart(usageEvents, windowStart, windowStartTimes[slotIndex]);
+                windowEnd =
+                        findWindowEnd(
+                                usageEvents,
+                                Math.max(windowStart, windowEnd),
+                                windowEndTimes[slotIndex]);
+                if (windowStart == windowEnd) {
+                    continue;
+                }
+                // The same instance must have same userId and packageName.
+                final AppUsageEvent firstEvent = usageEvents.get(windowStart);
+                final long eventUserId = firstEvent.getUserId();
+                final String packageName =
+                        effectivePackageNames.computeIfAbsent(
+                                Pair.create(
+                                        firstEvent.getPackageName(),
+                                        firstEvent.getTaskRootPackageName()),
+                                key ->
+                                        getEffectivePackageName(
+                                                context,
+                                                sUsageStatsManager,
+                                                key.first,
+                                                key.second));
+                // The usage periods for an instance are determined by the usage events with its
+                // instance id and any device-wide events such as device shutdown.
+                final List<AppUsageEvent> windowEvents =
+                        mergeAppUsageEvents(
+                                usageEvents.subList(windowStart, windowEnd),
+                                deviceEvents.subList(
+                                        deviceEventStarts[slotIndex], deviceEventEnds[slotIndex]));
+                // A package might have multiple instances. Computes the usage period per instance
+                // id and then merges them into the same user-package map.
+                final List<AppUsagePeriod> usagePeriodList =
+                        powerConnectedIntervals.excludeFrom(
+                                buildAppUsagePeriodListPerInstance(
+                                        windowEvents,
+                                        slotTimestamps.get(slotIndex * 2),
+                                        slotTimestamps.get(slotIndex * 2 + 1)));
+                if (usagePeriodList.isEmpty()) {
+                    continue;
+                }
+                if (resultList.get(slotIndex) == null) {
+                    resultList.set(slotIndex, new ArrayMap<>());
+                }
+                addToUsagePeriodMap(
+                        resultList.get(slotIndex), usagePeriodList, eventUserId, packageName);
+            }
+        }
+
+        // Sorts all usage periods by start time.
+        for (final Map<Long, Map<String, List<AppUsagePeriod>>> allUsagePeriods : resultList) {
+            if (allUsagePeriods == null) {
+                continue;
+            }
+            for (final Map<String, List<AppUsagePeriod>> packageNameMap :
+                    allUsagePeriods.values()) {
+                for (final List<AppUsagePeriod> usagePeriodList : packageNameMap.values()) {
+                    Collections.sort(
+                            usagePeriodList, Comparator.comparing(AppUsagePeriod::getStartTime));
+                }
+            }
+        }
+        return resultList;
+    }
+
+    /** Returns the index of the first event from {@code fromIndex} not before the start time. */
+    private static int findWindowStart(
+            final List<AppUsageEvent> events, final int fromIndex, final long startTime) {
+        int index = fromIndex;
+        while (index < events.size() && events.get(index).getTimestamp() < startTime) {
+            index++;
+        }
+        return index;
+    }
+
+    /** Returns the index of the first event from {@code fromIndex} after the end time. */
+    private static int findWindowEnd(
+            final List<AppUsageEvent> events, final int fromIndex, final long endTime) {
+        int index = fromIndex;
+        while (index < events.size() && events.get(index).getTimestamp() <= endTime) {
+            index++;
+        }
+        return index;
+    }
+
+    /** Returns the index of the first window which does not end before the timestamp. */
+    private static int findFirstWindowEndingNotBefore(
+            final long[] windowEndTimes, final long timestamp) {
+        int low = 0;
+        int high = windowEndTimes.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (windowEndTimes[middle] < timestamp) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Merges the sorted instance events and device events. The instance event goes first if both
+     * have the same timestamp.
+     */
+    private static List<AppUsageEvent> mergeAppUsageEvents(
+            final List<AppUsageEvent> usageEvents, final List<AppUsageEvent> deviceEvents) {
+        if (deviceEvents.isEmpty()) {
+            return usageEvents;
+        }
+        final List<AppUsageEvent> resultList =
+                new ArrayList<>(usageEvents.size() + deviceEvents.size());
+        int usageIndex = 0;
+        int deviceIndex = 0;
+        while (usageIndex < usageEvents.size() || deviceIndex < deviceEvents.size()) {
+            if (deviceIndex == deviceEvents.size()
+                    || (usageIndex < usageEvents.size()
+                            && usageEvents.get(usageIndex).getTimestamp()
+                                    <= deviceEvents.get(deviceIndex).getTimestamp())) {
+                resultList.add(usageEvents.get(usageIndex++));
+            } else {
+                resultList.add(deviceEvents.get(deviceIndex++));
             }
         }
         return resultList;
@@ -1116,82 +1247,78 @@ public final class DataProcessor {
     }
 
     /**
-     * Interpolates history map based on expected timestamp slots and processes the corner case when
-     * the expected start timestamp is earlier than what we have.
+     * Interpolates history table based on expected timestamp slots and processes the corner case
+     * when the expected start timestamp is earlier than what we have.
      */
     private static void interpolateHistory(
             Context context,
-            final List<Long> rawTimestampList,
-            final List<Long> expectedTimestampSlots,
-            final Map<Long, Map<String, BatteryHistEntry>> batteryHistoryMap,
-            final Map<Long, Map<String, BatteryHistEntry>> resultMap) {
-        if (rawTimestampList.isEmpty() || expectedTimestampSlots.isEmpty()) {
+            final BatteryHistoryTable batteryHistoryTable,
+            final BatteryHistoryTable resultTable) {
+        final int expectedSlotCount = resultTable.getSlotCount();
+        if (batteryHistoryTable.getSlotCount() == 0 || expectedSlotCount == 0) {
             return;
         }
-        final int expectedTimestampSlotsSize = expectedTimestampSlots.size();
-        final long startTimestamp = expectedTimestampSlots.get(0);
-        final long endTimestamp = expectedTimestampSlots.get(expectedTimestampSlotsSize - 1);
-
-        resultMap.put(startTimestamp, batteryHistoryMap.get(startTimestamp));
-        for (int index = 1; index < expectedTimestampSlotsSize - 1; index++) {
-            interpolateHistoryForSlot(
-                    context,
-                    expectedTimestampSlots.get(index),
-                    rawTimestampList,
-                    batteryHistoryMap,
-                    resultMap);
+        // The start timestamp is the first raw timestamp.
+        resultTable.copySlot(/* slot= */ 0, batteryHistoryTable, /* sourceSlot= */ 0);
+        for (int slot = 1; slot < expectedSlotCount - 1; slot++) {
+            interpolateHistoryForSlot(context, slot, batteryHistoryTable, resultTable);
         }
-        resultMap.put(
-                endTimestamp,
-                Map.of(CURRENT_TIME_BATTERY_HISTORY_PLACEHOLDER, EMPTY_BATTERY_HIST_ENTRY));
+        resultTable.markPlaceholder(expectedSlotCount - 1);
     }
 
     private static void interpolateHistoryForSlot(
             Context context,
-            final long currentSlot,
-            final List<Long> rawTimestampList,
-            final Map<Long, Map<String, BatteryHistEntry>> batteryHistoryMap,
-            final Map<Long, Map<String, BatteryHistEntry>> resultMap) {
-        final long[] nearestTimestamps = findNearestTimestamp(rawTimestampList, currentSlot);
-        final long lowerTimestamp = nearestTimestamps[0];
-        final long upperTimestamp = nearestTimestamps[1];
+            final int slot,
+            final BatteryHistoryTable batteryHistoryTable,
+            final BatteryHistoryTable resultTable) {
+        final long currentSlot = resultTable.getTimestamp(slot);
+        final int lowerSlot = batteryHistoryTable.floorIndexOf(currentSlot);
+        final int upperSlot = batteryHistoryTable.ceilingIndexOf(currentSlot);
         // Case 1: upper timestamp is zero since scheduler is delayed!
-        if (upperTimestamp == 0) {
+        if (upperSlot < 0) {
             log(context, "job scheduler is delayed", currentSlot, null);
-            resultMap.put(currentSlot, new ArrayMap<>());
             return;
         }
+        final long upperTimestamp = batteryHistoryTable.getTimestamp(upperSlot);
         // Case 2: upper timestamp is closed to the current timestamp.
         if ((upperTimestamp - currentSlot)
                 < MAX_DIFF_SECONDS_OF_UPPER_TIMESTAMP * DateUtils.SECOND_IN_MILLIS) {
             log(context, "force align into the nearest slot", currentSlot, null);
-            resultMap.put(currentSlot, batteryHistoryMap.get(upperTimestamp));
+            resultTable.copySlot(slot, batteryHistoryTable, upperSlot);
             return;
         }
         // Case 3: lower timestamp is zero before starting to collect data.
-        if (lowerTimestamp == 0) {
+        if (lowerSlot < 0) {
             log(context, "no lower timestamp slot data", currentSlot, null);
-            resultMap.put(currentSlot, new ArrayMap<>());
             return;
         }
         interpolateHistoryForSlot(
-                context, currentSlot, lowerTimestamp, upperTimestamp, batteryHistoryMap, resultMap);
+                context, slot, lowerSlot, upperSlot, batteryHistoryTable, resultTable);
     }
 
     private static void interpolateHistoryForSlot(
             Context context,
-            final long currentSlot,
-            final long lowerTimestamp,
-            final long upperTimestamp,
-            final Map<Long, Map<String, BatteryHistEntry>> batteryHistoryMap,
-            final Map<Long, Map<String, BatteryHistEntry>> resultMap) {
-        final Map<String, BatteryHistEntry> lowerEntryDataMap =
-                batteryHistoryMap.get(lowerTimestamp);
-        final Map<String, BatteryHistEntry> upperEntryDataMap =
-                batteryHistoryMap.get(upperTimestamp);
+            final int slot,
+            final int lowerSlot,
+            final int upperSlot,
+            final BatteryHistoryTable batteryHistoryTable,
+            final BatteryHistoryTable resultTable) {
+        final long currentSlot = resultTable.getTimestamp(slot);
+        final long lowerTimestamp = batteryHistoryTable.getTimestamp(lowerSlot);
+        final long upperTimestamp = batteryHistoryTable.getTimestamp(upperSlot);
+        final int consumerCount = batteryHistoryTable.getConsumerCount();
         // Verifies whether the lower data is valid to use or not by checking boot time.
+        int firstUpperConsumerId = 0;
+        while (firstUpperConsumerId < consumerCount
+                && !batteryHistoryTable.hasEntry(upperSlot, firstUpperConsumerId)) {
+            firstUpperConsumerId++;
+        }
+        if (firstUpperConsumerId == consumerCount) {
+            log(context, "no upper timestamp slot data", currentSlot, null);
+            return;
+        }
         final BatteryHistEntry upperEntryDataFirstEntry =
-                upperEntryDataMap.values().stream().findFirst().get();
+                batteryHistoryTable.getSourceEntry(upperSlot, firstUpperConsumerId);
         final long upperEntryDataBootTimestamp =
                 upperEntryDataFirstEntry.mTimestamp - upperEntryDataFirstEntry.mBootTimestamp;
         // Lower data is captured before upper data corresponding device is booting.
@@ -1202,72 +1329,87 @@ public final class DataProcessor {
             // Provides an opportunity to force align the slot directly.
             if ((upperTimestamp - currentSlot) < 10 * DateUtils.MINUTE_IN_MILLIS) {
                 log(context, "force align into the nearest slot", currentSlot, null);
-                resultMap.put(currentSlot, upperEntryDataMap);
+                resultTable.copySlot(slot, batteryHistoryTable, upperSlot);
             } else {
                 log(context, "in the different booting section", currentSlot, null);
-                resultMap.put(currentSlot, new ArrayMap<>());
             }
             return;
         }
         log(context, "apply interpolation arithmetic", currentSlot, null);
-        final Map<String, BatteryHistEntry> newHistEntryMap = new ArrayMap<>();
         final double timestampLength = upperTimestamp - lowerTimestamp;
         final double timestampDiff = currentSlot - lowerTimestamp;
-        // Applies interpolation arithmetic for each BatteryHistEntry.
-        for (String entryKey : upperEntryDataMap.keySet()) {
-            final BatteryHistEntry lowerEntry = lowerEntryDataMap.get(entryKey);
-            final BatteryHistEntry upperEntry = upperEntryDataMap.get(entryKey);
+        // Applies interpolation arithmetic for each consumer.
+        for (int consumerId = firstUpperConsumerId; consumerId < consumerCount; consumerId++) {
+            if (!batteryHistoryTable.hasEntry(upperSlot, consumerId)) {
+                continue;
+            }
+            final boolean hasLowerEntry = batteryHistoryTable.hasEntry(lowerSlot, consumerId);
             // Checks whether there is any abnormal battery reset conditions.
-            if (lowerEntry != null) {
+            if (hasLowerEntry) {
                 final boolean invalidForegroundUsageTime =
-                        lowerEntry.mForegroundUsageTimeInMs > upperEntry.mForegroundUsageTimeInMs;
+                        batteryHistoryTable.getForegroundUsageTimeInMs(lowerSlot, consumerId)
+                                > batteryHistoryTable.getForegroundUsageTimeInMs(
+                                        upperSlot, consumerId);
                 final boolean invalidBackgroundUsageTime =
-                        lowerEntry.mBackgroundUsageTimeInMs > upperEntry.mBackgroundUsageTimeInMs;
+                        batteryHistoryTable.getBackgroundUsageTimeInMs(lowerSlot, consumerId)
+                                > batteryHistoryTable.getBackgroundUsageTimeInMs(
+                                        upperSlot, consumerId);
                 if (invalidForegroundUsageTime || invalidBackgroundUsageTime) {
-                    newHistEntryMap.put(entryKey, upperEntry);
-                    log(context, "abnormal reset condition is found", currentSlot, upperEntry);
+                    resultTable.copyEntry(slot, consumerId, batteryHistoryTable, upperSlot);
+                    log(
+                            context,
+                            "abnormal reset condition is found",
+                            currentSlot,
+                            batteryHistoryTable.getSourceEntry(upperSlot, consumerId));
                     continue;
                 }
             }
-            final BatteryHistEntry newEntry =
-                    BatteryHistEntry.interpolate(
-                            currentSlot,
-                            upperTimestamp,
-                            /* ratio= */ timestampDiff / timestampLength,
-                            lowerEntry,
-                            upperEntry);
-            newHistEntryMap.put(entryKey, newEntry);
-            if (lowerEntry == null) {
-                log(context, "cannot find lower entry data", currentSlot, upperEntry);
-                continue;
+            resultTable.interpolateEntry(
+                    slot,
+                    consumerId,
+                    batteryHistoryTable,
+                    hasLowerEntry ? lowerSlot : -1,
+                    upperSlot,
+                    /* ratio= */ timestampDiff / timestampLength);
+            if (!hasLowerEntry) {
+                log(
+                        context,
+                        "cannot find lower entry data",
+                        currentSlot,
+                        batteryHistoryTable.getSourceEntry(upperSlot, consumerId));
             }
         }
-        resultMap.put(currentSlot, newHistEntryMap);
     }
 
-    private static Integer getLevel(
+    private static int getLevel(
             Context context,
-            final Map<Long, Map<String, BatteryHistEntry>> processedBatteryHistoryMap,
-            final long timestamp) {
-        final Map<String, BatteryHistEntry> entryMap = processedBatteryHistoryMap.get(timestamp);
-        if (entryMap == null || entryMap.isEmpty()) {
+            final BatteryHistoryTable processedBatteryHistoryTable,
+            final int slot) {
+        // The current time battery history hasn't been loaded yet, returns the current battery
+        // level.
+        if (processedBatteryHistoryTable.isPlaceholder(slot)) {
+            return getCurrentLevel(context);
+        }
+        final int entryCount = processedBatteryHistoryTable.getEntryCount(slot);
+        if (entryCount == 0) {
             Log.e(
                     TAG,
                     "abnormal entry list in the timestamp:"
-                            + ConvertUtils.utcToLocalTimeForLogging(timestamp));
+                            + ConvertUtils.utcToLocalTimeForLogging(
+                                    processedBatteryHistoryTable.getTimestamp(slot)));
             return BATTERY_LEVEL_UNKNOWN;
         }
-        // The current time battery history hasn't been loaded yet, returns the current battery
-        // level.
-        if (entryMap.containsKey(CURRENT_TIME_BATTERY_HISTORY_PLACEHOLDER)) {
-            return getCurrentLevel(context);
-        }
         // Averages the battery level in each time slot to avoid corner conditions.
         float batteryLevelCounter = 0;
-        for (BatteryHistEntry entry : entryMap.values()) {
-            batteryLevelCounter += entry.mBatteryLevel;
+        for (int consumerId = 0;
+                consumerId < processedBatteryHistoryTable.getConsumerCount();
+                consumerId++) {
+            if (processedBatteryHistoryTable.hasEntry(slot, consumerId)) {
+                batteryLevelCounter +=
+                        processedBatteryHistoryTable.getBatteryLevel(slot, consumerId);
+            }
         }
-        return Math.round(batteryLevelCounter / entryMap.size());
+        return Math.round(batteryLevelCounter / entryCount);
     }
 
     private static int getCurrentLevel(Context context) {
@@ -1307,9 +1449,18 @@ public final class DataProcessor {
                 dailyUsageMap = new ArrayMap<>();
                 resultMap.put(index, dailyUsageMap);
             }
+            final List<Long> hourlyTimestamps =
+                    hourlyBatteryLevelsPerDay.get(index).getTimestamps();
+            final List<BatteryDiffData> hourlyDataList = new ArrayList<>();
+            for (int hourlyIndex = 0; hourlyIndex < hourlyTimestamps.size() - 1; hourlyIndex++) {
+                hourlyDataList.add(dailyUsageMap.get(hourlyIndex));
+            }
+            // Only merges the hourly data which are not accumulated by the previous loads.
             dailyUsageMap.put(
                     SELECTED_INDEX_ALL,
-                    getAccumulatedUsageDiffData(context, dailyUsageMap.values()));
+                    BatteryUsageSlotCache.getInstance()
+                            .getDailyUsageDiffData(
+                                    context, hourlyTimestamps.get(0), hourlyDataList));
         }
     }
 
@@ -1337,7 +1488,8 @@ public final class DataProcessor {
             final Set<String> systemAppsPackageNames,
             final Set<Integer> systemAppsUids,
             final Map<Long, Map<String, List<AppUsagePeriod>>> appUsageMap,
-            final List<Map<String, BatteryHistEntry>> slotBatteryHistoryList) {
+            final BatteryHistoryTable batteryHistoryTable,
+            final int[] slotIndexes) {
         long slotScreenOnTime = 0L;
         if (appUsageMap != null) {
             final List<AppUsagePeriod> flatAppUsagePeriodList = new ArrayList<>();
@@ -1360,10 +1512,8 @@ public final class DataProcessor {
         final List<BatteryDiffEntry> appEntries = new ArrayList<>();
         final List<BatteryDiffEntry> systemEntries = new ArrayList<>();
 
-        // Collects all keys in these three time slot records as all populations.
-        final Set<String> allBatteryHistEntryKeys = new ArraySet<>();
-        for (Map<String, BatteryHistEntry> slotBatteryHistMap : slotBatteryHistoryList) {
-            if (slotBatteryHistMap.isEmpty()) {
+        for (int slot : slotIndexes) {
+            if (slot < 0 || batteryHistoryTable.getEntryCount(slot) == 0) {
                 // We should not get the empty list since we have at least one fake data to record
                 // the battery level and status in each time slot, the empty list is used to
                 // represent there is no enough data to apply interpolation arithmetic.
@@ -1380,23 +1530,19 @@ public final class DataProcessor {
                         systemAppsUids,
                         /* isAccumulated= */ false);
             }
-            allBatteryHistEntryKeys.addAll(slotBatteryHistMap.keySet());
         }
 
         // Calculates all packages diff usage data in a specific time slot.
-        for (String key : allBatteryHistEntryKeys) {
-            if (key == null) {
+        for (int consumerId : batteryHistoryTable.getConsumerIdsInKeyOrder()) {
+            if (batteryHistoryTable.getConsumerKey(consumerId) == null) {
                 continue;
             }
 
             BatteryHistEntry selectedBatteryEntry = null;
-            final List<BatteryHistEntry> batteryHistEntries = new ArrayList<>();
-            for (Map<String, BatteryHistEntry> slotBatteryHistMap : slotBatteryHistoryList) {
-                BatteryHistEntry entry =
-                        slotBatteryHistMap.getOrDefault(key, EMPTY_BATTERY_HIST_ENTRY);
-                batteryHistEntries.add(entry);
-                if (selectedBatteryEntry == null && entry != EMPTY_BATTERY_HIST_ENTRY) {
-                    selectedBatteryEntry = entry;
+            for (int slot : slotIndexes) {
+                selectedBatteryEntry = batteryHistoryTable.getSourceEntry(slot, consumerId);
+                if (selectedBatteryEntry != null) {
+                    break;
                 }
             }
             if (selectedBatteryEntry == null) {
@@ -1420,38 +1566,56 @@ public final class DataProcessor {
             double foregroundServiceUsageConsumePower = 0;
             double backgroundUsageConsumePower = 0;
             double cachedUsageConsumePower = 0;
-            for (int i = 0; i < batteryHistEntries.size() - 1; i++) {
-                final BatteryHistEntry currentEntry = batteryHistEntries.get(i);
-                final BatteryHistEntry nextEntry = batteryHistEntries.get(i + 1);
+            // The cells without data of the consumer hold zero values.
+            for (int i = 0; i < slotIndexes.length - 1; i++) {
+                final int currentSlot = slotIndexes[i];
+                final int nextSlot = slotIndexes[i + 1];
                 foregroundUsageTimeInMs +=
                         getDiffValue(
-                                currentEntry.mForegroundUsageTimeInMs,
-                                nextEntry.mForegroundUsageTimeInMs);
+                                batteryHistoryTable.getForegroundUsageTimeInMs(
+                                        currentSlot, consumerId),
+                                batteryHistoryTable.getForegroundUsageTimeInMs(
+                                        nextSlot, consumerId));
                 foregroundServiceUsageTimeInMs +=
                         getDiffValue(
-                                currentEntry.mForegroundServiceUsageTimeInMs,
-                                nextEntry.mForegroundServiceUsageTimeInMs);
+                                batteryHistoryTable.getForegroundServiceUsageTimeInMs(
+                                        currentSlot, consumerId),
+                                batteryHistoryTable.getForegroundServiceUsageTimeInMs(
+                                        nextSlot, consumerId));
                 backgroundUsageTimeInMs +=
                         getDiffValue(
-                                currentEntry.mBackgroundUsageTimeInMs,
-                                nextEntry.mBackgroundUsageTimeInMs);
-                consumePower += getDiffValue(currentEntry.mConsumePower, nextEntry.mConsumePower);
+                                batteryHistoryTable.getBackgroundUsageTimeInMs(
+                                        currentSlot, consumerId),
+                                batteryHistoryTable.getBackgroundUsageTimeInMs(
+                                        nextSlot, consumerId));
+                consumePower +=
+                        getDiffValue(
+                                batteryHistoryTable.getConsumePower(currentSlot, consumerId),
+                                batteryHistoryTable.getConsumePower(nextSlot, consumerId));
                 foregroundUsageConsumePower +=
                         getDiffValue(
-                                currentEntry.mForegroundUsageConsumePower,
-                                nextEntry.mForegroundUsageConsumePower);
+                                batteryHistoryTable.getForegroundUsageConsumePower(
+                                        currentSlot, consumerId),
+                                batteryHistoryTable.getForegroundUsageConsumePower(
+                                        nextSlot, consumerId));
                 foregroundServiceUsageConsumePower +=
                         getDiffValue(
-                                currentEntry.mForegroundServiceUsageConsumePower,
-                                nextEntry.mForegroundServiceUsageConsumePower);
+                                batteryHistoryTable.getForegroundServiceUsageConsumePower(
+                                        currentSlot, consumerId),
+                                batteryHistoryTable.getForegroundServiceUsageConsumePower(
+                                        nextSlot, consumerId));
                 backgroundUsageConsumePower +=
                         getDiffValue(
-                                currentEntry.mBackgroundUsageConsumePower,
-                                nextEntry.mBackgroundUsageConsumePower);
+                                batteryHistoryTable.getBackgroundUsageConsumePower(
+                                        currentSlot, consumerId),
+                                batteryHistoryTable.getBackgroundUsageConsumePower(
+                                        nextSlot, consumerId));
                 cachedUsageConsumePower +=
                         getDiffValue(
-                                currentEntry.mCachedUsageConsumePower,
-                                nextEntry.mCachedUsageConsumePower);
+                                batteryHistoryTable.getCachedUsageConsumePower(
+                                        currentSlot, consumerId),
+                                batteryHistoryTable.getCachedUsageConsumePower(
+                                        nextSlot, consumerId));
             }
             // Forces refine the cumulative value since it may introduce deviation error since we
             // will apply the interpolation arithmetic.
@@ -1592,80 +1756,11 @@ public final class DataProcessor {
     @Nullable
     private static BatteryDiffData getAccumulatedUsageDiffData(
             final Context context, final Collection<BatteryDiffData> batteryDiffDataList) {
-        final Map<String, BatteryDiffEntry> diffEntryMap = new ArrayMap<>();
-        final List<BatteryDiffEntry> appEntries = new ArrayList<>();
-        final List<BatteryDiffEntry> systemEntries = new ArrayList<>();
-
-        long startTimestamp = Long.MAX_VALUE;
-        long endTimestamp = 0;
-        int startBatteryLevel = BATTERY_LEVEL_UNKNOWN;
-        int endBatteryLevel = BATTERY_LEVEL_UNKNOWN;
-        long totalScreenOnTime = 0;
+        final BatteryDiffDataAccumulator accumulator = new BatteryDiffDataAccumulator();
         for (BatteryDiffData batteryDiffData : batteryDiffDataList) {
-            if (batteryDiffData == null) {
-                continue;
-            }
-            if (startTimestamp > batteryDiffData.getStartTimestamp()) {
-                startTimestamp = batteryDiffData.getStartTimestamp();
-                startBatteryLevel = batteryDiffData.getStartBatteryLevel();
-            }
-            if (endTimestamp > batteryDiffData.getEndTimestamp()) {
-                endTimestamp = batteryDiffData.getEndTimestamp();
-                endBatteryLevel = batteryDiffData.getEndBatteryLevel();
-            }
-            totalScreenOnTime += batteryDiffData.getScreenOnTime();
-            for (BatteryDiffEntry entry : batteryDiffData.getAppDiffEntryList()) {
-                computeUsageDiffDataPerEntry(entry, diffEntryMap);
-            }
-            for (BatteryDiffEntry entry : batteryDiffData.getSystemDiffEntryList()) {
-                computeUsageDiffDataPerEntry(entry, diffEntryMap);
-            }
-        }
-
-        final Collection<BatteryDiffEntry> diffEntryList = diffEntryMap.values();
-        for (BatteryDiffEntry entry : diffEntryList) {
-            if (entry.isSystemEntry()) {
-                systemEntries.add(entry);
-            } else {
-                appEntries.add(entry);
-            }
-        }
-
-        return new BatteryDiffData(
-                context,
-                startTimestamp,
-                endTimestamp,
-                startBatteryLevel,
-                endBatteryLevel,
-                totalScreenOnTime,
-                appEntries,
-                systemEntries,
-                /* systemAppsPackageNames= */ new ArraySet<>(),
-                /* systemAppsUids= */ new ArraySet<>(),
-                /* isAccumulated= */ true);
-    }
-
-    private static void computeUsageDiffDataPerEntry(
-            final BatteryDiffEntry entry, final Map<String, BatteryDiffEntry> diffEntryMap) {
-        final String key = entry.getKey();
-        final BatteryDiffEntry oldBatteryDiffEntry = diffEntryMap.get(key);
-        // Creates new BatteryDiffEntry if we don't have it.
-        if (oldBatteryDiffEntry == null) {
-            diffEntryMap.put(key, entry.clone());
-        } else {
-            // Sums up some field data into the existing one.
-            oldBatteryDiffEntry.mForegroundUsageTimeInMs += entry.mForegroundUsageTimeInMs;
-            oldBatteryDiffEntry.mForegroundServiceUsageTimeInMs +=
-                    entry.mForegroundServiceUsageTimeInMs;
-            oldBatteryDiffEntry.mBackgroundUsageTimeInMs += entry.mBackgroundUsageTimeInMs;
-            oldBatteryDiffEntry.mScreenOnTimeInMs += entry.mScreenOnTimeInMs;
-            oldBatteryDiffEntry.mConsumePower += entry.mConsumePower;
-            oldBatteryDiffEntry.mForegroundUsageConsumePower += entry.mForegroundUsageConsumePower;
-            oldBatteryDiffEntry.mForegroundServiceUsageConsumePower +=
-                    entry.mForegroundServiceUsageConsumePower;
-            oldBatteryDiffEntry.mBackgroundUsageConsumePower += entry.mBackgroundUsageConsumePower;
-            oldBatteryDiffEntry.mCachedUsageConsumePower += entry.mCachedUsageConsumePower;
+            accumulator.add(batteryDiffData);
         }
+        return accumulator.build(context);
     }
 
     private static boolean shouldShowBatteryAttributionList(final Context context) {
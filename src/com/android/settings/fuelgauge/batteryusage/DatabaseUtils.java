@@ -349,18 +349,8 @@ public final class DatabaseUtils {
     static Map<Long, Map<String, BatteryHistEntry>> getHistoryMapSinceQueryTimestamp(
             Context context, final long queryTimestamp) {
         final long startTime = System.currentTimeMillis();
-        // Builds the content uri everytime to avoid cache.
-        final Uri batteryStateUri =
-                new Uri.Builder()
-                        .scheme(ContentResolver.SCHEME_CONTENT)
-                        .authority(AUTHORITY)
-                        .appendPath(BATTERY_STATE_TABLE)
-                        .appendQueryParameter(QUERY_KEY_TIMESTAMP, Long.toString(queryTimestamp))
-                        .build();
-
         final List<BatteryHistEntry> batteryHistEntryList =
-                loadListFromContentProvider(
-                        context, batteryStateUri, cursor -> new BatteryHistEntry(cursor));
+                loadBatteryHistEntriesSinceQueryTimestamp(context, queryTimestamp);
         final Map<Long, Map<String, BatteryHistEntry>> resultMap = new ArrayMap();
         for (final BatteryHistEntry entry : batteryHistEntryList) {
             final long timestamp = entry.mTimestamp;
@@ -386,6 +376,23 @@ public final class DatabaseUtils {
         return resultMap;
     }
 
+    /** Returns the battery history table after the given timestamp. */
+    @VisibleForTesting
+    static BatteryHistoryTable getHistoryTableSinceQueryTimestamp(
+            Context context, final long queryTimestamp) {
+        final long startTime = System.currentTimeMillis();
+        final BatteryHistoryTable batteryHistoryTable =
+                BatteryHistoryTable.fromEntries(
+                        loadBatteryHistEntriesSinceQueryTimestamp(context, queryTimestamp));
+        Log.d(
+                TAG,
+                String.format(
+                        "getBatteryHistoryTable() size=%d in %d/ms",
+                        batteryHistoryTable.getSlotCount(),
+                        (System.currentTimeMillis() - startTime)));
+        return batteryHistoryTable;
+    }
+
     /**
      * Returns the battery history map since the latest record no later than the given timestamp. If
      * there is no record before the given timestamp or the given timestamp is before last full
@@ -397,6 +404,30 @@ public final class DatabaseUtils {
                     Calendar calendar,
                     final long queryTimestamp,
                     final long lastFullChargeTime) {
+        return getHistoryMapSinceQueryTimestamp(
+                context,
+                getHistoryQueryTimestamp(context, calendar, queryTimestamp, lastFullChargeTime));
+    }
+
+    /**
+     * Returns the battery history table since the latest record no later than the given timestamp,
+     * see {@link #getHistoryMapSinceLatestRecordBeforeQueryTimestamp}.
+     */
+    static BatteryHistoryTable getHistoryTableSinceLatestRecordBeforeQueryTimestamp(
+            Context context,
+            Calendar calendar,
+            final long queryTimestamp,
+            final long lastFullChargeTime) {
+        return getHistoryTableSinceQueryTimestamp(
+                context,
+                getHistoryQueryTimestamp(context, calendar, queryTimestamp, lastFullChargeTime));
+    }
+
+    private static long getHistoryQueryTimestamp(
+            Context context,
+            Calendar calendar,
+            final long queryTimestamp,
+            final long lastFullChargeTime) {
         final long sixDaysAgoTimestamp = getTimestampSixDaysAgo(calendar);
         Log.d(TAG, "sixDaysAgoTimestamp: " + utcToLocalTimeForLogging(sixDaysAgoTimestamp));
         final long batteryStateLatestTimestamp =
@@ -404,11 +435,22 @@ public final class DatabaseUtils {
                         ? 0L
                         : getBatteryStateLatestTimestampBeforeQueryTimestamp(
                                 context, queryTimestamp);
-        final long maxTimestamp =
-                Math.max(
-                        Math.max(sixDaysAgoTimestamp, lastFullChargeTime),
-                        batteryStateLatestTimestamp);
-        return getHistoryMapSinceQueryTimestamp(context, maxTimestamp);
+        return Math.max(
+                Math.max(sixDaysAgoTimestamp, lastFullChargeTime), batteryStateLatestTimestamp);
+    }
+
+    private static List<BatteryHistEntry> loadBatteryHistEntriesSinceQueryTimestamp(
+            Context context, final long queryTimestamp) {
+        // Builds the content uri everytime to avoid cache.
+        final Uri batteryStateUri =
+                new Uri.Builder()
+                        .scheme(ContentResolver.SCHEME_CONTENT)
+                        .authority(AUTHORITY)
+                        .appendPath(BATTERY_STATE_TABLE)
+                        .appendQueryParameter(QUERY_KEY_TIMESTAMP, Long.toString(queryTimestamp))
+                        .build();
+        return loadListFromContentProvider(
+                context, batteryStateUri, cursor -> new BatteryHistEntry(cursor));
     }
 
     /** Returns the history map since last full charge time. */
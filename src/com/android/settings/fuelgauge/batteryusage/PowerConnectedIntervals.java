@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The sorted and merged time intervals when the device is connected to power, built once from the
+ * {@link BatteryEvent} list and shared by all the usage periods to exclude the charging time from.
+ *
+ * <p>The device is treated as not connected before the first event, and as connected till the end
+ * if the last connected event is never followed by a disconnected one.
+ */
+final class PowerConnectedIntervals {
+
+    // The start and end timestamps of the intervals, [start, end), in ascending order.
+    private long[] mStartTimes = new long[0];
+    private long[] mEndTimes = new long[0];
+    private int mSize = 0;
+
+    /**
+     * @param batteryEventList the battery events sorted by the timestamp in ascending order
+     */
+    PowerConnectedIntervals(@NonNull final List<BatteryEvent> batteryEventList) {
+        long connectedTime = -1;
+        for (BatteryEvent batteryEvent : batteryEventList) {
+            if (batteryEvent.getType() == BatteryEventType.POWER_CONNECTED) {
+                if (connectedTime < 0) {
+                    connectedTime = batteryEvent.getTimestamp();
+                }
+            } else if (batteryEvent.getType() == BatteryEventType.POWER_DISCONNECTED) {
+                if (connectedTime >= 0) {
+                    addInterval(connectedTime, batteryEvent.getTimestamp());
+                    connectedTime = -1;
+                }
+            }
+        }
+        if (connectedTime >= 0) {
+            addInterval(connectedTime, Long.MAX_VALUE);
+        }
+    }
+
+    /** Returns the number of the merged intervals. */
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns the parts of the {@code usagePeriodList} when the device is not connected to power.
+     * The input list is returned directly if the device is never connected.
+     */
+    List<AppUsagePeriod> excludeFrom(@NonNull final List<AppUsagePeriod> usagePeriodList) {
+        if (mSize == 0) {
+            return usagePeriodList;
+        }
+        final List<AppUsagePeriod> resultList = new ArrayList<>();
+        for (AppUsagePeriod usagePeriod : usagePeriodList) {
+            long startTime = usagePeriod.getStartTime();
+            final long endTime = usagePeriod.getEndTime();
+            for (int index = findFirstIntervalEndingAfter(startTime);
+                    index < mSize && mStartTimes[index] < endTime;
+                    index++) {
+                addPeriod(resultList, startTime, mStartTimes[index]);
+                startTime = Math.max(startTime, mEndTimes[index]);
+            }
+            addPeriod(resultList, startTime, endTime);
+        }
+        return resultList;
+    }
+
+    private void addInterval(final long startTime, final long endTime) {
+        if (startTime >= endTime) {
+            return;
+        }
+        // Merges the adjacent intervals, such as a reconnection at the same timestamp.
+        if (mSize > 0 && mEndTimes[mSize - 1] >= startTime) {
+            mEndTimes[mSize - 1] = Math.max(mEndTimes[mSize - 1], endTime);
+            return;
+        }
+        if (mSize == mStartTimes.length) {
+            final int capacity = Math.max(4, mSize * 2);
+            mStartTimes = Arrays.copyOf(mStartTimes, capacity);
+            mEndTimes = Arrays.copyOf(mEndTimes, capacity);
+        }
+        mStartTimes[mSize] = startTime;
+        mEndTimes[mSize] = endTime;
+        mSize++;
+    }
+
+    /** Returns the index of the first interval whose end time is after {@code timestamp}. */
+    private int findFirstIntervalEndingAfter(final long timestamp) {
+        int low = 0;
+        int high = mSize;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (mEndTimes[middle] <= timestamp) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static void addPeriod(
+            final List<AppUsagePeriod> resultList, final long startTime, final long endTime) {
+        if (startTime < endTime) {
+            resultList.add(
+                    AppUsagePeriod.newBuilder()
+                            .setStartTime(startTime)
+                            .setEndTime(endTime)
+                            .build());
+        }
+    }
+}
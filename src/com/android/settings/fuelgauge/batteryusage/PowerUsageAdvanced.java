@@ -23,6 +23,7 @@ import android.database.ContentObserver;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.CancellationSignal;
 import android.os.Handler;
 import android.os.Looper;
 import android.provider.SearchIndexableResource;
@@ -70,6 +71,8 @@ public class PowerUsageAdvanced extends PowerUsageBase {
     private boolean mIsChartDataLoaded = false;
     private long mResumeTimestamp;
     private Map<Integer, Map<Integer, BatteryDiffData>> mBatteryUsageMap;
+    // Cancels the data processing started by the latest battery level data loading.
+    private CancellationSignal mDataProcessCancellationSignal;
 
     private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
     private final Handler mHandler = new Handler(Looper.getMainLooper());
@@ -101,10 +104,8 @@ public class PowerUsageAdvanced extends PowerUsageBase {
     @Override
     public void onDestroy() {
         super.onDestroy();
-        if (getActivity().isChangingConfigurations()) {
-            BatteryEntry.clearUidCache();
-        }
         mExecutor.shutdown();
+        cancelDataProcess();
     }
 
     @Override
@@ -184,6 +185,9 @@ public class PowerUsageAdvanced extends PowerUsageBase {
             mBatteryLevelData = null;
             mBatteryUsageMap = null;
             mHighlightEventWrapper = null;
+            // The previous data processing results will be dropped by the restarted loader.
+            cancelDataProcess();
+            mDataProcessCancellationSignal = new CancellationSignal();
             restartLoader(
                     LoaderIndex.BATTERY_LEVEL_DATA_LOADER,
                     bundle,
@@ -191,6 +195,13 @@ public class PowerUsageAdvanced extends PowerUsageBase {
         }
     }
 
+    private void cancelDataProcess() {
+        if (mDataProcessCancellationSignal != null) {
+            mDataProcessCancellationSignal.cancel();
+            mDataProcessCancellationSignal = null;
+        }
+    }
+
     private void onBatteryLevelDataUpdate(BatteryLevelData batteryLevelData) {
         if (!isResumed()) {
             return;
@@ -210,6 +221,23 @@ public class PowerUsageAdvanced extends PowerUsageBase {
         if (!isResumed() || mBatteryLevelData == null) {
             return;
         }
+        if (batteryDiffDataMap.isEmpty()) {
+            // The data processing failed, shows no usage data instead of loading forever.
+            Log.w(TAG, "onBatteryDiffDataMapUpdate: no battery usage data");
+            mBatteryUsageMap = null;
+            if (mBatteryChartPreferenceController != null && mBatteryLevelData.isEmpty()) {
+                mBatteryChartPreferenceController.showEmptyChart();
+            }
+            if (mBatteryUsageBreakdownController != null) {
+                mBatteryUsageBreakdownController.handleBatteryUsageUpdated(
+                        /* slotUsageData= */ null,
+                        /* slotTimestamp= */ null,
+                        /* isAllUsageDataEmpty= */ true,
+                        /* isHighlightSlot= */ false,
+                        /* optionalAnomalyEventWrapper= */ null);
+            }
+            return;
+        }
         mBatteryUsageMap =
                 DataProcessor.generateBatteryUsageMap(
                         getContext(), batteryDiffDataMap, mBatteryLevelData.orElse(null));
@@ -483,6 +511,7 @@ public class PowerUsageAdvanced extends PowerUsageBase {
             implements LoaderManager.LoaderCallbacks<BatteryLevelData> {
         @Override
         public Loader<BatteryLevelData> onCreateLoader(int id, Bundle bundle) {
+            final CancellationSignal cancellationSignal = mDataProcessCancellationSignal;
             return new AsyncLoaderCompat<BatteryLevelData>(getContext().getApplicationContext()) {
                 @Override
                 protected void onDiscardResult(BatteryLevelData result) {}
@@ -493,7 +522,8 @@ public class PowerUsageAdvanced extends PowerUsageBase {
                             getContext(),
                             mHandler,
                             /* isFromPeriodJob= */ false,
-                            PowerUsageAdvanced.this::onBatteryDiffDataMapUpdate);
+                            PowerUsageAdvanced.this::onBatteryDiffDataMapUpdate,
+                            cancellationSignal);
                 }
             };
         }
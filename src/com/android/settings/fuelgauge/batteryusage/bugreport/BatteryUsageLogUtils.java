@@ -29,6 +29,7 @@ import com.android.settings.fuelgauge.batteryusage.ConvertUtils;
 import com.google.common.annotations.VisibleForTesting;
 
 import java.io.PrintWriter;
+import java.util.Arrays;
 import java.util.List;
 
 /** Writes and reads a historical log of battery usage periodic job events. */
@@ -39,11 +40,19 @@ public final class BatteryUsageLogUtils {
 
     // 24 hours x 4 events every hour x 3 days
     static final int MAX_ENTRIES = 288;
+    // Upper bounds of the insert latency buckets, the last bucket has no upper bound.
+    static final long[] INSERT_LATENCY_BUCKETS_MS = {10, 50, 100, 500, 1000};
+
+    // Insert latencies are counted in memory and merged into the stored log with the next log
+    // entry, to avoid re-encoding the whole log on every insert.
+    private static final long[] sPendingInsertLatencyCounts =
+            new long[INSERT_LATENCY_BUCKETS_MS.length + 1];
 
     private BatteryUsageLogUtils() {}
 
     /** Write the log into the {@link SharedPreferences}. */
-    public static void writeLog(Context context, Action action, String actionDescription) {
+    public static synchronized void writeLog(
+            Context context, Action action, String actionDescription) {
         final SharedPreferences sharedPreferences = getSharedPreferences(context);
         final BatteryUsageHistoricalLogEntry newLogEntry =
                 BatteryUsageHistoricalLogEntry.newBuilder()
@@ -60,22 +69,39 @@ public final class BatteryUsageLogUtils {
             newLogBuilder.removeLogEntry(0);
         }
         newLogBuilder.addLogEntry(newLogEntry);
+        addPendingInsertLatencies(newLogBuilder);
+        Arrays.fill(sPendingInsertLatencyCounts, 0L);
 
         final String loggingContent =
                 Base64.encodeToString(newLogBuilder.build().toByteArray(), Base64.DEFAULT);
         sharedPreferences.edit().putString(LOGS_KEY, loggingContent).apply();
     }
 
+    /**
+     * Records the latency of a database bulk insert into the insert latency histogram, which is
+     * persisted along with the next log entry.
+     */
+    public static synchronized void recordInsertLatency(long latencyMs) {
+        sPendingInsertLatencyCounts[getInsertLatencyBucket(latencyMs)]++;
+    }
+
     /** Prints the historical log that has previously been stored by this utility. */
-    public static void printHistoricalLog(Context context, PrintWriter writer) {
-        final BatteryUsageHistoricalLog existingLog =
-                parseLogFromString(getSharedPreferences(context).getString(LOGS_KEY, ""));
+    public static synchronized void printHistoricalLog(Context context, PrintWriter writer) {
+        final BatteryUsageHistoricalLog.Builder logBuilder =
+                parseLogFromString(getSharedPreferences(context).getString(LOGS_KEY, ""))
+                        .toBuilder();
+        addPendingInsertLatencies(logBuilder);
+        final BatteryUsageHistoricalLog existingLog = logBuilder.build();
         final List<BatteryUsageHistoricalLogEntry> logEntryList = existingLog.getLogEntryList();
         if (logEntryList.isEmpty()) {
             writer.println("\tnothing to dump");
         } else {
             logEntryList.forEach(entry -> writer.println(toString(entry)));
         }
+        final List<Long> latencyCounts = existingLog.getInsertLatencyBucketCountList();
+        if (!latencyCounts.isEmpty()) {
+            writer.println("\tinsert latency histogram:" + toString(latencyCounts));
+        }
     }
 
     @VisibleForTesting
@@ -84,11 +110,55 @@ public final class BatteryUsageLogUtils {
                 .getSharedPreferences(BATTERY_USAGE_FILE_NAME, Context.MODE_PRIVATE);
     }
 
+    @VisibleForTesting
+    static synchronized void clearPendingInsertLatencies() {
+        Arrays.fill(sPendingInsertLatencyCounts, 0L);
+    }
+
+    @VisibleForTesting
+    static int getInsertLatencyBucket(long latencyMs) {
+        for (int i = 0; i < INSERT_LATENCY_BUCKETS_MS.length; i++) {
+            if (latencyMs < INSERT_LATENCY_BUCKETS_MS[i]) {
+                return i;
+            }
+        }
+        return INSERT_LATENCY_BUCKETS_MS.length;
+    }
+
+    private static void addPendingInsertLatencies(BatteryUsageHistoricalLog.Builder logBuilder) {
+        boolean hasPendingLatencies = false;
+        for (long count : sPendingInsertLatencyCounts) {
+            hasPendingLatencies |= count > 0L;
+        }
+        if (!hasPendingLatencies) {
+            return;
+        }
+        while (logBuilder.getInsertLatencyBucketCountCount()
+                <= INSERT_LATENCY_BUCKETS_MS.length) {
+            logBuilder.addInsertLatencyBucketCount(0L);
+        }
+        for (int i = 0; i < sPendingInsertLatencyCounts.length; i++) {
+            logBuilder.setInsertLatencyBucketCount(
+                    i, logBuilder.getInsertLatencyBucketCount(i) + sPendingInsertLatencyCounts[i]);
+        }
+    }
+
     private static BatteryUsageHistoricalLog parseLogFromString(String storedLogs) {
         return BatteryUtils.parseProtoFromString(
                 storedLogs, BatteryUsageHistoricalLog.getDefaultInstance());
     }
 
+    private static String toString(List<Long> latencyCounts) {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < latencyCounts.size(); i++) {
+            builder.append(i < INSERT_LATENCY_BUCKETS_MS.length
+                            ? " <" + INSERT_LATENCY_BUCKETS_MS[i] + "ms:"
+                            : " >=" + INSERT_LATENCY_BUCKETS_MS[i - 1] + "ms:")
+                    .append(latencyCounts.get(i));
+        }
+        return builder.toString();
+    }
+
     private static String toString(BatteryUsageHistoricalLogEntry entry) {
         final StringBuilder builder =
                 new StringBuilder("\t")
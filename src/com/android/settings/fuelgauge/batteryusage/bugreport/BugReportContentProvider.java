@@ -59,6 +59,7 @@ public final class BugReportContentProvider extends ContentProvider {
         LogUtils.dumpBatteryUsageSlotDatabaseHist(context, writer);
         LogUtils.dumpBatteryEventDatabaseHist(context, writer);
         LogUtils.dumpBatteryStateDatabaseHist(context, writer);
+        LogUtils.dumpBatteryConsumerCache(writer);
     }
 
     @Override
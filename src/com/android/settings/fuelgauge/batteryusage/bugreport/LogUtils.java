@@ -20,6 +20,7 @@ import android.content.Context;
 import android.util.Log;
 
 import com.android.settings.fuelgauge.BatteryUtils;
+import com.android.settings.fuelgauge.batteryusage.BatteryConsumerCache;
 import com.android.settings.fuelgauge.batteryusage.BatteryUsageSlot;
 import com.android.settings.fuelgauge.batteryusage.ConvertUtils;
 import com.android.settings.fuelgauge.batteryusage.DatabaseUtils;
@@ -104,7 +105,7 @@ public final class LogUtils {
                 writer,
                 entities,
                 entity ->
-                        BatteryUtils.parseProtoFromString(
+                        BatteryUtils.parseProtoFromBytes(
                                 entity.batteryUsageSlot, BatteryUsageSlot.getDefaultInstance()));
     }
 
@@ -116,6 +117,11 @@ public final class LogUtils {
         dumpListItems(writer, entities, entity -> entity);
     }
 
+    static void dumpBatteryConsumerCache(PrintWriter writer) {
+        BatteryConsumerCache.getInstance().dump(writer);
+        writer.flush();
+    }
+
     private static <T, S> void dumpListItems(
             PrintWriter writer, List<T> itemList, Function<T, S> itemConverter) {
         final AtomicInteger counter = new AtomicInteger(0);
@@ -16,12 +16,23 @@
 
 package com.android.settings.fuelgauge.batteryusage.db;
 
+import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Base64;
 import android.util.Log;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import com.android.settingslib.utils.ThreadUtils;
 
 /** A {@link RoomDatabase} for battery usage states history. */
 @Database(
@@ -31,13 +42,60 @@ import androidx.room.RoomDatabase;
             BatteryState.class,
             BatteryUsageSlotEntity.class
         },
-        version = 1,
+        version = 3,
         exportSchema = false)
 public abstract class BatteryStateDatabase extends RoomDatabase {
     private static final String TAG = "BatteryStateDatabase";
 
     private static BatteryStateDatabase sBatteryStateDatabase;
 
+    /** Stores the serialized protos as BLOB instead of Base64 encoded TEXT. */
+    @VisibleForTesting
+    static final Migration MIGRATION_1_2 =
+            new Migration(1, 2) {
+                @Override
+                public void migrate(@NonNull SupportSQLiteDatabase database) {
+                    migrateToBlobColumn(
+                            database,
+                            "BatteryState",
+                            "CREATE TABLE IF NOT EXISTS `BatteryState` ("
+                                    + "`mId` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                                    + "`uid` INTEGER NOT NULL, `userId` INTEGER NOT NULL, "
+                                    + "`packageName` TEXT, `timestamp` INTEGER NOT NULL, "
+                                    + "`consumerType` INTEGER NOT NULL, "
+                                    + "`isFullChargeCycleStart` INTEGER NOT NULL, "
+                                    + "`batteryInformation` BLOB, "
+                                    + "`batteryInformationDebug` TEXT)",
+                            "batteryInformation");
+                    migrateToBlobColumn(
+                            database,
+                            "BatteryUsageSlotEntity",
+                            "CREATE TABLE IF NOT EXISTS `BatteryUsageSlotEntity` ("
+                                    + "`mId` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                                    + "`timestamp` INTEGER NOT NULL, "
+                                    + "`batteryUsageSlot` BLOB)",
+                            "batteryUsageSlot");
+                }
+            };
+
+    /**
+     * Indexes the timestamp of all tables, which the queries filter and sort by, and the columns
+     * filtered together with it.
+     */
+    @VisibleForTesting
+    static final Migration MIGRATION_2_3 =
+            new Migration(2, 3) {
+                @Override
+                public void migrate(@NonNull SupportSQLiteDatabase database) {
+                    createIndex(database, "AppUsageEventEntity", "timestamp");
+                    createIndex(database, "AppUsageEventEntity", "userId", "timestamp");
+                    createIndex(database, "BatteryEventEntity", "timestamp");
+                    createIndex(database, "BatteryEventEntity", "batteryEventType", "timestamp");
+                    createIndex(database, "BatteryState", "timestamp");
+                    createIndex(database, "BatteryUsageSlotEntity", "timestamp");
+                }
+            };
+
     /** Provides DAO for app usage event table. */
     public abstract AppUsageEventDao appUsageEventDao();
 
@@ -57,9 +115,15 @@ public abstract class BatteryStateDatabase extends RoomDatabase {
                     Room.databaseBuilder(context, BatteryStateDatabase.class, "battery-usage-db-v9")
                             // Allows accessing data in the main thread for dumping bugreport.
                             .allowMainThreadQueries()
+                            .addMigrations(MIGRATION_1_2, MIGRATION_2_3)
                             .fallbackToDestructiveMigration()
                             .build();
             Log.d(TAG, "initialize battery states database");
+            // Opens the database ahead of the first query, so the migrations which rewrite the
+            // whole history run in the background instead of on the main thread.
+            final BatteryStateDatabase database = sBatteryStateDatabase;
+            ThreadUtils.postOnBackgroundThread(
+                    () -> database.getOpenHelper().getWritableDatabase());
         }
         return sBatteryStateDatabase;
     }
@@ -68,4 +132,52 @@ public abstract class BatteryStateDatabase extends RoomDatabase {
     public static void setBatteryStateDatabase(BatteryStateDatabase database) {
         BatteryStateDatabase.sBatteryStateDatabase = database;
     }
+
+    /** Recreates the table with the Base64 encoded column decoded into a BLOB column. */
+    private static void migrateToBlobColumn(
+            SupportSQLiteDatabase database, String table, String createTableSql, String column) {
+        final String oldTable = table + "_old";
+        database.execSQL("ALTER TABLE `" + table + "` RENAME TO `" + oldTable + "`");
+        database.execSQL(createTableSql);
+        int count = 0;
+        try (Cursor cursor = database.query("SELECT * FROM `" + oldTable + "`")) {
+            final int columnIndex = cursor.getColumnIndex(column);
+            final ContentValues values = new ContentValues();
+            while (cursor.moveToNext()) {
+                values.clear();
+                DatabaseUtils.cursorRowToContentValues(cursor, values);
+                values.put(column, decodeBase64(cursor.getString(columnIndex)));
+                database.insert(table, SQLiteDatabase.CONFLICT_REPLACE, values);
+                count++;
+            }
+        }
+        database.execSQL("DROP TABLE `" + oldTable + "`");
+        Log.d(TAG, "migrate " + count + " rows of " + table + " to BLOB");
+    }
+
+    /** Creates the index with the same name and columns as the one declared by the entity. */
+    private static void createIndex(
+            SupportSQLiteDatabase database, String table, String... columns) {
+        final String indexName = "index_" + table + "_" + String.join("_", columns);
+        database.execSQL(
+                "CREATE INDEX IF NOT EXISTS `"
+                        + indexName
+                        + "` ON `"
+                        + table
+                        + "` (`"
+                        + String.join("`, `", columns)
+                        + "`)");
+    }
+
+    private static byte[] decodeBase64(String encoded) {
+        if (encoded == null || encoded.isEmpty()) {
+            return null;
+        }
+        try {
+            return Base64.decode(encoded, Base64.DEFAULT);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "invalid Base64 content", e);
+            return null;
+        }
+    }
 }
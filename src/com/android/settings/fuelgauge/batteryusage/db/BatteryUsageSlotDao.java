@@ -32,6 +32,10 @@ public interface BatteryUsageSlotDao {
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     void insert(BatteryUsageSlotEntity event);
 
+    /** Inserts {@link BatteryUsageSlotEntity} data into the database. */
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertAll(List<BatteryUsageSlotEntity> slots);
+
     /** Gets all recorded data. */
     @Query("SELECT * FROM BatteryUsageSlotEntity ORDER BY timestamp ASC")
     List<BatteryUsageSlotEntity> getAll();
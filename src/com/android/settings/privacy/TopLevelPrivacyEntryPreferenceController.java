@@ -24,7 +24,8 @@ import com.android.settings.core.BasePreferenceController;
 import com.android.settings.safetycenter.SafetyCenterManagerWrapper;
 
 /** The preference controller for the top level privacy tile. */
-public class TopLevelPrivacyEntryPreferenceController  extends BasePreferenceController {
+public class TopLevelPrivacyEntryPreferenceController extends BasePreferenceController
+        implements BasePreferenceController.BackgroundInstantiable {
 
     public TopLevelPrivacyEntryPreferenceController(@NonNull Context context, @NonNull String key) {
         super(context, key);
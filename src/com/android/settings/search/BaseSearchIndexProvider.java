@@ -29,12 +29,13 @@ import android.provider.SearchIndexableResource;
 import android.util.Log;
 
 import androidx.annotation.CallSuper;
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 
 import com.android.settings.core.BasePreferenceController;
 import com.android.settings.core.PreferenceControllerListHelper;
 import com.android.settings.core.PreferenceControllerMixin;
-import com.android.settings.core.PreferenceXmlParserUtils;
+import com.android.settings.core.PreferenceMetadataIndex;
 import com.android.settingslib.core.AbstractPreferenceController;
 import com.android.settingslib.search.Indexable;
 import com.android.settingslib.search.SearchIndexableRaw;
@@ -114,6 +115,16 @@ public class BaseSearchIndexProvider implements Indexable.SearchIndexProvider {
         return dynamicRaws;
     }
 
+    /**
+     * Returns a token identifying the inputs of {@link #getDynamicRawDataToIndex}. The dynamic raw
+     * data is only recomputed when the token changes. Returns null by default, in which case the
+     * dynamic raw data is recomputed on every query.
+     */
+    @Nullable
+    public Object getDynamicRawDataToken(Context context) {
+        return null;
+    }
+
     @Override
     @CallSuper
     public List<String> getNonIndexableKeys(Context context) {
@@ -215,7 +226,7 @@ public class BaseSearchIndexProvider implements Indexable.SearchIndexProvider {
             boolean suppressAllPage) {
         final List<String> keys = new ArrayList<>();
         try {
-            final List<Bundle> metadata = PreferenceXmlParserUtils.extractMetadata(context,
+            final List<Bundle> metadata = PreferenceMetadataIndex.getMetadata(context,
                     xmlResId, FLAG_NEED_KEY | FLAG_INCLUDE_PREF_SCREEN | FLAG_NEED_SEARCHABLE);
             for (Bundle bundle : metadata) {
                 if (suppressAllPage || !bundle.getBoolean(METADATA_SEARCHABLE, true)) {
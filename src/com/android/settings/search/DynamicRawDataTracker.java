@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.search;
+
+import android.os.SystemClock;
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Keeps the last computed dynamic raw data rows of each group (i.e. each indexable provider) with
+ * the generation at which they last changed.
+ *
+ * A group is recomputed only when its input token differs from the one it was computed with, or
+ * when it has no input token at all. Callers holding a change token from {@link #getToken()} can
+ * then ask for the groups changed since that token instead of the full data set.
+ */
+public class DynamicRawDataTracker {
+
+    private static final String TOKEN_DELIMITER = ":";
+
+    private static class Group {
+        Object mInputToken;
+        List<Object[]> mRows;
+        long mGeneration;
+    }
+
+    // Tokens from a previous process are never valid, since the generation restarts from 0.
+    private final String mInstanceId = Long.toHexString(SystemClock.elapsedRealtimeNanos());
+    private final Map<String, Group> mGroups = new LinkedHashMap<>();
+    private long mGeneration;
+
+    /** Returns whether the group must be recomputed for the input token. */
+    public synchronized boolean needsUpdate(String group, @Nullable Object inputToken) {
+        final Group entry = mGroups.get(group);
+        return entry == null || inputToken == null
+                || !Objects.equals(entry.mInputToken, inputToken);
+    }
+
+    /**
+     * Stores the recomputed rows of the group. The group is marked as changed only if the rows
+     * differ from the stored ones.
+     */
+    public synchronized void update(String group, @Nullable Object inputToken,
+            List<Object[]> rows) {
+        Group entry = mGroups.get(group);
+        if (entry == null) {
+            entry = new Group();
+            mGroups.put(group, entry);
+        } else if (isSameRows(entry.mRows, rows)) {
+            entry.mInputToken = inputToken;
+            return;
+        }
+        entry.mInputToken = inputToken;
+        entry.mRows = new ArrayList<>(rows);
+        entry.mGeneration = ++mGeneration;
+    }
+
+    /** Returns the token identifying the current state of all groups. */
+    @NonNull
+    public synchronized String getToken() {
+        return mInstanceId + TOKEN_DELIMITER + mGeneration;
+    }
+
+    /**
+     * Returns the groups changed after the state identified by the token, or {@code null} if the
+     * token is not valid anymore, in which case every group must be considered changed.
+     */
+    @Nullable
+    public synchronized Set<String> getChangedGroups(@Nullable String token) {
+        final long generation = parseGeneration(token);
+        if (generation < 0) {
+            return null;
+        }
+        final Set<String> changedGroups = new LinkedHashSet<>();
+        for (Map.Entry<String, Group> entry : mGroups.entrySet()) {
+            if (entry.getValue().mGeneration > generation) {
+                changedGroups.add(entry.getKey());
+            }
+        }
+        return changedGroups;
+    }
+
+    /** Returns all groups in insertion order. */
+    @NonNull
+    public synchronized Set<String> getGroups() {
+        return new LinkedHashSet<>(mGroups.keySet());
+    }
+
+    /** Returns the rows of the group, or an empty list if it is unknown. */
+    @NonNull
+    public synchronized List<Object[]> getRows(String group) {
+        final Group entry = mGroups.get(group);
+        return entry == null ? new ArrayList<>() : new ArrayList<>(entry.mRows);
+    }
+
+    private long parseGeneration(@Nullable String token) {
+        if (TextUtils.isEmpty(token)) {
+            return -1;
+        }
+        final int index = token.indexOf(TOKEN_DELIMITER);
+        if (index < 0 || !TextUtils.equals(mInstanceId, token.substring(0, index))) {
+            return -1;
+        }
+        try {
+            final long generation = Long.parseLong(token.substring(index + 1));
+            return generation <= mGeneration ? generation : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static boolean isSameRows(List<Object[]> oldRows, List<Object[]> newRows) {
+        if (oldRows.size() != newRows.size()) {
+            return false;
+        }
+        for (int i = 0; i < oldRows.size(); i++) {
+            if (!Arrays.deepEquals(oldRows.get(i), newRows.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.search;
+
+import android.content.Context;
+import android.content.pm.ChangedPackages;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.os.UserManager;
+import android.text.TextUtils;
+import android.util.ArrayMap;
+import android.util.FeatureFlagUtils;
+import android.util.Log;
+import android.util.Pair;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.android.settingslib.search.SearchIndexableData;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Loads search indexing data from every {@link SearchIndexableData} provider.
+ *
+ * Providers are loaded in parallel on a bounded pool within one overall timeout, and the results
+ * are merged in provider order. The static data of each provider, such as its xml resources, is
+ * kept until the invalidation signature changes, i.e. a package is installed or updated, the user
+ * restrictions, the feature flags or the locale change, so unchanged providers are not queried
+ * again by the next indexing. Data depending on the settings values or on the availability of the
+ * controllers, such as the non-indexable keys, is loaded again every time.
+ */
+public class IndexableDataLoader {
+
+    private static final String TAG = "IndexableDataLoader";
+    private static final int POOL_SIZE = 4;
+    @VisibleForTesting
+    static final long TIMEOUT_MILLIS = 5000L;
+
+    /** Loads the data of a single provider. */
+    public interface ProviderLoader<T> {
+        /** Returns the data of the provider, or null if there is none. */
+        @Nullable
+        List<T> load(SearchIndexableData bundle);
+    }
+
+    private final ExecutorService mExecutor;
+    // key: <operation, provider class>, value: <signature, data>
+    private final Map<Pair<String, Class<?>>, Pair<String, List<?>>> mCache = new ArrayMap<>();
+    // key: <operation, provider class>, value: latest loading time in milliseconds
+    private final Map<Pair<String, Class<?>>, Long> mTimings = new ArrayMap<>();
+    private int mPackageSequenceNumber;
+
+    public IndexableDataLoader() {
+        this(Executors.newFixedThreadPool(POOL_SIZE));
+    }
+
+    @VisibleForTesting
+    IndexableDataLoader(ExecutorService executor) {
+        mExecutor = executor;
+    }
+
+    /**
+     * Returns the merged static data of all providers for the operation, loading only the
+     * providers without a valid cached result. The data must not depend on anything but the
+     * inputs of the invalidation signature.
+     *
+     * @param operation the name of the data to load, used as cache key
+     */
+    @NonNull
+    public <T> List<T> load(Context context, String operation,
+            Collection<SearchIndexableData> bundles, ProviderLoader<T> loader) {
+        return load(operation, bundles, loader, getSignature(context));
+    }
+
+    /**
+     * Returns the merged data of all providers for the operation, loading every provider again.
+     * Used for the data depending on the state of the device, which the signature misses.
+     *
+     * @param operation the name of the data to load
+     */
+    @NonNull
+    public <T> List<T> loadWithoutCache(String operation,
+            Collection<SearchIndexableData> bundles, ProviderLoader<T> loader) {
+        return load(operation, bundles, loader, null /* signature */);
+    }
+
+    private <T> List<T> load(String operation, Collection<SearchIndexableData> bundles,
+            ProviderLoader<T> loader, @Nullable String signature) {
+        final List<SearchIndexableData> providers = new ArrayList<>(bundles);
+        final List<List<T>> cachedData = new ArrayList<>();
+        final List<Future<List<T>>> futures = new ArrayList<>();
+        for (SearchIndexableData bundle : providers) {
+            final List<T> cached =
+                    signature == null ? null : getCached(operation, bundle, signature);
+            cachedData.add(cached);
+            futures.add(cached != null ? null : mExecutor.submit(() -> {
+                final long startTime = SystemClock.elapsedRealtime();
+                final List<T> data = loader.load(bundle);
+                recordTiming(operation, bundle, SystemClock.elapsedRealtime() - startTime);
+                return data;
+            }));
+        }
+
+        // All the waits share one deadline, so the timeouts of the providers do not add up.
+        final long deadline = SystemClock.elapsedRealtime() + TIMEOUT_MILLIS;
+        final List<T> result = new ArrayList<>();
+        for (int i = 0; i < providers.size(); i++) {
+            List<T> data = cachedData.get(i);
+            if (data == null) {
+                data = getResult(providers.get(i), futures.get(i), deadline);
+                if (data == null) {
+                    continue;
+                }
+                if (signature != null) {
+                    putCached(operation, providers.get(i), signature, data);
+                }
+            }
+            result.addAll(data);
+        }
+        return result;
+    }
+
+    /** Drops every cached result. */
+    public synchronized void invalidate() {
+        mCache.clear();
+    }
+
+    /** Dumps the latest loading time of each provider, only available in debuggable builds. */
+    public synchronized void dump(PrintWriter writer) {
+        if (!Build.IS_DEBUGGABLE) {
+            return;
+        }
+        writer.println("IndexableDataLoader timings:");
+        mTimings.forEach((key, time) -> writer.println(
+                "  " + key.first + " " + key.second.getName() + ": " + time + " ms"));
+    }
+
+    @Nullable
+    private static <T> List<T> getResult(SearchIndexableData bundle, Future<List<T>> future,
+            long deadline) {
+        try {
+            final List<T> data = future.get(
+                    Math.max(0L, deadline - SystemClock.elapsedRealtime()),
+                    TimeUnit.MILLISECONDS);
+            return data == null ? new ArrayList<>() : data;
+        } catch (ExecutionException e) {
+            // Catch a generic crash, so that a crash in a specific provider doesn't lose the data
+            // of all providers. We crash when the system property exists so that we can test if
+            // crashes need to be fixed.
+            if (System.getProperty(SettingsSearchIndexablesProvider.SYSPROP_CRASH_ON_ERROR)
+                    != null) {
+                throw new RuntimeException(e.getCause());
+            }
+            Log.e(TAG, "Error loading from: " + bundle.getTargetClass().getName(), e.getCause());
+        } catch (InterruptedException | TimeoutException e) {
+            Log.e(TAG, "Timeout loading from: " + bundle.getTargetClass().getName(), e);
+            future.cancel(true /* mayInterruptIfRunning */);
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Nullable
+    private synchronized <T> List<T> getCached(String operation, SearchIndexableData bundle,
+            String signature) {
+        final Pair<String, List<?>> cached =
+                mCache.get(Pair.create(operation, bundle.getTargetClass()));
+        if (cached == null || !TextUtils.equals(cached.first, signature)) {
+            return null;
+        }
+        // Return a copy since callers may modify the list.
+        return new ArrayList<>((List<T>) cached.second);
+    }
+
+    private synchronized <T> void putCached(String operation, SearchIndexableData bundle,
+            String signature, List<T> data) {
+        mCache.put(Pair.create(operation, bundle.getTargetClass()),
+                Pair.create(signature, new ArrayList<>(data)));
+    }
+
+    private synchronized void recordTiming(String operation, SearchIndexableData bundle,
+            long time) {
+        if (Build.IS_DEBUGGABLE) {
+            mTimings.put(Pair.create(operation, bundle.getTargetClass()), time);
+        }
+    }
+
+    @VisibleForTesting
+    synchronized String getSignature(Context context) {
+        final PackageManager packageManager = context.getPackageManager();
+        final ChangedPackages changedPackages =
+                packageManager.getChangedPackages(mPackageSequenceNumber);
+        if (changedPackages != null) {
+            mPackageSequenceNumber = changedPackages.getSequenceNumber();
+        }
+        final UserManager userManager = context.getSystemService(UserManager.class);
+        final Bundle restrictions = userManager != null
+                ? userManager.getUserRestrictions() : Bundle.EMPTY;
+        return mPackageSequenceNumber
+                + "|" + context.getResources().getConfiguration().getLocales().toLanguageTags()
+                + "|" + Objects.hash(bundleToMap(restrictions))
+                + "|" + Objects.hash(FeatureFlagUtils.getAllFeatureFlags());
+    }
+
+    private static Map<String, String> bundleToMap(Bundle bundle) {
+        final Map<String, String> map = new ArrayMap<>();
+        for (String key : bundle.keySet()) {
+            map.put(key, String.valueOf(bundle.get(key)));
+        }
+        return map;
+    }
+}
@@ -47,9 +47,11 @@ import static com.android.settings.dashboard.DashboardFragmentRegistry.CATEGORY_
 
 import android.content.ContentResolver;
 import android.content.Context;
+import android.content.pm.PackageManager;
 import android.database.Cursor;
 import android.database.MatrixCursor;
 import android.net.Uri;
+import android.os.Bundle;
 import android.provider.SearchIndexableResource;
 import android.provider.SearchIndexablesContract;
 import android.provider.SearchIndexablesProvider;
@@ -77,10 +79,14 @@ import com.android.settingslib.search.Indexable;
 import com.android.settingslib.search.SearchIndexableData;
 import com.android.settingslib.search.SearchIndexableRaw;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
 
@@ -93,25 +99,60 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
     public static final String SYSPROP_CRASH_ON_ERROR =
             "debug.com.android.settings.search.crash_on_error";
 
+    /**
+     * Query parameter of the dynamic raw data uri holding the last {@link #EXTRA_TOKEN} seen by the
+     * caller. When set, only the dynamic raw data changed since that token is returned.
+     */
+    public static final String QUERY_PARAMETER_SINCE_TOKEN = "since_token";
+
+    /** Cursor extra holding the change token of the returned dynamic raw data. */
+    public static final String EXTRA_TOKEN = "token";
+
+    /** Cursor extra holding the groups whose dynamic raw data changed since the given token. */
+    public static final String EXTRA_CHANGED_GROUPS = "changed_groups";
+
+    /** Cursor extra set when the given token is not valid anymore and all groups are returned. */
+    public static final String EXTRA_FULL_UPDATE = "full_update";
+
+    /** Column holding the group of each row in the dynamic raw data changes. */
+    public static final String COLUMN_GROUP = "group";
+
     private static final String TAG = "SettingsSearchProvider";
 
+    private static final String GROUP_INJECTION = "injection";
+
+    private static final String[] DYNAMIC_RAW_DATA_CHANGES_COLUMNS;
+
     private static final Collection<String> INVALID_KEYS;
 
     // Search enabled states for injection (key: category key, value: search enabled)
     private Map<String, Boolean> mSearchEnabledByCategoryKeyMap;
+    private IndexableDataLoader mIndexableDataLoader;
+    private DynamicRawDataTracker mDynamicRawDataTracker;
 
     static {
         INVALID_KEYS = new ArraySet<>();
         INVALID_KEYS.add(null);
         INVALID_KEYS.add("");
+
+        DYNAMIC_RAW_DATA_CHANGES_COLUMNS =
+                Arrays.copyOf(INDEXABLES_RAW_COLUMNS, INDEXABLES_RAW_COLUMNS.length + 1);
+        DYNAMIC_RAW_DATA_CHANGES_COLUMNS[INDEXABLES_RAW_COLUMNS.length] = COLUMN_GROUP;
     }
 
     @Override
     public boolean onCreate() {
         mSearchEnabledByCategoryKeyMap = new ArrayMap<>();
+        mIndexableDataLoader = new IndexableDataLoader();
+        mDynamicRawDataTracker = new DynamicRawDataTracker();
         return true;
     }
 
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        mIndexableDataLoader.dump(writer);
+    }
+
     @Override
     public Cursor queryXmlResources(String[] projection) {
         final MatrixCursor cursor = new MatrixCursor(INDEXABLES_XML_RES_COLUMNS);
@@ -171,27 +212,58 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
     @Nullable
     @Override
     public Cursor queryDynamicRawData(String[] projection) {
-        final Context context = getContext();
-        final List<SearchIndexableRaw> rawList = new ArrayList<>();
-        final Collection<SearchIndexableData> bundles = FeatureFactory.getFeatureFactory()
-                .getSearchFeatureProvider().getSearchIndexableResources().getProviderValues();
+        updateDynamicRawData(getContext());
 
-        for (SearchIndexableData bundle : bundles) {
-            rawList.addAll(getDynamicSearchIndexableRawData(context, bundle));
-
-            // Refresh the search enabled state for indexing injection raw data
-            final Indexable.SearchIndexProvider provider = bundle.getSearchIndexProvider();
-            if (provider instanceof BaseSearchIndexProvider) {
-                refreshSearchEnabledState(context, (BaseSearchIndexProvider) provider);
+        final MatrixCursor cursor = new MatrixCursor(INDEXABLES_RAW_COLUMNS);
+        for (String group : mDynamicRawDataTracker.getGroups()) {
+            for (Object[] row : mDynamicRawDataTracker.getRows(group)) {
+                cursor.addRow(row);
             }
         }
-        rawList.addAll(getInjectionIndexableRawData(context));
 
-        final MatrixCursor cursor = new MatrixCursor(INDEXABLES_RAW_COLUMNS);
-        for (SearchIndexableRaw raw : rawList) {
-            cursor.addRow(createIndexableRawColumnObjects(raw));
+        return cursor;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+            String sortOrder) {
+        final String sinceToken = uri.getQueryParameter(QUERY_PARAMETER_SINCE_TOKEN);
+        if (sinceToken != null && TextUtils.equals(uri.getLastPathSegment(),
+                SearchIndexablesContract.DYNAMIC_INDEXABLES_RAW)) {
+            return queryDynamicRawDataChanges(sinceToken);
+        }
+        return super.query(uri, projection, selection, selectionArgs, sortOrder);
+    }
+
+    /**
+     * Gets a Cursor of the dynamic Raw data changed since the token, with an extra
+     * {@link #COLUMN_GROUP} column. The callers should replace all their rows of the groups listed
+     * in {@link #EXTRA_CHANGED_GROUPS}, or all their rows if {@link #EXTRA_FULL_UPDATE} is set, and
+     * pass {@link #EXTRA_TOKEN} in the next query.
+     */
+    @VisibleForTesting
+    Cursor queryDynamicRawDataChanges(String sinceToken) {
+        final String token = updateDynamicRawData(getContext());
+        Set<String> changedGroups = mDynamicRawDataTracker.getChangedGroups(sinceToken);
+        final boolean fullUpdate = changedGroups == null;
+        if (fullUpdate) {
+            changedGroups = mDynamicRawDataTracker.getGroups();
+        }
+
+        final MatrixCursor cursor = new MatrixCursor(DYNAMIC_RAW_DATA_CHANGES_COLUMNS);
+        for (String group : changedGroups) {
+            for (Object[] row : mDynamicRawDataTracker.getRows(group)) {
+                final Object[] ref = Arrays.copyOf(row, DYNAMIC_RAW_DATA_CHANGES_COLUMNS.length);
+                ref[INDEXABLES_RAW_COLUMNS.length] = group;
+                cursor.addRow(ref);
+            }
         }
 
+        final Bundle extras = new Bundle();
+        extras.putString(EXTRA_TOKEN, token);
+        extras.putBoolean(EXTRA_FULL_UPDATE, fullUpdate);
+        extras.putStringArrayList(EXTRA_CHANGED_GROUPS, new ArrayList<>(changedGroups));
+        cursor.setExtras(extras);
         return cursor;
     }
 
@@ -274,35 +346,19 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
         final Collection<SearchIndexableData> bundles = FeatureFactory.getFeatureFactory()
                 .getSearchFeatureProvider().getSearchIndexableResources().getProviderValues();
 
-        final List<String> nonIndexableKeys = new ArrayList<>();
-
-        for (SearchIndexableData bundle : bundles) {
+        // The keys depend on the settings values and the availability of the controllers, which
+        // the cache signature does not cover.
+        return mIndexableDataLoader.loadWithoutCache("nonIndexableKeys", bundles, bundle -> {
             final long startTime = System.currentTimeMillis();
             Indexable.SearchIndexProvider provider = bundle.getSearchIndexProvider();
-            List<String> providerNonIndexableKeys;
-            try {
-                providerNonIndexableKeys = provider.getNonIndexableKeys(context);
-            } catch (Exception e) {
-                // Catch a generic crash. In the absence of the catch, the background thread will
-                // silently fail anyway, so we aren't losing information by catching the exception.
-                // We crash when the system property exists so that we can test if crashes need to
-                // be fixed.
-                // The gain is that if there is a crash in a specific controller, we don't lose all
-                // non-indexable keys, but we can still find specific crashes in development.
-                if (System.getProperty(SYSPROP_CRASH_ON_ERROR) != null) {
-                    throw new RuntimeException(e);
-                }
-                Log.e(TAG, "Error trying to get non-indexable keys from: "
-                        + bundle.getTargetClass().getName(), e);
-                continue;
-            }
+            final List<String> providerNonIndexableKeys = provider.getNonIndexableKeys(context);
 
             if (providerNonIndexableKeys == null || providerNonIndexableKeys.isEmpty()) {
                 if (DEBUG) {
                     final long totalTime = System.currentTimeMillis() - startTime;
                     Log.d(TAG, "No indexable, total time " + totalTime);
                 }
-                continue;
+                return null;
             }
 
             if (providerNonIndexableKeys.removeAll(INVALID_KEYS)) {
@@ -314,25 +370,21 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
                 Log.d(TAG, "Non-indexables " + providerNonIndexableKeys.size() + ", total time "
                         + totalTime);
             }
-
-            nonIndexableKeys.addAll(providerNonIndexableKeys);
-        }
-
-        return nonIndexableKeys;
+            return providerNonIndexableKeys;
+        });
     }
 
     private List<SearchIndexableResource> getSearchIndexableResourcesFromProvider(Context context) {
         final Collection<SearchIndexableData> bundles = FeatureFactory.getFeatureFactory()
                 .getSearchFeatureProvider().getSearchIndexableResources().getProviderValues();
-        List<SearchIndexableResource> resourceList = new ArrayList<>();
 
-        for (SearchIndexableData bundle : bundles) {
+        return mIndexableDataLoader.load(context, "xmlResources", bundles, bundle -> {
             Indexable.SearchIndexProvider provider = bundle.getSearchIndexProvider();
             final List<SearchIndexableResource> resList =
                     provider.getXmlResourcesToIndex(context, true);
 
             if (resList == null) {
-                continue;
+                return null;
             }
 
             for (SearchIndexableResource item : resList) {
@@ -340,25 +392,21 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
                         ? bundle.getTargetClass().getName()
                         : item.className;
             }
-
-            resourceList.addAll(resList);
-        }
-
-        return resourceList;
+            return resList;
+        });
     }
 
     private List<SearchIndexableRaw> getSearchIndexableRawFromProvider(Context context) {
         final Collection<SearchIndexableData> bundles = FeatureFactory.getFeatureFactory()
                 .getSearchFeatureProvider().getSearchIndexableResources().getProviderValues();
-        final List<SearchIndexableRaw> rawList = new ArrayList<>();
 
-        for (SearchIndexableData bundle : bundles) {
+        return mIndexableDataLoader.load(context, "rawData", bundles, bundle -> {
             Indexable.SearchIndexProvider provider = bundle.getSearchIndexProvider();
             final List<SearchIndexableRaw> providerRaws = provider.getRawDataToIndex(context,
                     true /* enabled */);
 
             if (providerRaws == null) {
-                continue;
+                return null;
             }
 
             for (SearchIndexableRaw raw : providerRaws) {
@@ -366,10 +414,8 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
                 // This will be more clear when provider conversion is done at PreIndex time.
                 raw.className = bundle.getTargetClass().getName();
             }
-            rawList.addAll(providerRaws);
-        }
-
-        return rawList;
+            return providerRaws;
+        });
     }
 
     private List<SearchIndexableRaw> getDynamicSearchIndexableRawData(Context context,
@@ -389,6 +435,79 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
         return providerRaws;
     }
 
+    /**
+     * Recomputes the dynamic raw data of the providers and the injected tiles whose inputs
+     * changed, and returns the change token of the result.
+     */
+    private synchronized String updateDynamicRawData(Context context) {
+        final Collection<SearchIndexableData> bundles = FeatureFactory.getFeatureFactory()
+                .getSearchFeatureProvider().getSearchIndexableResources().getProviderValues();
+
+        for (SearchIndexableData bundle : bundles) {
+            final Indexable.SearchIndexProvider provider = bundle.getSearchIndexProvider();
+            final String group = bundle.getTargetClass().getName();
+            final Object inputToken = provider instanceof BaseSearchIndexProvider
+                    ? ((BaseSearchIndexProvider) provider).getDynamicRawDataToken(context)
+                    : null;
+            if (mDynamicRawDataTracker.needsUpdate(group, inputToken)) {
+                mDynamicRawDataTracker.update(group, inputToken,
+                        toRows(getDynamicSearchIndexableRawData(context, bundle)));
+            }
+
+            // Refresh the search enabled state for indexing injection raw data
+            if (provider instanceof BaseSearchIndexProvider) {
+                refreshSearchEnabledState(context, (BaseSearchIndexProvider) provider);
+            }
+        }
+
+        // Injected tiles change when the categories are reloaded, which publishes a new list, or
+        // when a tile app is updated without any reload. Their titles and summaries are localized,
+        // so a locale change recomputes them as well.
+        final List<DashboardCategory> categories =
+                FeatureFactory.getFeatureFactory().getDashboardFeatureProvider().getAllCategories();
+        final Object injectionToken = Arrays.asList(
+                categories,
+                getTilePackageUpdateTimes(context, categories),
+                new ArrayMap<>(mSearchEnabledByCategoryKeyMap),
+                context.getResources().getConfiguration().getLocales().toLanguageTags());
+        if (mDynamicRawDataTracker.needsUpdate(GROUP_INJECTION, injectionToken)) {
+            mDynamicRawDataTracker.update(GROUP_INJECTION, injectionToken,
+                    toRows(getInjectionIndexableRawData(context)));
+        }
+        return mDynamicRawDataTracker.getToken();
+    }
+
+    /** Returns the last update time of the package of each tile, or -1 if it is not found. */
+    private static Map<String, Long> getTilePackageUpdateTimes(Context context,
+            List<DashboardCategory> categories) {
+        final PackageManager packageManager = context.getPackageManager();
+        final Map<String, Long> updateTimes = new ArrayMap<>();
+        for (DashboardCategory category : categories) {
+            for (Tile tile : category.getTiles()) {
+                final String packageName = tile.getPackageName();
+                if (packageName == null || updateTimes.containsKey(packageName)) {
+                    continue;
+                }
+                long updateTime;
+                try {
+                    updateTime = packageManager.getPackageInfo(packageName, 0).lastUpdateTime;
+                } catch (PackageManager.NameNotFoundException e) {
+                    updateTime = -1L;
+                }
+                updateTimes.put(packageName, updateTime);
+            }
+        }
+        return updateTimes;
+    }
+
+    private static List<Object[]> toRows(List<SearchIndexableRaw> rawList) {
+        final List<Object[]> rows = new ArrayList<>(rawList.size());
+        for (SearchIndexableRaw raw : rawList) {
+            rows.add(createIndexableRawColumnObjects(raw));
+        }
+        return rows;
+    }
+
     @VisibleForTesting
     List<SearchIndexableRaw> getInjectionIndexableRawData(Context context) {
         final DashboardFeatureProvider dashboardFeatureProvider =
@@ -28,6 +28,7 @@ import android.os.Bundle;
 import android.os.UserHandle;
 import android.os.UserManager;
 import android.provider.Settings;
+import android.util.Pair;
 import android.widget.CompoundButton;
 import android.widget.CompoundButton.OnCheckedChangeListener;
 
@@ -282,5 +283,14 @@ public class ScreenPinningSettings extends SettingsPreferenceFragment
                     dynamicRaws.add(raw);
                     return dynamicRaws;
                 }
+
+                @Override
+                public Object getDynamicRawDataToken(@NonNull Context context) {
+                    // The title follows the lock type and is localized.
+                    return Pair.create(
+                            getCurrentSecurityTitle(new LockPatternUtils(context)),
+                            context.getResources().getConfiguration().getLocales()
+                                    .toLanguageTags());
+                }
             };
 }
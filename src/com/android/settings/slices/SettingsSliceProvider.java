@@ -30,6 +30,7 @@ import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.StrictMode;
+import android.os.SystemClock;
 import android.os.UserManager;
 import android.provider.Settings;
 import android.provider.SettingsSlicesContract;
@@ -56,14 +57,17 @@ import com.android.settings.overlay.FeatureFactory;
 import com.android.settingslib.SliceBroadcastRelay;
 import com.android.settingslib.utils.ThreadUtils;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
-import java.util.WeakHashMap;
 import java.util.stream.Collectors;
 
 /**
@@ -78,10 +82,14 @@ import java.util.stream.Collectors;
  * return an stub {@link Slice} with the correct {@link Uri} immediately. In the background, the
  * data corresponding to the key in the {@link Uri} is read by {@link SlicesDatabaseAccessor}, and
  * the entire row is converted into a {@link SliceData}. Once complete, it is stored in
- * {@link #mSliceWeakDataCache}, and then an update sent via the Slice framework to the Slice.
+ * {@link #mSliceDataCache}, and then an update sent via the Slice framework to the Slice.
  * The {@link Slice} displayed by the Slice-presenter will re-query this Slice-provider and find
  * the {@link SliceData} cached to build the full {@link Slice}.
  *
+ * <p>Slices pinned together are read from the database in a single query, and the first Slice
+ * pinned from a screen prefetches the {@link SliceData} of the other Slices of that screen, so
+ * that Slices of the same panel render fully on their first bind.
+ *
  * <p>When an action is taken on that {@link Slice}, we receive the action in
  * {@link SliceBroadcastReceiver}, and use the
  * {@link com.android.settings.core.BasePreferenceController} indexed as
@@ -132,11 +140,26 @@ public class SettingsSliceProvider extends SliceProvider {
 
     private static final KeyValueListParser KEY_VALUE_LIST_PARSER = new KeyValueListParser(',');
 
+    @VisibleForTesting
+    static final int SLICE_DATA_CACHE_SIZE = 128;
+
     @VisibleForTesting
     SlicesDatabaseAccessor mSlicesDatabaseAccessor;
 
     @VisibleForTesting
-    Map<Uri, SliceData> mSliceWeakDataCache;
+    Map<Uri, SliceData> mSliceDataCache;
+
+    /**
+     * Uris of the Slices whose controller is set up, i.e. intent filter registered and background
+     * worker started. Cleared when the Slice is unpinned, while its {@link SliceData} stays cached.
+     */
+    @VisibleForTesting
+    final Set<Uri> mLoadedSliceUris = Collections.synchronizedSet(new ArraySet<>());
+
+    private final Set<Uri> mPendingSliceUris = new ArraySet<>();
+    private final Set<String> mPrefetchedFragments = Collections.synchronizedSet(new ArraySet<>());
+    private Locale mSliceDataLocale;
+    private int mSliceDataGeneration;
 
     @VisibleForTesting
     final Map<Uri, SliceBackgroundWorker> mPinnedWorkers = new ArrayMap<>();
@@ -154,7 +177,7 @@ public class SettingsSliceProvider extends SliceProvider {
     public boolean onCreateSliceProvider() {
         Log.d(TAG, "onCreateSliceProvider");
         mSlicesDatabaseAccessor = new SlicesDatabaseAccessor(getContext());
-        mSliceWeakDataCache = new WeakHashMap<>();
+        mSliceDataCache = createSliceDataCache();
         return true;
     }
 
@@ -197,7 +220,7 @@ public class SettingsSliceProvider extends SliceProvider {
 
     @Override
     public void onSliceUnpinned(Uri sliceUri) {
-        mSliceWeakDataCache.remove(sliceUri);
+        mLoadedSliceUris.remove(sliceUri);
         final Context context = getContext();
         if (!VolumeSliceHelper.unregisterUri(context, sliceUri)) {
             SliceBroadcastRelay.unregisterReceivers(context, sliceUri);
@@ -210,6 +233,7 @@ public class SettingsSliceProvider extends SliceProvider {
         if (!mFirstSliceBound) {
             Log.d(TAG, "onBindSlice start: " + sliceUri);
         }
+        final long startTime = SystemClock.uptimeMillis();
         final StrictMode.ThreadPolicy oldPolicy = StrictMode.getThreadPolicy();
         try {
             if (!ThreadUtils.isMainThread()) {
@@ -272,14 +296,21 @@ public class SettingsSliceProvider extends SliceProvider {
                         .createWifiCallingPreferenceSlice(sliceUri);
             }
 
-            final SliceData cachedSliceData = mSliceWeakDataCache.get(sliceUri);
+            invalidateSliceDataIfChanged();
+            final SliceData cachedSliceData = mSliceDataCache.get(sliceUri);
             if (cachedSliceData == null) {
                 loadSliceInBackground(sliceUri);
                 return getSliceStub(sliceUri);
             }
+            if (!mLoadedSliceUris.contains(sliceUri)) {
+                // Prefetched data, the controller still needs to be set up for updates.
+                loadSliceInBackground(sliceUri);
+            }
             return SliceBuilderUtils.buildSlice(getContext(), cachedSliceData);
         } finally {
             StrictMode.setThreadPolicy(oldPolicy);
+            SliceUpdateScheduler.getInstance(getContext()).reportBindCost(sliceUri,
+                    SystemClock.uptimeMillis() - startTime);
             if (!mFirstSliceBound) {
                 Log.v(TAG, "onBindSlice end");
                 mFirstSliceBound = true;
@@ -400,48 +431,138 @@ public class SettingsSliceProvider extends SliceProvider {
         });
     }
 
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        SliceUpdateScheduler.getInstance(getContext()).dump(writer);
+    }
+
     @VisibleForTesting
     void loadSlice(Uri uri) {
-        if (mSliceWeakDataCache.containsKey(uri)) {
-            Log.d(TAG, uri + " loaded from cache");
-            return;
-        }
         long startBuildTime = System.currentTimeMillis();
-
-        final SliceData sliceData;
-        try {
-            sliceData = mSlicesDatabaseAccessor.getSliceDataFromUri(uri);
-        } catch (IllegalStateException e) {
-            Log.d(TAG, "Could not create slicedata for uri: " + uri, e);
-            return;
+        SliceData sliceData = mSliceDataCache.get(uri);
+        final boolean cached = sliceData != null;
+        if (!cached) {
+            try {
+                sliceData = mSlicesDatabaseAccessor.getSliceDataFromUri(uri);
+            } catch (IllegalStateException e) {
+                Log.d(TAG, "Could not create slicedata for uri: " + uri, e);
+                return;
+            }
+            mSliceDataCache.put(uri, sliceData);
         }
 
-        final BasePreferenceController controller = SliceBuilderUtils.getPreferenceController(
-                getContext(), sliceData);
-
-        final IntentFilter filter = controller.getIntentFilter();
-        if (filter != null) {
-            if (controller instanceof VolumeSeekBarPreferenceController) {
-                // Register volume slices to a broadcast relay to reduce unnecessary UI updates
-                VolumeSliceHelper.registerIntentToUri(getContext(), filter, uri,
-                        ((VolumeSeekBarPreferenceController) controller).getAudioStream());
-            } else {
-                registerIntentToUri(filter, uri);
+        // Claims the uri, so its controller is set up once even if it is loaded concurrently.
+        if (mLoadedSliceUris.add(uri)) {
+            final BasePreferenceController controller =
+                    SliceBuilderUtils.getPreferenceController(getContext(), sliceData);
+
+            final IntentFilter filter = controller.getIntentFilter();
+            if (filter != null) {
+                if (controller instanceof VolumeSeekBarPreferenceController) {
+                    // Register volume slices to a broadcast relay to reduce unnecessary UI
+                    // updates
+                    VolumeSliceHelper.registerIntentToUri(getContext(), filter, uri,
+                            ((VolumeSeekBarPreferenceController) controller).getAudioStream());
+                } else {
+                    registerIntentToUri(filter, uri);
+                }
             }
-        }
 
-        ThreadUtils.postOnMainThread(() -> startBackgroundWorker(controller, uri));
+            ThreadUtils.postOnMainThread(() -> startBackgroundWorker(controller, uri));
+        } else if (cached) {
+            Log.d(TAG, uri + " loaded from cache");
+            return;
+        }
 
-        mSliceWeakDataCache.put(uri, sliceData);
         getContext().getContentResolver().notifyChange(uri, null /* content observer */);
 
         Log.d(TAG, "Built slice (" + uri + ") in: " +
                 (System.currentTimeMillis() - startBuildTime));
     }
 
+    /**
+     * Loads the Slice in background. Slices requested before the background thread picks them up
+     * are loaded together, see {@link #prefetchSliceData(Collection)}.
+     */
     @VisibleForTesting
     void loadSliceInBackground(Uri uri) {
-        ThreadUtils.postOnBackgroundThread(() -> loadSlice(uri));
+        synchronized (mPendingSliceUris) {
+            // Only the first pending uri schedules the load, the others join its batch.
+            if (!mPendingSliceUris.add(uri) || mPendingSliceUris.size() > 1) {
+                return;
+            }
+        }
+        ThreadUtils.postOnBackgroundThread(this::loadPendingSlices);
+    }
+
+    private void loadPendingSlices() {
+        final List<Uri> uris;
+        synchronized (mPendingSliceUris) {
+            uris = new ArrayList<>(mPendingSliceUris);
+            mPendingSliceUris.clear();
+        }
+        invalidateSliceDataIfChanged();
+        prefetchSliceData(uris);
+        for (Uri uri : uris) {
+            loadSlice(uri);
+        }
+    }
+
+    /**
+     * Reads the {@link SliceData} of all {@param uris} missing from the cache in a single query,
+     * then the {@link SliceData} of the other Slices declared on their screens, which are likely
+     * to be pinned next by the same panel.
+     */
+    @VisibleForTesting
+    void prefetchSliceData(Collection<Uri> uris) {
+        final List<Uri> missingUris = new ArrayList<>();
+        for (Uri uri : uris) {
+            if (!mSliceDataCache.containsKey(uri)) {
+                missingUris.add(uri);
+            }
+        }
+        if (!missingUris.isEmpty()) {
+            mSliceDataCache.putAll(mSlicesDatabaseAccessor.getSliceDataFromUris(missingUris));
+        }
+
+        for (Uri uri : uris) {
+            final SliceData sliceData = mSliceDataCache.get(uri);
+            if (sliceData == null || TextUtils.isEmpty(sliceData.getFragmentClassName())
+                    || !mPrefetchedFragments.add(sliceData.getFragmentClassName())) {
+                continue;
+            }
+            for (SliceData sibling : mSlicesDatabaseAccessor.getSliceDataFromFragment(
+                    sliceData.getFragmentClassName())) {
+                mSliceDataCache.putIfAbsent(sibling.getUri(), sibling);
+            }
+        }
+    }
+
+    /**
+     * The indexed Slice data is localized and may be rewritten by {@link SlicesIndexer}, so drop
+     * it when the locale changes or the index is reset or rewritten.
+     */
+    @VisibleForTesting
+    synchronized void invalidateSliceDataIfChanged() {
+        final Locale locale = Locale.getDefault();
+        final int generation = SlicesDatabaseHelper.getInstance(getContext()).getIndexGeneration();
+        if (mSliceDataLocale != null && (!mSliceDataLocale.equals(locale)
+                || mSliceDataGeneration != generation)) {
+            mSliceDataCache.clear();
+            mPrefetchedFragments.clear();
+        }
+        mSliceDataLocale = locale;
+        mSliceDataGeneration = generation;
+    }
+
+    private static Map<Uri, SliceData> createSliceDataCache() {
+        return Collections.synchronizedMap(
+                new LinkedHashMap<Uri, SliceData>(16, 0.75f, true /* accessOrder */) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<Uri, SliceData> eldest) {
+                        return size() > SLICE_DATA_CACHE_SIZE;
+                    }
+                });
     }
 
     @VisibleForTesting
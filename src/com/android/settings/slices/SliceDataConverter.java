@@ -36,6 +36,7 @@ import android.content.pm.ResolveInfo;
 import android.content.pm.ServiceInfo;
 import android.content.res.Resources;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
 import android.provider.SearchIndexableResource;
 import android.provider.SettingsSlicesContract;
@@ -44,13 +45,14 @@ import android.util.Log;
 import android.view.accessibility.AccessibilityManager;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 
 import com.android.settings.R;
 import com.android.settings.accessibility.AccessibilitySettings;
 import com.android.settings.accessibility.AccessibilitySlicePreferenceController;
 import com.android.settings.core.BasePreferenceController;
-import com.android.settings.core.PreferenceXmlParserUtils;
+import com.android.settings.core.PreferenceMetadataIndex;
 import com.android.settings.core.PreferenceXmlParserUtils.MetadataFlag;
 import com.android.settings.dashboard.DashboardFragment;
 import com.android.settings.notification.RingerModeAffectedVolumePreferenceController;
@@ -62,12 +64,16 @@ import com.android.settingslib.search.SearchIndexableData;
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.zip.CRC32;
 
 /**
  * Converts all Slice sources into {@link SliceData}.
@@ -77,8 +83,33 @@ import java.util.Set;
  */
 class SliceDataConverter {
 
+    /** Source of the {@link SliceData} of accessibility services, see {@link #getSourceHashes}. */
+    public static final String ACCESSIBILITY_SOURCE = "accessibility_services";
+
     private static final String TAG = "SliceDataConverter";
 
+    private static final int SLICE_METADATA_FLAGS = MetadataFlag.FLAG_INCLUDE_PREF_SCREEN
+            | MetadataFlag.FLAG_NEED_KEY
+            | MetadataFlag.FLAG_NEED_PREF_CONTROLLER
+            | MetadataFlag.FLAG_NEED_PREF_TYPE
+            | MetadataFlag.FLAG_NEED_PREF_TITLE
+            | MetadataFlag.FLAG_NEED_PREF_ICON
+            | MetadataFlag.FLAG_NEED_PREF_SUMMARY
+            | MetadataFlag.FLAG_UNAVAILABLE_SLICE_SUBTITLE
+            | MetadataFlag.FLAG_NEED_USER_RESTRICTION;
+
+    // The metadata of SLICE_METADATA_FLAGS, which is all a fragment source is converted from.
+    private static final String[] SLICE_METADATA_KEYS = {
+            METADATA_PREF_TYPE,
+            METADATA_KEY,
+            METADATA_CONTROLLER,
+            METADATA_TITLE,
+            METADATA_ICON,
+            METADATA_SUMMARY,
+            METADATA_UNAVAILABLE_SLICE_SUBTITLE,
+            METADATA_USER_RESTRICTION
+    };
+
     private final MetricsFeatureProvider mMetricsFeatureProvider;
     private Context mContext;
 
@@ -100,10 +131,7 @@ class SliceDataConverter {
     public List<SliceData> getSliceData() {
         List<SliceData> sliceData = new ArrayList<>();
 
-        final Collection<SearchIndexableData> bundles = FeatureFactory.getFeatureFactory()
-                .getSearchFeatureProvider().getSearchIndexableResources().getProviderValues();
-
-        for (SearchIndexableData bundle : bundles) {
+        for (SearchIndexableData bundle : getSearchIndexableData()) {
             final String fragmentName = bundle.getTargetClass().getName();
 
             final SearchIndexProvider provider = bundle.getSearchIndexProvider();
@@ -124,6 +152,100 @@ class SliceDataConverter {
         return sliceData;
     }
 
+    /**
+     * @return the hash of the inputs of each Slice source, keyed by source in indexing order.
+     *
+     * A source is either the class name of a fragment indexed by settings search, or
+     * {@link #ACCESSIBILITY_SOURCE}. The hash of a fragment covers the build and the locale, since
+     * the controllers and the resource ids stored in {@link SliceData} change with the build, and
+     * the metadata of its indexable XML that is converted into {@link SliceData}: the keys, the
+     * controller classes and the titles, summaries and icons resolved by the current resources.
+     * The hash is {@code null} when it cannot be computed, in which case the source must always be
+     * converted again.
+     */
+    public Map<String, String> getSourceHashes() {
+        final Map<String, String> hashes = new LinkedHashMap<>();
+        final String environment = Build.FINGERPRINT + "|"
+                + mContext.getResources().getConfiguration().getLocales().toLanguageTags();
+        for (SearchIndexableData bundle : getSearchIndexableData()) {
+            final String fragmentName = bundle.getTargetClass().getName();
+            hashes.put(fragmentName,
+                    getSourceHash(bundle.getSearchIndexProvider(), environment));
+        }
+        // Accessibility services change at runtime, but are cheap to convert.
+        hashes.put(ACCESSIBILITY_SOURCE, null);
+        return hashes;
+    }
+
+    /**
+     * @return a list of {@link SliceData} of a single source from {@link #getSourceHashes()}.
+     */
+    public List<SliceData> getSliceData(String source) {
+        if (ACCESSIBILITY_SOURCE.equals(source)) {
+            return getAccessibilitySliceData();
+        }
+        for (SearchIndexableData bundle : getSearchIndexableData()) {
+            final String fragmentName = bundle.getTargetClass().getName();
+            if (!fragmentName.equals(source)) {
+                continue;
+            }
+
+            final SearchIndexProvider provider = bundle.getSearchIndexProvider();
+
+            // CodeInspection test guards against the null check. Keep check in case of bad actors.
+            if (provider == null) {
+                Log.e(TAG, fragmentName + " dose not implement Search Index Provider");
+                return new ArrayList<>();
+            }
+
+            return getSliceDataFromProvider(provider, fragmentName);
+        }
+        return new ArrayList<>();
+    }
+
+    private Collection<SearchIndexableData> getSearchIndexableData() {
+        return FeatureFactory.getFeatureFactory()
+                .getSearchFeatureProvider().getSearchIndexableResources().getProviderValues();
+    }
+
+    @Nullable
+    private String getSourceHash(@Nullable SearchIndexProvider provider, String environment) {
+        if (provider == null) {
+            return null;
+        }
+        final List<SearchIndexableResource> resList =
+                provider.getXmlResourcesToIndex(mContext, true /* enabled */);
+        final CRC32 checksum = new CRC32();
+        updateChecksum(checksum, environment);
+        if (resList == null) {
+            return Long.toHexString(checksum.getValue());
+        }
+        try {
+            for (SearchIndexableResource resource : resList) {
+                updateChecksum(checksum, Integer.toString(resource.xmlResId));
+                if (resource.xmlResId == 0) {
+                    continue;
+                }
+                // The metadata is parsed once and then served to the conversion from the index.
+                for (Bundle metadata : PreferenceMetadataIndex.getMetadata(mContext,
+                        resource.xmlResId, SLICE_METADATA_FLAGS)) {
+                    for (String key : SLICE_METADATA_KEYS) {
+                        updateChecksum(checksum, String.valueOf(metadata.get(key)));
+                    }
+                }
+            }
+        } catch (XmlPullParserException | IOException | Resources.NotFoundException e) {
+            Log.w(TAG, "Cannot hash slice source", e);
+            return null;
+        }
+        return Long.toHexString(checksum.getValue());
+    }
+
+    private static void updateChecksum(CRC32 checksum, String value) {
+        checksum.update(value.getBytes(StandardCharsets.UTF_8));
+        checksum.update(0 /* separator */);
+    }
+
     private List<SliceData> getSliceDataFromProvider(SearchIndexProvider provider,
             String fragmentName) {
         final List<SliceData> sliceData = new ArrayList<>();
@@ -160,17 +282,8 @@ class SliceDataConverter {
             // TODO (b/67996923) Investigate if we need headers for Slices, since they never
             // correspond to an actual setting.
 
-            final List<Bundle> metadata = PreferenceXmlParserUtils.extractMetadata(mContext,
-                    xmlResId,
-                    MetadataFlag.FLAG_INCLUDE_PREF_SCREEN
-                            | MetadataFlag.FLAG_NEED_KEY
-                            | MetadataFlag.FLAG_NEED_PREF_CONTROLLER
-                            | MetadataFlag.FLAG_NEED_PREF_TYPE
-                            | MetadataFlag.FLAG_NEED_PREF_TITLE
-                            | MetadataFlag.FLAG_NEED_PREF_ICON
-                            | MetadataFlag.FLAG_NEED_PREF_SUMMARY
-                            | MetadataFlag.FLAG_UNAVAILABLE_SLICE_SUBTITLE
-                            | MetadataFlag.FLAG_NEED_USER_RESTRICTION);
+            final List<Bundle> metadata = PreferenceMetadataIndex.getMetadata(mContext,
+                    xmlResId, SLICE_METADATA_FLAGS);
 
             for (Bundle bundle : metadata) {
                 final String title = bundle.getString(METADATA_TITLE);
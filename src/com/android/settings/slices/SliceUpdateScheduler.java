@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.slices;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Process;
+import android.os.SystemClock;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Schedules the Slice updates requested by all {@link SliceBackgroundWorker}s.
+ *
+ * Updates of a Slice requested while one is already pending are coalesced into it. Pending updates
+ * of all Slices are delivered together in batches aligned on frame boundaries, so that panels
+ * showing several Slices are re-bound once per frame instead of once per Slice. Each Slice is
+ * throttled by an interval adapted to the cost of binding it, as reported by
+ * {@link SettingsSliceProvider}, so that expensive Slices are re-bound less often. The state of a
+ * Slice is dropped once it is unpinned, and only the most recently used states are kept.
+ */
+class SliceUpdateScheduler extends Handler {
+
+    private static final String TAG = "SliceUpdateScheduler";
+
+    @VisibleForTesting
+    static final long MIN_THROTTLE_INTERVAL = 300L;
+    @VisibleForTesting
+    static final long MAX_THROTTLE_INTERVAL = 1000L;
+    @VisibleForTesting
+    static final long FRAME_INTERVAL = 16L;
+    // Consumers should not spend more than 1 / BIND_COST_FACTOR of their time binding a Slice.
+    private static final int BIND_COST_FACTOR = 10;
+    @VisibleForTesting
+    static final int MAX_STATES = 64;
+
+    private static final int MSG_FLUSH_UPDATES = 1000;
+
+    private static SliceUpdateScheduler sInstance;
+
+    private static class UpdateState {
+        boolean mPending;
+        long mDueTime;
+        long mLastUpdateTime;
+        long mBindCost;
+        int mIssuedCount;
+        int mCoalescedCount;
+    }
+
+    private final ContentResolver mContentResolver;
+    private final Map<Uri, UpdateState> mStates =
+            new LinkedHashMap<>(16, 0.75f, true /* accessOrder */);
+
+    static synchronized SliceUpdateScheduler getInstance(Context context) {
+        if (sInstance == null) {
+            final HandlerThread workerThread = new HandlerThread(TAG,
+                    Process.THREAD_PRIORITY_BACKGROUND);
+            workerThread.start();
+            sInstance = new SliceUpdateScheduler(workerThread.getLooper(),
+                    context.getApplicationContext().getContentResolver());
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    SliceUpdateScheduler(Looper looper, ContentResolver contentResolver) {
+        super(looper);
+        mContentResolver = contentResolver;
+    }
+
+    /** Schedules an update of the Slice, or joins the update already pending for it. */
+    void scheduleUpdate(Uri uri) {
+        synchronized (mStates) {
+            final UpdateState state = getState(uri);
+            if (state.mPending) {
+                state.mCoalescedCount++;
+                return;
+            }
+            final long now = SystemClock.uptimeMillis();
+            final long dueTime;
+            if (state.mLastUpdateTime == 0L) {
+                // Postpone the first update triggering by onSlicePinned() to avoid being too close
+                // to the first Slice bind.
+                dueTime = now + MIN_THROTTLE_INTERVAL;
+            } else {
+                dueTime = Math.max(now, state.mLastUpdateTime + getThrottleInterval(state));
+            }
+            state.mPending = true;
+            state.mDueTime = alignToFrame(dueTime);
+            scheduleFlushLocked();
+        }
+    }
+
+    /** Cancels the pending update of the Slice and drops its state, once it is unpinned. */
+    void cancelUpdate(Uri uri) {
+        synchronized (mStates) {
+            if (mStates.remove(uri) != null) {
+                scheduleFlushLocked();
+            }
+        }
+    }
+
+    /** Records the time it took to bind the Slice, used to adapt its throttling interval. */
+    void reportBindCost(Uri uri, long bindCostMillis) {
+        synchronized (mStates) {
+            final UpdateState state = getState(uri);
+            // Exponential moving average, smoothing out one-off slow binds.
+            state.mBindCost = state.mBindCost == 0L
+                    ? bindCostMillis : (state.mBindCost * 3 + bindCostMillis) / 4;
+        }
+    }
+
+    /** Dumps the number of issued and coalesced updates of each Slice. */
+    void dump(PrintWriter writer) {
+        synchronized (mStates) {
+            writer.println(TAG + ":");
+            for (Map.Entry<Uri, UpdateState> entry : mStates.entrySet()) {
+                final UpdateState state = entry.getValue();
+                writer.println("  " + entry.getKey()
+                        + " issued=" + state.mIssuedCount
+                        + " coalesced=" + state.mCoalescedCount
+                        + " throttle=" + getThrottleInterval(state) + "ms");
+            }
+        }
+    }
+
+    @VisibleForTesting
+    int getIssuedCount(Uri uri) {
+        synchronized (mStates) {
+            final UpdateState state = mStates.get(uri);
+            return state == null ? 0 : state.mIssuedCount;
+        }
+    }
+
+    @VisibleForTesting
+    int getCoalescedCount(Uri uri) {
+        synchronized (mStates) {
+            final UpdateState state = mStates.get(uri);
+            return state == null ? 0 : state.mCoalescedCount;
+        }
+    }
+
+    @VisibleForTesting
+    long getThrottleInterval(Uri uri) {
+        synchronized (mStates) {
+            final UpdateState state = mStates.get(uri);
+            return getThrottleInterval(state == null ? new UpdateState() : state);
+        }
+    }
+
+    @VisibleForTesting
+    int getStateCount() {
+        synchronized (mStates) {
+            return mStates.size();
+        }
+    }
+
+    @Override
+    public void handleMessage(Message msg) {
+        if (msg.what != MSG_FLUSH_UPDATES) {
+            return;
+        }
+
+        final List<Uri> uris = new ArrayList<>();
+        synchronized (mStates) {
+            final long now = SystemClock.uptimeMillis();
+            for (Map.Entry<Uri, UpdateState> entry : mStates.entrySet()) {
+                final UpdateState state = entry.getValue();
+                // Deliver the updates due within the next frame in the same batch.
+                if (!state.mPending || state.mDueTime > now + FRAME_INTERVAL) {
+                    continue;
+                }
+                state.mPending = false;
+                state.mLastUpdateTime = now;
+                state.mIssuedCount++;
+                uris.add(entry.getKey());
+            }
+            trimStatesLocked();
+            scheduleFlushLocked();
+        }
+
+        for (Uri uri : uris) {
+            mContentResolver.notifyChange(uri, null);
+        }
+    }
+
+    private UpdateState getState(Uri uri) {
+        UpdateState state = mStates.get(uri);
+        if (state == null) {
+            state = new UpdateState();
+            mStates.put(uri, state);
+            trimStatesLocked();
+        }
+        return state;
+    }
+
+    private void trimStatesLocked() {
+        final Iterator<UpdateState> iterator = mStates.values().iterator();
+        while (mStates.size() > MAX_STATES && iterator.hasNext()) {
+            // A pending update is never dropped, the least recently used idle states are evicted
+            // instead.
+            if (!iterator.next().mPending) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private void scheduleFlushLocked() {
+        long nextDueTime = Long.MAX_VALUE;
+        for (UpdateState state : mStates.values()) {
+            if (state.mPending) {
+                nextDueTime = Math.min(nextDueTime, state.mDueTime);
+            }
+        }
+        removeMessages(MSG_FLUSH_UPDATES);
+        if (nextDueTime != Long.MAX_VALUE) {
+            sendEmptyMessageAtTime(MSG_FLUSH_UPDATES, nextDueTime);
+        }
+    }
+
+    private static long getThrottleInterval(UpdateState state) {
+        return Math.max(MIN_THROTTLE_INTERVAL,
+                Math.min(MAX_THROTTLE_INTERVAL, state.mBindCost * BIND_COST_FACTOR));
+    }
+
+    private static long alignToFrame(long time) {
+        return (time + FRAME_INTERVAL - 1) / FRAME_INTERVAL * FRAME_INTERVAL;
+    }
+}
@@ -24,6 +24,8 @@ import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Binder;
 import android.text.TextUtils;
+import android.util.ArrayMap;
+import android.util.ArraySet;
 import android.util.Pair;
 
 import androidx.slice.Slice;
@@ -32,7 +34,11 @@ import com.android.settings.overlay.FeatureFactory;
 import com.android.settings.slices.SlicesDatabaseHelper.IndexColumns;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Class used to map a {@link Uri} from {@link SettingsSliceProvider} to a Slice.
@@ -54,6 +60,9 @@ public class SlicesDatabaseAccessor {
             IndexColumns.USER_RESTRICTION,
     };
 
+    // Max number of keys bound in a single query, below the SQLite host parameter limit.
+    private static final int MAX_KEYS_PER_QUERY = 500;
+
     private final Context mContext;
     private final SlicesDatabaseHelper mHelper;
 
@@ -89,6 +98,88 @@ public class SlicesDatabaseAccessor {
         }
     }
 
+    /**
+     * Query the slices database once for all the {@param uris} and return the {@link SliceData}
+     * objects corresponding to the rows matching their keys. Uris that are invalid or do not match
+     * exactly 1 row are absent from the result.
+     */
+    public Map<Uri, SliceData> getSliceDataFromUris(Collection<Uri> uris) {
+        final Map<String, List<Pair<Uri, Boolean>>> urisByKey = new ArrayMap<>();
+        for (Uri uri : uris) {
+            final Pair<Boolean, String> pathData = SliceBuilderUtils.getPathData(uri);
+            if (pathData == null) {
+                continue;
+            }
+            List<Pair<Uri, Boolean>> keyUris = urisByKey.get(pathData.second);
+            if (keyUris == null) {
+                keyUris = new ArrayList<>();
+                urisByKey.put(pathData.second, keyUris);
+            }
+            keyUris.add(Pair.create(uri, pathData.first /* isIntentOnly */));
+        }
+
+        final Map<Uri, SliceData> result = new ArrayMap<>();
+        if (urisByKey.isEmpty()) {
+            return result;
+        }
+        verifyIndexing();
+        final SQLiteDatabase database = mHelper.getReadableDatabase();
+        final List<String> keys = new ArrayList<>(urisByKey.keySet());
+        final Set<String> matchedKeys = new ArraySet<>();
+        for (int start = 0; start < keys.size(); start += MAX_KEYS_PER_QUERY) {
+            final String[] selection = keys.subList(start,
+                    Math.min(start + MAX_KEYS_PER_QUERY, keys.size())).toArray(new String[0]);
+            try (Cursor cursor = database.query(TABLE_SLICES_INDEX, SELECT_COLUMNS_ALL,
+                    buildKeysMatchWhereClause(selection.length), selection, null /* groupBy */,
+                    null /* having */, null /* orderBy */)) {
+                while (cursor.moveToNext()) {
+                    final String key = cursor.getString(cursor.getColumnIndex(IndexColumns.KEY));
+                    final List<Pair<Uri, Boolean>> keyUris = urisByKey.get(key);
+                    if (!matchedKeys.add(key)) {
+                        // Like getSliceDataFromUri, a key matching more than 1 slice is invalid.
+                        for (Pair<Uri, Boolean> uri : keyUris) {
+                            result.remove(uri.first);
+                        }
+                        continue;
+                    }
+                    for (Pair<Uri, Boolean> uri : keyUris) {
+                        result.put(uri.first, buildSliceData(cursor, uri.first, uri.second));
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Query the slices database and return the {@link SliceData} objects of all Slices declared
+     * on the same screen as {@param fragmentClassName}, each bound to its indexed {@link Uri}.
+     * Used to prefetch the Slices of a screen once one of them is requested. Like
+     * {@link #getSliceDataFromUri(Uri)}, Slices whose key matches more than 1 row are skipped.
+     */
+    public List<SliceData> getSliceDataFromFragment(String fragmentClassName) {
+        verifyIndexing();
+        final List<SliceData> result = new ArrayList<>();
+        final SQLiteDatabase database = mHelper.getReadableDatabase();
+        final Set<String> duplicatedKeys = getDuplicatedKeys(database, fragmentClassName);
+        final String[] columns = Arrays.copyOf(SELECT_COLUMNS_ALL, SELECT_COLUMNS_ALL.length + 1);
+        columns[SELECT_COLUMNS_ALL.length] = IndexColumns.SLICE_URI;
+        try (Cursor cursor = database.query(TABLE_SLICES_INDEX, columns,
+                IndexColumns.FRAGMENT + " = ?", new String[]{fragmentClassName},
+                null /* groupBy */, null /* having */, null /* orderBy */)) {
+            while (cursor.moveToNext()) {
+                final String uri = cursor.getString(
+                        cursor.getColumnIndex(IndexColumns.SLICE_URI));
+                if (TextUtils.isEmpty(uri) || duplicatedKeys.contains(
+                        cursor.getString(cursor.getColumnIndex(IndexColumns.KEY)))) {
+                    continue;
+                }
+                result.add(buildSliceData(cursor, Uri.parse(uri), false /* isIntentOnly */));
+            }
+        }
+        return result;
+    }
+
     /**
      * @return a list of Slice {@link Uri}s based on their visibility {@param isPublicSlice } and
      * {@param authority}.
@@ -117,6 +208,25 @@ public class SlicesDatabaseAccessor {
         return uris;
     }
 
+    /**
+     * Returns the keys of the Slices declared on the screen of {@param fragmentClassName} which
+     * match more than 1 row, on any screen.
+     */
+    private static Set<String> getDuplicatedKeys(SQLiteDatabase database,
+            String fragmentClassName) {
+        final Set<String> keys = new ArraySet<>();
+        final String whereClause = IndexColumns.KEY + " IN (SELECT " + IndexColumns.KEY
+                + " FROM " + TABLE_SLICES_INDEX + " WHERE " + IndexColumns.FRAGMENT + " = ?)";
+        try (Cursor cursor = database.query(TABLE_SLICES_INDEX, new String[]{IndexColumns.KEY},
+                whereClause, new String[]{fragmentClassName}, IndexColumns.KEY /* groupBy */,
+                "COUNT(*) > 1" /* having */, null /* orderBy */)) {
+            while (cursor.moveToNext()) {
+                keys.add(cursor.getString(0 /* KEY */));
+            }
+        }
+        return keys;
+    }
+
     private Cursor getIndexedSliceData(String path) {
         verifyIndexing();
 
@@ -149,6 +259,14 @@ public class SlicesDatabaseAccessor {
                 .toString();
     }
 
+    private static String buildKeysMatchWhereClause(int count) {
+        final StringBuilder builder = new StringBuilder(IndexColumns.KEY).append(" IN (");
+        for (int i = 0; i < count; i++) {
+            builder.append(i == 0 ? "?" : ",?");
+        }
+        return builder.append(")").toString();
+    }
+
     private static SliceData buildSliceData(Cursor cursor, Uri uri, boolean isIntentOnly) {
         final String key = cursor.getString(cursor.getColumnIndex(IndexColumns.KEY));
         final String title = cursor.getString(cursor.getColumnIndex(IndexColumns.TITLE));
@@ -25,6 +25,7 @@ import android.util.Log;
 import androidx.annotation.VisibleForTesting;
 
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Defines the schema for the Slices database.
@@ -36,10 +37,11 @@ public class SlicesDatabaseHelper extends SQLiteOpenHelper {
     private static final String DATABASE_NAME = "slices_index.db";
     private static final String SHARED_PREFS_TAG = "slices_shared_prefs";
 
-    private static final int DATABASE_VERSION = 10;
+    private static final int DATABASE_VERSION = 11;
 
     public interface Tables {
         String TABLE_SLICES_INDEX = "slices_index";
+        String TABLE_SLICES_SOURCES = "slices_sources";
     }
 
     public interface IndexColumns {
@@ -113,6 +115,23 @@ public class SlicesDatabaseHelper extends SQLiteOpenHelper {
          * The name of user restriction for the setting.
          */
         String USER_RESTRICTION = "user_restriction";
+
+        /**
+         * The source the slice was converted from, see {@link SliceDataConverter#getSourceHashes}.
+         */
+        String SOURCE = "source";
+    }
+
+    public interface SourceColumns {
+        /**
+         * Primary key of the DB. Source of slices, see {@link SliceDataConverter#getSourceHashes}.
+         */
+        String SOURCE = "source";
+
+        /**
+         * Hash of the inputs the slices of the source were indexed with.
+         */
+        String HASH = "hash";
     }
 
     private static final String CREATE_SLICES_TABLE =
@@ -145,11 +164,24 @@ public class SlicesDatabaseHelper extends SQLiteOpenHelper {
                     + IndexColumns.HIGHLIGHT_MENU_RESOURCE
                     + ", "
                     + IndexColumns.USER_RESTRICTION
-                    + " INTEGER DEFAULT 0 "
+                    + " INTEGER DEFAULT 0, "
+                    + IndexColumns.SOURCE
+                    + ");";
+
+    private static final String CREATE_SOURCES_TABLE =
+            "CREATE TABLE " + Tables.TABLE_SLICES_SOURCES
+                    + "("
+                    + SourceColumns.SOURCE
+                    + " TEXT PRIMARY KEY, "
+                    + SourceColumns.HASH
+                    + " TEXT"
                     + ");";
 
     private final Context mContext;
 
+    // Changed each time the indexed slice data is reset or rewritten.
+    private final AtomicInteger mIndexGeneration = new AtomicInteger();
+
     private static SlicesDatabaseHelper sSingleton;
 
     public static synchronized SlicesDatabaseHelper getInstance(Context context) {
@@ -183,12 +215,10 @@ public class SlicesDatabaseHelper extends SQLiteOpenHelper {
      * {@link#isNewIndexingState(Context)} will return {@code true}.
      */
     void reconstruct(SQLiteDatabase db) {
-        mContext.getSharedPreferences(SHARED_PREFS_TAG, Context.MODE_PRIVATE)
-                .edit()
-                .clear()
-                .apply();
+        clearIndexedState();
         dropTables(db);
         createDatabases(db);
+        notifyIndexChanged();
     }
 
     /**
@@ -196,10 +226,22 @@ public class SlicesDatabaseHelper extends SQLiteOpenHelper {
      * a full index of the TABLE_SLICES_INDEX.
      */
     public void setIndexedState() {
+        // Only the last indexed build and locale are valid, the former ones are not anymore.
+        clearIndexedState();
         setBuildIndexed();
         setLocaleIndexed();
     }
 
+    /**
+     * Un-marks the state of the data, so that the next indexing checks the sources again.
+     */
+    void clearIndexedState() {
+        mContext.getSharedPreferences(SHARED_PREFS_TAG, Context.MODE_PRIVATE)
+                .edit()
+                .clear()
+                .apply();
+    }
+
     /**
      * Indicates if the indexed slice data reflects the current state of the phone.
      *
@@ -209,13 +251,30 @@ public class SlicesDatabaseHelper extends SQLiteOpenHelper {
         return isBuildIndexed() && isLocaleIndexed();
     }
 
+    /**
+     * Returns a number that changes each time the indexed slice data is reset or rewritten, so
+     * that the {@link SliceData} read from it can be dropped.
+     */
+    public int getIndexGeneration() {
+        return mIndexGeneration.get();
+    }
+
+    /**
+     * Marks the indexed slice data as changed, see {@link #getIndexGeneration()}.
+     */
+    void notifyIndexChanged() {
+        mIndexGeneration.incrementAndGet();
+    }
+
     private void createDatabases(SQLiteDatabase db) {
         db.execSQL(CREATE_SLICES_TABLE);
+        db.execSQL(CREATE_SOURCES_TABLE);
         Log.d(TAG, "Created databases");
     }
 
     private void dropTables(SQLiteDatabase db) {
         db.execSQL("DROP TABLE IF EXISTS " + Tables.TABLE_SLICES_INDEX);
+        db.execSQL("DROP TABLE IF EXISTS " + Tables.TABLE_SLICES_SOURCES);
     }
 
     private void setBuildIndexed() {
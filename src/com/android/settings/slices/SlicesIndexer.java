@@ -18,7 +18,9 @@ package com.android.settings.slices;
 
 import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.util.ArrayMap;
 import android.util.Log;
 
 import androidx.annotation.VisibleForTesting;
@@ -27,9 +29,11 @@ import com.android.settings.core.BasePreferenceController;
 import com.android.settings.dashboard.DashboardFragment;
 import com.android.settings.overlay.FeatureFactory;
 import com.android.settings.slices.SlicesDatabaseHelper.IndexColumns;
+import com.android.settings.slices.SlicesDatabaseHelper.SourceColumns;
 import com.android.settings.slices.SlicesDatabaseHelper.Tables;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * Manages the conversion of {@link DashboardFragment} and {@link BasePreferenceController} to
@@ -58,9 +62,13 @@ class SlicesIndexer implements Runnable {
 
     /**
      * Synchronously takes data obtained from {@link SliceDataConverter} and indexes it into a
-     * SQLite database
+     * SQLite database.
+     *
+     * Nothing is checked while the build and locale are already indexed. Otherwise only the
+     * sources whose hash changed since they were last indexed are converted again, and their rows
+     * are replaced in a single transaction. Rows of sources that no longer exist are deleted.
      */
-    protected void indexSliceData() {
+    protected synchronized void indexSliceData() {
         if (mHelper.isSliceDataIndexed()) {
             Log.d(TAG, "Slices already indexed - returning.");
             return;
@@ -69,33 +77,88 @@ class SlicesIndexer implements Runnable {
         final SQLiteDatabase database = mHelper.getWritableDatabase();
 
         long startTime = System.currentTimeMillis();
+        boolean indexChanged = false;
         database.beginTransaction();
         try {
-            mHelper.reconstruct(database);
-            List<SliceData> indexData = getSliceData();
-            insertSliceData(database, indexData);
-
-            mHelper.setIndexedState();
+            final Map<String, String> indexedHashes = getIndexedSourceHashes(database);
+            final Map<String, String> sourceHashes = getSourceHashes();
+            int changedSources = 0;
+            for (Map.Entry<String, String> entry : sourceHashes.entrySet()) {
+                final String source = entry.getKey();
+                final String hash = entry.getValue();
+                if (hash != null && hash.equals(indexedHashes.get(source))) {
+                    continue;
+                }
+                deleteSource(database, source);
+                insertSliceData(database, source, getSliceData(source));
+                if (hash != null) {
+                    final ContentValues values = new ContentValues();
+                    values.put(SourceColumns.SOURCE, source);
+                    values.put(SourceColumns.HASH, hash);
+                    database.replaceOrThrow(Tables.TABLE_SLICES_SOURCES,
+                            null /* nullColumnHack */, values);
+                }
+                changedSources++;
+            }
+            int deletedSources = 0;
+            for (String source : indexedHashes.keySet()) {
+                if (!sourceHashes.containsKey(source)) {
+                    deleteSource(database, source);
+                    deletedSources++;
+                }
+            }
 
             // TODO (b/71503044) Log indexing time.
-            Log.d(TAG,
-                    "Indexing slices database took: " + (System.currentTimeMillis() - startTime));
+            Log.d(TAG, "Indexing " + changedSources + " of " + sourceHashes.size()
+                    + " slice sources took: " + (System.currentTimeMillis() - startTime));
             database.setTransactionSuccessful();
+            indexChanged = changedSources > 0 || deletedSources > 0;
         } finally {
             database.endTransaction();
         }
+        mHelper.setIndexedState();
+        if (indexChanged) {
+            mHelper.notifyIndexChanged();
+        }
+    }
+
+    @VisibleForTesting
+    Map<String, String> getSourceHashes() {
+        return FeatureFactory.getFeatureFactory()
+                .getSlicesFeatureProvider()
+                .getSliceDataConverter(mContext)
+                .getSourceHashes();
     }
 
     @VisibleForTesting
-    List<SliceData> getSliceData() {
+    List<SliceData> getSliceData(String source) {
         return FeatureFactory.getFeatureFactory()
                 .getSlicesFeatureProvider()
                 .getSliceDataConverter(mContext)
-                .getSliceData();
+                .getSliceData(source);
+    }
+
+    private static Map<String, String> getIndexedSourceHashes(SQLiteDatabase database) {
+        final Map<String, String> hashes = new ArrayMap<>();
+        try (Cursor cursor = database.query(Tables.TABLE_SLICES_SOURCES,
+                new String[]{SourceColumns.SOURCE, SourceColumns.HASH}, null /* where */,
+                null /* selection */, null /* groupBy */, null /* having */,
+                null /* orderBy */)) {
+            while (cursor.moveToNext()) {
+                hashes.put(cursor.getString(0 /* SOURCE */), cursor.getString(1 /* HASH */));
+            }
+        }
+        return hashes;
+    }
+
+    private static void deleteSource(SQLiteDatabase database, String source) {
+        final String[] selection = new String[]{source};
+        database.delete(Tables.TABLE_SLICES_INDEX, IndexColumns.SOURCE + " = ?", selection);
+        database.delete(Tables.TABLE_SLICES_SOURCES, SourceColumns.SOURCE + " = ?", selection);
     }
 
     @VisibleForTesting
-    void insertSliceData(SQLiteDatabase database, List<SliceData> indexData) {
+    void insertSliceData(SQLiteDatabase database, String source, List<SliceData> indexData) {
         ContentValues values;
 
         for (SliceData dataRow : indexData) {
@@ -118,6 +181,7 @@ class SlicesIndexer implements Runnable {
             values.put(IndexColumns.PUBLIC_SLICE, dataRow.isPublicSlice());
             values.put(IndexColumns.HIGHLIGHT_MENU_RESOURCE, dataRow.getHighlightMenuRes());
             values.put(IndexColumns.USER_RESTRICTION, dataRow.getUserRestriction());
+            values.put(IndexColumns.SOURCE, source);
 
             database.replaceOrThrow(Tables.TABLE_SLICES_INDEX, null /* nullColumnHack */,
                     values);
@@ -115,6 +115,26 @@ public class AccountDashboardFragmentTest {
         assertThat(indexRaws).isNotEmpty();
     }
 
+    @Test
+    public void getDynamicRawDataToken_accountsChanged_shouldChangeToken() {
+        final List<UserInfo> infos = new ArrayList<>();
+        infos.add(new UserInfo(PROFILE_ID, PROFILE_NAME, UserInfo.FLAG_PRIMARY));
+        doReturn(infos).when(mUserManager).getProfiles(anyInt());
+        when(AccountManager.get(mContext)).thenReturn(mAccountManager);
+        doReturn(new Account[0]).when(mAccountManager).getAccounts();
+        final Object emptyToken = AccountDashboardFragment.SEARCH_INDEX_DATA_PROVIDER
+                .getDynamicRawDataToken(mContext);
+
+        doReturn(new Account[] {new Account(ACCOUNT_NAME, ACCOUNT_TYPE)})
+                .when(mAccountManager).getAccounts();
+        final Object token = AccountDashboardFragment.SEARCH_INDEX_DATA_PROVIDER
+                .getDynamicRawDataToken(mContext);
+
+        assertThat(token).isNotEqualTo(emptyToken);
+        assertThat(token).isEqualTo(AccountDashboardFragment.SEARCH_INDEX_DATA_PROVIDER
+                .getDynamicRawDataToken(mContext));
+    }
+
     @Test
     public void shouldSkipForInitialSUW_returnTrue() {
         assertThat(mFragment.shouldSkipForInitialSUW()).isTrue();
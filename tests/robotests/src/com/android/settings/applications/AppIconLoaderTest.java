@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ApplicationInfo;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.os.Looper;
+
+import com.android.settings.testutils.shadow.ShadowSettingsLibUtils;
+import com.android.settingslib.applications.AppIconCacheManager;
+import com.android.settingslib.applications.ApplicationsState.AppEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public final class AppIconLoaderTest {
+    private static final String PACKAGE_NAME = "com.android.testing";
+    private static final String OTHER_PACKAGE_NAME = "com.android.other";
+    private static final int UID = 10001;
+    private static final int ICON_SIZE = 40;
+    private static final int MAX_CACHE_BYTES = 1024 * 1024;
+
+    private final List<Runnable> mTasks = new ArrayList<>();
+    private final List<Drawable> mIcons = new ArrayList<>();
+
+    private Context mContext;
+    private AppIconLoader mIconLoader;
+    private int mLoadCount;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mIconLoader = new AppIconLoader(mContext, ICON_SIZE, mTasks::add, entry -> {
+            mLoadCount++;
+            final Drawable icon = new ColorDrawable();
+            icon.setBounds(0, 0, ICON_SIZE * 4, ICON_SIZE * 4);
+            return icon;
+        }, MAX_CACHE_BYTES);
+    }
+
+    @Test
+    public void loadIcon_notCached_givesBitmapOfIconSizeInMainThread() {
+        final Object target = new Object();
+
+        mIconLoader.loadIcon(target, createAppEntry(PACKAGE_NAME), mIcons::add);
+        assertThat(mIcons).isEmpty();
+        runTasks();
+
+        assertThat(mIcons).hasSize(1);
+        final BitmapDrawable icon = (BitmapDrawable) mIcons.get(0);
+        assertThat(icon.getBitmap().getWidth()).isEqualTo(ICON_SIZE);
+        assertThat(icon.getBitmap().getHeight()).isEqualTo(ICON_SIZE);
+    }
+
+    @Test
+    public void loadIcon_cached_givesIconDirectly() {
+        final AppEntry entry = createAppEntry(PACKAGE_NAME);
+        mIconLoader.loadIcon(new Object(), entry, icon -> {});
+        runTasks();
+
+        mIconLoader.loadIcon(new Object(), entry, mIcons::add);
+
+        assertThat(mIcons).hasSize(1);
+        assertThat(mTasks).isEmpty();
+        assertThat(mLoadCount).isEqualTo(1);
+    }
+
+    @Test
+    public void loadIcon_targetBoundAgain_givesTheLastIconOnly() {
+        final Object target = new Object();
+        final List<Drawable> formerIcons = new ArrayList<>();
+        mIconLoader.loadIcon(target, createAppEntry(PACKAGE_NAME), formerIcons::add);
+
+        mIconLoader.loadIcon(target, createAppEntry(OTHER_PACKAGE_NAME), mIcons::add);
+        runTasks();
+
+        assertThat(formerIcons).isEmpty();
+        assertThat(mIcons).hasSize(1);
+        assertThat(mLoadCount).isEqualTo(1);
+    }
+
+    @Test
+    public void cancel_beforeLoaded_doesNotLoadIcon() {
+        final Object target = new Object();
+        mIconLoader.loadIcon(target, createAppEntry(PACKAGE_NAME), mIcons::add);
+
+        mIconLoader.cancel(target);
+        runTasks();
+
+        assertThat(mIcons).isEmpty();
+        assertThat(mLoadCount).isEqualTo(0);
+    }
+
+    @Test
+    public void prefetch_sameEntriesTwice_loadsEachIconOnce() {
+        final List<AppEntry> entries =
+                Arrays.asList(createAppEntry(PACKAGE_NAME), createAppEntry(OTHER_PACKAGE_NAME));
+
+        mIconLoader.prefetch(entries);
+        mIconLoader.prefetch(entries);
+        runTasks();
+        mIconLoader.prefetch(entries);
+
+        assertThat(mTasks).isEmpty();
+        assertThat(mLoadCount).isEqualTo(2);
+        assertThat(mIconLoader.getCachedIcon(entries.get(0))).isNotNull();
+    }
+
+    @Test
+    public void loadIcon_unmountedApp_doesNotCacheIcon() {
+        final AppEntry entry = createAppEntry(PACKAGE_NAME);
+        entry.mounted = false;
+
+        mIconLoader.loadIcon(new Object(), entry, mIcons::add);
+        runTasks();
+
+        assertThat(mIcons).hasSize(1);
+        assertThat(mIconLoader.getCachedIconCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void onReceive_packageChanged_dropsIconsOfThePackageOnly() {
+        mIconLoader.prefetch(
+                Arrays.asList(createAppEntry(PACKAGE_NAME), createAppEntry(OTHER_PACKAGE_NAME)));
+        runTasks();
+
+        mIconLoader.getPackageReceiver().onReceive(mContext,
+                new Intent(Intent.ACTION_PACKAGE_CHANGED, Uri.parse("package:" + PACKAGE_NAME)));
+
+        assertThat(mIconLoader.getCachedIcon(createAppEntry(PACKAGE_NAME))).isNull();
+        assertThat(mIconLoader.getCachedIcon(createAppEntry(OTHER_PACKAGE_NAME))).isNotNull();
+    }
+
+    @Test
+    public void trimMemory_uiHidden_keepsHalfOfTheCache() {
+        final List<AppEntry> entries = new ArrayList<>();
+        // Each bitmap takes ICON_SIZE * ICON_SIZE * 4 bytes, so the cache is filled up.
+        final int count = MAX_CACHE_BYTES / (ICON_SIZE * ICON_SIZE * 4);
+        for (int index = 0; index < count; index++) {
+            entries.add(createAppEntry(PACKAGE_NAME + index));
+        }
+        mIconLoader.prefetch(entries);
+        runTasks();
+
+        mIconLoader.trimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+
+        assertThat(mIconLoader.getCachedIconCount()).isEqualTo(count / 2);
+    }
+
+    @Test
+    public void trimMemory_background_dropsAllIcons() {
+        mIconLoader.prefetch(Arrays.asList(createAppEntry(PACKAGE_NAME)));
+        runTasks();
+
+        mIconLoader.trimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+
+        assertThat(mIconLoader.getCachedIconCount()).isEqualTo(0);
+    }
+
+    @Test
+    @Config(shadows = ShadowSettingsLibUtils.class)
+    public void loadFullIcon_installedApp_shouldNotCacheFullIcon() throws IOException {
+        final File apkFile = File.createTempFile("base", ".apk");
+        apkFile.deleteOnExit();
+        final ApplicationInfo info = new ApplicationInfo();
+        info.packageName = PACKAGE_NAME;
+        info.uid = UID;
+        info.sourceDir = apkFile.getPath();
+        AppIconCacheManager.getInstance().release();
+
+        assertThat(AppIconLoader.loadFullIcon(mContext, new AppEntry(mContext, info, 0)))
+                .isNotNull();
+        assertThat(AppIconCacheManager.getInstance().get(PACKAGE_NAME, UID)).isNull();
+    }
+
+    private void runTasks() {
+        final List<Runnable> tasks = new ArrayList<>(mTasks);
+        mTasks.clear();
+        tasks.forEach(Runnable::run);
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    private AppEntry createAppEntry(String packageName) {
+        final ApplicationInfo info = new ApplicationInfo();
+        info.packageName = packageName;
+        info.uid = UID;
+        info.sourceDir = "abc";
+        final AppEntry entry = new AppEntry(mContext, info, 0);
+        entry.mounted = true;
+        return entry;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.Manifest;
+import android.app.AppOpsManager;
+import android.content.pm.IPackageManager;
+import android.os.RemoteException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public final class AppOpsPermissionSnapshotTest {
+    private static final String PERMISSION = Manifest.permission.SYSTEM_ALERT_WINDOW;
+    private static final String PACKAGE_NAME = "com.android.testing";
+    private static final int USER_ID = 0;
+    private static final int OTHER_USER_ID = 10;
+    private static final int[] OP_CODES = {AppOpsManager.OP_SYSTEM_ALERT_WINDOW};
+
+    @Mock private IPackageManager mPackageManagerService;
+    @Mock private AppOpsManager mAppOpsManager;
+
+    private AppOpsPermissionSnapshot mSnapshot;
+
+    @Before
+    public void setUp() throws RemoteException {
+        MockitoAnnotations.initMocks(this);
+        when(mPackageManagerService.getAppOpPermissionPackages(PERMISSION, USER_ID))
+                .thenReturn(new String[] {PACKAGE_NAME});
+        when(mPackageManagerService.getAppOpPermissionPackages(PERMISSION, OTHER_USER_ID))
+                .thenReturn(new String[] {PACKAGE_NAME});
+        mSnapshot = new AppOpsPermissionSnapshot(mPackageManagerService, mAppOpsManager);
+    }
+
+    @Test
+    public void getAppOpPermissionPackages_loadedTwice_returnsLoadedPackages()
+            throws RemoteException {
+        mSnapshot.getAppOpPermissionPackages(PERMISSION, USER_ID);
+
+        assertThat(mSnapshot.getAppOpPermissionPackages(PERMISSION, USER_ID))
+                .containsExactly(PACKAGE_NAME);
+        verify(mPackageManagerService, times(1)).getAppOpPermissionPackages(PERMISSION, USER_ID);
+    }
+
+    @Test
+    public void invalidateProfile_reloadsThePackagesOfTheProfileOnly() throws RemoteException {
+        mSnapshot.getAppOpPermissionPackages(PERMISSION, USER_ID);
+        mSnapshot.getAppOpPermissionPackages(PERMISSION, OTHER_USER_ID);
+
+        mSnapshot.invalidateProfile(OTHER_USER_ID);
+        mSnapshot.getAppOpPermissionPackages(PERMISSION, USER_ID);
+        mSnapshot.getAppOpPermissionPackages(PERMISSION, OTHER_USER_ID);
+
+        verify(mPackageManagerService, times(1)).getAppOpPermissionPackages(PERMISSION, USER_ID);
+        verify(mPackageManagerService, times(2))
+                .getAppOpPermissionPackages(PERMISSION, OTHER_USER_ID);
+    }
+
+    @Test
+    public void getAppOpPermissionPackages_invalidatedWhileLoading_reloadsPackages()
+            throws RemoteException {
+        when(mPackageManagerService.getAppOpPermissionPackages(PERMISSION, USER_ID))
+                .thenAnswer(invocation -> {
+                    mSnapshot.invalidateProfile(USER_ID);
+                    return new String[] {PACKAGE_NAME};
+                });
+
+        mSnapshot.getAppOpPermissionPackages(PERMISSION, USER_ID);
+        mSnapshot.getAppOpPermissionPackages(PERMISSION, USER_ID);
+
+        verify(mPackageManagerService, times(2)).getAppOpPermissionPackages(PERMISSION, USER_ID);
+    }
+
+    @Test
+    public void invalidateOp_reloadsThePackageOpsOfTheOpOnly() {
+        final int[] otherOpCodes = {AppOpsManager.OP_WRITE_SETTINGS};
+        mSnapshot.getPackagesForOps(OP_CODES);
+        mSnapshot.getPackagesForOps(otherOpCodes);
+
+        mSnapshot.invalidateOp(AppOpsManager.OP_SYSTEM_ALERT_WINDOW);
+        mSnapshot.getPackagesForOps(OP_CODES);
+        mSnapshot.getPackagesForOps(otherOpCodes);
+
+        verify(mAppOpsManager, times(2)).getPackagesForOps(OP_CODES);
+        verify(mAppOpsManager, times(1)).getPackagesForOps(otherOpCodes);
+    }
+
+    @Test
+    public void isPackageAvailable_loadedTwice_returnsLoadedState() throws RemoteException {
+        when(mPackageManagerService.isPackageAvailable(PACKAGE_NAME, USER_ID)).thenReturn(true);
+
+        mSnapshot.isPackageAvailable(PACKAGE_NAME, USER_ID);
+
+        assertThat(mSnapshot.isPackageAvailable(PACKAGE_NAME, USER_ID)).isTrue();
+        verify(mPackageManagerService, times(1)).isPackageAvailable(PACKAGE_NAME, USER_ID);
+    }
+}
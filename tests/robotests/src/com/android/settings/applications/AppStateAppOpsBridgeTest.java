@@ -16,18 +16,27 @@
 
 package com.android.settings.applications;
 
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import android.Manifest;
 import android.app.AppOpsManager;
 import android.content.Context;
+import android.content.pm.ApplicationInfo;
 import android.content.pm.IPackageManager;
+import android.content.pm.PackageInfo;
+import android.content.pm.ParceledListSlice;
+import android.os.Looper;
 import android.os.RemoteException;
 import android.os.UserHandle;
 import android.os.UserManager;
 
+import com.android.settingslib.applications.ApplicationsState;
 import com.android.settingslib.applications.ApplicationsState.AppEntry;
 
 import com.google.common.truth.Truth;
@@ -39,6 +48,9 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.robolectric.RobolectricTestRunner;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @RunWith(RobolectricTestRunner.class)
 public final class AppStateAppOpsBridgeTest {
 
@@ -46,6 +58,8 @@ public final class AppStateAppOpsBridgeTest {
     @Mock private UserManager mUserManager;
     @Mock private IPackageManager mPackageManagerService;
     @Mock private AppOpsManager mAppOpsManager;
+    @Mock private ApplicationsState mApplicationsState;
+    @Mock private ApplicationsState.Session mSession;
 
     @Before
     public void setUp() {
@@ -63,6 +77,58 @@ public final class AppStateAppOpsBridgeTest {
         // should not crash
     }
 
+    @Test
+    public void getPermissionInfo_shouldInvalidateLoadedModesOfTheOp() throws RemoteException {
+        final AppOpsPermissionSnapshot snapshot =
+                new AppOpsPermissionSnapshot(mPackageManagerService, mAppOpsManager);
+        final int[] opCodes = new int[] {AppOpsManager.OP_SYSTEM_ALERT_WINDOW};
+        snapshot.getPackagesForOps(opCodes);
+
+        new TestAppStateAppOpsBridge(null, snapshot).getPermissionInfo("pkg1", 1);
+        snapshot.getPackagesForOps(opCodes);
+
+        verify(mAppOpsManager, times(2)).getPackagesForOps(opCodes);
+    }
+
+    @Test
+    public void loadAllExtraInfo_twoBridges_shouldLoadSharedSnapshotOnce() throws RemoteException {
+        final String packageName = "pkg1";
+        final PackageInfo packageInfo = new PackageInfo();
+        packageInfo.packageName = packageName;
+        final AppEntry appEntry = mock(AppEntry.class);
+        appEntry.info = new ApplicationInfo();
+        appEntry.info.packageName = packageName;
+        appEntry.info.uid = UserHandle.getUid(0, 10001);
+        final ArrayList<AppEntry> apps = new ArrayList<>(List.of(appEntry));
+        when(mApplicationsState.newSession(any())).thenReturn(mSession);
+        when(mApplicationsState.getBackgroundLooper()).thenReturn(Looper.getMainLooper());
+        when(mSession.getAllApps()).thenReturn(apps);
+        when(mUserManager.getUserProfiles()).thenReturn(List.of(UserHandle.of(0)));
+        when(mPackageManagerService.getAppOpPermissionPackages(
+                Manifest.permission.SYSTEM_ALERT_WINDOW, 0))
+                .thenReturn(new String[] {packageName});
+        when(mPackageManagerService.isPackageAvailable(packageName, 0)).thenReturn(true);
+        when(mPackageManagerService.getPackagesHoldingPermissions(
+                new String[] {Manifest.permission.SYSTEM_ALERT_WINDOW}, 0, 0))
+                .thenReturn(new ParceledListSlice<>(List.of(packageInfo)));
+        final AppOpsPermissionSnapshot snapshot =
+                new AppOpsPermissionSnapshot(mPackageManagerService, mAppOpsManager);
+
+        new TestAppStateAppOpsBridge(mApplicationsState, snapshot).loadAllExtraInfo();
+        new TestAppStateAppOpsBridge(mApplicationsState, snapshot).loadAllExtraInfo();
+
+        verify(mPackageManagerService, times(1)).getAppOpPermissionPackages(
+                Manifest.permission.SYSTEM_ALERT_WINDOW, 0);
+        verify(mPackageManagerService, times(1)).isPackageAvailable(packageName, 0);
+        verify(mPackageManagerService, times(1)).getPackagesHoldingPermissions(
+                new String[] {Manifest.permission.SYSTEM_ALERT_WINDOW}, 0, 0);
+        verify(mAppOpsManager, times(1)).getPackagesForOps(any(int[].class));
+        final AppStateAppOpsBridge.PermissionState permissionState =
+                (AppStateAppOpsBridge.PermissionState) appEntry.extraInfo;
+        Truth.assertThat(permissionState.packageInfo).isSameInstanceAs(packageInfo);
+        Truth.assertThat(permissionState.staticPermissionGranted).isTrue();
+    }
+
     @Test
     public void permissionState_modeDefault_IsPermissible() {
         AppStateAppOpsBridge.PermissionState permissionState =
@@ -117,9 +183,14 @@ public final class AppStateAppOpsBridgeTest {
 
     private class TestAppStateAppOpsBridge extends AppStateAppOpsBridge {
         private TestAppStateAppOpsBridge() {
-            super(mContext, null, null, AppOpsManager.OP_SYSTEM_ALERT_WINDOW,
+            this(null, new AppOpsPermissionSnapshot(mPackageManagerService, mAppOpsManager));
+        }
+
+        private TestAppStateAppOpsBridge(ApplicationsState appState,
+                AppOpsPermissionSnapshot snapshot) {
+            super(mContext, appState, null, new int[] {AppOpsManager.OP_SYSTEM_ALERT_WINDOW},
                 new String[] {Manifest.permission.SYSTEM_ALERT_WINDOW},
-                mPackageManagerService);
+                mPackageManagerService, snapshot);
         }
 
         @Override
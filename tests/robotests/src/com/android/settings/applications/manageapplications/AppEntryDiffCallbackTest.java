@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications.manageapplications;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.mock;
+
+import com.android.settingslib.applications.ApplicationsState.AppEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class AppEntryDiffCallbackTest {
+
+    @Test
+    public void areItemsTheSame_sameInstance_returnTrue() {
+        final AppEntry entry1 = mock(AppEntry.class);
+        final AppEntry entry2 = mock(AppEntry.class);
+        final AppEntryDiffCallback callback =
+                new AppEntryDiffCallback(List.of(entry1, entry2), List.of(entry2));
+
+        assertThat(callback.getOldListSize()).isEqualTo(2);
+        assertThat(callback.getNewListSize()).isEqualTo(1);
+        assertThat(callback.areItemsTheSame(0, 0)).isFalse();
+        assertThat(callback.areItemsTheSame(1, 0)).isTrue();
+        assertThat(callback.areContentsTheSame(1, 0)).isTrue();
+    }
+
+    @Test
+    public void areContentsTheSame_contentChanged_returnFalse() {
+        final AppEntry entry = mock(AppEntry.class);
+        final AppEntryDiffCallback callback = new AppEntryDiffCallback(
+                List.of(entry), List.of(entry), /* hasContentChanged= */ true);
+
+        assertThat(callback.areItemsTheSame(0, 0)).isTrue();
+        assertThat(callback.areContentsTheSame(0, 0)).isFalse();
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications.manageapplications;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.mock;
+
+import android.content.pm.ApplicationInfo;
+
+import com.android.settingslib.applications.ApplicationsState.AppEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+@RunWith(RobolectricTestRunner.class)
+public class AppSearchIndexTest {
+
+    private AppEntry mBanana;
+    private AppEntry mCafe;
+    private AppEntry mContacts;
+    private AppEntry mChat;
+    private List<AppEntry> mEntries;
+    private AppSearchIndex mSearchIndex;
+
+    @Before
+    public void setUp() {
+        mBanana = createAppEntry("Banana", "com.android.banana");
+        mCafe = createAppEntry("Café", "com.android.cafe");
+        mContacts = createAppEntry("Контакты", "com.android.contacts");
+        mChat = createAppEntry("Chat", "com.example.whatsapp");
+        mEntries = new ArrayList<>(List.of(mBanana, mCafe, mContacts, mChat));
+        mSearchIndex = new AppSearchIndex(mEntries, Locale.US);
+    }
+
+    @Test
+    public void search_emptyQuery_returnsAllEntries() {
+        assertThat(mSearchIndex.search("")).containsExactlyElementsIn(mEntries).inOrder();
+    }
+
+    @Test
+    public void search_accentAndCase_ignored() {
+        assertThat(mSearchIndex.search("CAFE")).containsExactly(mCafe);
+        assertThat(mSearchIndex.search("café")).containsExactly(mCafe);
+    }
+
+    @Test
+    public void search_transliteratedLabel_matched() {
+        assertThat(mSearchIndex.search("kontakty")).containsExactly(mContacts);
+        assertThat(mSearchIndex.search("конт")).containsExactly(mContacts);
+    }
+
+    @Test
+    public void search_packageName_matchesSegmentPrefixOnly() {
+        assertThat(mSearchIndex.search("whats")).containsExactly(mChat);
+        assertThat(mSearchIndex.search("com.example")).containsExactly(mChat);
+        assertThat(mSearchIndex.search("atsapp")).isEmpty();
+    }
+
+    @Test
+    public void search_extendedQuery_refinesPreviousMatches() {
+        assertThat(mSearchIndex.search("c")).containsExactlyElementsIn(mEntries).inOrder();
+        assertThat(mSearchIndex.search("ch")).containsExactly(mChat);
+        assertThat(mSearchIndex.search("cha")).containsExactly(mChat);
+        // A query not extending the previous one searches all the entries again.
+        assertThat(mSearchIndex.search("ca")).containsExactly(mCafe);
+    }
+
+    @Test
+    public void isBuiltFrom_sameListAndLocale_returnTrue() {
+        assertThat(mSearchIndex.isBuiltFrom(mEntries, Locale.US)).isTrue();
+        assertThat(mSearchIndex.isBuiltFrom(new ArrayList<>(mEntries), Locale.US)).isFalse();
+        assertThat(mSearchIndex.isBuiltFrom(mEntries, Locale.FRANCE)).isFalse();
+    }
+
+    private static AppEntry createAppEntry(String label, String packageName) {
+        final AppEntry appEntry = mock(AppEntry.class);
+        appEntry.label = label;
+        appEntry.info = new ApplicationInfo();
+        appEntry.info.packageName = packageName;
+        return appEntry;
+    }
+}
@@ -35,6 +35,7 @@ import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.robolectric.Shadows.shadowOf;
 
 import android.content.Context;
 import android.content.pm.ApplicationInfo;
@@ -51,10 +52,12 @@ import android.view.View;
 import android.widget.SearchView;
 
 import androidx.fragment.app.FragmentActivity;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.android.settings.R;
 import com.android.settings.testutils.shadow.ShadowAppUtils;
+import com.android.settings.testutils.shadow.ShadowThreadUtils;
 import com.android.settings.testutils.shadow.ShadowUserManager;
 import com.android.settings.widget.LoadingViewController;
 import com.android.settingslib.applications.ApplicationsState;
@@ -74,6 +77,7 @@ import org.robolectric.annotation.Config;
 import org.robolectric.fakes.RoboMenuItem;
 import org.robolectric.util.ReflectionHelpers;
 
+import java.time.Duration;
 import java.util.ArrayList;
 
 @RunWith(RobolectricTestRunner.class)
@@ -123,6 +127,7 @@ public class ManageApplicationsTest {
         when(mFragment.getActivity()).thenReturn(mActivity);
         ReflectionHelpers.setField(mFragment, "mUserManager",
                 mContext.getSystemService(UserManager.class));
+        when(mActivity.getApplicationContext()).thenReturn(mContext);
         when(mActivity.getResources()).thenReturn(mResources);
         when(mActivity.getSystemService(UserManager.class)).thenReturn(mUserManager);
         when(mActivity.getPackageManager()).thenReturn(mPackageManager);
@@ -314,6 +319,70 @@ public class ManageApplicationsTest {
         verify(adapter).filterSearch(query);
     }
 
+    @Test
+    @Config(shadows = ShadowThreadUtils.class)
+    public void onRebuildComplete_hasShownEntries_shouldNotifyChangedItemsOnly() {
+        final ManageApplications.ApplicationsAdapter adapter = createRebuiltAdapter();
+        final ArrayList<AppEntry> oldEntries = getTestAppList(new String[]{"Apricot", "Fig"});
+        ReflectionHelpers.setField(adapter, "mEntries", oldEntries);
+        final RecyclerView.AdapterDataObserver observer =
+                mock(RecyclerView.AdapterDataObserver.class);
+        adapter.registerAdapterDataObserver(observer);
+        final ArrayList<AppEntry> entries = new ArrayList<>(oldEntries);
+        entries.add(1, mock(AppEntry.class));
+
+        adapter.onRebuildComplete(entries);
+
+        assertThat(adapter.getItemCount()).isEqualTo(3);
+        verify(observer).onItemRangeInserted(1, 1);
+        verify(observer, never()).onChanged();
+    }
+
+    @Test
+    public void onEntriesDiffCalculated_rebuiltAgain_shouldIgnoreOutdatedEntries() {
+        final ManageApplications.ApplicationsAdapter adapter = createRebuiltAdapter();
+        final ArrayList<AppEntry> oldEntries = getTestAppList(new String[]{"Apricot"});
+        final ArrayList<AppEntry> entries = getTestAppList(new String[]{"Apricot", "Fig"});
+        ReflectionHelpers.setField(adapter, "mEntries", oldEntries);
+        ReflectionHelpers.setField(adapter, "mOriginalEntries", new ArrayList<>());
+        final RecyclerView.AdapterDataObserver observer =
+                mock(RecyclerView.AdapterDataObserver.class);
+        adapter.registerAdapterDataObserver(observer);
+
+        adapter.onEntriesDiffCalculated(oldEntries, entries, /* contentVersion= */ 0,
+                DiffUtil.calculateDiff(new AppEntryDiffCallback(oldEntries, entries)));
+
+        assertThat(adapter.getItemCount()).isEqualTo(1);
+        verify(observer, never()).onItemRangeInserted(anyInt(), anyInt());
+        verify(observer, never()).onChanged();
+    }
+
+    @Test
+    public void onPackageSizeChanged_severalTimes_shouldNotifyChangedItemsOncePerFrame() {
+        final ManageApplications.ApplicationsAdapter adapter = createRebuiltAdapter();
+        final ArrayList<AppEntry> entries = getTestAppList(new String[]{"Apricot", "Fig", "Kiwi"});
+        for (int i = 0; i < entries.size(); i++) {
+            entries.get(i).info = new ApplicationInfo();
+            entries.get(i).info.packageName = "com.android.app" + i;
+        }
+        ReflectionHelpers.setField(adapter, "mEntries", entries);
+        final ManageApplications.ApplicationsAdapter.OnScrollListener onScrollListener =
+                mock(ManageApplications.ApplicationsAdapter.OnScrollListener.class);
+        adapter.mOnScrollListener = onScrollListener;
+
+        adapter.onPackageSizeChanged("com.android.app0");
+        adapter.onPackageSizeChanged("com.android.app2");
+        adapter.onPackageSizeChanged("com.android.app2");
+
+        verify(onScrollListener, never()).postNotifyItemChange(anyInt());
+
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofSeconds(1));
+
+        verify(onScrollListener).postNotifyItemChange(0);
+        verify(onScrollListener).postNotifyItemChange(2);
+        verify(onScrollListener, never()).postNotifyItemChange(1);
+    }
+
     @Ignore("b/313583754")
     @Test
     public void notifyItemChange_recyclerViewIdle_shouldNotify() {
@@ -627,6 +696,20 @@ public class ManageApplicationsTest {
         });
     }
 
+    private ManageApplications.ApplicationsAdapter createRebuiltAdapter() {
+        ReflectionHelpers.setField(mFragment, "mRecyclerView", mock(RecyclerView.class));
+        ReflectionHelpers.setField(mFragment, "mEmptyView", mock(View.class));
+        ReflectionHelpers.setField(mFragment, "mLoadingContainer", mock(View.class));
+        ReflectionHelpers.setField(
+                mFragment, "mFilterAdapter", mock(ManageApplications.FilterSpinnerAdapter.class));
+        final ManageApplications.ApplicationsAdapter adapter =
+                new ManageApplications.ApplicationsAdapter(mState, mFragment,
+                        AppFilterRegistry.getInstance().get(FILTER_APPS_ALL), Bundle.EMPTY);
+        ReflectionHelpers.setField(
+                adapter, "mLoadingViewController", mock(LoadingViewController.class));
+        return adapter;
+    }
+
     private ArrayList<AppEntry> getTestAppList(String[] appNames) {
         final ArrayList<AppEntry> appList = new ArrayList<>();
         for (String name : appNames) {
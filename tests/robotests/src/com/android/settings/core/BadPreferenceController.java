@@ -18,10 +18,14 @@ package com.android.settings.core;
 
 import android.content.Context;
 
-public class BadPreferenceController extends BasePreferenceController {
+public class BadPreferenceController extends BasePreferenceController
+        implements BasePreferenceController.BackgroundInstantiable {
+
+    static int sConstructionCount;
 
     public BadPreferenceController(Context context, String preferenceKey) {
         super(context, preferenceKey);
+        sConstructionCount++;
         throw new IllegalArgumentException("error");
     }
 
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+
+import com.android.settings.R;
+import com.android.settings.slices.FakePreferenceController;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class PreferenceControllerLoaderTest {
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+    }
+
+    @Test
+    @Config(qualifiers = "mcc999")
+    public void await_shouldMatchSynchronousOrder() {
+        final List<BasePreferenceController> expected =
+                PreferenceControllerListHelper.getPreferenceControllersFromXml(mContext,
+                        R.xml.location_settings);
+
+        final List<BasePreferenceController> controllers =
+                PreferenceControllerLoader.start(mContext, R.xml.location_settings).await();
+
+        assertThat(controllers).hasSize(expected.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(controllers.get(i)).isInstanceOf(FakePreferenceController.class);
+            assertThat(controllers.get(i).getPreferenceKey())
+                    .isEqualTo(expected.get(i).getPreferenceKey());
+        }
+    }
+
+    @Test
+    @Config(qualifiers = "mcc998")
+    public void await_partialFailure_shouldReturnTheRest() {
+        final List<BasePreferenceController> controllers =
+                PreferenceControllerLoader.start(mContext, R.xml.location_settings).await();
+
+        assertThat(controllers).hasSize(1);
+        assertThat(controllers.get(0)).isInstanceOf(FakePreferenceController.class);
+    }
+
+    @Test
+    @Config(qualifiers = "mcc998")
+    public void await_constructorFailedInBackground_shouldNotRunItAgain() {
+        BadPreferenceController.sConstructionCount = 0;
+
+        PreferenceControllerLoader.start(mContext, R.xml.location_settings).await();
+
+        assertThat(BadPreferenceController.sConstructionCount).isEqualTo(1);
+    }
+
+    @Test
+    public void await_invalidXml_shouldReturnEmptyList() {
+        final List<BasePreferenceController> controllers =
+                PreferenceControllerLoader.start(mContext, 0 /* xmlResId */).await();
+
+        assertThat(controllers).isEmpty();
+    }
+}
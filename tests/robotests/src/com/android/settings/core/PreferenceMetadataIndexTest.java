@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core;
+
+import static androidx.test.core.app.ApplicationProvider.getApplicationContext;
+
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_CONTROLLER;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_KEY;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_PREF_TYPE;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_TITLE;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Bundle;
+import android.os.LocaleList;
+
+import com.android.settings.R;
+import com.android.settings.core.PreferenceXmlParserUtils.MetadataFlag;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class PreferenceMetadataIndexTest {
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = getApplicationContext();
+        PreferenceMetadataIndex.clear();
+    }
+
+    @After
+    public void tearDown() {
+        PreferenceMetadataIndex.clear();
+    }
+
+    @Test
+    @Config(qualifiers = "mcc999")
+    public void getMetadata_shouldMatchParsedXml() throws IOException, XmlPullParserException {
+        final int flags = MetadataFlag.FLAG_NEED_KEY | MetadataFlag.FLAG_NEED_PREF_CONTROLLER
+                | MetadataFlag.FLAG_INCLUDE_PREF_SCREEN;
+        final List<Bundle> expected = PreferenceXmlParserUtils.extractMetadata(mContext,
+                R.xml.location_settings, flags);
+
+        final List<Bundle> metadata = PreferenceMetadataIndex.getMetadata(mContext,
+                R.xml.location_settings, flags);
+
+        assertThat(metadata).hasSize(expected.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(metadata.get(i).keySet()).isEqualTo(expected.get(i).keySet());
+            assertThat(metadata.get(i).getString(METADATA_KEY))
+                    .isEqualTo(expected.get(i).getString(METADATA_KEY));
+            assertThat(metadata.get(i).getString(METADATA_CONTROLLER))
+                    .isEqualTo(expected.get(i).getString(METADATA_CONTROLLER));
+        }
+    }
+
+    @Test
+    @Config(qualifiers = "mcc999")
+    public void getMetadata_withoutPrefScreenFlag_shouldSkipPrefScreen()
+            throws IOException, XmlPullParserException {
+        PreferenceMetadataIndex.getMetadata(mContext, R.xml.location_settings,
+                MetadataFlag.FLAG_INCLUDE_PREF_SCREEN | MetadataFlag.FLAG_NEED_KEY);
+
+        final List<Bundle> expected = PreferenceXmlParserUtils.extractMetadata(mContext,
+                R.xml.location_settings, MetadataFlag.FLAG_NEED_PREF_TYPE);
+        final List<Bundle> metadata = PreferenceMetadataIndex.getMetadata(mContext,
+                R.xml.location_settings, MetadataFlag.FLAG_NEED_PREF_TYPE);
+
+        assertThat(metadata).hasSize(expected.size());
+        for (Bundle bundle : metadata) {
+            assertThat(bundle.getString(METADATA_PREF_TYPE))
+                    .isNotEqualTo(PreferenceXmlParserUtils.PREF_SCREEN_TAG);
+        }
+    }
+
+    @Test
+    @Config(qualifiers = "mcc999")
+    public void getMetadata_shouldOnlyContainRequestedMetadata()
+            throws IOException, XmlPullParserException {
+        final List<Bundle> metadata = PreferenceMetadataIndex.getMetadata(mContext,
+                R.xml.location_settings, MetadataFlag.FLAG_NEED_PREF_TITLE);
+
+        assertThat(metadata).isNotEmpty();
+        for (Bundle bundle : metadata) {
+            assertThat(bundle.keySet()).containsExactly(METADATA_TITLE);
+        }
+    }
+
+    @Test
+    @Config(qualifiers = "mcc999")
+    public void isSameConfiguration_sizeChanged_shouldKeepIndex()
+            throws IOException, XmlPullParserException {
+        PreferenceMetadataIndex.getMetadata(mContext, R.xml.location_settings,
+                MetadataFlag.FLAG_NEED_KEY);
+        final Configuration configuration =
+                new Configuration(mContext.getResources().getConfiguration());
+        configuration.screenWidthDp /= 2;
+        configuration.smallestScreenWidthDp /= 2;
+        configuration.orientation = Configuration.ORIENTATION_LANDSCAPE;
+
+        assertThat(PreferenceMetadataIndex.isSameConfiguration(configuration)).isTrue();
+    }
+
+    @Test
+    @Config(qualifiers = "mcc999")
+    public void isSameConfiguration_localeChanged_shouldDropIndex()
+            throws IOException, XmlPullParserException {
+        PreferenceMetadataIndex.getMetadata(mContext, R.xml.location_settings,
+                MetadataFlag.FLAG_NEED_KEY);
+        final Configuration configuration =
+                new Configuration(mContext.getResources().getConfiguration());
+        configuration.setLocales(LocaleList.forLanguageTags("fr-FR"));
+
+        assertThat(PreferenceMetadataIndex.isSameConfiguration(configuration)).isFalse();
+    }
+}
@@ -84,6 +84,9 @@ import com.android.settingslib.drawer.ProviderTile;
 import com.android.settingslib.drawer.Tile;
 import com.android.settingslib.drawer.TileUtils;
 
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -159,6 +162,12 @@ public class DashboardFeatureProviderImplTest {
         mFeatureFactory = FakeFeatureFactory.setupForTest();
         mImpl = new DashboardFeatureProviderImpl(mContext);
         mFragment = new TestFragment();
+        DynamicDataObserver.setExecutor(MoreExecutors.newDirectExecutorService());
+    }
+
+    @After
+    public void tearDown() {
+        DynamicDataObserver.setExecutor(null);
     }
 
     @Test
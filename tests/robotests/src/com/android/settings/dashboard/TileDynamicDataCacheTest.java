@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.dashboard;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.content.pm.ActivityInfo;
+import android.net.Uri;
+import android.os.Bundle;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.android.settingslib.drawer.ActivityTile;
+import com.android.settingslib.drawer.CategoryKey;
+import com.android.settingslib.drawer.Tile;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class TileDynamicDataCacheTest {
+
+    private static final String KEY = "key";
+    private static final String VALUE = "value";
+
+    private Context mContext;
+    private TileDynamicDataCache mCache;
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+        mCache = new TileDynamicDataCache(mContext);
+    }
+
+    @Test
+    public void get_notCached_shouldReturnNull() {
+        assertThat(mCache.get(KEY)).isNull();
+    }
+
+    @Test
+    public void put_shouldBeReadByNewInstance() {
+        mCache.put(KEY, VALUE);
+
+        assertThat(mCache.get(KEY)).isEqualTo(VALUE);
+        assertThat(new TileDynamicDataCache(mContext).get(KEY)).isEqualTo(VALUE);
+    }
+
+    @Test
+    public void put_nullValue_shouldRemoveEntry() {
+        mCache.put(KEY, VALUE);
+
+        mCache.put(KEY, null);
+
+        assertThat(mCache.get(KEY)).isNull();
+        assertThat(new TileDynamicDataCache(mContext).get(KEY)).isNull();
+    }
+
+    @Test
+    public void put_exceedMaxEntries_shouldEvictLeastRecentlyUsed() {
+        for (int i = 0; i <= TileDynamicDataCache.MAX_ENTRIES; i++) {
+            mCache.put(KEY + i, VALUE);
+        }
+
+        assertThat(mCache.get(KEY + 0)).isNull();
+        assertThat(mCache.get(KEY + TileDynamicDataCache.MAX_ENTRIES)).isEqualTo(VALUE);
+        assertThat(mContext.getSharedPreferences(TileDynamicDataCache.SHARED_PREFS_NAME,
+                Context.MODE_PRIVATE).contains(KEY + 0)).isFalse();
+    }
+
+    @Test
+    public void getKey_shouldContainComponentAndUri() {
+        final ActivityInfo activityInfo = new ActivityInfo();
+        activityInfo.packageName = "pkg";
+        activityInfo.name = "cls";
+        activityInfo.metaData = new Bundle();
+        final Tile tile = new ActivityTile(activityInfo, CategoryKey.CATEGORY_HOMEPAGE);
+        final Uri uri = Uri.parse("content://pkg/summary");
+
+        assertThat(TileDynamicDataCache.getKey(tile, uri)).isEqualTo("pkg/cls|" + uri);
+    }
+}
@@ -28,6 +28,8 @@ import static org.mockito.Mockito.when;
 import android.app.AppOpsManager;
 import android.content.Context;
 import android.content.DialogInterface;
+import android.os.IDeviceIdleController;
+import android.os.RemoteException;
 
 import com.android.internal.logging.nano.MetricsProto;
 import com.android.settings.R;
@@ -52,6 +54,7 @@ public class HighPowerDetailTest {
 
     private Context mContext;
     @Mock private PowerAllowlistBackend mPowerAllowlistBackend;
+    @Mock private IDeviceIdleController mDeviceIdleService;
     @Mock private BatteryUtils mBatteryUtils;
 
     @Before
@@ -61,7 +64,8 @@ public class HighPowerDetailTest {
         MockitoAnnotations.initMocks(this);
         mContext = RuntimeEnvironment.application;
         mFragment = spy(new HighPowerDetail());
-        mFragment.mBackend = mPowerAllowlistBackend;
+        mFragment.mAllowlist =
+                new PowerAllowlistSnapshot(mPowerAllowlistBackend, mDeviceIdleService);
         mFragment.mBatteryUtils = mBatteryUtils;
         mFragment.mPackageUid = TEST_UID;
         mFragment.mPackageName = TEST_PACKAGE;
@@ -87,12 +91,15 @@ public class HighPowerDetailTest {
     }
 
     @Test
-    public void onClick_appAddedToDozeAllowlist_getsUnrestricted() {
+    public void onClick_appAddedToDozeAllowlist_getsUnrestricted() throws RemoteException {
         mFragment.mIsEnabled = true;
-        when(mPowerAllowlistBackend.isAllowlisted(TEST_PACKAGE, TEST_UID)).thenReturn(false);
+        when(mDeviceIdleService.getFullPowerWhitelist()).thenReturn(new String[0]);
+        when(mPowerAllowlistBackend.isDefaultActiveApp(TEST_PACKAGE, TEST_UID)).thenReturn(false);
         mFragment.onClick(null, DialogInterface.BUTTON_POSITIVE);
         verify(mBatteryUtils)
                 .setForceAppStandby(TEST_UID, TEST_PACKAGE, AppOpsManager.MODE_ALLOWED);
+        verify(mPowerAllowlistBackend).addApp(TEST_PACKAGE);
+        assertThat(mFragment.mAllowlist.isAllowlisted(TEST_PACKAGE, TEST_UID)).isTrue();
     }
 
     @Test
@@ -101,7 +108,7 @@ public class HighPowerDetailTest {
 
         assertThat(
                         HighPowerDetail.getSummary(
-                                mContext, mPowerAllowlistBackend, TEST_PACKAGE, TEST_UID))
+                                mContext, mFragment.mAllowlist, TEST_PACKAGE, TEST_UID))
                 .isEqualTo(mContext.getString(R.string.high_power_system));
     }
 }
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.IDeviceIdleController;
+import android.os.PowerManager;
+import android.os.RemoteException;
+
+import com.android.settingslib.fuelgauge.PowerAllowlistBackend;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(RobolectricTestRunner.class)
+public final class PowerAllowlistSnapshotTest {
+    private static final String PACKAGE_NAME = "com.android.testing";
+    private static final String SYSTEM_PACKAGE_NAME = "com.android.system";
+    private static final String OTHER_PACKAGE_NAME = "com.android.other";
+    private static final int UID = 10001;
+
+    @Mock private PowerAllowlistBackend mBackend;
+    @Mock private IDeviceIdleController mDeviceIdleService;
+
+    private Context mContext;
+    private PowerAllowlistSnapshot mAllowlist;
+
+    @Before
+    public void setUp() throws RemoteException {
+        MockitoAnnotations.initMocks(this);
+        mContext = RuntimeEnvironment.application;
+        when(mDeviceIdleService.getFullPowerWhitelist())
+                .thenReturn(new String[] {PACKAGE_NAME, SYSTEM_PACKAGE_NAME});
+        when(mDeviceIdleService.getSystemPowerWhitelist())
+                .thenReturn(new String[] {SYSTEM_PACKAGE_NAME});
+        mAllowlist = new PowerAllowlistSnapshot(mBackend, mDeviceIdleService);
+    }
+
+    @Test
+    public void isAllowlisted_severalApps_loadsAllowlistsOnce() throws RemoteException {
+        assertThat(mAllowlist.isAllowlisted(PACKAGE_NAME, UID)).isTrue();
+        assertThat(mAllowlist.isAllowlisted(OTHER_PACKAGE_NAME, UID)).isFalse();
+        assertThat(mAllowlist.isSysAllowlisted(SYSTEM_PACKAGE_NAME)).isTrue();
+        assertThat(mAllowlist.isSysAllowlisted(PACKAGE_NAME)).isFalse();
+
+        verify(mDeviceIdleService, times(1)).getFullPowerWhitelist();
+        verify(mDeviceIdleService, times(1)).getSystemPowerWhitelist();
+    }
+
+    @Test
+    public void isAllowlisted_defaultActiveApp_asksBackendOnce() {
+        when(mBackend.isDefaultActiveApp(OTHER_PACKAGE_NAME, UID)).thenReturn(true);
+
+        assertThat(mAllowlist.isAllowlisted(OTHER_PACKAGE_NAME, UID)).isTrue();
+        assertThat(mAllowlist.isDefaultActiveApp(OTHER_PACKAGE_NAME, UID)).isTrue();
+
+        verify(mBackend, times(1)).isDefaultActiveApp(OTHER_PACKAGE_NAME, UID);
+    }
+
+    @Test
+    public void invalidateDefaultActiveApps_asksBackendAgain() {
+        when(mBackend.isDefaultActiveApp(OTHER_PACKAGE_NAME, UID)).thenReturn(true);
+        assertThat(mAllowlist.isDefaultActiveApp(OTHER_PACKAGE_NAME, UID)).isTrue();
+        when(mBackend.isDefaultActiveApp(OTHER_PACKAGE_NAME, UID)).thenReturn(false);
+
+        mAllowlist.invalidateDefaultActiveApps();
+
+        assertThat(mAllowlist.isDefaultActiveApp(OTHER_PACKAGE_NAME, UID)).isFalse();
+        verify(mBackend, times(2)).isDefaultActiveApp(OTHER_PACKAGE_NAME, UID);
+    }
+
+    @Test
+    public void invalidateDefaultActiveApps_reloadsDefaultSmsAndDialerApps() {
+        mAllowlist.invalidateDefaultActiveApps();
+
+        verify(mBackend).refreshList();
+    }
+
+    @Test
+    public void onReceive_allowlistChanged_reloadsAllowlists() throws RemoteException {
+        mAllowlist.isAllowlisted(PACKAGE_NAME, UID);
+        when(mDeviceIdleService.getFullPowerWhitelist())
+                .thenReturn(new String[] {SYSTEM_PACKAGE_NAME});
+
+        mAllowlist.getAllowlistReceiver().onReceive(
+                mContext, new Intent(PowerManager.ACTION_POWER_SAVE_WHITELIST_CHANGED));
+
+        assertThat(mAllowlist.isAllowlisted(PACKAGE_NAME, UID)).isFalse();
+        verify(mDeviceIdleService, times(2)).getFullPowerWhitelist();
+    }
+
+    @Test
+    public void addApp_updatesBackendAndLoadedAllowlist() {
+        assertThat(mAllowlist.isAllowlisted(OTHER_PACKAGE_NAME, UID)).isFalse();
+
+        mAllowlist.addApp(OTHER_PACKAGE_NAME);
+
+        verify(mBackend).addApp(OTHER_PACKAGE_NAME);
+        assertThat(mAllowlist.isAllowlisted(OTHER_PACKAGE_NAME, UID)).isTrue();
+    }
+
+    @Test
+    public void removeApp_updatesBackendAndLoadedAllowlist() {
+        assertThat(mAllowlist.isAllowlisted(PACKAGE_NAME, UID)).isTrue();
+
+        mAllowlist.removeApp(PACKAGE_NAME);
+
+        verify(mBackend).removeApp(PACKAGE_NAME);
+        assertThat(mAllowlist.isAllowlisted(PACKAGE_NAME, UID)).isFalse();
+    }
+}
@@ -19,8 +19,11 @@ package com.android.settings.fuelgauge.batterytip;
 import static com.google.common.truth.Truth.assertThat;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 
 import android.content.Context;
 import android.content.Intent;
@@ -29,15 +32,20 @@ import android.os.PowerManager;
 
 import com.android.settings.fuelgauge.BatteryInfo;
 import com.android.settings.fuelgauge.BatteryUtils;
+import com.android.settings.fuelgauge.batterytip.detectors.HighUsageDetector;
 import com.android.settings.fuelgauge.batterytip.tips.AppLabelPredicate;
 import com.android.settings.fuelgauge.batterytip.tips.AppRestrictionPredicate;
 import com.android.settings.fuelgauge.batterytip.tips.BatteryTip;
+import com.android.settings.testutils.FakeFeatureFactory;
+
+import com.google.common.util.concurrent.MoreExecutors;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Answers;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.robolectric.RobolectricTestRunner;
@@ -45,6 +53,10 @@ import org.robolectric.RuntimeEnvironment;
 import org.robolectric.util.ReflectionHelpers;
 
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 @RunWith(RobolectricTestRunner.class)
 public class BatteryTipLoaderTest {
@@ -77,10 +89,15 @@ public class BatteryTipLoaderTest {
         doReturn(mBatteryInfo).when(mBatteryUtils).getBatteryInfo(any());
         mBatteryTipLoader = new BatteryTipLoader(mContext, mBatteryUsageStats);
         mBatteryTipLoader.mBatteryUtils = mBatteryUtils;
+        BatteryTipLoader.sExecutor = MoreExecutors.newDirectExecutorService();
+        HighUsageDetector.clearCache();
     }
 
     @After
     public void tearDown() {
+        BatteryTipLoader.sExecutor = null;
+        BatteryTipLoader.sDetectorTimeoutMs = 2000;
+        HighUsageDetector.clearCache();
         ReflectionHelpers.setStaticField(AppLabelPredicate.class, "sInstance", null);
         ReflectionHelpers.setStaticField(AppRestrictionPredicate.class, "sInstance", null);
     }
@@ -94,4 +111,48 @@ public class BatteryTipLoaderTest {
             assertThat(batteryTips.get(i).getType()).isEqualTo(TIP_ORDER[i]);
         }
     }
+
+    @Test
+    public void testLoadBackground_featureProviderGetsDetectedTips() {
+        final FakeFeatureFactory featureFactory = FakeFeatureFactory.setupForTest();
+        final ArgumentCaptor<List<BatteryTip>> tipsCaptor = ArgumentCaptor.forClass(List.class);
+
+        final List<BatteryTip> batteryTips = mBatteryTipLoader.loadInBackground();
+
+        verify(featureFactory.batterySettingsFeatureProvider)
+                .addBatteryTipDetector(any(), tipsCaptor.capture(), any(), any());
+        assertThat(tipsCaptor.getValue()).isSameInstanceAs(batteryTips);
+        assertThat(batteryTips).hasSize(TIP_ORDER.length - 1);
+    }
+
+    @Test
+    public void testLoadBackground_detectorsTimedOut_waitsForHighUsageDetector() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final ScheduledExecutorService releaser = Executors.newSingleThreadScheduledExecutor();
+        BatteryTipLoader.sExecutor = Executors.newSingleThreadExecutor();
+        BatteryTipLoader.sDetectorTimeoutMs = 10;
+        // Blocks the only thread longer than the timeout, so the detectors are delayed.
+        BatteryTipLoader.sExecutor.submit(
+                () -> {
+                    latch.await();
+                    return null;
+                });
+        releaser.schedule(latch::countDown, 200, TimeUnit.MILLISECONDS);
+
+        try {
+            final List<BatteryTip> batteryTips = mBatteryTipLoader.loadInBackground();
+
+            assertThat(batteryTips.size()).isEqualTo(TIP_ORDER.length);
+            for (BatteryTip batteryTip : batteryTips) {
+                if (batteryTip.getType() != BatteryTip.TipType.LOW_BATTERY) {
+                    assertThat(batteryTip.isVisible()).isFalse();
+                }
+            }
+            // The high usage tip is detected instead of replaced by the fallback one.
+            verify(mBatteryUtils, never()).calculateLastFullChargeTime(any(), anyLong());
+        } finally {
+            releaser.shutdownNow();
+            BatteryTipLoader.sExecutor.shutdownNow();
+        }
+    }
 }
@@ -22,7 +22,9 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import android.content.Context;
@@ -40,6 +42,7 @@ import com.android.settings.fuelgauge.batterytip.HighUsageDataParser;
 import com.android.settings.fuelgauge.batterytip.tips.BatteryTip;
 import com.android.settings.fuelgauge.batterytip.tips.HighUsageTip;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -78,6 +81,7 @@ public class HighUsageDetectorTest {
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
+        HighUsageDetector.clearCache();
 
         mContext = spy(RuntimeEnvironment.application);
         mPolicy = spy(new BatteryTipPolicy(mContext));
@@ -121,6 +125,11 @@ public class HighUsageDetectorTest {
         when(mBatteryUsageStats.getUidBatteryConsumers()).thenReturn(consumers);
     }
 
+    @After
+    public void tearDown() {
+        HighUsageDetector.clearCache();
+    }
+
     @Test
     public void testDetect_disabledByPolicy_tipInvisible() {
         ReflectionHelpers.setField(mPolicy, "highUsageEnabled", false);
@@ -157,4 +166,62 @@ public class HighUsageDetectorTest {
         assertThat(appInfos).containsExactly(mLowAppInfo, mHighAppInfo);
         assertThat(appInfos.get(0)).isEqualTo(mHighAppInfo);
     }
+
+    @Test
+    public void testDetect_highUsageAppCountIsOne_containsTopAppOnly() {
+        doReturn(true).when(mDataParser).isDeviceHeavilyUsed();
+        ReflectionHelpers.setField(mPolicy, "highUsageAppCount", 1);
+
+        final HighUsageTip highUsageTip = (HighUsageTip) mHighUsageDetector.detect();
+
+        assertThat(highUsageTip.getHighUsageAppList()).containsExactly(mHighAppInfo);
+        verify(mBatteryUtils, never()).getPackageName(UID_LOW);
+    }
+
+    @Test
+    public void testDetect_topAppHidden_containsNextApp() {
+        doReturn(true).when(mDataParser).isDeviceHeavilyUsed();
+        doReturn(true).when(mBatteryUtils).shouldHideUidBatteryConsumer(mHighBatteryConsumer);
+        ReflectionHelpers.setField(mPolicy, "highUsageAppCount", 1);
+
+        final HighUsageTip highUsageTip = (HighUsageTip) mHighUsageDetector.detect();
+
+        assertThat(highUsageTip.getHighUsageAppList()).containsExactly(mLowAppInfo);
+    }
+
+    @Test
+    public void testDetect_sameEpoch_reuseCachedResult() {
+        doReturn(true).when(mDataParser).isDeviceHeavilyUsed();
+        mHighUsageDetector.detect();
+        doReturn(false).when(mDataParser).isDeviceHeavilyUsed();
+
+        final HighUsageTip highUsageTip = (HighUsageTip) createHighUsageDetector().detect();
+
+        assertThat(highUsageTip.isVisible()).isTrue();
+        assertThat(highUsageTip.getHighUsageAppList()).containsExactly(mHighAppInfo, mLowAppInfo);
+    }
+
+    @Test
+    public void testDetect_batteryLevelChanged_detectAgain() {
+        doReturn(true).when(mDataParser).isDeviceHeavilyUsed();
+        mHighUsageDetector.detect();
+        doReturn(false).when(mDataParser).isDeviceHeavilyUsed();
+        when(mBatteryUsageStats.getDischargePercentage()).thenReturn(90);
+
+        assertThat(createHighUsageDetector().detect().isVisible()).isFalse();
+    }
+
+    private HighUsageDetector createHighUsageDetector() {
+        final HighUsageDetector highUsageDetector =
+                spy(
+                        new HighUsageDetector(
+                                mContext,
+                                mPolicy,
+                                mBatteryUsageStats,
+                                mBatteryUtils.getBatteryInfo(TAG)));
+        highUsageDetector.mBatteryUtils = mBatteryUtils;
+        highUsageDetector.mDataParser = mDataParser;
+        doNothing().when(highUsageDetector).parseBatteryData();
+        return highUsageDetector;
+    }
 }
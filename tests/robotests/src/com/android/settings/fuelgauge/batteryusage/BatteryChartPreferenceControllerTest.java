@@ -110,7 +110,7 @@ public final class BatteryChartPreferenceControllerTest {
         mBatteryChartPreferenceController.mHourlyChartView = mHourlyChartView;
         BatteryDiffEntry.clearCache();
         // Adds fake testing data.
-        BatteryDiffEntry.sResourceCache.put(
+        BatteryConsumerCache.getInstance().putNameAndIcon(
                 "fakeBatteryDiffEntryKey",
                 new BatteryEntry.NameAndIcon("fakeName", /* icon= */ null, /* iconId= */ 1));
     }
@@ -119,20 +119,20 @@ public final class BatteryChartPreferenceControllerTest {
     public void onDestroy_activityIsChanging_clearBatteryEntryCache() {
         doReturn(true).when(mSettingsActivity).isChangingConfigurations();
         // Ensures the testing environment is correct.
-        assertThat(BatteryDiffEntry.sResourceCache).hasSize(1);
+        assertThat(BatteryConsumerCache.getInstance().getNameAndIconCount()).isEqualTo(1);
 
         mBatteryChartPreferenceController.onDestroy();
-        assertThat(BatteryDiffEntry.sResourceCache).isEmpty();
+        assertThat(BatteryConsumerCache.getInstance().getNameAndIconCount()).isEqualTo(0);
     }
 
     @Test
     public void onDestroy_activityIsNotChanging_notClearBatteryEntryCache() {
         doReturn(false).when(mSettingsActivity).isChangingConfigurations();
         // Ensures the testing environment is correct.
-        assertThat(BatteryDiffEntry.sResourceCache).hasSize(1);
+        assertThat(BatteryConsumerCache.getInstance().getNameAndIconCount()).isEqualTo(1);
 
         mBatteryChartPreferenceController.onDestroy();
-        assertThat(BatteryDiffEntry.sResourceCache).isNotEmpty();
+        assertThat(BatteryConsumerCache.getInstance().getNameAndIconCount()).isGreaterThan(0);
     }
 
     @Test
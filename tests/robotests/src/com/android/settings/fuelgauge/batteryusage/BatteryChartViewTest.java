@@ -20,8 +20,14 @@ import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.Mockito.spy;
 
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
 import android.os.LocaleList;
 import android.view.View;
+import android.widget.TextView;
 
 import com.android.settings.fuelgauge.PowerUsageFeatureProvider;
 import com.android.settings.testutils.FakeFeatureFactory;
@@ -34,11 +40,14 @@ import org.mockito.MockitoAnnotations;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.RuntimeEnvironment;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 
 @RunWith(RobolectricTestRunner.class)
 public final class BatteryChartViewTest {
+    private static final int VIEW_WIDTH = 1080;
+    private static final int VIEW_HEIGHT = 640;
 
     private Context mContext;
     private BatteryChartView mBatteryChartView;
@@ -91,4 +100,119 @@ public final class BatteryChartViewTest {
         mBatteryChartView.onClick(mMockView);
         assertThat(selectedIndex[0]).isEqualTo(BatteryChartViewModel.SELECTED_INDEX_ALL);
     }
+
+    @Test
+    public void draw_repeatedly_reusesPathAndRects() {
+        final BatteryChartView batteryChartView = createLaidOutChartView();
+        final RecordingCanvas canvas = new RecordingCanvas();
+        batteryChartView.draw(canvas);
+        final Rect[] displayAreasPool = batteryChartView.mAxisLabelDisplayAreas;
+        final Rect[] displayAreas = displayAreasPool.clone();
+        assertThat(canvas.mPaths).isNotEmpty();
+
+        for (int i = 0; i < 10; i++) {
+            canvas.mPaths.clear();
+            batteryChartView.draw(canvas);
+
+            assertThat(canvas.mPaths).isNotEmpty();
+            for (Path path : canvas.mPaths) {
+                assertThat(path).isSameInstanceAs(batteryChartView.mTrapezoidPath);
+            }
+            assertThat(batteryChartView.mAxisLabelDisplayAreas).isSameInstanceAs(displayAreasPool);
+            for (int index = 0; index < displayAreas.length; index++) {
+                assertThat(batteryChartView.mAxisLabelDisplayAreas[index])
+                        .isSameInstanceAs(displayAreas[index]);
+            }
+        }
+    }
+
+    @Test
+    public void setViewModel_smallerViewModel_reusesRects() {
+        final BatteryChartView batteryChartView = createLaidOutChartView();
+        final Rect[] displayAreas = batteryChartView.mAxisLabelDisplayAreas;
+
+        batteryChartView.setViewModel(createViewModel(List.of(90, 80, 70)));
+        batteryChartView.draw(new RecordingCanvas());
+
+        assertThat(batteryChartView.mAxisLabelDisplayAreas).isSameInstanceAs(displayAreas);
+    }
+
+    @Test
+    public void setViewModel_sameViewModelWithNewSelection_notRequestLayout() {
+        final BatteryChartViewModel viewModel = createViewModel(List.of(90, 80, 70, 60, 50));
+        final BatteryChartView batteryChartView = createLaidOutChartView(viewModel);
+        final BatteryChartView.TrapezoidSlot[] trapezoidSlots = batteryChartView.mTrapezoidSlots;
+
+        viewModel.setSelectedIndex(1);
+        batteryChartView.setViewModel(viewModel);
+
+        assertThat(batteryChartView.isLayoutRequested()).isFalse();
+        assertThat(batteryChartView.mTrapezoidSlots).isSameInstanceAs(trapezoidSlots);
+    }
+
+    @Test
+    public void setViewModel_newViewModel_requestLayout() {
+        final BatteryChartView batteryChartView = createLaidOutChartView();
+
+        batteryChartView.setViewModel(createViewModel(List.of(90, 80, 70, 60, 50)));
+
+        assertThat(batteryChartView.isLayoutRequested()).isTrue();
+    }
+
+    private BatteryChartView createLaidOutChartView() {
+        return createLaidOutChartView(createViewModel(List.of(90, 80, 70, 60, 50, 40, 30)));
+    }
+
+    private BatteryChartView createLaidOutChartView(BatteryChartViewModel viewModel) {
+        final BatteryChartView batteryChartView = new BatteryChartView(mContext, null);
+        batteryChartView.setCompanionTextView(new TextView(mContext));
+        batteryChartView.setViewModel(viewModel);
+        batteryChartView.measure(
+                View.MeasureSpec.makeMeasureSpec(VIEW_WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(VIEW_HEIGHT, View.MeasureSpec.EXACTLY));
+        batteryChartView.layout(0, 0, VIEW_WIDTH, VIEW_HEIGHT);
+        return batteryChartView;
+    }
+
+    private static BatteryChartViewModel createViewModel(List<Integer> levels) {
+        final List<Long> timestamps = new ArrayList<>();
+        for (int index = 0; index < levels.size(); index++) {
+            timestamps.add(1000L * index);
+        }
+        return new BatteryChartViewModel(
+                levels,
+                timestamps,
+                BatteryChartViewModel.AxisLabelPosition.BETWEEN_TRAPEZOIDS,
+                new BatteryChartViewModel.LabelTextGenerator() {
+                    @Override
+                    public String generateText(List<Long> timestamps, int index) {
+                        return "label" + index;
+                    }
+
+                    @Override
+                    public String generateFullText(List<Long> timestamps, int index) {
+                        return "full label" + index;
+                    }
+
+                    @Override
+                    public String generateSlotBatteryLevelText(List<Integer> levels, int index) {
+                        return "level" + index;
+                    }
+                });
+    }
+
+    /** Records the paths drawn into the canvas. */
+    private static final class RecordingCanvas extends Canvas {
+        private final List<Path> mPaths = new ArrayList<>();
+
+        RecordingCanvas() {
+            super(Bitmap.createBitmap(VIEW_WIDTH, VIEW_HEIGHT, Bitmap.Config.ARGB_8888));
+        }
+
+        @Override
+        public void drawPath(Path path, Paint paint) {
+            mPaths.add(path);
+            super.drawPath(path, paint);
+        }
+    }
 }
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+
+import com.android.settings.R;
+import com.android.settings.fuelgauge.batteryusage.BatteryEntry.NameAndIcon;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Locale;
+
+@RunWith(RobolectricTestRunner.class)
+public final class BatteryConsumerCacheTest {
+    private static final String PACKAGE_NAME = "com.android.testing";
+    private static final String OTHER_PACKAGE_NAME = "com.android.testing.other";
+
+    private Context mContext;
+    private Locale mDefaultLocale;
+    private BatteryConsumerCache mCache;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mDefaultLocale = Locale.getDefault();
+        mCache = new BatteryConsumerCache();
+    }
+
+    @After
+    public void tearDown() {
+        Locale.setDefault(mDefaultLocale);
+    }
+
+    @Test
+    public void getNameAndIcon_returnsCachedData() {
+        final NameAndIcon nameAndIcon = createNameAndIcon(PACKAGE_NAME);
+        mCache.putNameAndIcon("10001", nameAndIcon);
+        mCache.putPackageUid(PACKAGE_NAME, 10001);
+        mCache.putPackageLabel(PACKAGE_NAME, "label");
+
+        assertThat(mCache.getNameAndIcon("10001")).isSameInstanceAs(nameAndIcon);
+        assertThat(mCache.getNameAndIcon("10002")).isNull();
+        assertThat(mCache.getNameAndIcon(/* key= */ null)).isNull();
+        assertThat(mCache.getPackageUid(PACKAGE_NAME)).isEqualTo(10001);
+        assertThat(mCache.getPackageLabel(PACKAGE_NAME)).isEqualTo("label");
+    }
+
+    @Test
+    public void putNameAndIcon_moreThanMaxCount_keepsBoundedSize() {
+        final int count = BatteryConsumerCache.MAX_NAME_AND_ICON_COUNT * 2;
+        for (int index = 0; index < count; index++) {
+            mCache.putNameAndIcon(Integer.toString(index), createNameAndIcon(PACKAGE_NAME));
+            mCache.putPackageUid(PACKAGE_NAME + index, index);
+        }
+
+        assertThat(mCache.getNameAndIconCount())
+                .isAtMost(BatteryConsumerCache.MAX_NAME_AND_ICON_COUNT);
+        assertThat(mCache.getPackageUidCount())
+                .isAtMost(BatteryConsumerCache.MAX_PACKAGE_UID_COUNT);
+        // The latest one is always kept.
+        assertThat(mCache.getNameAndIcon(Integer.toString(count - 1))).isNotNull();
+    }
+
+    @Test
+    public void onReceive_packageChanged_removesDataOfThePackageOnly() {
+        mCache.putNameAndIcon("10001", createNameAndIcon(PACKAGE_NAME));
+        mCache.putNameAndIcon("10002", createNameAndIcon(OTHER_PACKAGE_NAME));
+        mCache.putPackageLabel(PACKAGE_NAME, "label");
+        mCache.putPackageUid(PACKAGE_NAME, 10001);
+        mCache.putPackageUid(OTHER_PACKAGE_NAME, 10002);
+
+        mCache.getPackageReceiver()
+                .onReceive(
+                        mContext,
+                        new Intent(Intent.ACTION_PACKAGE_CHANGED)
+                                .setData(Uri.fromParts("package", PACKAGE_NAME, null)));
+
+        assertThat(mCache.getNameAndIcon("10001")).isNull();
+        assertThat(mCache.getPackageLabel(PACKAGE_NAME)).isNull();
+        assertThat(mCache.getPackageUid(PACKAGE_NAME)).isNull();
+        assertThat(mCache.getNameAndIcon("10002")).isNotNull();
+        assertThat(mCache.getPackageUid(OTHER_PACKAGE_NAME)).isEqualTo(10002);
+    }
+
+    @Test
+    public void getNameAndIcon_localeChanged_removesLabelsOnly() {
+        Locale.setDefault(Locale.US);
+        mCache.putNameAndIcon("10001", createNameAndIcon(PACKAGE_NAME));
+        mCache.putPackageUid(PACKAGE_NAME, 10001);
+
+        Locale.setDefault(Locale.TAIWAN);
+
+        assertThat(mCache.getNameAndIcon("10001")).isNull();
+        assertThat(mCache.getPackageUid(PACKAGE_NAME)).isEqualTo(10001);
+    }
+
+    @Test
+    public void clear_removesAllData() {
+        mCache.putNameAndIcon("10001", createNameAndIcon(PACKAGE_NAME));
+        mCache.putPackageUid(PACKAGE_NAME, 10001);
+
+        mCache.clear();
+
+        assertThat(mCache.getNameAndIconCount()).isEqualTo(0);
+        assertThat(mCache.getPackageUidCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void dump_containsHitAndMissCount() {
+        mCache.putNameAndIcon("10001", createNameAndIcon(PACKAGE_NAME));
+        mCache.getNameAndIcon("10001");
+        mCache.getNameAndIcon("10002");
+        mCache.getPackageUid(PACKAGE_NAME);
+        final StringWriter stringWriter = new StringWriter();
+
+        mCache.dump(new PrintWriter(stringWriter));
+
+        final String dumpContent = stringWriter.toString();
+        assertThat(dumpContent).contains("nameAndIcon: size=1/256 hit=1 miss=1");
+        assertThat(dumpContent).contains("packageUid: size=0/512 hit=0 miss=1");
+    }
+
+    @Test
+    public void toRenderedSize_largeIcon_returnsScaledIcon() {
+        final int size = mContext.getResources().getDimensionPixelSize(R.dimen.app_icon_size);
+        final Drawable icon =
+                new BitmapDrawable(
+                        mContext.getResources(),
+                        Bitmap.createBitmap(size * 4, size * 4, Bitmap.Config.ARGB_8888));
+
+        final Drawable result = BatteryConsumerCache.toRenderedSize(mContext, icon);
+
+        assertThat(result).isNotSameInstanceAs(icon);
+        assertThat(result.getIntrinsicWidth()).isEqualTo(size);
+        assertThat(result.getIntrinsicHeight()).isEqualTo(size);
+    }
+
+    @Test
+    public void toRenderedSize_smallIcon_returnsSameIcon() {
+        final Drawable icon =
+                new BitmapDrawable(
+                        mContext.getResources(),
+                        Bitmap.createBitmap(1, 1, Bitmap.Config.ARGB_8888));
+
+        assertThat(BatteryConsumerCache.toRenderedSize(mContext, icon)).isSameInstanceAs(icon);
+    }
+
+    private static NameAndIcon createNameAndIcon(String packageName) {
+        return new NameAndIcon("label", packageName, /* icon= */ null, /* iconId= */ 0);
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+@RunWith(RobolectricTestRunner.class)
+public final class BatteryDiffDataAccumulatorTest {
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+    }
+
+    @Test
+    public void build_sumsUpEntriesWithSameKey() {
+        final BatteryDiffDataAccumulator accumulator = new BatteryDiffDataAccumulator();
+        accumulator.add(createBatteryDiffData(1000L, 80, /* consumePower= */ 10, 20));
+        accumulator.add(null);
+        accumulator.add(createBatteryDiffData(2000L, 70, /* consumePower= */ 5, 15));
+
+        final BatteryDiffData batteryDiffData = accumulator.build(mContext);
+
+        assertThat(accumulator.getMergedCount()).isEqualTo(3);
+        assertThat(batteryDiffData.getStartTimestamp()).isEqualTo(1000L);
+        assertThat(batteryDiffData.getStartBatteryLevel()).isEqualTo(80);
+        assertThat(batteryDiffData.getScreenOnTime()).isEqualTo(200L);
+        final List<BatteryDiffEntry> systemEntries = batteryDiffData.getSystemDiffEntryList();
+        assertThat(systemEntries).hasSize(2);
+        assertThat(systemEntries.get(0).mConsumePower).isEqualTo(35);
+        assertThat(systemEntries.get(1).mConsumePower).isEqualTo(15);
+        assertThat(batteryDiffData.getAppDiffEntryList()).isEmpty();
+    }
+
+    @Test
+    public void copy_extendedCopy_doesNotChangeOriginal() {
+        final BatteryDiffDataAccumulator accumulator = new BatteryDiffDataAccumulator();
+        accumulator.add(createBatteryDiffData(1000L, 80, /* consumePower= */ 10, 20));
+
+        final BatteryDiffDataAccumulator copy = accumulator.copy();
+        copy.add(createBatteryDiffData(2000L, 70, /* consumePower= */ 5, 15));
+
+        assertThat(accumulator.getMergedCount()).isEqualTo(1);
+        assertThat(copy.getMergedCount()).isEqualTo(2);
+        assertThat(getTotalConsumePower(accumulator.build(mContext))).isEqualTo(30);
+        assertThat(getTotalConsumePower(copy.build(mContext))).isEqualTo(50);
+    }
+
+    @Test
+    public void isMergedPrefixOf_comparesInstances() {
+        final BatteryDiffData data1 = createBatteryDiffData(1000L, 80, 10, 20);
+        final BatteryDiffData data2 = createBatteryDiffData(2000L, 70, 5, 15);
+        final BatteryDiffDataAccumulator accumulator = new BatteryDiffDataAccumulator();
+        accumulator.add(data1);
+
+        assertThat(accumulator.isMergedPrefixOf(Arrays.asList(data1, data2))).isTrue();
+        assertThat(accumulator.isMergedPrefixOf(Arrays.asList(data2, data1))).isFalse();
+        assertThat(accumulator.isMergedPrefixOf(List.of())).isFalse();
+        assertThat(
+                        accumulator.isMergedPrefixOf(
+                                List.of(createBatteryDiffData(1000L, 80, 10, 20))))
+                .isFalse();
+    }
+
+    private static double getTotalConsumePower(BatteryDiffData batteryDiffData) {
+        double totalConsumePower = 0;
+        for (BatteryDiffEntry entry : batteryDiffData.getSystemDiffEntryList()) {
+            totalConsumePower += entry.mConsumePower;
+        }
+        return totalConsumePower;
+    }
+
+    private BatteryDiffData createBatteryDiffData(
+            long startTimestamp, int startBatteryLevel, double consumePower1,
+            double consumePower2) {
+        final List<BatteryDiffEntry> systemEntries = new ArrayList<>();
+        systemEntries.add(createSystemEntry(/* componentId= */ 1, consumePower1));
+        systemEntries.add(createSystemEntry(/* componentId= */ 2, consumePower2));
+        return new BatteryDiffData(
+                mContext,
+                startTimestamp,
+                startTimestamp + 1000L,
+                startBatteryLevel,
+                startBatteryLevel - 10,
+                /* screenOnTime= */ 100L,
+                /* appDiffEntries= */ new ArrayList<>(),
+                systemEntries,
+                /* systemAppsPackageNames= */ Set.of(),
+                /* systemAppsUids= */ Set.of(),
+                /* isAccumulated= */ true);
+    }
+
+    private BatteryDiffEntry createSystemEntry(int componentId, double consumePower) {
+        return new BatteryDiffEntry(
+                mContext,
+                /* uid= */ 0L,
+                /* userId= */ 0L,
+                /* key= */ "S|" + componentId,
+                /* isHidden= */ false,
+                componentId,
+                /* legacyPackageName= */ null,
+                /* legacyLabel= */ "component" + componentId,
+                ConvertUtils.CONSUMER_TYPE_SYSTEM_BATTERY,
+                /* foregroundUsageTimeInMs= */ 0L,
+                /* foregroundServiceUsageTimeInMs= */ 0L,
+                /* backgroundUsageTimeInMs= */ 0L,
+                /* screenOnTimeInMs= */ 0L,
+                consumePower,
+                /* foregroundUsageConsumePower= */ 0,
+                /* foregroundServiceUsageConsumePower= */ 0,
+                /* backgroundUsageConsumePower= */ 0,
+                /* cachedUsageConsumePower= */ 0);
+    }
+}
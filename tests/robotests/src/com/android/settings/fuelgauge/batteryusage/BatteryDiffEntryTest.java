@@ -204,17 +204,17 @@ public final class BatteryDiffEntryTest {
                         .build();
         values.put(
                 BatteryHistEntry.KEY_BATTERY_INFORMATION,
-                ConvertUtils.convertBatteryInformationToString(batteryInformation));
+                ConvertUtils.convertBatteryInformationToBytes(batteryInformation));
         final BatteryHistEntry batteryHistEntry = new BatteryHistEntry(values);
 
         final BatteryDiffEntry entry = createBatteryDiffEntry(10, batteryHistEntry);
 
         assertThat(entry.getAppLabel()).isEqualTo(expectedName);
         assertThat(entry.getAppIconId()).isEqualTo(R.drawable.ic_settings_aod);
-        assertThat(BatteryDiffEntry.sResourceCache).hasSize(1);
+        assertThat(BatteryConsumerCache.getInstance().getNameAndIconCount()).isEqualTo(1);
         // Verifies the app label in the cache.
         final BatteryEntry.NameAndIcon nameAndIcon =
-                BatteryDiffEntry.sResourceCache.get(entry.getKey());
+                BatteryConsumerCache.getInstance().getNameAndIcon(entry.getKey());
         assertThat(nameAndIcon.mName).isEqualTo(expectedName);
         assertThat(nameAndIcon.mIconId).isEqualTo(R.drawable.ic_settings_aod);
         // Verifies the restrictable flag in the cache.
@@ -237,10 +237,10 @@ public final class BatteryDiffEntryTest {
         assertThat(entry.getAppLabel()).isEqualTo(expectedName);
         assertThat(entry.getAppIcon()).isNull();
         assertThat(entry.getAppIconId()).isEqualTo(0);
-        assertThat(BatteryDiffEntry.sResourceCache).hasSize(1);
+        assertThat(BatteryConsumerCache.getInstance().getNameAndIconCount()).isEqualTo(1);
         // Verifies the app label in the cache.
         final BatteryEntry.NameAndIcon nameAndIcon =
-                BatteryDiffEntry.sResourceCache.get(entry.getKey());
+                BatteryConsumerCache.getInstance().getNameAndIcon(entry.getKey());
         assertThat(nameAndIcon.mName).isEqualTo(expectedName);
         assertThat(nameAndIcon.mIconId).isEqualTo(0);
         // Verifies the restrictable flag in the cache.
@@ -264,10 +264,10 @@ public final class BatteryDiffEntryTest {
 
         assertThat(entry.getAppLabel()).isEqualTo(expectedAppLabel);
         assertThat(entry.getAppIconId()).isEqualTo(0);
-        assertThat(BatteryDiffEntry.sResourceCache).hasSize(1);
+        assertThat(BatteryConsumerCache.getInstance().getNameAndIconCount()).isEqualTo(1);
         // Verifies the app label in the cache.
         final BatteryEntry.NameAndIcon nameAndIcon =
-                BatteryDiffEntry.sResourceCache.get(entry.getKey());
+                BatteryConsumerCache.getInstance().getNameAndIcon(entry.getKey());
         assertThat(nameAndIcon.mName).isEqualTo(expectedAppLabel);
         // Verifies the restrictable flag in the cache.
         assertThat(entry.mValidForRestriction).isFalse();
@@ -284,10 +284,10 @@ public final class BatteryDiffEntryTest {
         final BatteryDiffEntry entry = createBatteryDiffEntry(10, batteryHistEntry);
 
         assertThat(entry.getAppLabel()).isEqualTo(expectedAppLabel);
-        assertThat(BatteryDiffEntry.sResourceCache).hasSize(1);
+        assertThat(BatteryConsumerCache.getInstance().getNameAndIconCount()).isEqualTo(1);
         // Verifies the app label in the cache.
         final BatteryEntry.NameAndIcon nameAndIcon =
-                BatteryDiffEntry.sResourceCache.get(entry.getKey());
+                BatteryConsumerCache.getInstance().getNameAndIcon(entry.getKey());
         assertThat(nameAndIcon.mName).isEqualTo(expectedAppLabel);
     }
 
@@ -300,14 +300,14 @@ public final class BatteryDiffEntryTest {
                 BatteryInformation.newBuilder().setAppLabel(expectedAppLabel).build();
         values.put(
                 BatteryHistEntry.KEY_BATTERY_INFORMATION,
-                ConvertUtils.convertBatteryInformationToString(batteryInformation));
+                ConvertUtils.convertBatteryInformationToBytes(batteryInformation));
         final BatteryHistEntry batteryHistEntry = new BatteryHistEntry(values);
 
         final BatteryDiffEntry entry = createBatteryDiffEntry(10, batteryHistEntry);
 
         entry.mIsLoaded = true;
         assertThat(entry.getAppLabel()).isEqualTo(expectedAppLabel);
-        assertThat(BatteryDiffEntry.sResourceCache).isEmpty();
+        assertThat(BatteryConsumerCache.getInstance().getNameAndIconCount()).isEqualTo(0);
     }
 
     @Test
@@ -322,7 +322,7 @@ public final class BatteryDiffEntryTest {
         entry.mIsLoaded = true;
         entry.mAppIcon = mMockDrawable;
         assertThat(entry.getAppIcon()).isEqualTo(mMockDrawable);
-        assertThat(BatteryDiffEntry.sResourceCache).isEmpty();
+        assertThat(BatteryConsumerCache.getInstance().getNameAndIconCount()).isEqualTo(0);
     }
 
     @Test
@@ -348,26 +348,26 @@ public final class BatteryDiffEntryTest {
 
         entry.mAppIcon = null;
         assertThat(entry.getAppIcon()).isEqualTo(mMockDrawable);
-        assertThat(BatteryDiffEntry.sResourceCache).hasSize(1);
+        assertThat(BatteryConsumerCache.getInstance().getNameAndIconCount()).isEqualTo(1);
         // Verifies the app label in the cache.
         final BatteryEntry.NameAndIcon nameAndIcon =
-                BatteryDiffEntry.sResourceCache.get(entry.getKey());
+                BatteryConsumerCache.getInstance().getNameAndIcon(entry.getKey());
         assertThat(nameAndIcon.mIcon).isEqualTo(mMockDrawable);
     }
 
     @Test
     public void testClearCache_clearDataForAllCaches() {
-        BatteryDiffEntry.sResourceCache.put(
+        BatteryConsumerCache.getInstance().putNameAndIcon(
                 "fake application key",
                 new BatteryEntry.NameAndIcon("app label", null, /* iconId= */ 0));
         BatteryDiffEntry.sValidForRestriction.put("fake application key", Boolean.valueOf(false));
-        BatteryDiffEntry.sPackageNameAndUidCache.put(PACKAGE_NAME, UID);
+        BatteryConsumerCache.getInstance().putPackageUid(PACKAGE_NAME, UID);
 
         BatteryDiffEntry.clearCache();
 
-        assertThat(BatteryDiffEntry.sResourceCache).isEmpty();
+        assertThat(BatteryConsumerCache.getInstance().getNameAndIconCount()).isEqualTo(0);
         assertThat(BatteryDiffEntry.sValidForRestriction).isEmpty();
-        assertThat(BatteryDiffEntry.sPackageNameAndUidCache).isEmpty();
+        assertThat(BatteryConsumerCache.getInstance().getPackageUidCount()).isEqualTo(0);
     }
 
     @Test
@@ -387,7 +387,7 @@ public final class BatteryDiffEntryTest {
         assertThat(entry2.getAppIcon()).isEqualTo(mMockDrawable2);
         // Verifies the cache is updated into the new drawable.
         final BatteryEntry.NameAndIcon nameAndIcon =
-                BatteryDiffEntry.sResourceCache.get(entry2.getKey());
+                BatteryConsumerCache.getInstance().getNameAndIcon(entry2.getKey());
         assertThat(nameAndIcon.mIcon).isEqualTo(mMockDrawable2);
     }
 
@@ -451,10 +451,10 @@ public final class BatteryDiffEntryTest {
         final BatteryDiffEntry entry = createBatteryDiffEntry(10, new BatteryHistEntry(values));
 
         assertThat(entry.isSystemEntry()).isFalse();
-        assertThat(BatteryDiffEntry.sPackageNameAndUidCache.containsKey(PACKAGE_NAME)).isFalse();
+        assertThat(BatteryConsumerCache.getInstance().getPackageUid(PACKAGE_NAME)).isNull();
         assertThat(entry.isUninstalledEntry()).isFalse();
-        assertThat(BatteryDiffEntry.sPackageNameAndUidCache.containsKey(PACKAGE_NAME)).isTrue();
-        assertThat(BatteryDiffEntry.sPackageNameAndUidCache.get(PACKAGE_NAME)).isEqualTo(UID);
+        assertThat(BatteryConsumerCache.getInstance().getPackageUid(PACKAGE_NAME)).isNotNull();
+        assertThat(BatteryConsumerCache.getInstance().getPackageUid(PACKAGE_NAME)).isEqualTo(UID);
     }
 
     @Test
@@ -466,9 +466,9 @@ public final class BatteryDiffEntryTest {
         final BatteryDiffEntry entry = createBatteryDiffEntry(10, new BatteryHistEntry(values));
 
         assertThat(entry.isSystemEntry()).isFalse();
-        assertThat(BatteryDiffEntry.sPackageNameAndUidCache.containsKey(PACKAGE_NAME)).isFalse();
+        assertThat(BatteryConsumerCache.getInstance().getPackageUid(PACKAGE_NAME)).isNull();
         assertThat(entry.isUninstalledEntry()).isFalse();
-        assertThat(BatteryDiffEntry.sPackageNameAndUidCache.containsKey(PACKAGE_NAME)).isFalse();
+        assertThat(BatteryConsumerCache.getInstance().getPackageUid(PACKAGE_NAME)).isNull();
     }
 
     @Test
@@ -480,10 +480,10 @@ public final class BatteryDiffEntryTest {
         final BatteryDiffEntry entry = createBatteryDiffEntry(10, new BatteryHistEntry(values));
 
         assertThat(entry.isSystemEntry()).isFalse();
-        assertThat(BatteryDiffEntry.sPackageNameAndUidCache.containsKey(UNINSTALLED_PACKAGE_NAME))
-                .isFalse();
+        assertThat(BatteryConsumerCache.getInstance().getPackageUid(UNINSTALLED_PACKAGE_NAME))
+                .isNull();
         assertThat(entry.isUninstalledEntry()).isTrue();
-        assertThat(BatteryDiffEntry.sPackageNameAndUidCache.get(UNINSTALLED_PACKAGE_NAME))
+        assertThat(BatteryConsumerCache.getInstance().getPackageUid(UNINSTALLED_PACKAGE_NAME))
                 .isEqualTo(BatteryUtils.UID_NULL);
     }
 
@@ -23,6 +23,8 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import android.content.Context;
@@ -75,6 +77,7 @@ public class BatteryEntryTest {
     public void stubContextToReturnMockPackageManager() {
         mContext = spy(RuntimeEnvironment.application);
         when(mMockContext.getPackageManager()).thenReturn(mMockPackageManager);
+        BatteryConsumerCache.getInstance().clear();
     }
 
     @Before
@@ -135,6 +138,17 @@ public class BatteryEntryTest {
         assertThat(entry.getLabel()).isEqualTo(LABEL_PREFIX + APP_DEFAULT_PACKAGE_NAME);
     }
 
+    @Test
+    public void batteryEntryForApp_samePackage_loadLabelOnce() throws Exception {
+        createBatteryEntryForApp(null, APP_DEFAULT_PACKAGE_NAME, HIGH_DRAIN_PACKAGE);
+
+        final BatteryEntry entry =
+                createBatteryEntryForApp(null, APP_DEFAULT_PACKAGE_NAME, HIGH_DRAIN_PACKAGE);
+
+        assertThat(entry.getLabel()).isEqualTo(LABEL_PREFIX + APP_DEFAULT_PACKAGE_NAME);
+        verify(mMockPackageManager, times(1)).getApplicationLabel(any(ApplicationInfo.class));
+    }
+
     @Test
     public void batteryEntryForApp_shouldSetLabelAsPackageName_whenPackageCannotBeFound()
             throws Exception {
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.ContentValues;
+import android.util.ArraySet;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@RunWith(RobolectricTestRunner.class)
+public final class BatteryHistoryTableTest {
+
+    @Test
+    public void fromHistoryMap_sortsTimestampsAndInternsConsumers() {
+        final BatteryHistEntry entry1 = createEntry(/* uid= */ 1001L, 3000L, 30, 3.0, 300L);
+        final BatteryHistEntry entry2 = createEntry(/* uid= */ 1002L, 3000L, 30, 6.0, 600L);
+        final BatteryHistEntry entry3 = createEntry(/* uid= */ 1001L, 1000L, 50, 1.0, 100L);
+        final Map<Long, Map<String, BatteryHistEntry>> historyMap =
+                Map.of(
+                        3000L, Map.of(entry1.getKey(), entry1, entry2.getKey(), entry2),
+                        1000L, Map.of(entry3.getKey(), entry3));
+
+        final BatteryHistoryTable table = BatteryHistoryTable.fromHistoryMap(historyMap);
+
+        assertThat(table.getSlotCount()).isEqualTo(2);
+        assertThat(table.getTimestamp(0)).isEqualTo(1000L);
+        assertThat(table.getTimestamp(1)).isEqualTo(3000L);
+        assertThat(table.getConsumerCount()).isEqualTo(2);
+        assertThat(table.getEntryCount(0)).isEqualTo(1);
+        assertThat(table.getEntryCount(1)).isEqualTo(2);
+        final int consumerId = getConsumerId(table, "1001");
+        assertThat(table.getSourceEntry(0, consumerId)).isSameInstanceAs(entry3);
+        assertThat(table.getConsumePower(1, consumerId)).isEqualTo(3.0);
+        assertThat(table.getForegroundUsageTimeInMs(1, consumerId)).isEqualTo(300L);
+        assertThat(table.getBatteryLevel(1, consumerId)).isEqualTo(30);
+        assertThat(table.hasEntry(0, getConsumerId(table, "1002"))).isFalse();
+    }
+
+    @Test
+    public void fromEntries_groupsEntriesByTimestamp() {
+        final List<BatteryHistEntry> entries = new ArrayList<>();
+        entries.add(createEntry(/* uid= */ 1001L, 2000L, 40, 2.0, 200L));
+        entries.add(createEntry(/* uid= */ 1001L, 1000L, 50, 1.0, 100L));
+        entries.add(createEntry(/* uid= */ 1002L, 2000L, 40, 4.0, 400L));
+
+        final BatteryHistoryTable table = BatteryHistoryTable.fromEntries(entries);
+
+        assertThat(table.getSlotCount()).isEqualTo(2);
+        assertThat(table.getEntryCount(0)).isEqualTo(1);
+        assertThat(table.getEntryCount(1)).isEqualTo(2);
+        assertThat(table.getConsumePower(1, getConsumerId(table, "1002"))).isEqualTo(4.0);
+    }
+
+    @Test
+    public void indexOf_returnsExpectedSlots() {
+        final BatteryHistoryTable table = new BatteryHistoryTable(new long[] {10L, 20L, 30L});
+
+        assertThat(table.indexOf(20L)).isEqualTo(1);
+        assertThat(table.indexOf(25L)).isEqualTo(-1);
+        assertThat(table.floorIndexOf(25L)).isEqualTo(1);
+        assertThat(table.floorIndexOf(5L)).isEqualTo(-1);
+        assertThat(table.floorIndexOf(30L)).isEqualTo(2);
+        assertThat(table.ceilingIndexOf(25L)).isEqualTo(2);
+        assertThat(table.ceilingIndexOf(10L)).isEqualTo(0);
+        assertThat(table.ceilingIndexOf(35L)).isEqualTo(-1);
+    }
+
+    @Test
+    public void putEntry_manyConsumers_keepsAllValues() {
+        final BatteryHistoryTable table = new BatteryHistoryTable(new long[] {1000L, 2000L});
+        final int consumerCount = 100;
+        for (int index = 0; index < consumerCount; index++) {
+            table.putEntry(
+                    /* slot= */ 0,
+                    "key" + index,
+                    createEntry(index, 1000L, 50, /* consumePower= */ index, 100L));
+            table.putEntry(
+                    /* slot= */ 1,
+                    "key" + index,
+                    createEntry(index, 2000L, 40, /* consumePower= */ index * 2, 200L));
+        }
+
+        assertThat(table.getConsumerCount()).isEqualTo(consumerCount);
+        for (int index = 0; index < consumerCount; index++) {
+            assertThat(table.getConsumerKey(index)).isEqualTo("key" + index);
+            assertThat(table.getConsumePower(0, index)).isEqualTo(index);
+            assertThat(table.getConsumePower(1, index)).isEqualTo(index * 2);
+        }
+    }
+
+    @Test
+    public void interpolateEntry_matchesBatteryHistEntryInterpolation() {
+        final BatteryHistEntry lowerEntry = createEntry(/* uid= */ 1001L, 1000L, 60, 10.0, 1000L);
+        final BatteryHistEntry upperEntry = createEntry(/* uid= */ 1001L, 5000L, 20, 50.0, 5000L);
+        final BatteryHistoryTable source =
+                BatteryHistoryTable.fromHistoryMap(
+                        Map.of(
+                                1000L, Map.of(lowerEntry.getKey(), lowerEntry),
+                                5000L, Map.of(upperEntry.getKey(), upperEntry)));
+        final BatteryHistoryTable table =
+                new BatteryHistoryTable(new long[] {1000L, 2000L, 5000L}, source);
+
+        table.interpolateEntry(
+                /* slot= */ 1, /* consumerId= */ 0, source, 0, 1, /* ratio= */ 0.25);
+        table.interpolateEntry(
+                /* slot= */ 2, /* consumerId= */ 0, source, -1, 1, /* ratio= */ 0.5);
+
+        final BatteryHistEntry expectedEntry =
+                BatteryHistEntry.interpolate(2000L, 5000L, 0.25, lowerEntry, upperEntry);
+        final BatteryHistEntry resultEntry = table.toHistoryMap().get(2000L).get("1001");
+        assertThat(resultEntry.mTimestamp).isEqualTo(2000L);
+        assertThat(resultEntry.mBootTimestamp).isEqualTo(expectedEntry.mBootTimestamp);
+        assertThat(resultEntry.mConsumePower).isEqualTo(expectedEntry.mConsumePower);
+        assertThat(resultEntry.mForegroundUsageTimeInMs)
+                .isEqualTo(expectedEntry.mForegroundUsageTimeInMs);
+        assertThat(resultEntry.mBatteryLevel).isEqualTo(expectedEntry.mBatteryLevel);
+        assertThat(resultEntry.mAppLabel).isEqualTo(upperEntry.mAppLabel);
+        // Interpolates from zero values without the lower entry.
+        assertThat(table.getConsumePower(2, 0)).isEqualTo(25.0);
+        assertThat(table.getBatteryLevel(2, 0)).isEqualTo(20);
+    }
+
+    @Test
+    public void copySlot_copiesEntriesAndPlaceholder() {
+        final BatteryHistEntry entry = createEntry(/* uid= */ 1001L, 1000L, 60, 10.0, 1000L);
+        final BatteryHistoryTable source =
+                BatteryHistoryTable.fromHistoryMap(Map.of(1000L, Map.of(entry.getKey(), entry)));
+        final BatteryHistoryTable table = new BatteryHistoryTable(new long[] {500L}, source);
+
+        table.copySlot(/* slot= */ 0, source, /* sourceSlot= */ 0);
+
+        assertThat(table.getEntryCount(0)).isEqualTo(1);
+        assertThat(table.getSourceEntry(0, 0)).isSameInstanceAs(entry);
+        assertThat(table.toHistoryMap().get(500L).get("1001")).isSameInstanceAs(entry);
+    }
+
+    @Test
+    public void replacePlaceholder_fillsPlaceholderSlot() {
+        final BatteryHistEntry entry = createEntry(/* uid= */ 1001L, 1000L, 60, 10.0, 1000L);
+        final BatteryHistoryTable table = new BatteryHistoryTable(new long[] {1000L, 2000L});
+        table.putEntry(/* slot= */ 0, entry.getKey(), entry);
+        table.markPlaceholder(/* slot= */ 1);
+        assertThat(table.toHistoryMap().get(2000L))
+                .containsKey(DataProcessor.CURRENT_TIME_BATTERY_HISTORY_PLACEHOLDER);
+        assertThat(BatteryHistoryTable.fromHistoryMap(table.toHistoryMap()).isPlaceholder(1))
+                .isTrue();
+
+        final BatteryHistEntry currentEntry =
+                createEntry(/* uid= */ 1002L, 2000L, 50, 20.0, 2000L);
+        table.replacePlaceholder(Map.of(currentEntry.getKey(), currentEntry));
+
+        assertThat(table.isPlaceholder(1)).isFalse();
+        assertThat(table.getEntryCount(1)).isEqualTo(1);
+        assertThat(table.getConsumePower(1, getConsumerId(table, "1002"))).isEqualTo(20.0);
+    }
+
+    @Test
+    public void getConsumerIdsInKeyOrder_matchesKeySetOrder() {
+        final BatteryHistoryTable table = new BatteryHistoryTable(new long[] {1000L});
+        final ArraySet<String> keys = new ArraySet<>();
+        for (int index = 0; index < 20; index++) {
+            final BatteryHistEntry entry = createEntry(10000L - index * 37, 1000L, 50, 1.0, 1L);
+            table.putEntry(/* slot= */ 0, entry.getKey(), entry);
+            keys.add(entry.getKey());
+        }
+
+        final List<String> orderedKeys = new ArrayList<>();
+        for (int consumerId : table.getConsumerIdsInKeyOrder()) {
+            orderedKeys.add(table.getConsumerKey(consumerId));
+        }
+
+        assertThat(orderedKeys).containsExactlyElementsIn(keys).inOrder();
+    }
+
+    private static int getConsumerId(BatteryHistoryTable table, String key) {
+        for (int consumerId = 0; consumerId < table.getConsumerCount(); consumerId++) {
+            if (key.equals(table.getConsumerKey(consumerId))) {
+                return consumerId;
+            }
+        }
+        return -1;
+    }
+
+    private static BatteryHistEntry createEntry(
+            long uid,
+            long timestamp,
+            int batteryLevel,
+            double consumePower,
+            long foregroundUsageTimeInMs) {
+        final BatteryInformation batteryInformation =
+                BatteryInformation.newBuilder()
+                        .setDeviceBatteryState(
+                                DeviceBatteryState.newBuilder()
+                                        .setBatteryLevel(batteryLevel)
+                                        .build())
+                        .setAppLabel("label" + uid)
+                        .setBootTimestamp(timestamp - 100L)
+                        .setConsumePower(consumePower)
+                        .setForegroundUsageTimeInMs(foregroundUsageTimeInMs)
+                        .build();
+        final ContentValues values = new ContentValues();
+        values.put(BatteryHistEntry.KEY_UID, uid);
+        values.put(BatteryHistEntry.KEY_USER_ID, 0L);
+        values.put(BatteryHistEntry.KEY_PACKAGE_NAME, "com.android.package" + uid);
+        values.put(BatteryHistEntry.KEY_TIMESTAMP, timestamp);
+        values.put(BatteryHistEntry.KEY_CONSUMER_TYPE, ConvertUtils.CONSUMER_TYPE_UID_BATTERY);
+        values.put(
+                BatteryHistEntry.KEY_BATTERY_INFORMATION,
+                ConvertUtils.convertBatteryInformationToBytes(batteryInformation));
+        return new BatteryHistEntry(values);
+    }
+}
@@ -124,7 +124,7 @@ public final class BatteryUsageBreakdownControllerTest {
                         /* isAccumulated= */ false);
         BatteryDiffEntry.clearCache();
         // Adds fake testing data.
-        BatteryDiffEntry.sResourceCache.put(
+        BatteryConsumerCache.getInstance().putNameAndIcon(
                 "fakeBatteryDiffEntryKey",
                 new BatteryEntry.NameAndIcon("fakeName", /* icon= */ null, /* iconId= */ 1));
         doReturn(mAnomalyAppItemPreference).when(mAppListPreferenceGroup).findPreference(PREF_KEY);
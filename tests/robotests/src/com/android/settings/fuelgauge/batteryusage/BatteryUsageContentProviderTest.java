@@ -20,14 +20,20 @@ import static com.google.common.truth.Truth.assertThat;
 
 import static org.junit.Assert.assertThrows;
 
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Process;
+import android.util.Base64;
 
 import androidx.test.core.app.ApplicationProvider;
 
+import com.android.settings.fuelgauge.batteryusage.bugreport.BatteryUsageLogUtils;
 import com.android.settings.fuelgauge.batteryusage.db.AppUsageEventEntity;
 import com.android.settings.fuelgauge.batteryusage.db.BatteryEventEntity;
 import com.android.settings.fuelgauge.batteryusage.db.BatteryState;
@@ -40,7 +46,10 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowBinder;
 
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
@@ -293,8 +302,8 @@ public final class BatteryUsageContentProviderTest {
                         .setForegroundServiceUsageTimeInMs(1500)
                         .setDrainType(1)
                         .build();
-        final String expectedBatteryInformationString =
-                ConvertUtils.convertBatteryInformationToString(batteryInformation);
+        final byte[] expectedBatteryInformation =
+                ConvertUtils.convertBatteryInformationToBytes(batteryInformation);
         ContentValues values = new ContentValues();
         values.put(BatteryHistEntry.KEY_UID, Long.valueOf(101L));
         values.put(BatteryHistEntry.KEY_USER_ID, Long.valueOf(1001L));
@@ -302,7 +311,7 @@ public final class BatteryUsageContentProviderTest {
         values.put(BatteryHistEntry.KEY_TIMESTAMP, Long.valueOf(2100021L));
         values.put(BatteryHistEntry.KEY_CONSUMER_TYPE, Integer.valueOf(2));
         values.put(BatteryHistEntry.KEY_IS_FULL_CHARGE_CYCLE_START, true);
-        values.put(BatteryHistEntry.KEY_BATTERY_INFORMATION, expectedBatteryInformationString);
+        values.put(BatteryHistEntry.KEY_BATTERY_INFORMATION, expectedBatteryInformation);
 
         final Uri uri = mProvider.insert(VALID_BATTERY_STATE_CONTENT_URI, values);
 
@@ -317,7 +326,7 @@ public final class BatteryUsageContentProviderTest {
         assertThat(states.get(0).timestamp).isEqualTo(2100021L);
         assertThat(states.get(0).consumerType).isEqualTo(2);
         assertThat(states.get(0).isFullChargeCycleStart).isTrue();
-        assertThat(states.get(0).batteryInformation).isEqualTo(expectedBatteryInformationString);
+        assertThat(states.get(0).batteryInformation).isEqualTo(expectedBatteryInformation);
     }
 
     @Test
@@ -331,12 +340,12 @@ public final class BatteryUsageContentProviderTest {
                         .build();
         final BatteryInformation batteryInformation =
                 BatteryInformation.newBuilder().setDeviceBatteryState(deviceBatteryState).build();
-        final String expectedBatteryInformationString =
-                ConvertUtils.convertBatteryInformationToString(batteryInformation);
+        final byte[] expectedBatteryInformation =
+                ConvertUtils.convertBatteryInformationToBytes(batteryInformation);
         final ContentValues values = new ContentValues();
         values.put(BatteryHistEntry.KEY_PACKAGE_NAME, new String("fake_data"));
         values.put(BatteryHistEntry.KEY_TIMESTAMP, Long.valueOf(2100022L));
-        values.put(BatteryHistEntry.KEY_BATTERY_INFORMATION, expectedBatteryInformationString);
+        values.put(BatteryHistEntry.KEY_BATTERY_INFORMATION, expectedBatteryInformation);
 
         final Uri uri = mProvider.insert(VALID_BATTERY_STATE_CONTENT_URI, values);
 
@@ -347,7 +356,7 @@ public final class BatteryUsageContentProviderTest {
         assertThat(states).hasSize(1);
         assertThat(states.get(0).packageName).isEqualTo("fake_data");
         assertThat(states.get(0).timestamp).isEqualTo(2100022L);
-        assertThat(states.get(0).batteryInformation).isEqualTo(expectedBatteryInformationString);
+        assertThat(states.get(0).batteryInformation).isEqualTo(expectedBatteryInformation);
     }
 
     @Test
@@ -424,7 +433,7 @@ public final class BatteryUsageContentProviderTest {
         mProvider.onCreate();
         ContentValues values = new ContentValues();
         values.put(BatteryUsageSlotEntity.KEY_TIMESTAMP, 10001L);
-        values.put(BatteryUsageSlotEntity.KEY_BATTERY_USAGE_SLOT, "TEST_STRING");
+        values.put(BatteryUsageSlotEntity.KEY_BATTERY_USAGE_SLOT, "TEST_STRING".getBytes());
 
         final Uri uri = mProvider.insert(DatabaseUtils.BATTERY_USAGE_SLOT_URI, values);
         // Verifies the BatteryUsageSlotEntity content.
@@ -433,7 +442,7 @@ public final class BatteryUsageContentProviderTest {
                 BatteryStateDatabase.getInstance(mContext).batteryUsageSlotDao().getAll();
         assertThat(entities).hasSize(1);
         assertThat(entities.get(0).timestamp).isEqualTo(10001L);
-        assertThat(entities.get(0).batteryUsageSlot).isEqualTo("TEST_STRING");
+        assertThat(entities.get(0).batteryUsageSlot).isEqualTo("TEST_STRING".getBytes());
 
         final Cursor cursor1 = getCursorOfBatteryUsageSlots(10001L);
         assertThat(cursor1.getCount()).isEqualTo(1);
@@ -441,15 +450,143 @@ public final class BatteryUsageContentProviderTest {
         assertThat(cursor1.getLong(cursor1.getColumnIndex(BatteryUsageSlotEntity.KEY_TIMESTAMP)))
                 .isEqualTo(10001L);
         assertThat(
-                        cursor1.getString(
+                        cursor1.getBlob(
                                 cursor1.getColumnIndex(
                                         BatteryUsageSlotEntity.KEY_BATTERY_USAGE_SLOT)))
-                .isEqualTo("TEST_STRING");
+                .isEqualTo("TEST_STRING".getBytes());
 
         final Cursor cursor2 = getCursorOfBatteryUsageSlots(10002L);
         assertThat(cursor2.getCount()).isEqualTo(0);
     }
 
+    @Test
+    public void query_batteryUsageSlotFromOtherApp_returnsBase64EncodedString() {
+        mProvider.onCreate();
+        final ContentValues values = new ContentValues();
+        values.put(BatteryUsageSlotEntity.KEY_TIMESTAMP, 10001L);
+        values.put(BatteryUsageSlotEntity.KEY_BATTERY_USAGE_SLOT, "TEST_STRING".getBytes());
+        mProvider.insert(DatabaseUtils.BATTERY_USAGE_SLOT_URI, values);
+        ShadowBinder.setCallingUid(Process.myUid() + 1);
+
+        final Cursor cursor = getCursorOfBatteryUsageSlots(10001L);
+
+        assertThat(cursor.moveToFirst()).isTrue();
+        final int columnIndex =
+                cursor.getColumnIndex(BatteryUsageSlotEntity.KEY_BATTERY_USAGE_SLOT);
+        assertThat(cursor.getType(columnIndex)).isEqualTo(Cursor.FIELD_TYPE_STRING);
+        assertThat(cursor.getString(columnIndex))
+                .isEqualTo(Base64.encodeToString("TEST_STRING".getBytes(), Base64.DEFAULT));
+    }
+
+    @Test
+    public void bulkInsert_batteryEvents_insertsAllRows() {
+        mProvider.onCreate();
+        final ContentValues[] valuesArray = new ContentValues[3];
+        for (int i = 0; i < valuesArray.length; i++) {
+            valuesArray[i] = createBatteryEventValues(10001L + i);
+        }
+
+        final int count = mProvider.bulkInsert(DatabaseUtils.BATTERY_EVENT_URI, valuesArray);
+
+        assertThat(count).isEqualTo(3);
+        final List<BatteryEventEntity> entities =
+                BatteryStateDatabase.getInstance(mContext).batteryEventDao().getAll();
+        assertThat(entities).hasSize(3);
+        assertThat(entities.get(0).timestamp).isEqualTo(10003L);
+        assertThat(entities.get(2).timestamp).isEqualTo(10001L);
+    }
+
+    @Test
+    public void bulkInsert_batteryUsageSlots_insertsAllRows() {
+        mProvider.onCreate();
+        final ContentValues values1 = new ContentValues();
+        values1.put(BatteryUsageSlotEntity.KEY_TIMESTAMP, 10001L);
+        values1.put(BatteryUsageSlotEntity.KEY_BATTERY_USAGE_SLOT, "TEST_STRING1".getBytes());
+        final ContentValues values2 = new ContentValues();
+        values2.put(BatteryUsageSlotEntity.KEY_TIMESTAMP, 10002L);
+        values2.put(BatteryUsageSlotEntity.KEY_BATTERY_USAGE_SLOT, "TEST_STRING2".getBytes());
+
+        final int count =
+                mProvider.bulkInsert(
+                        DatabaseUtils.BATTERY_USAGE_SLOT_URI,
+                        new ContentValues[] {values1, values2});
+
+        assertThat(count).isEqualTo(2);
+        final List<BatteryUsageSlotEntity> entities =
+                BatteryStateDatabase.getInstance(mContext).batteryUsageSlotDao().getAll();
+        assertThat(entities).hasSize(2);
+        assertThat(entities.get(0).batteryUsageSlot).isEqualTo("TEST_STRING1".getBytes());
+        assertThat(entities.get(1).batteryUsageSlot).isEqualTo("TEST_STRING2".getBytes());
+    }
+
+    @Test
+    public void bulkInsert_recordsInsertLatency() {
+        mProvider.onCreate();
+
+        mProvider.bulkInsert(
+                DatabaseUtils.BATTERY_EVENT_URI,
+                new ContentValues[] {createBatteryEventValues(10001L)});
+
+        final StringWriter stringWriter = new StringWriter();
+        BatteryUsageLogUtils.printHistoricalLog(mContext, new PrintWriter(stringWriter));
+        assertThat(stringWriter.toString()).contains("insert latency histogram");
+    }
+
+    @Test
+    public void bulkInsert_incorrectContentUri_throwsIllegalArgumentException() {
+        final Uri uri =
+                new Uri.Builder()
+                        .scheme(ContentResolver.SCHEME_CONTENT)
+                        .authority(DatabaseUtils.AUTHORITY)
+                        .appendPath(DatabaseUtils.LAST_FULL_CHARGE_TIMESTAMP_PATH)
+                        .build();
+        mProvider.onCreate();
+
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> mProvider.bulkInsert(uri, new ContentValues[] {new ContentValues()}));
+    }
+
+    @Test
+    public void applyBatch_insertsAllRows() throws Exception {
+        mProvider.onCreate();
+        final ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(
+                ContentProviderOperation.newInsert(DatabaseUtils.BATTERY_EVENT_URI)
+                        .withValues(createBatteryEventValues(10001L))
+                        .build());
+        operations.add(
+                ContentProviderOperation.newInsert(DatabaseUtils.BATTERY_EVENT_URI)
+                        .withValues(createBatteryEventValues(10002L))
+                        .build());
+
+        final ContentProviderResult[] results = mProvider.applyBatch(operations);
+
+        assertThat(results).hasLength(2);
+        assertThat(BatteryStateDatabase.getInstance(mContext).batteryEventDao().getAll())
+                .hasSize(2);
+    }
+
+    @Test
+    public void applyBatch_failedOperation_shouldRollBackAllRows() {
+        mProvider.onCreate();
+        final ContentValues invalidValues = createBatteryEventValues(10002L);
+        invalidValues.putNull(BatteryEventEntity.KEY_TIMESTAMP);
+        final ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(
+                ContentProviderOperation.newInsert(DatabaseUtils.BATTERY_EVENT_URI)
+                        .withValues(createBatteryEventValues(10001L))
+                        .build());
+        operations.add(
+                ContentProviderOperation.newInsert(DatabaseUtils.BATTERY_EVENT_URI)
+                        .withValues(invalidValues)
+                        .build());
+
+        assertThrows(OperationApplicationException.class, () -> mProvider.applyBatch(operations));
+        assertThat(BatteryStateDatabase.getInstance(mContext).batteryEventDao().getAll())
+                .isEmpty();
+    }
+
     @Test
     public void delete_throwsUnsupportedOperationException() {
         assertThrows(
@@ -469,6 +606,16 @@ public final class BatteryUsageContentProviderTest {
                                 /* strings= */ null));
     }
 
+    private static ContentValues createBatteryEventValues(long timestamp) {
+        final ContentValues values = new ContentValues();
+        values.put(BatteryEventEntity.KEY_TIMESTAMP, timestamp);
+        values.put(
+                BatteryEventEntity.KEY_BATTERY_EVENT_TYPE,
+                BatteryEventType.POWER_CONNECTED.getNumber());
+        values.put(BatteryEventEntity.KEY_BATTERY_LEVEL, 66);
+        return values;
+    }
+
     private Cursor insertBatteryState(Duration currentTime, String queryTimestamp)
             throws Exception {
         mProvider.onCreate();
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+
+import com.android.settings.testutils.FakeFeatureFactory;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@RunWith(RobolectricTestRunner.class)
+public final class BatteryUsageSlotCacheTest {
+
+    private Context mContext;
+    private FakeFeatureFactory mFeatureFactory;
+    private BatteryUsageSlotCache mBatteryUsageSlotCache;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mFeatureFactory = FakeFeatureFactory.setupForTest();
+        mBatteryUsageSlotCache = new BatteryUsageSlotCache();
+    }
+
+    @Test
+    public void getBatteryDiffDataMap_sameSlot_reusesConvertedData() {
+        final BatteryUsageSlot slot1 = createBatteryUsageSlot(1000L, /* consumePower= */ 10);
+        final BatteryUsageSlot slot2 = createBatteryUsageSlot(2000L, /* consumePower= */ 20);
+
+        final Map<Long, BatteryDiffData> resultMap1 =
+                mBatteryUsageSlotCache.getBatteryDiffDataMap(
+                        mContext, List.of(slot1, slot2), Set.of(), Set.of());
+        final Map<Long, BatteryDiffData> resultMap2 =
+                mBatteryUsageSlotCache.getBatteryDiffDataMap(
+                        mContext,
+                        List.of(createBatteryUsageSlot(1000L, /* consumePower= */ 10), slot2),
+                        Set.of(),
+                        Set.of());
+
+        assertThat(resultMap2).hasSize(2);
+        assertThat(resultMap2.get(1000L)).isSameInstanceAs(resultMap1.get(1000L));
+        assertThat(resultMap2.get(2000L)).isSameInstanceAs(resultMap1.get(2000L));
+        assertThat(resultMap2.get(2000L).getSystemDiffEntryList().get(0).mConsumePower)
+                .isEqualTo(20);
+    }
+
+    @Test
+    public void getBatteryDiffDataMap_changedSlot_convertsAgain() {
+        final Map<Long, BatteryDiffData> resultMap1 =
+                mBatteryUsageSlotCache.getBatteryDiffDataMap(
+                        mContext,
+                        List.of(createBatteryUsageSlot(1000L, /* consumePower= */ 10)),
+                        Set.of(),
+                        Set.of());
+        final Map<Long, BatteryDiffData> resultMap2 =
+                mBatteryUsageSlotCache.getBatteryDiffDataMap(
+                        mContext,
+                        List.of(createBatteryUsageSlot(1000L, /* consumePower= */ 30)),
+                        Set.of(),
+                        Set.of());
+
+        assertThat(resultMap2.get(1000L)).isNotSameInstanceAs(resultMap1.get(1000L));
+        assertThat(resultMap2.get(1000L).getSystemDiffEntryList().get(0).mConsumePower)
+                .isEqualTo(30);
+    }
+
+    @Test
+    public void getBatteryDiffDataMap_systemAppsChanged_convertsAgain() {
+        final List<BatteryUsageSlot> slotList =
+                List.of(createBatteryUsageSlot(1000L, /* consumePower= */ 10));
+        final Map<Long, BatteryDiffData> resultMap1 =
+                mBatteryUsageSlotCache.getBatteryDiffDataMap(
+                        mContext, slotList, Set.of(), Set.of());
+        final Map<Long, BatteryDiffData> resultMap2 =
+                mBatteryUsageSlotCache.getBatteryDiffDataMap(
+                        mContext, slotList, Set.of("com.android.package"), Set.of());
+
+        assertThat(resultMap2.get(1000L)).isNotSameInstanceAs(resultMap1.get(1000L));
+    }
+
+    @Test
+    public void getBatteryDiffDataMap_hideApplicationSetChanged_convertsAgain() {
+        final List<BatteryUsageSlot> slotList =
+                List.of(createBatteryUsageSlot(1000L, /* consumePower= */ 10));
+        final Map<Long, BatteryDiffData> resultMap1 =
+                mBatteryUsageSlotCache.getBatteryDiffDataMap(
+                        mContext, slotList, Set.of(), Set.of());
+        when(mFeatureFactory.powerUsageFeatureProvider.getHideApplicationSet())
+                .thenReturn(Set.of("com.android.package"));
+
+        final Map<Long, BatteryDiffData> resultMap2 =
+                mBatteryUsageSlotCache.getBatteryDiffDataMap(
+                        mContext, slotList, Set.of(), Set.of());
+
+        assertThat(resultMap2.get(1000L)).isNotSameInstanceAs(resultMap1.get(1000L));
+    }
+
+    @Test
+    public void getBatteryDiffDataMap_packageChanged_convertsAgain() {
+        final BatteryUsageSlotCache batteryUsageSlotCache = BatteryUsageSlotCache.getInstance();
+        batteryUsageSlotCache.clear();
+        final List<BatteryUsageSlot> slotList =
+                List.of(createBatteryUsageSlot(1000L, /* consumePower= */ 10));
+        final Map<Long, BatteryDiffData> resultMap1 =
+                batteryUsageSlotCache.getBatteryDiffDataMap(
+                        mContext, slotList, Set.of(), Set.of());
+        BatteryConsumerCache.getInstance()
+                .getPackageReceiver()
+                .onReceive(
+                        mContext,
+                        new Intent(
+                                Intent.ACTION_PACKAGE_REMOVED,
+                                Uri.fromParts("package", "com.android.package", null)));
+
+        final Map<Long, BatteryDiffData> resultMap2 =
+                batteryUsageSlotCache.getBatteryDiffDataMap(
+                        mContext, slotList, Set.of(), Set.of());
+
+        assertThat(resultMap2.get(1000L)).isNotSameInstanceAs(resultMap1.get(1000L));
+    }
+
+    @Test
+    public void getDailyUsageDiffData_openSlotChanged_mergesClosedAndOpenSlots() {
+        final Map<Long, BatteryDiffData> closedDataMap =
+                mBatteryUsageSlotCache.getBatteryDiffDataMap(
+                        mContext,
+                        List.of(
+                                createBatteryUsageSlot(1000L, /* consumePower= */ 10),
+                                createBatteryUsageSlot(2000L, /* consumePower= */ 20)),
+                        Set.of(),
+                        Set.of());
+        final List<BatteryDiffData> hourlyDataList = new ArrayList<>();
+        hourlyDataList.add(closedDataMap.get(1000L));
+        hourlyDataList.add(closedDataMap.get(2000L));
+        hourlyDataList.add(createOpenBatteryDiffData(3000L, /* consumePower= */ 5));
+
+        final BatteryDiffData dailyData1 =
+                mBatteryUsageSlotCache.getDailyUsageDiffData(mContext, 1000L, hourlyDataList);
+        hourlyDataList.set(2, createOpenBatteryDiffData(3000L, /* consumePower= */ 7));
+        final BatteryDiffData dailyData2 =
+                mBatteryUsageSlotCache.getDailyUsageDiffData(mContext, 1000L, hourlyDataList);
+
+        assertThat(getConsumePower(dailyData1)).isEqualTo(35);
+        assertThat(getConsumePower(dailyData2)).isEqualTo(37);
+        assertThat(dailyData2.getStartTimestamp()).isEqualTo(1000L);
+        // The cached daily usage is not changed by the returned data.
+        assertThat(dailyData1.getSystemDiffEntryList().get(0))
+                .isNotSameInstanceAs(dailyData2.getSystemDiffEntryList().get(0));
+    }
+
+    @Test
+    public void getDailyUsageDiffData_slotsReplaced_accumulatesAgain() {
+        final Map<Long, BatteryDiffData> closedDataMap1 =
+                mBatteryUsageSlotCache.getBatteryDiffDataMap(
+                        mContext,
+                        List.of(createBatteryUsageSlot(1000L, /* consumePower= */ 10)),
+                        Set.of(),
+                        Set.of());
+        mBatteryUsageSlotCache.getDailyUsageDiffData(
+                mContext, 1000L, List.of(closedDataMap1.get(1000L)));
+        final Map<Long, BatteryDiffData> closedDataMap2 =
+                mBatteryUsageSlotCache.getBatteryDiffDataMap(
+                        mContext,
+                        List.of(createBatteryUsageSlot(1000L, /* consumePower= */ 40)),
+                        Set.of(),
+                        Set.of());
+
+        final BatteryDiffData dailyData =
+                mBatteryUsageSlotCache.getDailyUsageDiffData(
+                        mContext, 1000L, List.of(closedDataMap2.get(1000L)));
+
+        assertThat(getConsumePower(dailyData)).isEqualTo(40);
+    }
+
+    private static double getConsumePower(BatteryDiffData batteryDiffData) {
+        double consumePower = 0;
+        for (BatteryDiffEntry entry : batteryDiffData.getSystemDiffEntryList()) {
+            consumePower += entry.mConsumePower;
+        }
+        return consumePower;
+    }
+
+    private BatteryDiffData createOpenBatteryDiffData(long startTimestamp, double consumePower) {
+        return ConvertUtils.convertToBatteryDiffData(
+                mContext,
+                createBatteryUsageSlot(startTimestamp, consumePower),
+                /* systemAppsPackageNames= */ Set.of(),
+                /* systemAppsUids= */ Set.of());
+    }
+
+    private static BatteryUsageSlot createBatteryUsageSlot(
+            long startTimestamp, double consumePower) {
+        final BatteryUsageDiff batteryUsageDiff =
+                BatteryUsageDiff.newBuilder()
+                        .setKey("S|1")
+                        .setComponentId(1)
+                        .setLabel("component1")
+                        .setConsumerType(ConvertUtils.CONSUMER_TYPE_SYSTEM_BATTERY)
+                        .setConsumePower(consumePower)
+                        .build();
+        return BatteryUsageSlot.newBuilder()
+                .setStartTimestamp(startTimestamp)
+                .setEndTimestamp(startTimestamp + 1000L)
+                .setStartBatteryLevel(80)
+                .setEndBatteryLevel(70)
+                .setScreenOnTime(100L)
+                .addSystemUsage(batteryUsageDiff)
+                .build();
+    }
+}
@@ -24,6 +24,7 @@ import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.spy;
+import static org.robolectric.Shadows.shadowOf;
 
 import android.app.usage.IUsageStatsManager;
 import android.app.usage.UsageEvents;
@@ -36,6 +37,8 @@ import android.os.BatteryManager;
 import android.os.BatteryStatsManager;
 import android.os.BatteryUsageStats;
 import android.os.BatteryUsageStatsQuery;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.Parcel;
 import android.os.RemoteException;
 import android.os.UserManager;
@@ -43,6 +46,8 @@ import android.text.format.DateUtils;
 
 import com.android.settings.fuelgauge.batteryusage.db.AppUsageEventEntity;
 
+import com.google.common.util.concurrent.MoreExecutors;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -84,6 +89,7 @@ public final class DataProcessManagerTest {
         mContext = spy(RuntimeEnvironment.application);
         DataProcessor.sTestSystemAppsPackageNames = Set.of();
         DataProcessor.sUsageStatsManager = mUsageStatsManager;
+        DataProcessManager.sExecutor = MoreExecutors.newDirectExecutorService();
         doReturn(mContext).when(mContext).getApplicationContext();
         doReturn(mUserManager).when(mContext).getSystemService(UserManager.class);
         doReturn(mBatteryStatsManager)
@@ -104,13 +110,14 @@ public final class DataProcessManagerTest {
                         /* lastFullChargeTimestamp= */ 0L,
                         /* callbackFunction= */ null,
                         /* hourlyBatteryLevelsPerDay= */ new ArrayList<>(),
-                        /* batteryHistoryMap= */ new HashMap<>());
+                        /* batteryHistoryTable= */ new BatteryHistoryTable(new long[0]));
     }
 
     @After
     public void cleanUp() {
         DatabaseUtils.sFakeSupplier = null;
         DataProcessManager.sFakeBatteryHistoryMap = null;
+        DataProcessManager.sExecutor = null;
     }
 
     @Test
@@ -243,7 +250,7 @@ public final class DataProcessManagerTest {
                         /* lastFullChargeTimestamp= */ 1L,
                         /* callbackFunction= */ null,
                         hourlyBatteryLevelsPerDay,
-                        /* batteryHistoryMap= */ new HashMap<>());
+                        /* batteryHistoryTable= */ new BatteryHistoryTable(new long[0]));
         dataProcessManager.start();
 
         assertThat(dataProcessManager.getIsCurrentAppUsageLoaded()).isTrue();
@@ -320,6 +327,85 @@ public final class DataProcessManagerTest {
         assertThat(mDataProcessManager.getShowScreenOnTime()).isFalse();
     }
 
+    @Test
+    public void start_recordsStageTimings() {
+        DatabaseUtils.sFakeSupplier = () -> createEmptyCursor();
+        doReturn(false).when(mUserManager).isUserUnlocked(anyInt());
+
+        mDataProcessManager.start();
+
+        assertThat(mDataProcessManager.getStageTimings().keySet())
+                .containsExactly(
+                        "loadCurrentBatteryHistoryMap",
+                        "loadCurrentAppUsageList",
+                        "loadBatteryUsageSlotList",
+                        "loadDatabaseAppUsageList",
+                        "loadPowerConnectionBatteryEventList",
+                        "processAppUsageData",
+                        "generateFinalData");
+    }
+
+    @Test
+    public void start_applyCallbackOnMainThread() {
+        DatabaseUtils.sFakeSupplier = () -> createEmptyCursor();
+        doReturn(false).when(mUserManager).isUserUnlocked(anyInt());
+        final List<Map<Long, BatteryDiffData>> results = new ArrayList<>();
+        final DataProcessManager dataProcessManager = createDataProcessManager(results::add);
+
+        dataProcessManager.start();
+        assertThat(results).isEmpty();
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertThat(results).hasSize(1);
+    }
+
+    @Test
+    public void start_stageFailed_applyEmptyCallback() {
+        DatabaseUtils.sFakeSupplier =
+                () -> {
+                    throw new IllegalStateException("database is unavailable");
+                };
+        doReturn(false).when(mUserManager).isUserUnlocked(anyInt());
+        final List<Map<Long, BatteryDiffData>> results = new ArrayList<>();
+        final DataProcessManager dataProcessManager = createDataProcessManager(results::add);
+
+        dataProcessManager.start();
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertThat(results).hasSize(1);
+        assertThat(results.get(0)).isEmpty();
+    }
+
+    @Test
+    public void cancel_afterStart_notApplyCallback() {
+        DatabaseUtils.sFakeSupplier = () -> createEmptyCursor();
+        doReturn(false).when(mUserManager).isUserUnlocked(anyInt());
+        final List<Map<Long, BatteryDiffData>> results = new ArrayList<>();
+        final DataProcessManager dataProcessManager = createDataProcessManager(results::add);
+
+        dataProcessManager.start();
+        dataProcessManager.cancel();
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertThat(results).isEmpty();
+    }
+
+    @Test
+    public void cancel_beforeStart_skipAllStages() {
+        DatabaseUtils.sFakeSupplier = () -> createEmptyCursor();
+        final List<Map<Long, BatteryDiffData>> results = new ArrayList<>();
+        final DataProcessManager dataProcessManager = createDataProcessManager(results::add);
+
+        dataProcessManager.cancel();
+        dataProcessManager.start();
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertThat(dataProcessManager.getStageTimings()).isEmpty();
+        assertThat(dataProcessManager.getIsCurrentBatteryHistoryLoaded()).isFalse();
+        assertThat(dataProcessManager.getIsDatabaseAppUsageLoaded()).isFalse();
+        assertThat(results).isEmpty();
+    }
+
     @Test
     @LooperMode(LooperMode.Mode.LEGACY)
     public void getBatteryLevelData_emptyHistoryMap_returnNull() {
@@ -440,10 +526,31 @@ public final class DataProcessManagerTest {
                 BatteryInformation.newBuilder().setDeviceBatteryState(deviceBatteryState).build();
         values.put(
                 BatteryHistEntry.KEY_BATTERY_INFORMATION,
-                ConvertUtils.convertBatteryInformationToString(batteryInformation));
+                ConvertUtils.convertBatteryInformationToBytes(batteryInformation));
         return values;
     }
 
+    private DataProcessManager createDataProcessManager(
+            DataProcessManager.OnBatteryDiffDataMapLoadedListener callbackFunction) {
+        return new DataProcessManager(
+                mContext,
+                new Handler(Looper.getMainLooper()),
+                /* rawStartTimestamp= */ 0L,
+                /* lastFullChargeTimestamp= */ 0L,
+                callbackFunction,
+                /* hourlyBatteryLevelsPerDay= */ new ArrayList<>(),
+                /* batteryHistoryTable= */ new BatteryHistoryTable(new long[0]));
+    }
+
+    private static Cursor createEmptyCursor() {
+        return new MatrixCursor(
+                new String[] {
+                    AppUsageEventEntity.KEY_UID,
+                    AppUsageEventEntity.KEY_PACKAGE_NAME,
+                    AppUsageEventEntity.KEY_TIMESTAMP
+                });
+    }
+
     private void assertAppUsageEvent(
             final AppUsageEvent event, final AppUsageEventType eventType, final long timestamp) {
         assertThat(event.getType()).isEqualTo(eventType);
@@ -349,6 +349,59 @@ public final class DataProcessorTest {
         assertAppUsagePeriod(userMap.get(packageName).get(1), 47800000L, 48800000L);
     }
 
+    @Test
+    public void generateAppUsagePeriodMap_withPowerConnectedEvents_excludeChargingTime() {
+        final List<BatteryLevelData.PeriodBatteryLevelData> hourlyBatteryLevelsPerDay =
+                new ArrayList<>();
+        final String packageName = "com.android.settings";
+        final List<Long> timestamps = List.of(14400000L, 18000000L, 21600000L);
+        final Map<Long, Integer> batteryLevelMap =
+                Map.of(timestamps.get(0), 100, timestamps.get(1), 100, timestamps.get(2), 100);
+        hourlyBatteryLevelsPerDay.add(
+                new BatteryLevelData.PeriodBatteryLevelData(batteryLevelMap, timestamps));
+        // Adds one usage period across the two hourly slots.
+        final List<AppUsageEvent> appUsageEventList = new ArrayList<>();
+        appUsageEventList.add(
+                buildAppUsageEvent(
+                        AppUsageEventType.ACTIVITY_STOPPED,
+                        /* timestamp= */ 20000000L,
+                        /* userId= */ 1,
+                        /* instanceId= */ 2,
+                        packageName));
+        appUsageEventList.add(
+                buildAppUsageEvent(
+                        AppUsageEventType.ACTIVITY_RESUMED,
+                        /* timestamp= */ 15000000L,
+                        /* userId= */ 1,
+                        /* instanceId= */ 2,
+                        packageName));
+        // Adds the charging time across the two hourly slots.
+        final List<BatteryEvent> batteryEventList = new ArrayList<>();
+        batteryEventList.add(
+                BatteryEvent.newBuilder()
+                        .setTimestamp(19000000L)
+                        .setType(BatteryEventType.POWER_DISCONNECTED)
+                        .build());
+        batteryEventList.add(
+                BatteryEvent.newBuilder()
+                        .setTimestamp(16000000L)
+                        .setType(BatteryEventType.POWER_CONNECTED)
+                        .build());
+
+        final Map<Integer, Map<Integer, Map<Long, Map<String, List<AppUsagePeriod>>>>> periodMap =
+                DataProcessor.generateAppUsagePeriodMap(
+                        mContext, hourlyBatteryLevelsPerDay, appUsageEventList, batteryEventList);
+
+        assertThat(periodMap).hasSize(1);
+        assertThat(periodMap.get(0)).hasSize(2);
+        List<AppUsagePeriod> periodList = periodMap.get(0).get(0).get(1L).get(packageName);
+        assertThat(periodList).hasSize(1);
+        assertAppUsagePeriod(periodList.get(0), 15000000L, 16000000L);
+        periodList = periodMap.get(0).get(1).get(1L).get(packageName);
+        assertThat(periodList).hasSize(1);
+        assertAppUsagePeriod(periodList.get(0), 19000000L, 20000000L);
+    }
+
     @Test
     public void generateAppUsagePeriodMap_emptyEventList_returnNull() {
         final List<BatteryLevelData.PeriodBatteryLevelData> hourlyBatteryLevelsPerDay =
@@ -446,6 +499,43 @@ public final class DataProcessorTest {
                 .isTrue();
     }
 
+    @Test
+    public void getHistoryTableWithExpectedTimestamps_returnExpectedTable() {
+        // Timezone GMT+8
+        final long[] timestamps = {
+            1640966700000L, // 2022-01-01 00:05:00
+            1640970180000L, // 2022-01-01 01:03:00
+            1640973840000L, // 2022-01-01 02:04:00
+            1640978100000L, // 2022-01-01 03:15:00
+            1640981400000L // 2022-01-01 04:10:00
+        };
+        final int[] levels = {100, 94, 90, 82, 50};
+        DataProcessor.sTestCurrentTimeMillis = timestamps[timestamps.length - 1];
+
+        final BatteryHistoryTable resultTable =
+                DataProcessor.getHistoryTableWithExpectedTimestamps(
+                        mContext,
+                        BatteryHistoryTable.fromHistoryMap(createHistoryMap(timestamps, levels)));
+
+        // Timezone GMT+8
+        final long[] expectedTimestamps = {
+            1640966700000L, // 2022-01-01 00:05:00
+            1640970000000L, // 2022-01-01 01:00:00
+            1640973600000L, // 2022-01-01 02:00:00
+            1640977200000L, // 2022-01-01 03:00:00
+            1640980800000L, // 2022-01-01 04:00:00
+            1640981400000L // 2022-01-01 04:10:00
+        };
+        final int[] expectedLevels = {100, 94, 90, 84, 56};
+        assertThat(resultTable.getSlotCount()).isEqualTo(expectedTimestamps.length);
+        for (int slot = 0; slot < expectedLevels.length; slot++) {
+            assertThat(resultTable.getTimestamp(slot)).isEqualTo(expectedTimestamps[slot]);
+            assertThat(resultTable.getBatteryLevel(slot, /* consumerId= */ 0))
+                    .isEqualTo(expectedLevels[slot]);
+        }
+        assertThat(resultTable.isPlaceholder(expectedTimestamps.length - 1)).isTrue();
+    }
+
     @Test
     public void getLevelDataThroughProcessedHistoryMap_OneDayData_returnExpectedResult() {
         // Timezone GMT+8
@@ -2346,7 +2436,7 @@ public final class DataProcessorTest {
                 BatteryInformation.newBuilder().setDeviceBatteryState(deviceBatteryState).build();
         values.put(
                 BatteryHistEntry.KEY_BATTERY_INFORMATION,
-                ConvertUtils.convertBatteryInformationToString(batteryInformation));
+                ConvertUtils.convertBatteryInformationToBytes(batteryInformation));
         return values;
     }
 
@@ -2384,7 +2474,7 @@ public final class DataProcessorTest {
         values.put(BatteryHistEntry.KEY_CONSUMER_TYPE, consumerType);
         values.put(
                 BatteryHistEntry.KEY_BATTERY_INFORMATION,
-                ConvertUtils.convertBatteryInformationToString(batteryInformation));
+                ConvertUtils.convertBatteryInformationToBytes(batteryInformation));
         return new BatteryHistEntry(values);
     }
 
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public final class PowerConnectedIntervalsTest {
+
+    @Test
+    public void constructor_redundantAndAdjacentEvents_mergesIntervals() {
+        final PowerConnectedIntervals intervals =
+                new PowerConnectedIntervals(
+                        List.of(
+                                buildBatteryEvent(BatteryEventType.POWER_CONNECTED, 10),
+                                buildBatteryEvent(BatteryEventType.POWER_CONNECTED, 20),
+                                buildBatteryEvent(BatteryEventType.POWER_DISCONNECTED, 30),
+                                buildBatteryEvent(BatteryEventType.POWER_CONNECTED, 30),
+                                buildBatteryEvent(BatteryEventType.POWER_DISCONNECTED, 40),
+                                buildBatteryEvent(BatteryEventType.POWER_DISCONNECTED, 50),
+                                buildBatteryEvent(BatteryEventType.POWER_CONNECTED, 60)));
+
+        final List<AppUsagePeriod> resultList =
+                intervals.excludeFrom(List.of(buildAppUsagePeriod(0, 100)));
+
+        assertThat(intervals.size()).isEqualTo(2);
+        assertThat(resultList).hasSize(2);
+        assertAppUsagePeriod(resultList.get(0), 0, 10);
+        assertAppUsagePeriod(resultList.get(1), 40, 60);
+    }
+
+    @Test
+    public void excludeFrom_multiplePeriods_keepsChargingStateBetweenPeriods() {
+        final PowerConnectedIntervals intervals =
+                new PowerConnectedIntervals(
+                        List.of(
+                                buildBatteryEvent(BatteryEventType.POWER_DISCONNECTED, 50),
+                                buildBatteryEvent(BatteryEventType.POWER_CONNECTED, 150),
+                                buildBatteryEvent(BatteryEventType.POWER_DISCONNECTED, 350)));
+
+        final List<AppUsagePeriod> resultList =
+                intervals.excludeFrom(
+                        List.of(buildAppUsagePeriod(100, 200), buildAppUsagePeriod(300, 400)));
+
+        assertThat(resultList).hasSize(2);
+        assertAppUsagePeriod(resultList.get(0), 100, 150);
+        assertAppUsagePeriod(resultList.get(1), 350, 400);
+    }
+
+    @Test
+    public void excludeFrom_periodWithinOneInterval_returnsEmptyList() {
+        final PowerConnectedIntervals intervals =
+                new PowerConnectedIntervals(
+                        List.of(
+                                buildBatteryEvent(BatteryEventType.POWER_CONNECTED, 100),
+                                buildBatteryEvent(BatteryEventType.POWER_DISCONNECTED, 200)));
+
+        assertThat(intervals.excludeFrom(List.of(buildAppUsagePeriod(120, 180)))).isEmpty();
+    }
+
+    @Test
+    public void excludeFrom_neverConnected_returnsInputList() {
+        final PowerConnectedIntervals intervals =
+                new PowerConnectedIntervals(
+                        List.of(buildBatteryEvent(BatteryEventType.POWER_DISCONNECTED, 50)));
+        final List<AppUsagePeriod> usagePeriodList = List.of(buildAppUsagePeriod(100, 200));
+
+        assertThat(intervals.size()).isEqualTo(0);
+        assertThat(intervals.excludeFrom(usagePeriodList)).isSameInstanceAs(usagePeriodList);
+    }
+
+    private static BatteryEvent buildBatteryEvent(
+            final BatteryEventType type, final long timestamp) {
+        return BatteryEvent.newBuilder().setType(type).setTimestamp(timestamp).build();
+    }
+
+    private static AppUsagePeriod buildAppUsagePeriod(final long start, final long end) {
+        return AppUsagePeriod.newBuilder().setStartTime(start).setEndTime(end).build();
+    }
+
+    private static void assertAppUsagePeriod(
+            final AppUsagePeriod period, final long startTime, final long endTime) {
+        assertThat(period.getStartTime()).isEqualTo(startTime);
+        assertThat(period.getEndTime()).isEqualTo(endTime);
+    }
+}
@@ -48,6 +48,7 @@ public final class BatteryUsageLogUtilsTest {
         mTestStringWriter = new StringWriter();
         mTestPrintWriter = new PrintWriter(mTestStringWriter);
         BatteryUsageLogUtils.getSharedPreferences(mContext).edit().clear().commit();
+        BatteryUsageLogUtils.clearPendingInsertLatencies();
     }
 
     @Test
@@ -89,6 +90,41 @@ public final class BatteryUsageLogUtilsTest {
         assertActionCount("EXECUTE_JOB", BatteryUsageLogUtils.MAX_ENTRIES);
     }
 
+    @Test
+    public void recordInsertLatency_withCorrectBucketCounts() {
+        BatteryUsageLogUtils.recordInsertLatency(5L);
+        BatteryUsageLogUtils.recordInsertLatency(9L);
+        BatteryUsageLogUtils.recordInsertLatency(200L);
+        BatteryUsageLogUtils.recordInsertLatency(5000L);
+
+        BatteryUsageLogUtils.printHistoricalLog(mContext, mTestPrintWriter);
+
+        assertThat(mTestStringWriter.toString())
+                .contains(
+                        "insert latency histogram: <10ms:2 <50ms:0 <100ms:0 <500ms:1 <1000ms:0"
+                                + " >=1000ms:1");
+    }
+
+    @Test
+    public void recordInsertLatency_shouldNotWriteLogUntilNextLogEntry() {
+        BatteryUsageLogUtils.recordInsertLatency(5L);
+
+        assertThat(BatteryUsageLogUtils.getSharedPreferences(mContext).getAll()).isEmpty();
+
+        BatteryUsageLogUtils.writeLog(mContext, Action.EXECUTE_JOB, "");
+        BatteryUsageLogUtils.printHistoricalLog(mContext, mTestPrintWriter);
+
+        assertThat(mTestStringWriter.toString()).contains(" <10ms:1 ");
+    }
+
+    @Test
+    public void getInsertLatencyBucket_returnsExpectedBucket() {
+        assertThat(BatteryUsageLogUtils.getInsertLatencyBucket(0L)).isEqualTo(0);
+        assertThat(BatteryUsageLogUtils.getInsertLatencyBucket(10L)).isEqualTo(1);
+        assertThat(BatteryUsageLogUtils.getInsertLatencyBucket(999L)).isEqualTo(4);
+        assertThat(BatteryUsageLogUtils.getInsertLatencyBucket(1000L)).isEqualTo(5);
+    }
+
     private void assertActionCount(String token, int count) {
         final String dumpResults = mTestStringWriter.toString();
         assertThat(dumpResults.split(token).length).isEqualTo(count + 1);
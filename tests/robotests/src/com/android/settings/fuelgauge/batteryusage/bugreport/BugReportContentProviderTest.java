@@ -95,5 +95,6 @@ public final class BugReportContentProviderTest {
         assertThat(dumpContent).contains("App DatabaseHistory");
         assertThat(dumpContent).contains(PACKAGE_NAME3);
         assertThat(dumpContent).contains(PACKAGE_NAME4);
+        assertThat(dumpContent).contains("BatteryConsumerCache");
     }
 }
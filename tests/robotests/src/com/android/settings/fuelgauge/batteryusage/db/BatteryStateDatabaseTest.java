@@ -0,0 +1,378 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage.db;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Base64;
+import android.util.Pair;
+
+import androidx.room.Room;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteOpenHelper;
+import androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.android.settings.fuelgauge.BatteryUtils;
+import com.android.settings.fuelgauge.batteryusage.BatteryInformation;
+import com.android.settings.fuelgauge.batteryusage.BatteryUsageSlot;
+import com.android.settings.fuelgauge.batteryusage.DeviceBatteryState;
+import com.android.settings.testutils.BatteryTestUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Tests for {@link BatteryStateDatabase}. */
+@RunWith(RobolectricTestRunner.class)
+public final class BatteryStateDatabaseTest {
+    private static final String CREATE_BATTERY_STATE_TABLE_V1 =
+            "CREATE TABLE IF NOT EXISTS `BatteryState` ("
+                    + "`mId` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`uid` INTEGER NOT NULL, `userId` INTEGER NOT NULL, "
+                    + "`packageName` TEXT, `timestamp` INTEGER NOT NULL, "
+                    + "`consumerType` INTEGER NOT NULL, "
+                    + "`isFullChargeCycleStart` INTEGER NOT NULL, "
+                    + "`batteryInformation` TEXT, `batteryInformationDebug` TEXT)";
+    private static final String CREATE_BATTERY_USAGE_SLOT_TABLE_V1 =
+            "CREATE TABLE IF NOT EXISTS `BatteryUsageSlotEntity` ("
+                    + "`mId` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`timestamp` INTEGER NOT NULL, `batteryUsageSlot` TEXT)";
+    private static final String CREATE_BATTERY_STATE_TABLE_V2 =
+            "CREATE TABLE IF NOT EXISTS `BatteryState` ("
+                    + "`mId` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`uid` INTEGER NOT NULL, `userId` INTEGER NOT NULL, "
+                    + "`packageName` TEXT, `timestamp` INTEGER NOT NULL, "
+                    + "`consumerType` INTEGER NOT NULL, "
+                    + "`isFullChargeCycleStart` INTEGER NOT NULL, "
+                    + "`batteryInformation` BLOB, `batteryInformationDebug` TEXT)";
+    private static final String CREATE_BATTERY_USAGE_SLOT_TABLE_V2 =
+            "CREATE TABLE IF NOT EXISTS `BatteryUsageSlotEntity` ("
+                    + "`mId` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`timestamp` INTEGER NOT NULL, `batteryUsageSlot` BLOB)";
+    private static final String CREATE_APP_USAGE_EVENT_TABLE_V2 =
+            "CREATE TABLE IF NOT EXISTS `AppUsageEventEntity` ("
+                    + "`mId` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`uid` INTEGER NOT NULL, `userId` INTEGER NOT NULL, "
+                    + "`timestamp` INTEGER NOT NULL, `appUsageEventType` INTEGER NOT NULL, "
+                    + "`packageName` TEXT, `instanceId` INTEGER NOT NULL, "
+                    + "`taskRootPackageName` TEXT)";
+    private static final String CREATE_BATTERY_EVENT_TABLE_V2 =
+            "CREATE TABLE IF NOT EXISTS `BatteryEventEntity` ("
+                    + "`mId` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`timestamp` INTEGER NOT NULL, `batteryEventType` INTEGER NOT NULL, "
+                    + "`batteryLevel` INTEGER NOT NULL)";
+    private static final int ROW_COUNT = 500;
+    private static final int FILTERED_DAO_QUERY_COUNT = 18;
+
+    private Context mContext;
+    private final List<SupportSQLiteOpenHelper> mOpenHelpers = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+    }
+
+    @After
+    public void tearDown() {
+        mOpenHelpers.forEach(SupportSQLiteOpenHelper::close);
+    }
+
+    @Test
+    public void migration1To2_decodesBase64ColumnsIntoBlob() {
+        final SupportSQLiteDatabase database = createVersion1Database();
+        final BatteryInformation batteryInformation = createBatteryInformation(/* index= */ 1);
+        final BatteryUsageSlot batteryUsageSlot =
+                BatteryUsageSlot.newBuilder().setStartTimestamp(10001L).build();
+        database.insert("BatteryState", SQLiteDatabase.CONFLICT_REPLACE,
+                createBatteryStateValues(1001L, encode(batteryInformation.toByteArray())));
+        final ContentValues slotValues = new ContentValues();
+        slotValues.put("timestamp", 10001L);
+        slotValues.put("batteryUsageSlot", encode(batteryUsageSlot.toByteArray()));
+        database.insert("BatteryUsageSlotEntity", SQLiteDatabase.CONFLICT_REPLACE, slotValues);
+
+        BatteryStateDatabase.MIGRATION_1_2.migrate(database);
+
+        try (Cursor cursor = database.query(
+                "SELECT uid, typeof(batteryInformation), batteryInformation FROM BatteryState")) {
+            assertThat(cursor.getCount()).isEqualTo(1);
+            cursor.moveToFirst();
+            assertThat(cursor.getLong(0)).isEqualTo(1001L);
+            assertThat(cursor.getString(1)).isEqualTo("blob");
+            assertThat(BatteryUtils.parseProtoFromBytes(
+                    cursor.getBlob(2), BatteryInformation.getDefaultInstance()))
+                    .isEqualTo(batteryInformation);
+        }
+        try (Cursor cursor = database.query(
+                "SELECT timestamp, batteryUsageSlot FROM BatteryUsageSlotEntity")) {
+            assertThat(cursor.getCount()).isEqualTo(1);
+            cursor.moveToFirst();
+            assertThat(cursor.getLong(0)).isEqualTo(10001L);
+            assertThat(BatteryUtils.parseProtoFromBytes(
+                    cursor.getBlob(1), BatteryUsageSlot.getDefaultInstance()))
+                    .isEqualTo(batteryUsageSlot);
+        }
+        try (Cursor cursor = database.query(
+                "SELECT name FROM sqlite_master WHERE name LIKE '%_old'")) {
+            assertThat(cursor.getCount()).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void migration1To2_invalidBase64_storesNull() {
+        final SupportSQLiteDatabase database = createVersion1Database();
+        database.insert("BatteryState", SQLiteDatabase.CONFLICT_REPLACE,
+                createBatteryStateValues(1001L, "%%invalid%%"));
+
+        BatteryStateDatabase.MIGRATION_1_2.migrate(database);
+
+        try (Cursor cursor = database.query("SELECT batteryInformation FROM BatteryState")) {
+            assertThat(cursor.getCount()).isEqualTo(1);
+            cursor.moveToFirst();
+            assertThat(cursor.isNull(0)).isTrue();
+        }
+    }
+
+    @Test
+    public void migration2To3_createsIndexesOfEntities() {
+        final SupportSQLiteDatabase database =
+                createDatabase(
+                        /* version= */ 2,
+                        CREATE_BATTERY_STATE_TABLE_V2,
+                        CREATE_BATTERY_USAGE_SLOT_TABLE_V2,
+                        CREATE_APP_USAGE_EVENT_TABLE_V2,
+                        CREATE_BATTERY_EVENT_TABLE_V2);
+        final BatteryStateDatabase roomDatabase =
+                BatteryTestUtils.setUpBatteryStateDatabase(mContext);
+
+        BatteryStateDatabase.MIGRATION_2_3.migrate(database);
+
+        try {
+            final List<String> expectedIndexes =
+                    getIndexes(roomDatabase.getOpenHelper().getWritableDatabase());
+            assertThat(expectedIndexes).hasSize(6);
+            assertThat(getIndexes(database)).containsExactlyElementsIn(expectedIndexes);
+        } finally {
+            roomDatabase.close();
+            BatteryStateDatabase.setBatteryStateDatabase(/* database= */ null);
+        }
+    }
+
+    @Test
+    public void filteredDaoQueries_searchByIndex() {
+        final List<Pair<String, List<Object>>> queries = new ArrayList<>();
+        final BatteryStateDatabase roomDatabase =
+                Room.inMemoryDatabaseBuilder(mContext, BatteryStateDatabase.class)
+                        .allowMainThreadQueries()
+                        .setQueryCallback(
+                                (sql, bindArgs) -> queries.add(
+                                        Pair.create(sql, new ArrayList<>(bindArgs))),
+                                Runnable::run)
+                        .build();
+
+        try {
+            runFilteredDaoQueries(roomDatabase);
+            final List<Pair<String, List<Object>>> filteredQueries = new ArrayList<>();
+            for (Pair<String, List<Object>> query : queries) {
+                if (query.first.matches("(?s)^(SELECT|DELETE) .* WHERE .*")
+                        && !query.first.contains("room_")) {
+                    filteredQueries.add(query);
+                }
+            }
+            assertThat(filteredQueries.size()).isAtLeast(FILTERED_DAO_QUERY_COUNT);
+
+            final SupportSQLiteDatabase database =
+                    roomDatabase.getOpenHelper().getWritableDatabase();
+            for (Pair<String, List<Object>> query : filteredQueries) {
+                assertSearchByIndex(database, query.first, query.second.toArray());
+            }
+        } finally {
+            roomDatabase.close();
+        }
+    }
+
+    @Test
+    public void blobColumn_usesLessSpaceThanBase64Column() {
+        final SupportSQLiteDatabase textDatabase = createVersion1Database();
+        final SupportSQLiteDatabase blobDatabase = createVersion1Database();
+        BatteryStateDatabase.MIGRATION_1_2.migrate(blobDatabase);
+        long textPayloadSize = 0;
+        long blobPayloadSize = 0;
+        for (int i = 0; i < ROW_COUNT; i++) {
+            final byte[] bytes = createBatteryInformation(i).toByteArray();
+            final String encoded = encode(bytes);
+            textDatabase.insert("BatteryState", SQLiteDatabase.CONFLICT_REPLACE,
+                    createBatteryStateValues(i, encoded));
+            final ContentValues values = createBatteryStateValues(i, /* encoded= */ null);
+            values.put("batteryInformation", bytes);
+            blobDatabase.insert("BatteryState", SQLiteDatabase.CONFLICT_REPLACE, values);
+            textPayloadSize += encoded.length();
+            blobPayloadSize += bytes.length;
+        }
+
+        assertThat(blobPayloadSize).isLessThan(textPayloadSize);
+        assertThat(getDatabaseSize(blobDatabase)).isLessThan(getDatabaseSize(textDatabase));
+    }
+
+    // Runs every DAO query which filters the rows, FILTERED_DAO_QUERY_COUNT in total.
+    private static void runFilteredDaoQueries(BatteryStateDatabase database) {
+        final BatteryStateDao batteryStateDao = database.batteryStateDao();
+        batteryStateDao.getLatestTimestampBefore(1L).close();
+        batteryStateDao.getBatteryStatesAfter(1L).close();
+        batteryStateDao.getAllAfter(1L);
+        batteryStateDao.getDistinctTimestampCount(1L);
+        batteryStateDao.getDistinctTimestamps(1L);
+        batteryStateDao.clearAllBefore(1L);
+
+        final AppUsageEventDao appUsageEventDao = database.appUsageEventDao();
+        appUsageEventDao.getAllAfter(1L);
+        appUsageEventDao.getAllForUsersAfter(List.of(0L, 10L), 1L).close();
+        appUsageEventDao.getLatestTimestampOfUser(0L).close();
+        appUsageEventDao.clearAllBefore(1L);
+
+        final BatteryEventDao batteryEventDao = database.batteryEventDao();
+        batteryEventDao.getLastFullChargeTimestamp().close();
+        batteryEventDao.getLastFullChargeTimestampForLog();
+        batteryEventDao.getAllAfter(1L, List.of(1, 2)).close();
+        batteryEventDao.getAllAfterForLog(1L);
+        batteryEventDao.clearAllBefore(1L);
+
+        final BatteryUsageSlotDao batteryUsageSlotDao = database.batteryUsageSlotDao();
+        batteryUsageSlotDao.getAllAfter(1L).close();
+        batteryUsageSlotDao.getAllAfterForLog(1L);
+        batteryUsageSlotDao.clearAllBefore(1L);
+    }
+
+    // A filtered query should search an index, or at least scan a covering index, instead of
+    // scanning the table.
+    private static void assertSearchByIndex(
+            SupportSQLiteDatabase database, String sql, Object[] bindArgs) {
+        boolean usesIndex = false;
+        try (Cursor cursor = database.query("EXPLAIN QUERY PLAN " + sql, bindArgs)) {
+            final int detailIndex = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                final String detail = cursor.getString(detailIndex);
+                final boolean isCoveringIndex = detail.contains("COVERING INDEX");
+                assertWithMessage(sql + " -> " + detail)
+                        .that(detail.startsWith("SCAN") && !isCoveringIndex)
+                        .isFalse();
+                usesIndex |= detail.startsWith("SEARCH") || isCoveringIndex;
+            }
+        }
+        assertWithMessage(sql).that(usesIndex).isTrue();
+    }
+
+    private SupportSQLiteDatabase createVersion1Database() {
+        return createDatabase(
+                /* version= */ 1,
+                CREATE_BATTERY_STATE_TABLE_V1,
+                CREATE_BATTERY_USAGE_SLOT_TABLE_V1);
+    }
+
+    private SupportSQLiteDatabase createDatabase(int version, String... createTableSqls) {
+        final SupportSQLiteOpenHelper.Callback callback =
+                new SupportSQLiteOpenHelper.Callback(version) {
+                    @Override
+                    public void onCreate(SupportSQLiteDatabase db) {
+                        for (String createTableSql : createTableSqls) {
+                            db.execSQL(createTableSql);
+                        }
+                    }
+
+                    @Override
+                    public void onUpgrade(SupportSQLiteDatabase db, int oldVersion,
+                            int newVersion) {}
+                };
+        // An in-memory database, since no name is set.
+        final SupportSQLiteOpenHelper openHelper =
+                new FrameworkSQLiteOpenHelperFactory()
+                        .create(
+                                SupportSQLiteOpenHelper.Configuration.builder(mContext)
+                                        .callback(callback)
+                                        .build());
+        mOpenHelpers.add(openHelper);
+        return openHelper.getWritableDatabase();
+    }
+
+    private static List<String> getIndexes(SupportSQLiteDatabase database) {
+        final List<String> indexes = new ArrayList<>();
+        try (Cursor cursor = database.query(
+                "SELECT tbl_name, name FROM sqlite_master"
+                        + " WHERE type = 'index' AND name LIKE 'index_%'")) {
+            while (cursor.moveToNext()) {
+                indexes.add(cursor.getString(0) + "|" + cursor.getString(1));
+            }
+        }
+        return indexes;
+    }
+
+    private static long getDatabaseSize(SupportSQLiteDatabase database) {
+        long pageCount;
+        long pageSize;
+        try (Cursor cursor = database.query("PRAGMA page_count")) {
+            cursor.moveToFirst();
+            pageCount = cursor.getLong(0);
+        }
+        try (Cursor cursor = database.query("PRAGMA page_size")) {
+            cursor.moveToFirst();
+            pageSize = cursor.getLong(0);
+        }
+        return pageCount * pageSize;
+    }
+
+    private static ContentValues createBatteryStateValues(long uid, String encoded) {
+        final ContentValues values = new ContentValues();
+        values.put("uid", uid);
+        values.put("userId", 0L);
+        values.put("packageName", "com.android.settings" + uid);
+        values.put("timestamp", 100001L + uid);
+        values.put("consumerType", 1);
+        values.put("isFullChargeCycleStart", false);
+        values.put("batteryInformation", encoded);
+        return values;
+    }
+
+    private static BatteryInformation createBatteryInformation(int index) {
+        return BatteryInformation.newBuilder()
+                .setDeviceBatteryState(
+                        DeviceBatteryState.newBuilder().setBatteryLevel(index % 100).build())
+                .setBootTimestamp(101L + index)
+                .setAppLabel("Settings" + index)
+                .setTotalPower(100)
+                .setConsumePower(index * 0.5)
+                .setForegroundUsageConsumePower(index * 0.1)
+                .setBackgroundUsageConsumePower(index * 0.2)
+                .setPercentOfTotal(index % 100)
+                .setForegroundUsageTimeInMs(60000L + index)
+                .setBackgroundUsageTimeInMs(10000L + index)
+                .build();
+    }
+
+    private static String encode(byte[] bytes) {
+        return Base64.encodeToString(bytes, Base64.DEFAULT);
+    }
+}
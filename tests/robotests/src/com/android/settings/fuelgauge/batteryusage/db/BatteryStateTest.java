@@ -77,7 +77,7 @@ public final class BatteryStateTest {
         assertThat(state.consumerType).isEqualTo(2);
         assertThat(state.isFullChargeCycleStart).isTrue();
         assertThat(state.batteryInformation)
-                .isEqualTo(ConvertUtils.convertBatteryInformationToString(mBatteryInformation));
+                .isEqualTo(ConvertUtils.convertBatteryInformationToBytes(mBatteryInformation));
     }
 
     private static BatteryState create(BatteryInformation batteryInformation) {
@@ -89,7 +89,7 @@ public final class BatteryStateTest {
                 .setConsumerType(2)
                 .setIsFullChargeCycleStart(true)
                 .setBatteryInformation(
-                        ConvertUtils.convertBatteryInformationToString(batteryInformation))
+                        ConvertUtils.convertBatteryInformationToBytes(batteryInformation))
                 .build();
     }
 }
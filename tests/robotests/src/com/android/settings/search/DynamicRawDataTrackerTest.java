@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.search;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class DynamicRawDataTrackerTest {
+
+    private static final String GROUP_1 = "group1";
+    private static final String GROUP_2 = "group2";
+
+    private DynamicRawDataTracker mTracker;
+
+    @Before
+    public void setUp() {
+        mTracker = new DynamicRawDataTracker();
+    }
+
+    @Test
+    public void needsUpdate_unknownGroup_shouldReturnTrue() {
+        assertThat(mTracker.needsUpdate(GROUP_1, "token")).isTrue();
+    }
+
+    @Test
+    public void needsUpdate_sameInputToken_shouldReturnFalse() {
+        mTracker.update(GROUP_1, "token", rows("title"));
+
+        assertThat(mTracker.needsUpdate(GROUP_1, "token")).isFalse();
+        assertThat(mTracker.needsUpdate(GROUP_1, "other")).isTrue();
+    }
+
+    @Test
+    public void needsUpdate_noInputToken_shouldReturnTrue() {
+        mTracker.update(GROUP_1, null, rows("title"));
+
+        assertThat(mTracker.needsUpdate(GROUP_1, null)).isTrue();
+    }
+
+    @Test
+    public void getChangedGroups_invalidToken_shouldReturnNull() {
+        mTracker.update(GROUP_1, null, rows("title"));
+
+        assertThat(mTracker.getChangedGroups(null)).isNull();
+        assertThat(mTracker.getChangedGroups("")).isNull();
+        assertThat(mTracker.getChangedGroups("other:0")).isNull();
+    }
+
+    @Test
+    public void getChangedGroups_shouldReturnOnlyGroupsChangedAfterToken() {
+        mTracker.update(GROUP_1, null, rows("title1"));
+        mTracker.update(GROUP_2, null, rows("title2"));
+        final String token = mTracker.getToken();
+
+        mTracker.update(GROUP_1, null, rows("title1"));
+        mTracker.update(GROUP_2, null, rows("new title2"));
+
+        assertThat(mTracker.getChangedGroups(token)).containsExactly(GROUP_2);
+        assertThat(mTracker.getRows(GROUP_2).get(0)[0]).isEqualTo("new title2");
+    }
+
+    @Test
+    public void update_sameRows_shouldKeepToken() {
+        mTracker.update(GROUP_1, null, rows("title"));
+        final String token = mTracker.getToken();
+
+        mTracker.update(GROUP_1, null, rows("title"));
+
+        assertThat(mTracker.getToken()).isEqualTo(token);
+        assertThat(mTracker.getChangedGroups(token)).isEmpty();
+    }
+
+    @Test
+    public void getGroups_shouldKeepInsertionOrder() {
+        mTracker.update(GROUP_2, null, rows("title2"));
+        mTracker.update(GROUP_1, null, rows("title1"));
+
+        assertThat(mTracker.getGroups()).containsExactly(GROUP_2, GROUP_1).inOrder();
+    }
+
+    private static List<Object[]> rows(String title) {
+        return new ArrayList<>(Collections.singletonList(new Object[] {title}));
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.search;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+
+import com.android.settings.DisplaySettings;
+import com.android.settingslib.search.SearchIndexableData;
+
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class IndexableDataLoaderTest {
+
+    private Context mContext;
+    private IndexableDataLoader mLoader;
+    private List<SearchIndexableData> mBundles;
+    private int mLoadCount;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mLoader = new IndexableDataLoader(MoreExecutors.newDirectExecutorService());
+        mBundles = Arrays.asList(
+                new SearchIndexableData(FakeSettingsFragment.class,
+                        FakeSettingsFragment.SEARCH_INDEX_DATA_PROVIDER),
+                new SearchIndexableData(DisplaySettings.class,
+                        DisplaySettings.SEARCH_INDEX_DATA_PROVIDER));
+    }
+
+    @Test
+    public void load_shouldMergeInProviderOrder() {
+        final List<String> result = mLoader.load(mContext, "op", mBundles, this::loadClassName);
+
+        assertThat(result).containsExactly(FakeSettingsFragment.class.getName(),
+                DisplaySettings.class.getName()).inOrder();
+    }
+
+    @Test
+    public void load_sameSignature_shouldUseCachedResult() {
+        mLoader.load(mContext, "op", mBundles, this::loadClassName);
+        final List<String> result = mLoader.load(mContext, "op", mBundles, this::loadClassName);
+
+        assertThat(mLoadCount).isEqualTo(mBundles.size());
+        assertThat(result).hasSize(mBundles.size());
+    }
+
+    @Test
+    public void loadWithoutCache_shouldLoadEveryTime() {
+        mLoader.loadWithoutCache("op", mBundles, this::loadClassName);
+        final List<String> result = mLoader.loadWithoutCache("op", mBundles, this::loadClassName);
+
+        assertThat(mLoadCount).isEqualTo(mBundles.size() * 2);
+        assertThat(result).containsExactly(FakeSettingsFragment.class.getName(),
+                DisplaySettings.class.getName()).inOrder();
+    }
+
+    @Test
+    public void load_differentOperation_shouldLoadAgain() {
+        mLoader.load(mContext, "op1", mBundles, this::loadClassName);
+        mLoader.load(mContext, "op2", mBundles, this::loadClassName);
+
+        assertThat(mLoadCount).isEqualTo(mBundles.size() * 2);
+    }
+
+    @Test
+    public void load_afterInvalidate_shouldLoadAgain() {
+        mLoader.load(mContext, "op", mBundles, this::loadClassName);
+        mLoader.invalidate();
+        mLoader.load(mContext, "op", mBundles, this::loadClassName);
+
+        assertThat(mLoadCount).isEqualTo(mBundles.size() * 2);
+    }
+
+    @Test
+    public void load_providerCrashes_shouldReturnOtherProvidersAndNotCache() {
+        final List<String> result = mLoader.load(mContext, "op", mBundles, bundle -> {
+            if (bundle.getTargetClass() == DisplaySettings.class) {
+                throw new IllegalStateException();
+            }
+            return loadClassName(bundle);
+        });
+        mLoader.load(mContext, "op", mBundles, this::loadClassName);
+
+        assertThat(result).containsExactly(FakeSettingsFragment.class.getName());
+        assertThat(mLoadCount).isEqualTo(2);
+    }
+
+    @Test
+    public void load_providerReturnsNull_shouldReturnOtherProviders() {
+        final List<String> result = mLoader.load(mContext, "op", mBundles, bundle -> null);
+
+        assertThat(result).isEmpty();
+    }
+
+    private List<String> loadClassName(SearchIndexableData bundle) {
+        mLoadCount++;
+        return new ArrayList<>(Collections.singletonList(bundle.getTargetClass().getName()));
+    }
+}
@@ -8,10 +8,12 @@ import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.when;
+import static org.robolectric.Shadows.shadowOf;
 
 import android.Manifest;
 import android.content.Context;
 import android.content.pm.ActivityInfo;
+import android.content.pm.PackageInfo;
 import android.content.pm.ProviderInfo;
 import android.database.Cursor;
 import android.net.Uri;
@@ -39,6 +41,7 @@ import org.robolectric.annotation.Config;
 import org.robolectric.annotation.Implementation;
 import org.robolectric.annotation.Implements;
 import org.robolectric.annotation.Resetter;
+import org.robolectric.shadows.ShadowPackageManager;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -150,6 +153,103 @@ public class SettingsSearchIndexablesProviderTest {
         assertThat(keys).containsAtLeast("pref_key_1", "pref_key_3", "pref_key_5");
     }
 
+    @Test
+    public void queryDynamicRawDataChanges_noToken_shouldReturnAllGroups() {
+        final Uri uri = Uri.parse(BASE_AUTHORITY
+                + SearchIndexablesContract.DYNAMIC_INDEXABLES_RAW_PATH).buildUpon()
+                .appendQueryParameter(
+                        SettingsSearchIndexablesProvider.QUERY_PARAMETER_SINCE_TOKEN, "")
+                .build();
+
+        final Cursor cursor = mProvider.query(uri, null, null, null, null);
+
+        final Bundle extras = cursor.getExtras();
+        assertThat(extras.getBoolean(SettingsSearchIndexablesProvider.EXTRA_FULL_UPDATE))
+                .isTrue();
+        assertThat(extras.getStringArrayList(SettingsSearchIndexablesProvider.EXTRA_CHANGED_GROUPS))
+                .contains(FakeSettingsFragment.class.getName());
+        final List<String> titles = new ArrayList<>();
+        final int groupColumn =
+                cursor.getColumnIndexOrThrow(SettingsSearchIndexablesProvider.COLUMN_GROUP);
+        while (cursor.moveToNext()) {
+            titles.add(cursor.getString(SearchIndexablesContract.COLUMN_INDEX_RAW_TITLE));
+            assertThat(cursor.getString(groupColumn)).isNotNull();
+        }
+        assertThat(titles).contains("title");
+    }
+
+    @Test
+    public void queryDynamicRawDataChanges_latestToken_shouldReturnNoChange() {
+        final String token = mProvider.queryDynamicRawDataChanges("").getExtras()
+                .getString(SettingsSearchIndexablesProvider.EXTRA_TOKEN);
+
+        final Cursor cursor = mProvider.queryDynamicRawDataChanges(token);
+
+        final Bundle extras = cursor.getExtras();
+        assertThat(cursor.getCount()).isEqualTo(0);
+        assertThat(extras.getBoolean(SettingsSearchIndexablesProvider.EXTRA_FULL_UPDATE))
+                .isFalse();
+        assertThat(extras.getStringArrayList(SettingsSearchIndexablesProvider.EXTRA_CHANGED_GROUPS))
+                .isEmpty();
+        assertThat(extras.getString(SettingsSearchIndexablesProvider.EXTRA_TOKEN))
+                .isEqualTo(token);
+    }
+
+    @Test
+    public void queryDynamicRawDataChanges_categoriesReloaded_shouldReturnInjectedTiles() {
+        final String token = mProvider.queryDynamicRawDataChanges("").getExtras()
+                .getString(SettingsSearchIndexablesProvider.EXTRA_TOKEN);
+        final ActivityInfo activityInfo = new ActivityInfo();
+        activityInfo.packageName = "pkg";
+        activityInfo.name = "class";
+        activityInfo.metaData = new Bundle();
+        activityInfo.metaData.putString(META_DATA_PREFERENCE_TITLE, "new title");
+        final DashboardCategory category = new DashboardCategory("key");
+        category.addTile(new ActivityTile(activityInfo, category.key));
+        when(mFakeFeatureFactory.dashboardFeatureProvider.getAllCategories())
+                .thenReturn(Arrays.asList(category));
+
+        final Cursor cursor = mProvider.queryDynamicRawDataChanges(token);
+
+        assertThat(cursor.getExtras().getStringArrayList(
+                SettingsSearchIndexablesProvider.EXTRA_CHANGED_GROUPS)).hasSize(1);
+        assertThat(cursor.getCount()).isEqualTo(1);
+        cursor.moveToFirst();
+        assertThat(cursor.getString(SearchIndexablesContract.COLUMN_INDEX_RAW_TITLE))
+                .isEqualTo("new title");
+    }
+
+    @Test
+    public void queryDynamicRawDataChanges_tileAppUpdated_shouldReturnInjectedTiles() {
+        final ActivityInfo activityInfo = new ActivityInfo();
+        activityInfo.packageName = "pkg";
+        activityInfo.name = "class";
+        activityInfo.metaData = new Bundle();
+        activityInfo.metaData.putString(META_DATA_PREFERENCE_TITLE, "title");
+        final DashboardCategory category = new DashboardCategory("key");
+        category.addTile(new ActivityTile(activityInfo, category.key));
+        when(mFakeFeatureFactory.dashboardFeatureProvider.getAllCategories())
+                .thenReturn(Arrays.asList(category));
+        final PackageInfo packageInfo = new PackageInfo();
+        packageInfo.packageName = "pkg";
+        packageInfo.lastUpdateTime = 1L;
+        final ShadowPackageManager shadowPackageManager =
+                shadowOf(mContext.getPackageManager());
+        shadowPackageManager.installPackage(packageInfo);
+        final String token = mProvider.queryDynamicRawDataChanges("").getExtras()
+                .getString(SettingsSearchIndexablesProvider.EXTRA_TOKEN);
+        // The app is updated while the published categories stay the same.
+        activityInfo.metaData.putString(META_DATA_PREFERENCE_TITLE, "updated title");
+        shadowPackageManager.getInternalMutablePackageInfo("pkg").lastUpdateTime = 2L;
+
+        final Cursor cursor = mProvider.queryDynamicRawDataChanges(token);
+
+        assertThat(cursor.getCount()).isEqualTo(1);
+        cursor.moveToFirst();
+        assertThat(cursor.getString(SearchIndexablesContract.COLUMN_INDEX_RAW_TITLE))
+                .isEqualTo("updated title");
+    }
+
     @Test
     public void refreshSearchEnabledState_classNotFoundInCategoryMap_hasInjectionRawData() {
         mProvider.refreshSearchEnabledState(mContext,
@@ -110,4 +110,21 @@ public class ScreenPinningSettingsTest {
         assertThat(indexRaws.get(0).title).isEqualTo(
                 mContext.getString(R.string.screen_pinning_unlock_none));
     }
+
+    @Test
+    public void getDynamicRawDataToken_lockTypeChanged_shouldChangeToken() {
+        ShadowLockPatternUtils.setKeyguardStoredPasswordQuality(
+                DevicePolicyManager.PASSWORD_QUALITY_NUMERIC);
+        final Object pinToken =
+                ScreenPinningSettings.SEARCH_INDEX_DATA_PROVIDER.getDynamicRawDataToken(mContext);
+
+        ShadowLockPatternUtils.setKeyguardStoredPasswordQuality(
+                DevicePolicyManager.PASSWORD_QUALITY_ALPHABETIC);
+        final Object passwordToken =
+                ScreenPinningSettings.SEARCH_INDEX_DATA_PROVIDER.getDynamicRawDataToken(mContext);
+
+        assertThat(passwordToken).isNotEqualTo(pinToken);
+        assertThat(passwordToken).isEqualTo(
+                ScreenPinningSettings.SEARCH_INDEX_DATA_PROVIDER.getDynamicRawDataToken(mContext));
+    }
 }
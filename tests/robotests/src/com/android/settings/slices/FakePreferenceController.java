@@ -20,7 +20,8 @@ import android.content.Context;
 
 import com.android.settings.core.BasePreferenceController;
 
-public class FakePreferenceController extends BasePreferenceController {
+public class FakePreferenceController extends BasePreferenceController
+        implements BasePreferenceController.BackgroundInstantiable {
 
     public FakePreferenceController(Context context, String preferenceKey) {
         super(context, preferenceKey);
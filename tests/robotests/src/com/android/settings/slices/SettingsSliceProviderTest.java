@@ -33,6 +33,7 @@ import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -149,7 +150,7 @@ public class SettingsSliceProviderTest {
 
         mProvider = spy(new SettingsSliceProvider());
         ShadowStrictMode.reset();
-        mProvider.mSliceWeakDataCache = new HashMap<>();
+        mProvider.mSliceDataCache = new HashMap<>();
         mProvider.mSlicesDatabaseAccessor = new SlicesDatabaseAccessor(mContext);
         when(mProvider.getContext()).thenReturn(mContext);
 
@@ -185,7 +186,7 @@ public class SettingsSliceProviderTest {
         SliceTestUtils.insertSliceToDb(mContext, KEY);
 
         mProvider.loadSlice(INTENT_SLICE_URI);
-        SliceData data = mProvider.mSliceWeakDataCache.get(INTENT_SLICE_URI);
+        SliceData data = mProvider.mSliceDataCache.get(INTENT_SLICE_URI);
 
         assertThat(data.getKey()).isEqualTo(KEY);
         assertThat(data.getTitle()).isEqualTo(SliceTestUtils.FAKE_TITLE);
@@ -216,15 +217,83 @@ public class SettingsSliceProviderTest {
     }
 
     @Test
-    public void testLoadSlice_cachedEntryRemovedOnUnpinned() {
-        SliceData data = getMockData();
-        mProvider.mSliceWeakDataCache.put(data.getUri(), data);
-        mProvider.onSliceUnpinned(data.getUri());
-        SliceTestUtils.insertSliceToDb(mContext, data.getKey());
+    public void testLoadSlice_cachedEntryKeptOnUnpinned() {
+        SliceTestUtils.insertSliceToDb(mContext, KEY);
+        mProvider.loadSlice(INTENT_SLICE_URI);
+
+        mProvider.onSliceUnpinned(INTENT_SLICE_URI);
+
+        assertThat(mProvider.mSliceDataCache.get(INTENT_SLICE_URI)).isNotNull();
+        assertThat(mProvider.mLoadedSliceUris).doesNotContain(INTENT_SLICE_URI);
+    }
+
+    @Test
+    public void loadSlice_cachedButNotLoaded_registersIntentFilter() {
+        SliceTestUtils.insertSliceToDb(mContext, KEY);
+        mProvider.loadSlice(INTENT_SLICE_URI);
+        mProvider.onSliceUnpinned(INTENT_SLICE_URI);
+
+        mProvider.loadSlice(INTENT_SLICE_URI);
+
+        verify(mProvider, times(2))
+                .registerIntentToUri(eq(FakeToggleController.INTENT_FILTER), eq(INTENT_SLICE_URI));
+        assertThat(mProvider.mLoadedSliceUris).contains(INTENT_SLICE_URI);
+    }
+
+    @Test
+    public void loadSlice_loadedTwice_registersIntentFilterOnce() {
+        SliceTestUtils.insertSliceToDb(mContext, KEY);
+
+        mProvider.loadSlice(INTENT_SLICE_URI);
+        mProvider.loadSlice(INTENT_SLICE_URI);
+
+        verify(mProvider, times(1))
+                .registerIntentToUri(eq(FakeToggleController.INTENT_FILTER), eq(INTENT_SLICE_URI));
+    }
+
+    @Test
+    public void prefetchSliceData_shouldCacheSlicesOfSameScreen() {
+        final String siblingKey = "sibling_key";
+        SliceTestUtils.insertSliceToDb(mContext, KEY);
+        SliceTestUtils.insertSliceToDb(mContext, siblingKey);
+        final Uri siblingUri = new Uri.Builder()
+                .scheme(SCHEME_CONTENT)
+                .authority(SettingsSlicesContract.AUTHORITY)
+                .appendPath(SettingsSlicesContract.PATH_SETTING_ACTION)
+                .appendPath(siblingKey)
+                .build();
+
+        mProvider.prefetchSliceData(Collections.singletonList(INTENT_SLICE_URI));
+
+        assertThat(mProvider.mSliceDataCache.get(INTENT_SLICE_URI).getKey()).isEqualTo(KEY);
+        assertThat(mProvider.mSliceDataCache.get(siblingUri).getKey()).isEqualTo(siblingKey);
+    }
+
+    @Test
+    public void invalidateSliceDataIfChanged_indexChanged_shouldClearCache() {
+        final SliceData data = getMockData();
+        mProvider.invalidateSliceDataIfChanged();
+        mProvider.mSliceDataCache.put(data.getUri(), data);
+
+        mProvider.invalidateSliceDataIfChanged();
+        assertThat(mProvider.mSliceDataCache).containsKey(data.getUri());
 
-        SliceData cachedData = mProvider.mSliceWeakDataCache.get(data.getUri());
+        SlicesDatabaseHelper.getInstance(mContext).notifyIndexChanged();
+        mProvider.invalidateSliceDataIfChanged();
+        assertThat(mProvider.mSliceDataCache).isEmpty();
+    }
+
+    @Test
+    public void sliceDataCache_exceedsMaxSize_shouldEvictLeastRecentlyUsed() {
+        mProvider.onCreateSliceProvider();
+        final SliceData data = getMockData();
+
+        for (int i = 0; i <= SettingsSliceProvider.SLICE_DATA_CACHE_SIZE; i++) {
+            mProvider.mSliceDataCache.put(Uri.parse("content://test/" + i), data);
+        }
 
-        assertThat(cachedData).isNull();
+        assertThat(mProvider.mSliceDataCache).hasSize(SettingsSliceProvider.SLICE_DATA_CACHE_SIZE);
+        assertThat(mProvider.mSliceDataCache).doesNotContainKey(Uri.parse("content://test/0"));
     }
 
     @Test
@@ -232,7 +301,7 @@ public class SettingsSliceProviderTest {
         ShadowThreadUtils.setIsMainThread(true);
         final StrictMode.ThreadPolicy oldThreadPolicy = StrictMode.getThreadPolicy();
         SliceData data = getMockData();
-        mProvider.mSliceWeakDataCache.put(data.getUri(), data);
+        mProvider.mSliceDataCache.put(data.getUri(), data);
         mProvider.onBindSlice(data.getUri());
 
         final StrictMode.ThreadPolicy newThreadPolicy = StrictMode.getThreadPolicy();
@@ -246,7 +315,7 @@ public class SettingsSliceProviderTest {
         ShadowThreadUtils.setIsMainThread(false);
 
         SliceData data = getMockData();
-        mProvider.mSliceWeakDataCache.put(data.getUri(), data);
+        mProvider.mSliceDataCache.put(data.getUri(), data);
         mProvider.onBindSlice(data.getUri());
 
         assertThat(ShadowStrictMode.isThreadPolicyOverridden()).isTrue();
@@ -274,7 +343,7 @@ public class SettingsSliceProviderTest {
     public void onBindSlice_nightModeChanged_shouldReloadTheme() {
         mContext.getResources().getConfiguration().uiMode = UI_MODE_NIGHT_NO;
         final SliceData data = getMockData();
-        mProvider.mSliceWeakDataCache.put(data.getUri(), data);
+        mProvider.mSliceDataCache.put(data.getUri(), data);
         mProvider.onBindSlice(data.getUri());
 
         mContext.getResources().getConfiguration().uiMode = UI_MODE_NIGHT_YES;
@@ -287,7 +356,7 @@ public class SettingsSliceProviderTest {
     public void onBindSlice_nightModeNotChanged_shouldNotReloadTheme() {
         mContext.getResources().getConfiguration().uiMode = UI_MODE_NIGHT_NO;
         SliceData data = getMockData();
-        mProvider.mSliceWeakDataCache.put(data.getUri(), data);
+        mProvider.mSliceDataCache.put(data.getUri(), data);
         mProvider.onBindSlice(data.getUri());
 
         mContext.getResources().getConfiguration().uiMode = UI_MODE_NIGHT_NO;
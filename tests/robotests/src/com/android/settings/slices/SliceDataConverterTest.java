@@ -49,6 +49,7 @@ import org.robolectric.annotation.Config;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 @RunWith(RobolectricTestRunner.class)
 public class SliceDataConverterTest {
@@ -114,6 +115,43 @@ public class SliceDataConverterTest {
         }
     }
 
+    @Test
+    @Config(qualifiers = "mcc999")
+    public void getSourceHashes_shouldHashFragmentsAndNotAccessibility() {
+        mSearchFeatureProvider.getSearchIndexableResources().getProviderValues().clear();
+        mSearchFeatureProvider.getSearchIndexableResources().getProviderValues()
+                .add(new SearchIndexableData(FakeIndexProvider.class,
+                        FakeIndexProvider.SEARCH_INDEX_DATA_PROVIDER));
+
+        final Map<String, String> hashes = mSliceDataConverter.getSourceHashes();
+
+        assertThat(hashes.keySet()).containsExactly(FAKE_FRAGMENT_CLASSNAME,
+                SliceDataConverter.ACCESSIBILITY_SOURCE).inOrder();
+        assertThat(hashes.get(FAKE_FRAGMENT_CLASSNAME)).isNotEmpty();
+        assertThat(hashes.get(SliceDataConverter.ACCESSIBILITY_SOURCE)).isNull();
+        assertThat(mSliceDataConverter.getSourceHashes()).isEqualTo(hashes);
+    }
+
+    @Test
+    @Config(qualifiers = "mcc999")
+    public void getSliceData_singleSource_convertsOnlyThatSource() {
+        mSearchFeatureProvider.getSearchIndexableResources().getProviderValues().clear();
+        mSearchFeatureProvider.getSearchIndexableResources().getProviderValues()
+                .add(new SearchIndexableData(FakeIndexProvider.class,
+                        FakeIndexProvider.SEARCH_INDEX_DATA_PROVIDER));
+        doReturn(getFakeService()).when(mSliceDataConverter).getAccessibilityServiceInfoList();
+
+        final List<SliceData> fragmentData =
+                mSliceDataConverter.getSliceData(FAKE_FRAGMENT_CLASSNAME);
+        final List<SliceData> a11yData =
+                mSliceDataConverter.getSliceData(SliceDataConverter.ACCESSIBILITY_SOURCE);
+
+        assertThat(fragmentData).hasSize(1);
+        assertFakeSlice(fragmentData.get(0));
+        assertThat(a11yData).hasSize(1);
+        assertFakeA11ySlice(a11yData.get(0));
+    }
+
     private void assertFakeSlice(SliceData fakeSlice) {
         assertThat(fakeSlice.getKey()).isEqualTo(FAKE_KEY);
         assertThat(fakeSlice.getTitle()).isEqualTo(FAKE_TITLE);
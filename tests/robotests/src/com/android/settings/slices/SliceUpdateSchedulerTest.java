@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.slices;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.Looper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Duration;
+
+@RunWith(RobolectricTestRunner.class)
+public class SliceUpdateSchedulerTest {
+
+    private static final Uri URI_1 = Uri.parse("content://com.android.settings.slices/action/a");
+    private static final Uri URI_2 = Uri.parse("content://com.android.settings.slices/action/b");
+
+    @Mock
+    private ContentResolver mContentResolver;
+
+    private SliceUpdateScheduler mScheduler;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mScheduler = new SliceUpdateScheduler(Looper.getMainLooper(), mContentResolver);
+    }
+
+    @Test
+    public void scheduleUpdate_firstUpdate_isDelayed() {
+        mScheduler.scheduleUpdate(URI_1);
+
+        idleFor(SliceUpdateScheduler.MIN_THROTTLE_INTERVAL / 2);
+        verify(mContentResolver, never()).notifyChange(any(Uri.class), any());
+
+        idleFor(SliceUpdateScheduler.MIN_THROTTLE_INTERVAL);
+        verify(mContentResolver).notifyChange(eq(URI_1), any());
+        assertThat(mScheduler.getIssuedCount(URI_1)).isEqualTo(1);
+    }
+
+    @Test
+    public void scheduleUpdate_whilePending_shouldCoalesce() {
+        mScheduler.scheduleUpdate(URI_1);
+        mScheduler.scheduleUpdate(URI_1);
+        mScheduler.scheduleUpdate(URI_1);
+
+        idleFor(SliceUpdateScheduler.MAX_THROTTLE_INTERVAL);
+
+        verify(mContentResolver).notifyChange(eq(URI_1), any());
+        assertThat(mScheduler.getIssuedCount(URI_1)).isEqualTo(1);
+        assertThat(mScheduler.getCoalescedCount(URI_1)).isEqualTo(2);
+    }
+
+    @Test
+    public void scheduleUpdate_multipleUris_shouldNotifyInSameBatch() {
+        mScheduler.scheduleUpdate(URI_1);
+        idleFor(SliceUpdateScheduler.FRAME_INTERVAL / 2);
+        mScheduler.scheduleUpdate(URI_2);
+
+        idleFor(SliceUpdateScheduler.MIN_THROTTLE_INTERVAL);
+
+        verify(mContentResolver).notifyChange(eq(URI_1), any());
+        verify(mContentResolver).notifyChange(eq(URI_2), any());
+    }
+
+    @Test
+    public void scheduleUpdate_afterUpdate_shouldThrottle() {
+        mScheduler.scheduleUpdate(URI_1);
+        idleFor(SliceUpdateScheduler.MIN_THROTTLE_INTERVAL + SliceUpdateScheduler.FRAME_INTERVAL);
+        verify(mContentResolver).notifyChange(eq(URI_1), any());
+
+        mScheduler.scheduleUpdate(URI_1);
+        idleFor(SliceUpdateScheduler.MIN_THROTTLE_INTERVAL / 2);
+        verify(mContentResolver, times(1)).notifyChange(eq(URI_1), any());
+
+        idleFor(SliceUpdateScheduler.MIN_THROTTLE_INTERVAL);
+        verify(mContentResolver, times(2)).notifyChange(eq(URI_1), any());
+    }
+
+    @Test
+    public void reportBindCost_expensiveBind_shouldIncreaseThrottleInterval() {
+        assertThat(mScheduler.getThrottleInterval(URI_1))
+                .isEqualTo(SliceUpdateScheduler.MIN_THROTTLE_INTERVAL);
+
+        mScheduler.reportBindCost(URI_1, 50L);
+        assertThat(mScheduler.getThrottleInterval(URI_1)).isEqualTo(500L);
+
+        mScheduler.reportBindCost(URI_1, 1000L);
+        assertThat(mScheduler.getThrottleInterval(URI_1))
+                .isEqualTo(SliceUpdateScheduler.MAX_THROTTLE_INTERVAL);
+    }
+
+    @Test
+    public void cancelUpdate_shouldNotNotify() {
+        mScheduler.scheduleUpdate(URI_1);
+        mScheduler.cancelUpdate(URI_1);
+
+        idleFor(SliceUpdateScheduler.MAX_THROTTLE_INTERVAL);
+
+        verify(mContentResolver, never()).notifyChange(any(Uri.class), any());
+        assertThat(mScheduler.getIssuedCount(URI_1)).isEqualTo(0);
+    }
+
+    @Test
+    public void cancelUpdate_shouldDropState() {
+        mScheduler.reportBindCost(URI_1, 50L);
+        mScheduler.scheduleUpdate(URI_1);
+
+        mScheduler.cancelUpdate(URI_1);
+
+        assertThat(mScheduler.getStateCount()).isEqualTo(0);
+        assertThat(mScheduler.getThrottleInterval(URI_1))
+                .isEqualTo(SliceUpdateScheduler.MIN_THROTTLE_INTERVAL);
+    }
+
+    @Test
+    public void reportBindCost_manyUris_shouldKeepMostRecentStatesOnly() {
+        for (int i = 0; i <= SliceUpdateScheduler.MAX_STATES; i++) {
+            mScheduler.reportBindCost(Uri.parse("content://test/" + i), 50L);
+        }
+
+        assertThat(mScheduler.getStateCount()).isEqualTo(SliceUpdateScheduler.MAX_STATES);
+        assertThat(mScheduler.getThrottleInterval(Uri.parse("content://test/0")))
+                .isEqualTo(SliceUpdateScheduler.MIN_THROTTLE_INTERVAL);
+    }
+
+    @Test
+    public void reportBindCost_eldestStatePending_shouldEvictOldestIdleStates() {
+        mScheduler.scheduleUpdate(URI_1);
+        mScheduler.scheduleUpdate(URI_1);
+
+        for (int i = 0; i <= SliceUpdateScheduler.MAX_STATES; i++) {
+            mScheduler.reportBindCost(Uri.parse("content://test/" + i), 50L);
+        }
+
+        assertThat(mScheduler.getStateCount()).isEqualTo(SliceUpdateScheduler.MAX_STATES);
+        assertThat(mScheduler.getCoalescedCount(URI_1)).isEqualTo(1);
+    }
+
+    @Test
+    public void dump_shouldPrintCounters() {
+        mScheduler.scheduleUpdate(URI_1);
+        mScheduler.scheduleUpdate(URI_1);
+        idleFor(SliceUpdateScheduler.MAX_THROTTLE_INTERVAL);
+
+        final StringWriter stringWriter = new StringWriter();
+        mScheduler.dump(new PrintWriter(stringWriter));
+
+        assertThat(stringWriter.toString()).contains(URI_1 + " issued=1 coalesced=1");
+    }
+
+    private static void idleFor(long millis) {
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(millis));
+    }
+}
@@ -56,8 +56,10 @@ import org.robolectric.shadow.api.Shadow;
 import org.robolectric.shadows.ShadowAccessibilityManager;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 @RunWith(RobolectricTestRunner.class)
 @Config(shadows = {ShadowUserManager.class, ShadowUtils.class,
@@ -164,6 +166,68 @@ public class SlicesDatabaseAccessorTest {
         assertThat(data.getHighlightMenuRes()).isEqualTo(SliceTestUtils.FAKE_HIGHLIGHT_MENU_RES);
     }
 
+    @Test
+    public void getSliceDataFromUris_shouldReturnMatchingSlicesOnly() {
+        SliceTestUtils.insertSliceToDb(mContext, "key1");
+        SliceTestUtils.insertSliceToDb(mContext, "key2");
+        final Uri actionUri = buildUri(SettingsSlicesContract.PATH_SETTING_ACTION, "key1");
+        final Uri intentUri = buildUri(SettingsSlicesContract.PATH_SETTING_INTENT, "key2");
+        final Uri invalidUri = buildUri(SettingsSlicesContract.PATH_SETTING_ACTION, "durr");
+
+        final Map<Uri, SliceData> data = mAccessor.getSliceDataFromUris(
+                Arrays.asList(actionUri, intentUri, invalidUri));
+
+        assertThat(data).hasSize(2);
+        assertThat(data.get(actionUri).getKey()).isEqualTo("key1");
+        assertThat(data.get(actionUri).getUri()).isEqualTo(actionUri);
+        assertThat(data.get(intentUri).getKey()).isEqualTo("key2");
+        assertThat(data.get(intentUri).getSliceType()).isEqualTo(SliceData.SliceType.INTENT);
+    }
+
+    @Test
+    public void getSliceDataFromUris_duplicateKeys_shouldSkipDuplicatedSlices() {
+        SliceTestUtils.insertSliceToDb(mContext, "key1");
+        SliceTestUtils.insertSliceToDb(mContext, "key1");
+        SliceTestUtils.insertSliceToDb(mContext, "key2");
+        final Uri duplicatedUri = buildUri(SettingsSlicesContract.PATH_SETTING_ACTION, "key1");
+        final Uri uri = buildUri(SettingsSlicesContract.PATH_SETTING_ACTION, "key2");
+
+        final Map<Uri, SliceData> data =
+                mAccessor.getSliceDataFromUris(Arrays.asList(duplicatedUri, uri));
+
+        assertThat(data).hasSize(1);
+        assertThat(data.get(uri).getKey()).isEqualTo("key2");
+    }
+
+    @Test
+    public void getSliceDataFromFragment_shouldReturnSlicesWithIndexedUri() {
+        SliceTestUtils.insertSliceToDb(mContext, "key1", false /* isPlatformSlice */);
+        SliceTestUtils.insertSliceToDb(mContext, "key2", false /* isPlatformSlice */);
+
+        final List<SliceData> data =
+                mAccessor.getSliceDataFromFragment(SliceTestUtils.FAKE_FRAGMENT_NAME);
+
+        assertThat(data).hasSize(2);
+        for (SliceData sliceData : data) {
+            assertThat(sliceData.getUri()).isEqualTo(
+                    buildUri(SettingsSlicesContract.PATH_SETTING_ACTION, sliceData.getKey()));
+        }
+        assertThat(mAccessor.getSliceDataFromFragment("unknown_fragment")).isEmpty();
+    }
+
+    @Test
+    public void getSliceDataFromFragment_duplicateKeys_shouldSkipDuplicatedSlices() {
+        SliceTestUtils.insertSliceToDb(mContext, "key1", false /* isPlatformSlice */);
+        SliceTestUtils.insertSliceToDb(mContext, "key1", false /* isPlatformSlice */);
+        SliceTestUtils.insertSliceToDb(mContext, "key2", false /* isPlatformSlice */);
+
+        final List<SliceData> data =
+                mAccessor.getSliceDataFromFragment(SliceTestUtils.FAKE_FRAGMENT_NAME);
+
+        assertThat(data).hasSize(1);
+        assertThat(data.get(0).getKey()).isEqualTo("key2");
+    }
+
     @Test(expected = IllegalStateException.class)
     @Ignore
     public void testGetSliceFromUri_invalidUri_errorThrown() {
@@ -332,6 +396,15 @@ public class SlicesDatabaseAccessorTest {
         assertThat(data.getUnavailableSliceSubtitle()).isEqualTo(subtitle);
     }
 
+    private static Uri buildUri(String action, String key) {
+        return new Uri.Builder()
+                .scheme(ContentResolver.SCHEME_CONTENT)
+                .authority(SettingsSliceProvider.SLICE_AUTHORITY)
+                .appendPath(action)
+                .appendPath(key)
+                .build();
+    }
+
     @Implements(ApplicationPackageManager.class)
     public static class ShadowApplicationPackageManager extends
             org.robolectric.shadows.ShadowApplicationPackageManager {
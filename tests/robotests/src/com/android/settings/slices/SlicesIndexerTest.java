@@ -19,13 +19,17 @@ package com.android.settings.slices;
 import static com.google.common.truth.Truth.assertThat;
 
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
+import android.util.ArrayMap;
 
 import com.android.settings.slices.SlicesDatabaseHelper.IndexColumns;
 import com.android.settings.testutils.DatabaseTestUtils;
@@ -40,6 +44,7 @@ import org.robolectric.RuntimeEnvironment;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 @RunWith(RobolectricTestRunner.class)
 public class SlicesIndexerTest {
@@ -56,6 +61,7 @@ public class SlicesIndexerTest {
     private static final int SLICE_TYPE = SliceData.SliceType.SLIDER;
     private static final String UNAVAILABLE_SLICE_SUBTITLE = "subtitleOfUnavailableSlice";
     private static final int HIGHLIGHT_MENU_KEY = 5678; // I declare a thumb war
+    private static final String HASH = "hash";
 
     private Context mContext;
 
@@ -100,7 +106,7 @@ public class SlicesIndexerTest {
     public void testInsertSliceData_indexedStateSet() {
         final SlicesDatabaseHelper helper = SlicesDatabaseHelper.getInstance(mContext);
         helper.setIndexedState();
-        doReturn(new ArrayList<SliceData>()).when(mManager).getSliceData();
+        doReturn(new ArrayMap<String, String>()).when(mManager).getSourceHashes();
 
         mManager.run();
 
@@ -111,7 +117,8 @@ public class SlicesIndexerTest {
     @Ignore
     public void testInsertSliceData_nonPublicSlice_mockDataInserted() {
         final List<SliceData> sliceData = getMockIndexableData(false);
-        doReturn(sliceData).when(mManager).getSliceData();
+        doReturn(getSourceHashes(HASH)).when(mManager).getSourceHashes();
+        doReturn(sliceData).when(mManager).getSliceData(FRAGMENT_NAME);
 
         mManager.run();
 
@@ -160,7 +167,8 @@ public class SlicesIndexerTest {
     @Ignore
     public void insertSliceData_publicSlice_mockDataInserted() {
         final List<SliceData> sliceData = getMockIndexableData(true);
-        doReturn(sliceData).when(mManager).getSliceData();
+        doReturn(getSourceHashes(HASH)).when(mManager).getSourceHashes();
+        doReturn(sliceData).when(mManager).getSliceData(FRAGMENT_NAME);
 
         mManager.run();
 
@@ -205,6 +213,101 @@ public class SlicesIndexerTest {
         }
     }
 
+    @Test
+    public void indexSliceData_sourceUnchanged_shouldNotConvertAgain() {
+        doReturn(getSourceHashes(HASH)).when(mManager).getSourceHashes();
+        doReturn(getMockIndexableData(false)).when(mManager).getSliceData(FRAGMENT_NAME);
+        mManager.indexSliceData();
+        clearIndexedState();
+
+        mManager.indexSliceData();
+
+        verify(mManager, times(1)).getSliceData(FRAGMENT_NAME);
+        assertThat(getIndexedKeys()).containsExactlyElementsIn(KEYS);
+    }
+
+    @Test
+    public void indexSliceData_sameConfiguration_shouldNotCheckSourcesAgain() {
+        doReturn(getSourceHashes(null)).when(mManager).getSourceHashes();
+        doReturn(getMockIndexableData(false)).when(mManager).getSliceData(FRAGMENT_NAME);
+        mManager.indexSliceData();
+
+        mManager.indexSliceData();
+
+        verify(mManager, times(1)).getSourceHashes();
+    }
+
+    @Test
+    public void indexSliceData_buildStateIndexed_shouldNotCheckSources() {
+        SlicesDatabaseHelper.getInstance(mContext).setIndexedState();
+
+        mManager.indexSliceData();
+
+        verify(mManager, never()).getSourceHashes();
+    }
+
+    @Test
+    public void indexSliceData_sourceChanged_shouldReplaceRows() {
+        doReturn(getSourceHashes(HASH)).when(mManager).getSourceHashes();
+        doReturn(getMockIndexableData(false)).when(mManager).getSliceData(FRAGMENT_NAME);
+        mManager.indexSliceData();
+        clearIndexedState();
+        final List<SliceData> newData = getMockIndexableData(false).subList(0, 1);
+        doReturn(getSourceHashes("new hash")).when(mManager).getSourceHashes();
+        doReturn(newData).when(mManager).getSliceData(FRAGMENT_NAME);
+
+        mManager.indexSliceData();
+
+        assertThat(getIndexedKeys()).containsExactly(KEYS[0]);
+    }
+
+    @Test
+    public void indexSliceData_sourceRemoved_shouldDeleteRows() {
+        doReturn(getSourceHashes(HASH)).when(mManager).getSourceHashes();
+        doReturn(getMockIndexableData(false)).when(mManager).getSliceData(FRAGMENT_NAME);
+        mManager.indexSliceData();
+        clearIndexedState();
+        doReturn(new ArrayMap<String, String>()).when(mManager).getSourceHashes();
+
+        mManager.indexSliceData();
+
+        assertThat(getIndexedKeys()).isEmpty();
+    }
+
+    @Test
+    public void indexSliceData_noHash_shouldAlwaysConvert() {
+        doReturn(getSourceHashes(null)).when(mManager).getSourceHashes();
+        doReturn(getMockIndexableData(false)).when(mManager).getSliceData(FRAGMENT_NAME);
+        mManager.indexSliceData();
+        clearIndexedState();
+
+        mManager.indexSliceData();
+
+        verify(mManager, times(2)).getSliceData(FRAGMENT_NAME);
+        assertThat(getIndexedKeys()).containsExactlyElementsIn(KEYS);
+    }
+
+    private static Map<String, String> getSourceHashes(String hash) {
+        final Map<String, String> hashes = new ArrayMap<>();
+        hashes.put(FRAGMENT_NAME, hash);
+        return hashes;
+    }
+
+    private void clearIndexedState() {
+        SlicesDatabaseHelper.getInstance(mContext).clearIndexedState();
+    }
+
+    private List<String> getIndexedKeys() {
+        final List<String> keys = new ArrayList<>();
+        final SQLiteDatabase db = SlicesDatabaseHelper.getInstance(mContext).getReadableDatabase();
+        try (Cursor cursor = db.rawQuery("SELECT key FROM slices_index", null)) {
+            while (cursor.moveToNext()) {
+                keys.add(cursor.getString(0));
+            }
+        }
+        return keys;
+    }
+
     private void insertSpecialCase(String key, String title) {
         final ContentValues values = new ContentValues();
         values.put(IndexColumns.KEY, key);
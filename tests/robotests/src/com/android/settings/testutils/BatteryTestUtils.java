@@ -151,7 +151,7 @@ public class BatteryTestUtils {
                         timestamp,
                         /*consumerType=*/ 2,
                         isFullChargeStart,
-                        ConvertUtils.convertBatteryInformationToString(batteryInformation),
+                        ConvertUtils.convertBatteryInformationToBytes(batteryInformation),
                         "");
         BatteryStateDao dao =
                 BatteryStateDatabase.getInstance(context).batteryStateDao();
@@ -24,6 +24,7 @@ import static com.google.common.truth.Truth.assertThat;
 
 import static org.mockito.Mockito.when;
 
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.pm.ActivityInfo;
 import android.content.pm.ApplicationInfo;
@@ -49,6 +50,7 @@ import org.mockito.MockitoAnnotations;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 @RunWith(AndroidJUnit4.class)
 public class CategoryManagerTest {
@@ -408,6 +410,80 @@ public class CategoryManagerTest {
         assertThat(category.getTilesCount()).isEqualTo(1);
     }
 
+    @Test
+    public void getChangedCategories_tileAdded_shouldReturnItsCategory() {
+        final Tile tile = createActivityTile(CATEGORY_HOMEPAGE, "pkg", "class", 100);
+        final Map<ComponentName, Tile> currentTiles = new HashMap<>();
+        currentTiles.put(tile.getIntent().getComponent(), tile);
+
+        final Set<String> categories = CategoryManager.getChangedCategories(mContext,
+                new HashMap<>(), currentTiles);
+
+        assertThat(categories).containsExactly(CATEGORY_HOMEPAGE);
+    }
+
+    @Test
+    public void getChangedCategories_tileRemoved_shouldReturnItsCategory() {
+        final Tile tile = createActivityTile(CategoryKey.CATEGORY_ACCOUNT, "pkg", "class", 100);
+        final Map<ComponentName, Tile> previousTiles = new HashMap<>();
+        previousTiles.put(tile.getIntent().getComponent(), tile);
+
+        final Set<String> categories = CategoryManager.getChangedCategories(mContext,
+                previousTiles, new HashMap<>());
+
+        assertThat(categories).containsExactly(CategoryKey.CATEGORY_ACCOUNT);
+    }
+
+    @Test
+    public void getChangedCategories_tileMoved_shouldReturnBothCategories() {
+        final Tile previousTile = createActivityTile(CategoryKey.CATEGORY_ACCOUNT, "pkg",
+                "class", 100);
+        final Tile currentTile = createActivityTile(CATEGORY_HOMEPAGE, "pkg", "class", 100);
+        final Map<ComponentName, Tile> previousTiles = new HashMap<>();
+        final Map<ComponentName, Tile> currentTiles = new HashMap<>();
+        previousTiles.put(previousTile.getIntent().getComponent(), previousTile);
+        currentTiles.put(currentTile.getIntent().getComponent(), currentTile);
+
+        final Set<String> categories = CategoryManager.getChangedCategories(mContext,
+                previousTiles, currentTiles);
+
+        assertThat(categories).containsExactly(CategoryKey.CATEGORY_ACCOUNT, CATEGORY_HOMEPAGE);
+    }
+
+    @Test
+    public void getChangedCategories_sameTile_shouldReturnEmpty() {
+        final Tile tile = createActivityTile(CATEGORY_HOMEPAGE, "pkg", "class", 100);
+        final Map<ComponentName, Tile> tiles = new HashMap<>();
+        tiles.put(tile.getIntent().getComponent(), tile);
+
+        final Set<String> categories = CategoryManager.getChangedCategories(mContext, tiles,
+                new HashMap<>(tiles));
+
+        assertThat(categories).isEmpty();
+    }
+
+    @Test
+    public void filterDenylistedTiles_shouldRemoveDenylistedTilesOnly() {
+        final String testPackage = mContext.getPackageName();
+        final DashboardCategory category = new DashboardCategory(CATEGORY_HOMEPAGE);
+        final Tile tile1 = createActivityTile(category.key, testPackage, "class1", 100);
+        final Tile tile2 = createActivityTile(category.key, testPackage, "class2", 50);
+        category.addTile(tile1);
+        category.addTile(tile2);
+        mCategoryByKeyMap.put(CATEGORY_HOMEPAGE, category);
+        mCategoryManager.updateCategoryFromDenylist(
+                Set.of(new ComponentName(testPackage, "class1")));
+
+        try {
+            mCategoryManager.filterDenylistedTiles(mCategoryByKeyMap.values());
+        } finally {
+            mCategoryManager.updateCategoryFromDenylist(Set.of());
+        }
+
+        assertThat(category.getTilesCount()).isEqualTo(1);
+        assertThat(category.getTile(0)).isEqualTo(tile2);
+    }
+
     private Tile createActivityTile(String categoryKey, String packageName, String className,
             int order) {
         final ActivityInfo activityInfo = new ActivityInfo();